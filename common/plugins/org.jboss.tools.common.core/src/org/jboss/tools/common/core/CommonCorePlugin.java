@@ -18,8 +18,10 @@ import java.util.Properties;
 
 import org.eclipse.core.runtime.FileLocator;
 import org.eclipse.core.runtime.Platform;
+import org.jboss.tools.common.java.ParametedTypeInterner;
 import org.jboss.tools.common.log.BasePlugin;
 import org.jboss.tools.common.log.IPluginLog;
+import org.jboss.tools.common.util.TypeResolutionCache;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 
@@ -46,6 +48,17 @@ public class CommonCorePlugin extends BasePlugin {
         super.start(context);
         myContext = context;
 	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.core.runtime.Plugin#stop(org.osgi.framework.BundleContext)
+	 */
+	public void stop(BundleContext context) throws Exception {
+		ParametedTypeInterner.shutdown();
+		TypeResolutionCache.getInstance().dispose();
+		super.stop(context);
+	}
+
 	/**
 	 * Gets message from plugin.properties
 	 * @param key
@@ -12,6 +12,7 @@ package org.jboss.tools.common.java;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -45,13 +46,17 @@ public class ParametedType implements IParametedType {
 	protected boolean isLower = false;
 	protected boolean isVariable = false;
 
-	boolean inheritanceIsBuilt = false;
+	// Instances are shared by factories, lazily built state is published after it is complete.
+	volatile boolean inheritanceIsBuilt = false;
 	protected ParametedType superType = null;
 	protected Collection<IParametedType> inheritedTypes = new ArrayList<IParametedType>(1);
 	Set<IParametedType> allInheritedTypes = null;
 
 	protected long inheritanceHashcode = -1;
 
+	// Set when the type is interned, see share().
+	private boolean shared = false;
+
 	public static interface PositionProvider {
 		ISourceRange getRange(String superTypeName);
 		boolean isLoaded();
@@ -70,6 +75,7 @@ public class ParametedType implements IParametedType {
 	}
 
 	public void setPrimitive(boolean primitive) {
+		checkNotShared();
 		this.primitive = primitive;
 	}
 
@@ -78,6 +84,7 @@ public class ParametedType implements IParametedType {
 	}
 
 	public void setUpper(boolean b) {
+		checkNotShared();
 		isUpper = b;
 	}
 
@@ -86,6 +93,7 @@ public class ParametedType implements IParametedType {
 	}
 
 	public void setLower(boolean b) {
+		checkNotShared();
 		isLower = b;
 	}
 
@@ -94,17 +102,55 @@ public class ParametedType implements IParametedType {
 	}
 
 	public void setVariable(boolean b) {
+		checkNotShared();
 		isVariable = b;
 	}
 
+	/**
+	 * Returns the factory that built this type. An interned type is not bound
+	 * to a factory, a new factory is returned for it.
+	 * @return
+	 */
 	public ParametedTypeFactory getFactory() {
-		return typeFactory;
+		return shared ? new ParametedTypeFactory() : typeFactory;
 	}
 
 	public void setFactory(ParametedTypeFactory typefactory) {
+		checkNotShared();
 		this.typeFactory = typefactory;
 	}
 
+	/**
+	 * Returns true if the type is interned by {@link ParametedTypeInterner}
+	 * and may be used by many factories. Such a type cannot be modified.
+	 * @return
+	 */
+	public boolean isShared() {
+		return shared;
+	}
+
+	/**
+	 * Makes the completely built type and its parameters read-only before they are
+	 * interned. The type no longer refers to the factory that built it.
+	 */
+	void share() {
+		if(shared) {
+			return;
+		}
+		shared = true;
+		typeFactory = null;
+		for (ParametedType p: parameterTypes) {
+			p.share();
+		}
+		parameterTypes = Collections.unmodifiableList(parameterTypes);
+	}
+
+	private void checkNotShared() {
+		if(shared) {
+			throw new IllegalStateException("Shared type " + signature + " cannot be modified"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
 	public IType getType() {
 		return type;
 	}
@@ -132,10 +178,12 @@ public class ParametedType implements IParametedType {
 	}
 
 	public void setType(IType type) {
+		checkNotShared();
 		this.type = type;
 	}
 
 	public void setSignature(String signature) {
+		checkNotShared();
 		this.signature = signature;
 		arrayIndex = 0;
 		if(signature != null) {
@@ -144,6 +192,7 @@ public class ParametedType implements IParametedType {
 	}
 
 	public void addParameter(ParametedType p) {
+		checkNotShared();
 		parameterTypes.add(p);
 	}
 
@@ -152,6 +201,7 @@ public class ParametedType implements IParametedType {
 	}
 
 	public void setPositionProvider(PositionProvider p) {
+		checkNotShared();
 		provider = p;
 	}
 
@@ -209,6 +259,7 @@ public class ParametedType implements IParametedType {
 		if(type == null) return;
 		inheritanceHashcode = 0;
 		Collection<IParametedType> inheritedTypes = new ArrayList<IParametedType>(2);
+		ParametedTypeFactory factory = getFactory();
 		try {
 			if(!type.isInterface() && !type.isAnnotation()) {
 				String sc = type.getSuperclassTypeSignature();
@@ -225,7 +276,7 @@ public class ParametedType implements IParametedType {
 					sc = getArrayPrefix() + sc;
 				}
 				
-				superType = getFactory().getParametedType(type, this, sc);
+				superType = factory.getParametedType(type, this, sc);
 				if(superType != null) {
 					inheritanceHashcode = superType.getType().getFullyQualifiedName().hashCode();
 					if(provider != null) {
@@ -256,7 +307,7 @@ public class ParametedType implements IParametedType {
 			if(is != null) for (int i = 0; i < is.length; i++) {
 				String p = resolveParameters(is[i]);
 				if(arrayIndex > 0) p = getArrayPrefix() + p;
-				ParametedType t = getFactory().getParametedType(type, this, p);
+				ParametedType t = factory.getParametedType(type, this, p);
 				if(t != null) {
 					inheritanceHashcode = inheritanceHashcode * 773 + t.getType().getFullyQualifiedName().hashCode();
 					if(provider != null) {
@@ -292,7 +343,7 @@ public class ParametedType implements IParametedType {
 		} catch (JavaModelException e) {
 			CommonCorePlugin.getDefault().logError(e);
 		}
-		this.inheritedTypes = inheritedTypes;
+		this.inheritedTypes = shared ? Collections.unmodifiableCollection(inheritedTypes) : inheritedTypes;
 		inheritanceIsBuilt = true;
 	}
 
@@ -352,7 +403,7 @@ public class ParametedType implements IParametedType {
 		return signaturesByName.get(paramName);
 	}
 
-	Map<String, String> signaturesByName = null;
+	volatile Map<String, String> signaturesByName = null;
 	Map<String, ParametedType> parametersBySignature = null;
 	
 	void buildParameters() {
@@ -373,8 +424,8 @@ public class ParametedType implements IParametedType {
 					pbs.put(p.getSignature(), p);
 				}
 			}
-			signaturesByName = sbn;
 			parametersBySignature = pbs;
+			signaturesByName = sbn;
 		}
 	}
 
@@ -11,8 +11,8 @@
 package org.jboss.tools.common.java;
 
 import java.util.HashMap;
-import java.util.Hashtable;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.jdt.core.IMember;
@@ -24,6 +24,11 @@ import org.eclipse.jdt.core.Signature;
 import org.jboss.tools.common.core.CommonCorePlugin;
 import org.jboss.tools.common.util.EclipseJavaUtil;
 
+/**
+ * Builds parameted types for signatures in the context of Java members.
+ * Built types are shared with other factories through {@link ParametedTypeInterner};
+ * the factory keeps strong references to the types it has used until {@link #clean()}.
+ */
 public class ParametedTypeFactory { 
 	// I S J C F D Z
 	static Map<Character,String> primitives = new HashMap<Character, String>();
@@ -39,7 +44,7 @@ public class ParametedTypeFactory {
 	}
 	//unresolved Object signature
 	public static String OBJECT = "QObject;"; //$NON-NLS-1$
-	Map<String, ParametedType> cache = new Hashtable<String, ParametedType>();
+	Map<String, ParametedType> cache = new ConcurrentHashMap<String, ParametedType>();
 
 	public ParametedType newParametedType(IType type) {
 		ParametedType parametedType = new ParametedType();
@@ -89,8 +94,9 @@ public class ParametedTypeFactory {
 		
 		IType contextType = context instanceof IType ? (IType)context : context.getDeclaringType();
 
-		String key = context == null || context.isBinary() || OBJECT.equals(typeSignature) ? typeSignature : contextType.getFullyQualifiedName() + "+" + typeSignature;
-		if(cache.containsKey(key)) return cache.get(key);
+		String key = getKey(context, typeSignature);
+		ParametedType cached = getCached(context, key);
+		if(cached != null) return cached;
 		ParametedType result = new ParametedType();
 		result.setFactory(this);
 		result.setSignature(typeSignature);
@@ -128,8 +134,7 @@ public class ParametedTypeFactory {
 			IType type = EclipseJavaUtil.findType(context.getJavaProject(), resovedTypeName);
 			if(type != null) {
 				result.setType(type);
-				cache.put(key, result);
-				return result;
+				return putCached(context, key, result);
 			}
 			if(context instanceof IMethod) {
 				String[] ps = ((IMethod)context).getTypeParameterSignatures();
@@ -157,6 +162,7 @@ public class ParametedTypeFactory {
 			IType type = EclipseJavaUtil.findType(context.getJavaProject(), resovedTypeName);
 			if(type != null) {
 				result.setType(type);
+				// Visible to this factory only until parameters are built.
 				cache.put(key, result);
 				StringBuffer newParams = new StringBuffer();
 				String[] paramSignatures = null;
@@ -187,7 +193,7 @@ public class ParametedTypeFactory {
 					  .append(Signature.C_SEMICOLON);
 					result.setSignature(ns.toString());
 				}
-				return result;
+				return putCached(context, key, result);
 			}
 		}
 		return null;
@@ -195,7 +201,7 @@ public class ParametedTypeFactory {
 
 	public ParametedType getParametedTypeForParameter(IMember context, String typeParameterSignature, ParametedType result) throws JavaModelException {
 		IType contextType = context instanceof IType ? (IType)context : context.getDeclaringType();
-		String key = context == null ? typeParameterSignature : contextType.getFullyQualifiedName() + "+" + typeParameterSignature;
+		String key = getContextKey(context) + "+" + typeParameterSignature; //$NON-NLS-1$
 
 		String t = Signature.getTypeVariable(typeParameterSignature);
 		String[] bounds = Signature.getTypeParameterBounds(typeParameterSignature);
@@ -217,12 +223,96 @@ public class ParametedTypeFactory {
 				result.setSignature(t);
 			}
 			result.setVariable(true);
-			cache.put(key, result);
-			return result;
+			return putCached(context, key, result);
 		}
 		return null;
 	}
 
+	/**
+	 * Returns the key of the type for the signature in the context. Only resolved
+	 * signatures without type variables mean the same type in any context of a project.
+	 * Other signatures are qualified by the context type, and by the method if it
+	 * declares type parameters.
+	 */
+	static String getKey(IMember context, String typeSignature) throws JavaModelException {
+		if(OBJECT.equals(typeSignature) || isResolved(typeSignature)) {
+			return typeSignature;
+		}
+		return getContextKey(context) + "+" + typeSignature; //$NON-NLS-1$
+	}
+
+	private static String getContextKey(IMember context) throws JavaModelException {
+		IType contextType = context instanceof IType ? (IType)context : context.getDeclaringType();
+		String result = contextType.getFullyQualifiedName();
+		if(context instanceof IMethod && ((IMethod)context).getTypeParameterSignatures().length > 0) {
+			result += "#" + context.getElementName() + ((IMethod)context).getSignature(); //$NON-NLS-1$
+		}
+		return result;
+	}
+
+	/**
+	 * Returns true if the signature and its type arguments are resolved
+	 * and do not refer to type variables.
+	 */
+	static boolean isResolved(String typeSignature) {
+		try {
+			switch(Signature.getTypeSignatureKind(typeSignature)) {
+			case Signature.BASE_TYPE_SIGNATURE:
+				return true;
+			case Signature.ARRAY_TYPE_SIGNATURE:
+				return isResolved(Signature.getElementType(typeSignature));
+			case Signature.WILDCARD_TYPE_SIGNATURE:
+				return typeSignature.length() == 1 || isResolved(typeSignature.substring(1));
+			case Signature.CLASS_TYPE_SIGNATURE:
+				if(typeSignature.charAt(0) != Signature.C_RESOLVED) {
+					return false;
+				}
+				for (String argument: Signature.getTypeArguments(typeSignature)) {
+					if(!isResolved(argument)) {
+						return false;
+					}
+				}
+				return true;
+			default:
+				return false;
+			}
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Returns type cached by this factory or interned by any factory, or null.
+	 */
+	private ParametedType getCached(IMember context, String key) {
+		ParametedType result = cache.get(key);
+		if(result == null && context != null) {
+			result = ParametedTypeInterner.getInstance().get(getProjectName(context), key);
+			if(result != null) {
+				cache.put(key, result);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Interns a completely built type and caches the interned instance,
+	 * which is the argument unless the same type was interned concurrently.
+	 */
+	private ParametedType putCached(IMember context, String key, ParametedType type) {
+		ParametedType result = context == null ? type : ParametedTypeInterner.getInstance().intern(getProjectName(context), key, type);
+		cache.put(key, result);
+		return result;
+	}
+
+	private static String getProjectName(IMember context) {
+		return context.getJavaProject().getElementName();
+	}
+
+	/**
+	 * Releases types used by this factory. Types that are still referenced
+	 * elsewhere remain interned and are reused by factories.
+	 */
 	public void clean() {
 		cache.clear();
 	}
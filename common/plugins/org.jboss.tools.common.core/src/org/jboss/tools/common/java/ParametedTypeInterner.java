@@ -0,0 +1,287 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.common.java;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IJavaModel;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+import org.jboss.tools.common.core.CommonCorePlugin;
+
+/**
+ * Shares parameted types built by all instances of {@link ParametedTypeFactory}.
+ * Types are keyed by the name of Java project and by the key of the factory:
+ * the resolved signature, or the signature qualified by its context if it depends
+ * on the context (unresolved names and type variables).
+ *
+ * Values are held by weak references: a type stays interned while it is
+ * referenced by a factory or by a model object, so that {@link ParametedTypeFactory#clean()}
+ * drops only the strong references of one factory. Interned types are complete
+ * when published; they are read-only and not bound to the factory that built them,
+ * see {@link ParametedType#isShared()}.
+ *
+ * Types of a Java project are removed when the project or a project it depends on
+ * changes. Interning may be disabled by system property {@link #ENABLED_PROPERTY}=false.
+ */
+public class ParametedTypeInterner implements IElementChangedListener {
+	public static final String ENABLED_PROPERTY = "org.jboss.tools.common.java.internParametedTypes"; //$NON-NLS-1$
+
+	private static ParametedTypeInterner instance = null;
+
+	static class Key {
+		final String project;
+		final String signature;
+		final int hash;
+
+		Key(String project, String signature) {
+			this.project = project;
+			this.signature = signature;
+			hash = 31 * project.hashCode() + signature.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(o == this) {
+				return true;
+			}
+			if(!(o instanceof Key)) {
+				return false;
+			}
+			Key k = (Key)o;
+			return hash == k.hash && project.equals(k.project) && signature.equals(k.signature);
+		}
+	}
+
+	static class Value extends WeakReference<ParametedType> {
+		final Key key;
+
+		Value(Key key, ParametedType type, ReferenceQueue<ParametedType> queue) {
+			super(type, queue);
+			this.key = key;
+		}
+	}
+
+	private final boolean enabled = !"false".equals(System.getProperty(ENABLED_PROPERTY)); //$NON-NLS-1$
+
+	private final ConcurrentMap<Key, Value> types = new ConcurrentHashMap<Key, Value>();
+	private final ReferenceQueue<ParametedType> queue = new ReferenceQueue<ParametedType>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Returns the shared interner; the first call registers it as listener
+	 * to Java model changes.
+	 *
+	 * @return
+	 */
+	public static synchronized ParametedTypeInterner getInstance() {
+		if(instance == null) {
+			instance = new ParametedTypeInterner();
+			JavaCore.addElementChangedListener(instance, ElementChangedEvent.POST_CHANGE);
+		}
+		return instance;
+	}
+
+	/**
+	 * Unregisters the shared interner, if it was created.
+	 */
+	public static synchronized void shutdown() {
+		if(instance != null) {
+			JavaCore.removeElementChangedListener(instance);
+			instance.clear();
+			instance = null;
+		}
+	}
+
+	private ParametedTypeInterner() {}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Returns interned type or null.
+	 *
+	 * @param project
+	 * @param signature
+	 * @return
+	 */
+	public ParametedType get(String project, String signature) {
+		if(!enabled) {
+			return null;
+		}
+		Value v = types.get(new Key(project, signature));
+		ParametedType result = v == null ? null : v.get();
+		(result != null ? hits : misses).incrementAndGet();
+		return result;
+	}
+
+	/**
+	 * Interns the type if there is no live type for the same key and returns
+	 * the interned type. The type must be completely built; it is made read-only.
+	 *
+	 * @param project
+	 * @param signature
+	 * @param type
+	 * @return
+	 */
+	public ParametedType intern(String project, String signature, ParametedType type) {
+		if(!enabled) {
+			return type;
+		}
+		expunge();
+		type.share();
+		Key key = new Key(project, signature);
+		Value value = new Value(key, type, queue);
+		while(true) {
+			Value v = types.putIfAbsent(key, value);
+			if(v == null) {
+				return type;
+			}
+			ParametedType existing = v.get();
+			if(existing != null) {
+				return existing;
+			}
+			if(types.replace(key, v, value)) {
+				return type;
+			}
+		}
+	}
+
+	private void expunge() {
+		Value v;
+		while((v = (Value)queue.poll()) != null) {
+			types.remove(v.key, v);
+		}
+	}
+
+	/**
+	 * Removes types of the project.
+	 * @param project
+	 */
+	public void remove(String project) {
+		Iterator<Key> it = types.keySet().iterator();
+		while(it.hasNext()) {
+			if(it.next().project.equals(project)) {
+				it.remove();
+			}
+		}
+	}
+
+	public void clear() {
+		types.clear();
+		while(queue.poll() != null) {}
+	}
+
+	/**
+	 * Returns the number of interned types, including types that are collected
+	 * but not yet expunged.
+	 * @return
+	 */
+	public int getSize() {
+		return types.size();
+	}
+
+	/**
+	 * Returns the number of lookups that returned a type built by another factory
+	 * or before the factory was cleaned.
+	 * @return
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public void resetStatistics() {
+		hits.set(0);
+		misses.set(0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.jdt.core.IElementChangedListener#elementChanged(org.eclipse.jdt.core.ElementChangedEvent)
+	 */
+	public void elementChanged(ElementChangedEvent event) {
+		if(types.isEmpty()) {
+			return;
+		}
+		IJavaElementDelta delta = event.getDelta();
+		if(delta.getElement().getElementType() != IJavaElement.JAVA_MODEL) {
+			clear();
+			return;
+		}
+		Set<String> changed = new HashSet<String>();
+		for (IJavaElementDelta d: delta.getAffectedChildren()) {
+			changed.add(d.getElement().getElementName());
+		}
+		if(changed.isEmpty()) {
+			return;
+		}
+		// Types of dependent projects may refer to changed types.
+		IJavaModel model = (IJavaModel)delta.getElement();
+		Set<String> affected = new HashSet<String>(changed);
+		try {
+			IJavaProject[] projects = model.getJavaProjects();
+			boolean added = true;
+			while(added) {
+				added = false;
+				for (IJavaProject p: projects) {
+					if(affected.contains(p.getElementName())) {
+						continue;
+					}
+					for (String required: p.getRequiredProjectNames()) {
+						if(affected.contains(required)) {
+							affected.add(p.getElementName());
+							added = true;
+							break;
+						}
+					}
+				}
+			}
+		} catch (JavaModelException e) {
+			CommonCorePlugin.getDefault().logError(e);
+			clear();
+			return;
+		}
+		for (String project: affected) {
+			remove(project);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ParametedTypeInterner[size=" + getSize() //$NON-NLS-1$
+				+ ", hits=" + hits //$NON-NLS-1$
+				+ ", misses=" + misses + "]"; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+}
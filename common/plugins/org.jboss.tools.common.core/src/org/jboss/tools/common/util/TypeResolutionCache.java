@@ -11,49 +11,60 @@
 package org.jboss.tools.common.util;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.core.resources.IFile;
-import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.jdt.core.ElementChangedEvent;
 import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IElementChangedListener;
 import org.eclipse.jdt.core.IImportDeclaration;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.JavaModelException;
 import org.jboss.tools.common.core.CommonCorePlugin;
 
-public class TypeResolutionCache {	
+/**
+ * Caches names of types resolved in the context of source types.
+ *
+ * Entries are kept per compilation unit: imports of a unit are read once
+ * and names resolved for each type declared in the unit are memoized,
+ * including names that could not be resolved. The cache listens to Java
+ * element deltas: a unit whose imports, package or member types changed is
+ * read again, other units are kept; when types are added to or removed from
+ * a project, or a library or the classpath of a project changes, names resolved
+ * in the project and in projects that depend on it are forgotten, but imports
+ * are kept.
+ */
+public class TypeResolutionCache implements IElementChangedListener {
 	private static TypeResolutionCache instance = new TypeResolutionCache();
 
 	public static TypeResolutionCache getInstance() {
 		return instance;
 	}
 
-	static class Resolved {
-		IType type;
-		Map<String, String> types = new Hashtable<String, String>();
-		List<String> classImports = new ArrayList<String>();
-		List<String> packageImports = new ArrayList<String>();
-		Resolved(IType type) {
-			this.type = type;
-			readImports();
-		}
+	/**
+	 * Imports of a compilation unit and resolved names of its types.
+	 */
+	static class Unit {
+		final List<String> classImports;
+		final List<String> packageImports;
+		final ConcurrentMap<String, Resolved> resolved = new ConcurrentHashMap<String, Resolved>();
 		
-		void setType(IType type) {
-			this.type = type;
-			types.clear();
-
-			readImports();
-		}
-	
-		void readImports() {
-			ICompilationUnit unit = type.getCompilationUnit();
-			if(unit == null) return;
+		Unit(ICompilationUnit unit, IType type) {
 			IImportDeclaration[] ds = null;
 			try {
 				ds = unit.getImports();
@@ -62,20 +73,11 @@ public class TypeResolutionCache {
 				ds = new IImportDeclaration[0];
 			}
 
-			try {
-				IType[] ts = type.getTypes();
-				for (IType t: ts) {
-					types.put(t.getElementName(), t.getFullyQualifiedName('.'));
-				}
-			} catch (JavaModelException e) {
-				CommonCorePlugin.getDefault().logError(e);
-			}			
-
 			IResource r = unit.getResource();
 			
+			List<String> newClassImports = new ArrayList<String>();
+			List<String> newPackageImports = new ArrayList<String>();
 			if(r instanceof IFile && r.exists()) {
-				List<String> newClassImports = new ArrayList<String>();
-				List<String> newPackageImports = new ArrayList<String>();
 				//add local package
 				newPackageImports.add(type.getPackageFragment().getElementName() + "."); //$NON-NLS-1$
 				for (IImportDeclaration d: ds) {
@@ -86,8 +88,50 @@ public class TypeResolutionCache {
 						newClassImports.add(q);
 					}
 				}
-				classImports = newClassImports;
-				packageImports = newPackageImports;
+			}
+			classImports = Collections.unmodifiableList(newClassImports);
+			packageImports = Collections.unmodifiableList(newPackageImports);
+		}
+
+		Resolved getResolved(IType type) {
+			String n = type.getFullyQualifiedName();
+			Resolved r = resolved.get(n);
+			if(r == null) {
+				r = new Resolved(this, type);
+				Resolved old = resolved.putIfAbsent(n, r);
+				if(old != null) {
+					r = old;
+				}
+			}
+			return r;
+		}
+
+		/**
+		 * Forgets resolved names but keeps imports.
+		 */
+		void clearResolved() {
+			resolved.clear();
+		}
+	}
+
+	/**
+	 * Names resolved in a type.
+	 */
+	static class Resolved {
+		final Unit unit;
+		final IType type;
+		final ConcurrentMap<String, String> types = new ConcurrentHashMap<String, String>();
+
+		Resolved(Unit unit, IType type) {
+			this.unit = unit;
+			this.type = type;
+			try {
+				IType[] ts = type.getTypes();
+				for (IType t: ts) {
+					types.put(t.getElementName(), t.getFullyQualifiedName('.'));
+				}
+			} catch (JavaModelException e) {
+				CommonCorePlugin.getDefault().logError(e);
 			}
 		}
 		
@@ -110,13 +154,13 @@ public class TypeResolutionCache {
 				//too difficult
 				return null; 
 			}
-			for (String imp: classImports) {
+			for (String imp: unit.classImports) {
 				if(imp.endsWith("." + baseTypeName)) { //$NON-NLS-1$
 					types.put(typeName, imp);
 					return imp;
 				}
 			}
-			for (String imp: packageImports) {
+			for (String imp: unit.packageImports) {
 				String result = imp + baseTypeName;
 				try {
 					IType q = EclipseJavaUtil.findType(type.getJavaProject(), result);
@@ -172,27 +216,43 @@ public class TypeResolutionCache {
 		primitive.add("java.lang.Override"); //$NON-NLS-1$
 	}
 	static final String NULL = ";;;"; //$NON-NLS-1$
-	Map<String,Resolved> resolved = new Hashtable<String, Resolved>();
 
-	private TypeResolutionCache() {}
+	/**
+	 * Primary compilation units to their entries.
+	 */
+	private final ConcurrentMap<ICompilationUnit, Unit> units = new ConcurrentHashMap<ICompilationUnit, Unit>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong unresolvedHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong unitReads = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+
+	private TypeResolutionCache() {
+		JavaCore.addElementChangedListener(this, ElementChangedEvent.POST_CHANGE | ElementChangedEvent.POST_RECONCILE);
+	}
 	
 	public String resolveType(IType type, String typeName) {
 		if(type == null) return null;
 		if(type.isBinary() || typeName == null || primitive.contains(typeName)) return typeName;
 
-		String n = getKey(type);
-		Resolved r = resolved.get(n);
-		if(r == null) {
-			r = new Resolved(type);
-			resolved.put(n, r);
-		} else if(r.type != type) {
-			r.setType(type);
+		ICompilationUnit cu = type.getCompilationUnit();
+		if(cu == null) {
+			misses.incrementAndGet();
+			return __resolveType(type, typeName);
 		}
+		Resolved r = getUnit(cu, type).getResolved(type);
 		
 		String result = r.types.get(typeName);		
 		if(result != null) {
-			return (result == NULL) ? null : result;
+			if(result == NULL) {
+				unresolvedHits.incrementAndGet();
+				return null;
+			}
+			hits.incrementAndGet();
+			return result;
 		}
+		misses.incrementAndGet();
 
 		result = r.resolveInImports(typeName);
 		if(result != null) {
@@ -201,18 +261,255 @@ public class TypeResolutionCache {
 		
 		result = __resolveType(type, typeName);
 		
-//		System.out.println(typeName + "---" + result);
-		
 		r.types.put(typeName, result == null ? NULL : result);
 		return result;
 
 	}
 	
+	private Unit getUnit(ICompilationUnit cu, IType type) {
+		ICompilationUnit key = cu.getPrimary();
+		Unit u = units.get(key);
+		if(u == null) {
+			unitReads.incrementAndGet();
+			u = new Unit(cu, type);
+			Unit old = units.putIfAbsent(key, u);
+			if(old != null) {
+				u = old;
+			}
+		}
+		return u;
+	}
+
 	public void clean() {
-		resolved = new Hashtable<String, Resolved>();
+		units.clear();
+		invalidations.incrementAndGet();
 		EclipseJavaUtil.typeCache = new Hashtable<String, Map<String,IType>>();
 	}
 
+	/**
+	 * Stops listening to Java model changes.
+	 */
+	public void dispose() {
+		JavaCore.removeElementChangedListener(this);
+		units.clear();
+	}
+
+	/**
+	 * Returns the number of compilation units in the cache.
+	 * @return
+	 */
+	public int getSize() {
+		return units.size();
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of lookups answered by a memoized failure to resolve the name.
+	 * @return
+	 */
+	public long getUnresolvedHitCount() {
+		return unresolvedHits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns the number of times imports of a compilation unit were read.
+	 * @return
+	 */
+	public long getUnitReadCount() {
+		return unitReads.get();
+	}
+
+	/**
+	 * Returns the number of times the cache was cleared or an entry
+	 * of a compilation unit was removed.
+	 * @return
+	 */
+	public long getInvalidationCount() {
+		return invalidations.get();
+	}
+
+	public void resetStatistics() {
+		hits.set(0);
+		unresolvedHits.set(0);
+		misses.set(0);
+		unitReads.set(0);
+		invalidations.set(0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.jdt.core.IElementChangedListener#elementChanged(org.eclipse.jdt.core.ElementChangedEvent)
+	 */
+	public void elementChanged(ElementChangedEvent event) {
+		if(units.isEmpty()) {
+			return;
+		}
+		Set<String> changedTypes = new HashSet<String>();
+		processDelta(event.getDelta(), changedTypes);
+		if(changedTypes.isEmpty()) {
+			return;
+		}
+		// Names resolved in dependent projects, including names that
+		// could not be resolved, may refer to types of changed projects.
+		try {
+			addDependentProjects(changedTypes);
+		} catch (JavaModelException e) {
+			CommonCorePlugin.getDefault().logError(e);
+			for (Unit u: units.values()) {
+				u.clearResolved();
+			}
+			return;
+		}
+		for (Map.Entry<ICompilationUnit, Unit> e: units.entrySet()) {
+			if(changedTypes.contains(e.getKey().getJavaProject().getElementName())) {
+				e.getValue().clearResolved();
+			}
+		}
+	}
+
+	private static void addDependentProjects(Set<String> projects) throws JavaModelException {
+		IJavaProject[] all = JavaCore.create(ResourcesPlugin.getWorkspace().getRoot()).getJavaProjects();
+		boolean added = true;
+		while(added) {
+			added = false;
+			for (IJavaProject p: all) {
+				if(projects.contains(p.getElementName())) {
+					continue;
+				}
+				for (String required: p.getRequiredProjectNames()) {
+					if(projects.contains(required)) {
+						projects.add(p.getElementName());
+						added = true;
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	private void processDelta(IJavaElementDelta delta, Set<String> changedTypes) {
+		IJavaElement element = delta.getElement();
+		int flags = delta.getFlags();
+		switch(element.getElementType()) {
+		case IJavaElement.JAVA_MODEL:
+			break;
+		case IJavaElement.JAVA_PROJECT:
+			if(delta.getKind() != IJavaElementDelta.CHANGED
+					|| (flags & (IJavaElementDelta.F_CLOSED | IJavaElementDelta.F_OPENED
+							| IJavaElementDelta.F_CLASSPATH_CHANGED | IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED)) != 0) {
+				removeUnits(element);
+				changedTypes.add(element.getElementName());
+				return;
+			}
+			break;
+		case IJavaElement.PACKAGE_FRAGMENT_ROOT:
+			if(delta.getKind() == IJavaElementDelta.CHANGED
+					&& (flags & (IJavaElementDelta.F_ARCHIVE_CONTENT_CHANGED
+							| IJavaElementDelta.F_ADDED_TO_CLASSPATH | IJavaElementDelta.F_REMOVED_FROM_CLASSPATH)) != 0) {
+				// Types of a library or of the classpath changed, imports are not affected.
+				changedTypes.add(element.getJavaProject().getElementName());
+			}
+			// fall through
+		case IJavaElement.PACKAGE_FRAGMENT:
+			if(delta.getKind() != IJavaElementDelta.CHANGED) {
+				removeUnits(element);
+				changedTypes.add(element.getJavaProject().getElementName());
+				return;
+			}
+			break;
+		case IJavaElement.COMPILATION_UNIT:
+			processUnitDelta(delta, changedTypes);
+			return;
+		default:
+			return;
+		}
+		for (IJavaElementDelta d: delta.getAffectedChildren()) {
+			processDelta(d, changedTypes);
+		}
+	}
+
+	private void processUnitDelta(IJavaElementDelta delta, Set<String> changedTypes) {
+		ICompilationUnit cu = ((ICompilationUnit)delta.getElement()).getPrimary();
+		if(delta.getKind() != IJavaElementDelta.CHANGED) {
+			removeUnit(cu);
+			changedTypes.add(cu.getJavaProject().getElementName());
+			return;
+		}
+		int flags = delta.getFlags();
+		if((flags & IJavaElementDelta.F_CONTENT) == 0 && (flags & IJavaElementDelta.F_CHILDREN) == 0) {
+			// Markers, annotations, working copy state.
+			return;
+		}
+		if((flags & IJavaElementDelta.F_FINE_GRAINED) == 0) {
+			// Unit changed without details, both imports and declared types may be changed.
+			removeUnit(cu);
+			changedTypes.add(cu.getJavaProject().getElementName());
+			return;
+		}
+		if(isStructureChanged(delta, changedTypes)) {
+			removeUnit(cu);
+		}
+	}
+
+	/**
+	 * Returns true if imports, package declaration or declared types of a unit changed.
+	 * Adds the project to changedTypes if types were added or removed.
+	 */
+	private boolean isStructureChanged(IJavaElementDelta delta, Set<String> changedTypes) {
+		boolean changed = false;
+		for (IJavaElementDelta d: delta.getAffectedChildren()) {
+			switch(d.getElement().getElementType()) {
+			case IJavaElement.IMPORT_CONTAINER:
+			case IJavaElement.IMPORT_DECLARATION:
+			case IJavaElement.PACKAGE_DECLARATION:
+			case IJavaElement.TYPE_PARAMETER:
+				changed = true;
+				break;
+			case IJavaElement.TYPE:
+				if(d.getKind() != IJavaElementDelta.CHANGED) {
+					changedTypes.add(d.getElement().getJavaProject().getElementName());
+					changed = true;
+				} else if(isStructureChanged(d, changedTypes)) {
+					changed = true;
+				}
+				break;
+			}
+		}
+		return changed;
+	}
+
+	private void removeUnit(ICompilationUnit cu) {
+		if(units.remove(cu) != null) {
+			invalidations.incrementAndGet();
+		}
+	}
+
+	private void removeUnits(IJavaElement parent) {
+		Iterator<ICompilationUnit> it = units.keySet().iterator();
+		while(it.hasNext()) {
+			if(isAncestor(parent, it.next())) {
+				it.remove();
+				invalidations.incrementAndGet();
+			}
+		}
+	}
+
+	private static boolean isAncestor(IJavaElement parent, IJavaElement element) {
+		for (IJavaElement e = element; e != null; e = e.getParent()) {
+			if(parent.equals(e)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	private String __resolveType(IType type, String typeName) {
 		try	{
 			String resolvedArray[][] = type.resolveType(typeName);
@@ -230,13 +527,14 @@ public class TypeResolutionCache {
 		return null;
 	}
 	
-	private String getKey(IType type) {
-		String n = type.getFullyQualifiedName();
-		IJavaProject jp = type.getJavaProject();
-		if(jp == null) return n;
-		IProject p = jp.getProject();
-		if(p == null || !p.isAccessible()) return n;
-		return p.getName() + ":" + n; //$NON-NLS-1$
+	@Override
+	public String toString() {
+		return "TypeResolutionCache[units=" + getSize() //$NON-NLS-1$
+				+ ", hits=" + hits //$NON-NLS-1$
+				+ ", unresolvedHits=" + unresolvedHits //$NON-NLS-1$
+				+ ", misses=" + misses //$NON-NLS-1$
+				+ ", unitReads=" + unitReads //$NON-NLS-1$
+				+ ", invalidations=" + invalidations + "]"; //$NON-NLS-1$ //$NON-NLS-2$
 	}
 
 }
\ No newline at end of file
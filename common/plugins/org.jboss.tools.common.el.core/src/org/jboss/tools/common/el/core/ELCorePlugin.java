@@ -10,8 +10,12 @@
  ******************************************************************************/ 
 package org.jboss.tools.common.el.core;
 
+import org.eclipse.jdt.core.JavaCore;
+import org.jboss.tools.common.el.core.ca.ELResolutionCache;
+import org.jboss.tools.common.el.core.resolver.TypeInfoCollector;
 import org.jboss.tools.common.log.BaseUIPlugin;
 import org.jboss.tools.common.log.IPluginLog;
+import org.osgi.framework.BundleContext;
 
 /**
  * The activator class controls the plug-in life cycle
@@ -31,6 +35,17 @@ public class ELCorePlugin extends BaseUIPlugin {
 		plugin = this;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.ui.plugin.AbstractUIPlugin#stop(org.osgi.framework.BundleContext)
+	 */
+	public void stop(BundleContext context) throws Exception {
+		JavaCore.removeElementChangedListener(TypeInfoCollector.getCache());
+		TypeInfoCollector.cleanCache();
+		ELResolutionCache.shutdown();
+		super.stop(context);
+	}
+
 	/**
 	 * Returns the shared instance
 	 *
@@ -460,11 +460,11 @@ public abstract class AbstractELCompletionEngine<V extends IVariable> implements
 //							// but we have to resolve arguments of probably a message component
 		} //else 
 		if (expr.getLeft() == null && isIncomplete) {
-			resolvedVariables = resolveVariables(file, context, expr, true, 
+			resolvedVariables = resolveVariablesCached(file, context, expr, true, 
 					returnEqualedVariablesOnly, offset);
 		} else {
 			while(left != null) {
-				List<V> resolvedVars = resolveVariables(file, context,
+				List<V> resolvedVars = resolveVariablesCached(file, context,
 						left, left == expr, 
 						returnEqualedVariablesOnly, offset);
 				if (resolvedVars != null && !resolvedVars.isEmpty()) {
@@ -482,7 +482,7 @@ public abstract class AbstractELCompletionEngine<V extends IVariable> implements
 				isIncomplete) {
 			// no vars are resolved 
 			// the tokens are the part of var name ended with a separator (.)
-			resolvedVariables = resolveVariables(file, context, expr, true, returnEqualedVariablesOnly, offset);			
+			resolvedVariables = resolveVariablesCached(file, context, expr, true, returnEqualedVariablesOnly, offset);			
 
 			Set<TextProposal> proposals = new TreeSet<TextProposal>(TextProposal.KB_PROPOSAL_ORDER);
 			JavaMemberELSegmentImpl segment = new JavaMemberELSegmentImpl(expr.getFirstToken());
@@ -731,6 +731,43 @@ public abstract class AbstractELCompletionEngine<V extends IVariable> implements
 
 	abstract public List<V> resolveVariables(IFile file, ELContext context, ELInvocationExpression expr, boolean isFinal, boolean onlyEqualNames, int offset);
 
+	/**
+	 * Returns the object that, together with the text of expression and 'var' attributes
+	 * visible at the offset, fully determines the result of resolveVariables() for this engine.
+	 * Default implementation returns the file, as variables may be declared in the page itself,
+	 * e.g. by f:loadBundle, ui:param or a template. Engines whose variables do not depend
+	 * on the page may return the project of the file, so that an expression is resolved
+	 * once for all pages of the project. Returning null turns off caching.
+	 *
+	 * @param file
+	 * @param context
+	 * @return
+	 */
+	protected Object getResolutionScope(IFile file, ELContext context) {
+		return file;
+	}
+
+	/**
+	 * Returns resolveVariables() result, memoized in ELResolutionCache.
+	 */
+	@SuppressWarnings("unchecked")
+	protected List<V> resolveVariablesCached(IFile file, ELContext context, ELInvocationExpression expr, boolean isFinal, boolean onlyEqualNames, int offset) {
+		ELResolutionCache cache = ELResolutionCache.getInstance();
+		Object scope = (cache.isEnabled() && context != null) ? getResolutionScope(file, context) : null;
+		String text = scope != null ? expr.getText() : null;
+		if(text == null) {
+			return resolveVariables(file, context, expr, isFinal, onlyEqualNames, offset);
+		}
+		ELResolutionCache.Key key = new ELResolutionCache.Key(getClass(), scope, text, isFinal, onlyEqualNames, context.getVarsAsList(offset));
+		List<V> result = (List<V>)cache.get(key);
+		if(result == null) {
+			result = resolveVariables(file, context, expr, isFinal, onlyEqualNames, offset);
+			result = (result == null || result.isEmpty()) ? EMPTY_VARIABLES_LIST : Collections.unmodifiableList(new ArrayList<V>(result));
+			cache.put(key, result);
+		}
+		return result;
+	}
+
 	abstract protected TypeInfoCollector.MemberInfo getMemberInfoByVariable(V var, ELContext context, boolean onlyEqualNames, int offset);
 
 	abstract protected boolean isStaticMethodsCollectingEnabled();
@@ -0,0 +1,379 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.common.el.core.ca;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+import org.jboss.tools.common.el.core.ELCorePlugin;
+import org.jboss.tools.common.el.core.resolver.Var;
+
+/**
+ * Memoizes variables resolved by EL completion engines for the same EL expression
+ * in the same scope, so that identical expressions met many times in a project
+ * are looked up once.
+ *
+ * A change in Java model or of resource content removes the entries of the changed
+ * project and of the projects that depend on it; entries whose scope is not
+ * a resource are removed by any change. The cache may be disabled by system property
+ * {@link #ENABLED_PROPERTY}=false or by {@link #setEnabled(boolean)}.
+ */
+public class ELResolutionCache implements IElementChangedListener, IResourceChangeListener {
+	public static final String ENABLED_PROPERTY = "org.jboss.tools.common.el.core.resolutionCache"; //$NON-NLS-1$
+
+	public static final int MAX_SIZE = 10000;
+
+	private static final int CONTENT_CHANGE_FLAGS = IResourceDelta.CONTENT
+			| IResourceDelta.REPLACED
+			| IResourceDelta.MOVED_FROM
+			| IResourceDelta.MOVED_TO
+			| IResourceDelta.OPEN;
+
+	private static ELResolutionCache instance = null;
+
+	private volatile boolean enabled = !"false".equals(System.getProperty(ENABLED_PROPERTY)); //$NON-NLS-1$
+
+	private final Map<Key, List<?>> cache = new LinkedHashMap<Key, List<?>>(256, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, List<?>> eldest) {
+			return size() > MAX_SIZE;
+		}
+	};
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+
+	/**
+	 * Returns the shared cache; the first call registers it as listener
+	 * to Java model and workspace changes.
+	 *
+	 * @return
+	 */
+	public static synchronized ELResolutionCache getInstance() {
+		if(instance == null) {
+			instance = new ELResolutionCache();
+			JavaCore.addElementChangedListener(instance, ElementChangedEvent.POST_CHANGE | ElementChangedEvent.POST_RECONCILE);
+			ResourcesPlugin.getWorkspace().addResourceChangeListener(instance, IResourceChangeEvent.POST_CHANGE);
+		}
+		return instance;
+	}
+
+	/**
+	 * Unregisters the shared cache, if it was created.
+	 */
+	public static synchronized void shutdown() {
+		if(instance != null) {
+			JavaCore.removeElementChangedListener(instance);
+			ResourcesPlugin.getWorkspace().removeResourceChangeListener(instance);
+			instance.clear();
+			instance = null;
+		}
+	}
+
+	private ELResolutionCache() {}
+
+	/**
+	 * Key of resolved variables. Includes the class of resolver, the scope in which
+	 * resolution does not depend on the location of expression, the text of expression,
+	 * resolution flags, and names and values of 'var' attributes visible to the expression.
+	 */
+	public static class Key {
+		private final Class<?> resolver;
+		private final Object scope;
+		private final IProject project;
+		private final String text;
+		private final boolean isFinal;
+		private final boolean onlyEqualNames;
+		private final String vars;
+		private final int hash;
+
+		public Key(Class<?> resolver, Object scope, String text, boolean isFinal, boolean onlyEqualNames, List<Var> vars) {
+			this.resolver = resolver;
+			this.scope = scope;
+			this.project = (scope instanceof IResource) ? ((IResource)scope).getProject() : null;
+			this.text = text;
+			this.isFinal = isFinal;
+			this.onlyEqualNames = onlyEqualNames;
+			this.vars = toString(vars);
+			int h = resolver.hashCode();
+			h = 31 * h + scope.hashCode();
+			h = 31 * h + text.hashCode();
+			h = 31 * h + (isFinal ? 1 : 0);
+			h = 31 * h + (onlyEqualNames ? 1 : 0);
+			h = 31 * h + this.vars.hashCode();
+			hash = h;
+		}
+
+		private static String toString(List<Var> vars) {
+			if(vars == null || vars.isEmpty()) {
+				return ""; //$NON-NLS-1$
+			}
+			StringBuilder sb = new StringBuilder();
+			for (Var v: vars) {
+				sb.append(v.getName()).append('=').append(v.getValue()).append(';');
+			}
+			return sb.toString();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(o == this) {
+				return true;
+			}
+			if(!(o instanceof Key)) {
+				return false;
+			}
+			Key k = (Key)o;
+			return hash == k.hash && isFinal == k.isFinal && onlyEqualNames == k.onlyEqualNames
+				&& resolver == k.resolver && scope.equals(k.scope)
+				&& text.equals(k.text) && vars.equals(k.vars);
+		}
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+		if(!enabled) {
+			clear();
+		}
+	}
+
+	/**
+	 * Returns cached variables or null.
+	 *
+	 * @param key
+	 * @return
+	 */
+	public List<?> get(Key key) {
+		List<?> result = null;
+		synchronized (cache) {
+			result = cache.get(key);
+		}
+		(result != null ? hits : misses).incrementAndGet();
+		return result;
+	}
+
+	public void put(Key key, List<?> variables) {
+		if(enabled) {
+			synchronized (cache) {
+				cache.put(key, variables);
+			}
+		}
+	}
+
+	public void clear() {
+		synchronized (cache) {
+			if(!cache.isEmpty()) {
+				cache.clear();
+				invalidations.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Removes entries of the project, of projects that depend on it,
+	 * and entries not bound to a project.
+	 *
+	 * @param project
+	 */
+	public void invalidate(IProject project) {
+		Set<String> changed = new HashSet<String>();
+		changed.add(project.getName());
+		invalidate(changed);
+	}
+
+	private void invalidate(Set<String> changed) {
+		Set<String> affected = null;
+		try {
+			affected = getDependentProjects(changed);
+		} catch (JavaModelException e) {
+			ELCorePlugin.getPluginLog().logError(e);
+			clear();
+			return;
+		}
+		boolean removed = false;
+		synchronized (cache) {
+			Iterator<Key> it = cache.keySet().iterator();
+			while(it.hasNext()) {
+				Key key = it.next();
+				if(key.project == null || affected.contains(key.project.getName())) {
+					it.remove();
+					removed = true;
+				}
+			}
+		}
+		if(removed) {
+			invalidations.incrementAndGet();
+		}
+	}
+
+	/*
+	 * Returns names of changed projects and of all Java projects that require them.
+	 */
+	private static Set<String> getDependentProjects(Set<String> changed) throws JavaModelException {
+		Set<String> affected = new HashSet<String>(changed);
+		IJavaProject[] projects = JavaCore.create(ResourcesPlugin.getWorkspace().getRoot()).getJavaProjects();
+		boolean added = true;
+		while(added) {
+			added = false;
+			for (IJavaProject p: projects) {
+				if(affected.contains(p.getElementName()) || !p.getProject().isOpen()) {
+					continue;
+				}
+				for (String required: p.getRequiredProjectNames()) {
+					if(affected.contains(required)) {
+						affected.add(p.getElementName());
+						added = true;
+						break;
+					}
+				}
+			}
+		}
+		return affected;
+	}
+
+	public int getSize() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns number of times entries were removed by clear() or by a change.
+	 * @return
+	 */
+	public long getInvalidationCount() {
+		return invalidations.get();
+	}
+
+	public void resetStatistics() {
+		hits.set(0);
+		misses.set(0);
+		invalidations.set(0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.jdt.core.IElementChangedListener#elementChanged(org.eclipse.jdt.core.ElementChangedEvent)
+	 */
+	public void elementChanged(ElementChangedEvent event) {
+		if(getSize() == 0) {
+			return;
+		}
+		IJavaElementDelta delta = event.getDelta();
+		Set<String> changed = new HashSet<String>();
+		if(delta.getElement().getElementType() == IJavaElement.JAVA_MODEL) {
+			for (IJavaElementDelta d: delta.getAffectedChildren()) {
+				changed.add(d.getElement().getElementName());
+			}
+			if(changed.isEmpty()) {
+				// Change of the model itself, e.g. of a classpath variable.
+				clear();
+				return;
+			}
+		} else if(delta.getElement().getJavaProject() != null) {
+			// Reconcile of a working copy.
+			changed.add(delta.getElement().getJavaProject().getElementName());
+		} else {
+			clear();
+			return;
+		}
+		invalidate(changed);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.core.resources.IResourceChangeListener#resourceChanged(org.eclipse.core.resources.IResourceChangeEvent)
+	 */
+	public void resourceChanged(IResourceChangeEvent event) {
+		IResourceDelta delta = event.getDelta();
+		if(delta == null || getSize() == 0) {
+			return;
+		}
+		final Set<String> changed = new HashSet<String>();
+		try {
+			delta.accept(new IResourceDeltaVisitor() {
+				public boolean visit(IResourceDelta d) throws CoreException {
+					IProject project = d.getResource().getProject();
+					if(project == null) {
+						// workspace root
+						return true;
+					}
+					if(changed.contains(project.getName())) {
+						return false;
+					}
+					// Markers created by validation must not invalidate the cache.
+					if(d.getKind() != IResourceDelta.CHANGED
+							|| (d.getResource().getType() == IResource.FILE && (d.getFlags() & CONTENT_CHANGE_FLAGS) != 0)
+							|| (d.getFlags() & IResourceDelta.OPEN) != 0) {
+						changed.add(project.getName());
+						return false;
+					}
+					return true;
+				}
+			});
+		} catch (CoreException e) {
+			ELCorePlugin.getPluginLog().logError(e);
+			clear();
+			return;
+		}
+		if(!changed.isEmpty()) {
+			invalidate(changed);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ELResolutionCache[size=" + getSize() //$NON-NLS-1$
+				+ ", hits=" + hits //$NON-NLS-1$
+				+ ", misses=" + misses //$NON-NLS-1$
+				+ ", invalidations=" + invalidations + "]"; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+}
@@ -10,12 +10,20 @@
  ******************************************************************************/ 
 package org.jboss.tools.common.el.core.parser;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Stack;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.jboss.tools.common.el.core.model.ELInstance;
 import org.jboss.tools.common.el.core.model.ELModel;
+import org.jboss.tools.common.el.internal.core.model.ELInstanceImpl;
 import org.jboss.tools.common.el.internal.core.model.ELModelImpl;
 import org.jboss.tools.common.el.internal.core.parser.ELParserImpl;
+import org.jboss.tools.common.el.internal.core.parser.rule.BasicStates;
 
 /**
  * 
@@ -83,40 +91,120 @@ public class ELParserUtil {
 		return JBOSS_FACTORY;
 	}
 
+	/**
+	 * Maximum number of free parsers kept by each factory.
+	 */
+	public static final int MAX_POOL_SIZE = Math.max(8, 2 * Runtime.getRuntime().availableProcessors());
+
+	/**
+	 * Returns statistics of parser pool of the factory,
+	 * or null if the factory is not one of the factories provided by this class.
+	 * 
+	 * @param factory
+	 * @return
+	 */
+	public static PoolStatistics getPoolStatistics(ELParserFactory factory) {
+		return (factory instanceof DefaultFactory) ? ((DefaultFactory)factory).statistics : null;
+	}
+
+	public static class PoolStatistics {
+		AtomicLong created = new AtomicLong();
+		AtomicLong reused = new AtomicLong();
+		AtomicLong discarded = new AtomicLong();
+		AtomicInteger inUse = new AtomicInteger();
+		AtomicInteger maxInUse = new AtomicInteger();
+
+		/**
+		 * Returns number of parsers created because the pool was empty.
+		 * Under parallel parsing it grows with the contention for pooled parsers.
+		 * @return
+		 */
+		public long getCreatedCount() {
+			return created.get();
+		}
+
+		/**
+		 * Returns number of requests served by a pooled parser.
+		 * @return
+		 */
+		public long getReusedCount() {
+			return reused.get();
+		}
+
+		/**
+		 * Returns number of released parsers dropped because the pool was full.
+		 * @return
+		 */
+		public long getDiscardedCount() {
+			return discarded.get();
+		}
+
+		public int getInUseCount() {
+			return inUse.get();
+		}
+
+		public int getMaxInUseCount() {
+			return maxInUse.get();
+		}
+
+		void acquired() {
+			int n = inUse.incrementAndGet();
+			int max = maxInUse.get();
+			while(n > max && !maxInUse.compareAndSet(max, n)) {
+				max = maxInUse.get();
+			}
+		}
+
+		public String toString() {
+			return "created=" + created + " reused=" + reused + " discarded=" + discarded //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				+ " inUse=" + inUse + " maxInUse=" + maxInUse; //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
 	private static abstract class DefaultFactory implements ELParserFactory {
-		protected Stack<ELParser> inUse = new Stack<ELParser>();
-		protected Stack<ELParser> free = new Stack<ELParser>();
+		protected Queue<DefaultParser> free = new ConcurrentLinkedQueue<DefaultParser>();
+		protected AtomicInteger freeSize = new AtomicInteger();
+		PoolStatistics statistics = new PoolStatistics();
 
 		public ELParser createParser() {
-			synchronized(this) {
-				if(!free.isEmpty()) {
-					//reuse
-					ELParser parser = free.pop();
-					inUse.push(parser);
-					return parser;
-				}
-			}
-			ELParser parser = newParser();
-			synchronized(this) {
+			DefaultParser parser = free.poll();
+			if(parser != null) {
+				//reuse
+				freeSize.decrementAndGet();
+				statistics.reused.incrementAndGet();
+			} else {
 				//new
-				inUse.push(parser);
-			}			
+				parser = (DefaultParser)newParser();
+				statistics.created.incrementAndGet();
+			}
+			parser.inUse.set(true);
+			statistics.acquired();
 			return parser;
 		}
 
 		protected abstract ELParser newParser();
 
 		public void release(ELParser parser) {
-			synchronized(this) {
-				//release
-				boolean b = inUse.remove(parser);
-				if(!b) return;
-				free.push(parser);
+			if(!(parser instanceof DefaultParser)) {
+				// not created by a pooling factory, nothing to return to the pool
+				return;
+			}
+			DefaultParser p = (DefaultParser)parser;
+			if(!p.inUse.compareAndSet(true, false)) {
+				return;
+			}
+			statistics.inUse.decrementAndGet();
+			if(freeSize.incrementAndGet() <= MAX_POOL_SIZE) {
+				free.offer(p);
+			} else {
+				freeSize.decrementAndGet();
+				statistics.discarded.incrementAndGet();
 			}
 		}
 	}
 
-	private static abstract class DefaultParser implements ELParser {
+	private static abstract class DefaultParser implements IncrementalELParser {
+		AtomicBoolean inUse = new AtomicBoolean();
 		ELParserImpl impl = new ELParserImpl();
 		List<SyntaxError> errors = null;
 		Tokenizer t = createTokenizer();
@@ -127,18 +215,178 @@ public class ELParserUtil {
 
 		public ELModel parse(String source, int start, int length) {
 			try {
-				LexicalToken token = t.parse(source, start, length);
-				errors = t.getErrors();
-				ELModelImpl model = impl.parse(token);
-				model.setSource(source);
-				model.setErrors(errors);
-				return model;
+				return doParse(source, start, length);
 			} finally {
 				t.dispose();
 				dispose();
 			}
 		}
 
+		private ELModelImpl doParse(String source, int start, int length) {
+			LexicalToken token = t.parse(source, start, length);
+			errors = t.getErrors();
+			ELModelImpl model = impl.parse(token);
+			model.setSource(source);
+			model.setErrors(errors);
+			return model;
+		}
+
+		public ELModel parse(ELModel model, int offset, int removedLength, String insertedText) {
+			String oldSource = model.getSource();
+			String source = oldSource.substring(0, offset) + insertedText + oldSource.substring(offset + removedLength);
+			try {
+				ELModelImpl result = null;
+				if(model instanceof ELModelImpl) {
+					result = reparse((ELModelImpl)model, source, offset, offset + removedLength, insertedText.length() - removedLength);
+					t.dispose();
+				}
+				if(result == null) {
+					int delta = (model instanceof ELModelImpl) ? ((ELModelImpl)model).getDelta() : 0;
+					result = doParse(source, 0, source.length());
+					if(delta != 0) {
+						result.shift(delta);
+					}
+				}
+				return result;
+			} finally {
+				t.dispose();
+				dispose();
+			}
+		}
+
+		/**
+		 * Instances closed by '}' before the edit are kept as they are. 
+		 * Text is tokenized from the end of the last of them to the start of the 
+		 * first instance after the edit where the tokenizer is back in the state
+		 * of expecting EL; that and next instances are kept with shifted offsets.
+		 * 
+		 * @return new model
+		 */
+		private ELModelImpl reparse(ELModelImpl model, String source, int offset, int editEnd, int diff) {
+			int delta = model.getDelta();
+			List<ELInstance> instances = model.getInstances();
+			int size = instances.size();
+
+			int first = 0;
+			while(first < size && isClosed(instances.get(first)) 
+					&& instances.get(first).getEndPosition() - delta <= offset) {
+				first++;
+			}
+			int restart = first == 0 ? 0 : instances.get(first - 1).getEndPosition() - delta;
+			int next = first;
+			while(next < size && instances.get(next).getStartPosition() - delta < editEnd) {
+				next++;
+			}
+			LexicalToken token = null;
+			for (; next <= size; next++) {
+				if(next < size && next > 0 && !isClosed(instances.get(next - 1))) {
+					continue;
+				}
+				int end = next < size ? instances.get(next).getStartPosition() - delta + diff : source.length();
+				t.dispose();
+				token = t.parse(source, restart, end - restart);
+				if(next == size) {
+					break;
+				}
+				if(t.getState() == BasicStates.STATE_EXPECTING_EL && t.getCurrentIndex() <= end) {
+					token = trim(token, source, end);
+					break;
+				}
+			}
+			List<SyntaxError> regionErrors = t.getErrors();
+			ELModelImpl region = impl.parse(token);
+			region.setSource(source);
+			region.setErrors(regionErrors);
+			if(token != null && delta != 0) {
+				token.shift(delta);
+			}
+
+			LexicalToken suffix = null;
+			int oldBoundary = Integer.MAX_VALUE;
+			if(next < size) {
+				suffix = instances.get(next).getFirstToken();
+				oldBoundary = suffix.getStart() - delta;
+				if(diff != 0) {
+					suffix.shift(diff);
+				}
+			}
+
+			LexicalToken regionLast = token;
+			while(regionLast != null && regionLast.getNextToken() != null) {
+				regionLast = regionLast.getNextToken();
+			}
+			LexicalToken firstToken = token != null ? token : suffix;
+			if(first > 0) {
+				instances.get(first - 1).getLastToken().setNextToken(firstToken);
+				firstToken = model.getFirstToken();
+			} else if(firstToken != null) {
+				firstToken.makeItFirst();
+			}
+			if(regionLast != null) {
+				regionLast.setNextToken(suffix);
+			}
+
+			ELModelImpl result = new ELModelImpl();
+			result.setSource(source);
+			result.setFirstToken(firstToken);
+			result.setDelta(delta);
+			for (int i = 0; i < first; i++) {
+				result.addInstance((ELInstanceImpl)instances.get(i));
+			}
+			for (ELInstance i: region.getInstances()) {
+				result.addInstance((ELInstanceImpl)i);
+			}
+			for (int i = next; i < size; i++) {
+				result.addInstance((ELInstanceImpl)instances.get(i));
+			}
+
+			List<SyntaxError> resultErrors = new ArrayList<SyntaxError>();
+			List<SyntaxError> suffixErrors = new ArrayList<SyntaxError>();
+			for (SyntaxError e: model.getSyntaxErrors()) {
+				if(e.getPosition() < restart) {
+					resultErrors.add(e);
+				} else if(e.getPosition() >= oldBoundary) {
+					e.shift(diff);
+					suffixErrors.add(e);
+				}
+			}
+			resultErrors.addAll(regionErrors);
+			resultErrors.addAll(suffixErrors);
+			result.setModelErrors(resultErrors);
+			return result;
+		}
+
+		private boolean isClosed(ELInstance instance) {
+			return instance.getCloseInstanceToken() != null;
+		}
+
+		/**
+		 * Removes tokens created by tokenizer after the end of parsed region.
+		 * 
+		 * @return first token of the region or null if it is empty
+		 */
+		private LexicalToken trim(LexicalToken first, String source, int end) {
+			LexicalToken token = first;
+			while(token != null && token.getStart() < end) {
+				LexicalToken next = token.getNextToken();
+				if(token.getStart() + token.getLength() > end) {
+					LexicalToken literal = new LexicalToken(token.getStart(), end - token.getStart(), source, token.getStart(), Tokenizer.LITERAL);
+					if(token == first) {
+						first = literal;
+					} else {
+						token.getPreviousToken().setNextToken(literal);
+					}
+					return first;
+				}
+				if(next == null || next.getStart() >= end) {
+					token.setNextToken(null);
+					return first;
+				}
+				token = next;
+			}
+			return null;
+		}
+
 		protected abstract Tokenizer createTokenizer();
 
 		public void dispose() {
@@ -0,0 +1,38 @@
+/******************************************************************************* 
+ * Copyright (c) 2016 Red Hat, Inc. 
+ * Distributed under license by Red Hat, Inc. All rights reserved. 
+ * This program is made available under the terms of the 
+ * Eclipse Public License v1.0 which accompanies this distribution, 
+ * and is available at http://www.eclipse.org/legal/epl-v10.html 
+ * 
+ * Contributors: 
+ * Red Hat, Inc. - initial API and implementation 
+ ******************************************************************************/ 
+package org.jboss.tools.common.el.core.parser;
+
+import org.jboss.tools.common.el.core.model.ELModel;
+
+/**
+ * Parser that can apply a text edit to a model it has already built.
+ * Parsers created by factories of ELParserUtil implement this interface;
+ * clients should check with instanceof and fall back to parsing the new
+ * source.
+ */
+public interface IncrementalELParser extends ELParser {
+
+	/**
+	 * Applies text edit to the source of model, that should be the result of
+	 * parsing the entire source, and returns the model of the new source.
+	 * Only EL instances affected by the edit are parsed again; other instances
+	 * are reused with their offsets shifted. The model passed is no longer valid 
+	 * after the call.
+	 * 
+	 * @param model
+	 * @param offset offset of the edit in the source of model
+	 * @param removedLength number of replaced characters
+	 * @param insertedText
+	 * @return
+	 */
+	public ELModel parse(ELModel model, int offset, int removedLength, String insertedText);
+
+}
@@ -21,6 +21,13 @@ public class LexicalToken implements IToken {
 	private CharSequence chars;
 	private int type;
 
+	/**
+	 * Source text and offset of this token in it, used to create
+	 * the text of token when it is requested for the first time.
+	 */
+	private CharSequence source;
+	private int sourceStart;
+
 	/**
 	 * Constructs the ELToken object
 	 *
@@ -36,11 +43,29 @@ public class LexicalToken implements IToken {
 		this.type = type;
 	}
 
+	/**
+	 * Constructs the ELToken object as a view over the source text.
+	 * The text of the token is created only when requested.
+	 *
+	 * @param start
+	 * @param length
+	 * @param source
+	 * @param sourceStart offset of the token text in source
+	 * @param type
+	 */
+	public LexicalToken(int start, int length, CharSequence source, int sourceStart, int type) {
+		this.start = start;
+		this.length = length;
+		this.source = source;
+		this.sourceStart = sourceStart;
+		this.type = type;
+	}
+
 	/**
 	 * Returns string representation for the token
 	 */
 	public String toString() {
-		return "ELToken(" + start + ", " + length + ", " + type + ") [" + (chars == null ? "<Empty>" : chars.toString()) + "]"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+		return "ELToken(" + start + ", " + length + ", " + type + ") [" + (chars == null && source == null ? "<Empty>" : getText()) + "]"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
 	}
 
 	/*
@@ -69,7 +94,7 @@ public class LexicalToken implements IToken {
 	 * @see org.eclipse.jface.text.rules.IToken#isEOF()
 	 */
 	public boolean isEOF() {
-		return (start == -1 && length == -1 && chars == null);
+		return (start == -1 && length == -1 && chars == null && source == null);
 	}
 	
 	/*
@@ -108,7 +133,12 @@ public class LexicalToken implements IToken {
 	 * Returns the token text
 	 */
 	public String getText() {
-		return chars.toString();
+		CharSequence c = chars;
+		if(c == null && source != null) {
+			c = source.subSequence(sourceStart, sourceStart + length).toString();
+			chars = c;
+		}
+		return c.toString();
 	}
 
 	public LexicalToken getPreviousToken() {
@@ -33,6 +33,10 @@ public class SyntaxError {
 		return position;
 	}
 
+	void shift(int delta) {
+		position += delta;
+	}
+
 	public String getProblem() {
 		return problem;
 	}
@@ -11,9 +11,7 @@
 package org.jboss.tools.common.el.core.parser;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Properties;
 
 import org.jboss.tools.common.el.internal.core.parser.rule.BasicStates;
@@ -26,8 +24,41 @@ import org.jboss.tools.common.el.internal.core.parser.rule.BasicStates;
 public class Tokenizer {
 	public static int LITERAL = -10;
 	
-	private Map<Integer, ITokenDescription> tokenDescriptions = new HashMap<Integer, ITokenDescription>();
-	private Map<Integer, List<IRule>> rules = new HashMap<Integer, List<IRule>>();
+	private static final IRule[] NO_RULES = new IRule[0];
+	private static final StateDispatch NO_DISPATCH = new StateDispatch(NO_RULES, new int[0], new ITokenDescription[0], new IRule[0]);
+
+	/**
+	 * Token descriptions indexed by (type - minTokenType).
+	 */
+	private ITokenDescription[] tokenDescriptions = new ITokenDescription[0];
+	private int minTokenType = 0;
+
+	/**
+	 * Rule dispatch tables indexed by (state - minState).
+	 */
+	private StateDispatch[] dispatch = new StateDispatch[0];
+	private int minState = 0;
+
+	private IRule[] ruleSet = NO_RULES;
+
+	/**
+	 * For a parser state, keeps the rules starting at it and the flattened 
+	 * sequence of token types to be tried, with their descriptions and the rules 
+	 * that accept them, so that parsing does not query the rules for each character.
+	 */
+	private static class StateDispatch {
+		final IRule[] rules;
+		final int[] tokenTypes;
+		final ITokenDescription[] descriptions;
+		final IRule[] tokenRules;
+
+		StateDispatch(IRule[] rules, int[] tokenTypes, ITokenDescription[] descriptions, IRule[] tokenRules) {
+			this.rules = rules;
+			this.tokenTypes = tokenTypes;
+			this.descriptions = descriptions;
+			this.tokenRules = tokenRules;
+		}
+	}
 
 	private String sourceString;
 	private int index = 0;
@@ -56,33 +87,94 @@ public class Tokenizer {
 	}
 
 	public void setTokenDescriptions(ITokenDescription[] ds) {
-		tokenDescriptions.clear();
+		int min = Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
 		for (int i = 0; i < ds.length; i++) {
 			int type = ds[i].getType();
-			if(tokenDescriptions.containsKey(type)) {
+			if(type < min) min = type;
+			if(type > max) max = type;
+		}
+		ITokenDescription[] table = new ITokenDescription[ds.length == 0 ? 0 : max - min + 1];
+		for (int i = 0; i < ds.length; i++) {
+			int type = ds[i].getType();
+			if(table[type - min] != null) {
 				throw new IllegalArgumentException("Token type " + type + " is not unique."); //$NON-NLS-1$ //$NON-NLS-2$
 			}
-			tokenDescriptions.put(type, ds[i]);
+			table[type - min] = ds[i];
 		}
+		tokenDescriptions = table;
+		minTokenType = ds.length == 0 ? 0 : min;
+		buildDispatch();
 	}
 
 	public ITokenDescription getTokenDescription(int id) {
-		return tokenDescriptions.get(id);
+		int i = id - minTokenType;
+		return (i < 0 || i >= tokenDescriptions.length) ? null : tokenDescriptions[i];
 	}
 
 	public void setRules(IRule[] rules) {
-		this.rules.clear();
-		for (int i = 0; i < rules.length; i++) {
-			int[] ss = rules[i].getStartStates();
-			for (int j = 0; j < ss.length; j++) {
-				List<IRule> rs = this.rules.get(ss[j]);
-				if(rs == null) {
-					rs = new ArrayList<IRule>();
-					this.rules.put(ss[j], rs);
+		ruleSet = rules.clone();
+		buildDispatch();
+	}
+
+	/**
+	 * Compiles rules and token descriptions into a table indexed by state.
+	 * Rules must return the same token types for the same state.
+	 */
+	private void buildDispatch() {
+		int min = Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
+		for (IRule rule: ruleSet) {
+			for (int s: rule.getStartStates()) {
+				if(s < min) min = s;
+				if(s > max) max = s;
+			}
+		}
+		if(min > max) {
+			dispatch = new StateDispatch[0];
+			minState = 0;
+			return;
+		}
+		StateDispatch[] table = new StateDispatch[max - min + 1];
+		for (int state = min; state <= max; state++) {
+			List<IRule> rs = new ArrayList<IRule>();
+			for (IRule rule: ruleSet) {
+				for (int s: rule.getStartStates()) {
+					if(s == state) {
+						rs.add(rule);
+						break;
+					}
 				}
-				rs.add(rules[i]);
 			}
+			if(rs.isEmpty()) {
+				continue;
+			}
+			List<IRule> tokenRules = new ArrayList<IRule>();
+			List<Integer> tokenTypes = new ArrayList<Integer>();
+			for (IRule rule: rs) {
+				for (int type: rule.getTokenTypes(state)) {
+					if(getTokenDescription(type) != null) {
+						tokenRules.add(rule);
+						tokenTypes.add(type);
+					}
+				}
+			}
+			int[] types = new int[tokenTypes.size()];
+			ITokenDescription[] descriptions = new ITokenDescription[types.length];
+			for (int i = 0; i < types.length; i++) {
+				types[i] = tokenTypes.get(i);
+				descriptions[i] = getTokenDescription(types[i]);
+			}
+			table[state - min] = new StateDispatch(rs.toArray(new IRule[rs.size()]), types, descriptions, tokenRules.toArray(new IRule[tokenRules.size()]));
 		}
+		dispatch = table;
+		minState = min;
+	}
+
+	private StateDispatch getDispatch(int state) {
+		int i = state - minState;
+		StateDispatch d = (i < 0 || i >= dispatch.length) ? null : dispatch[i];
+		return d == null ? NO_DISPATCH : d;
 	}
 
 	public LexicalToken parse(String sourceString) {
@@ -101,16 +193,14 @@ public class Tokenizer {
 		if(lastIndex > sourceString.length()) lastIndex = sourceString.length();
 		while(index < lastIndex) {
 			boolean done = false;
-			List<IRule> rs = rules.get(state);
-			for (IRule rule : rs) {
-				int[] ts = rule.getTokenTypes(state);
-				for (int j = 0; !done && j < ts.length; j++) {
-					ITokenDescription td = tokenDescriptions.get(ts[j]);
-					if (td != null && td.isStart(this, index)) {
-						td.read(this, index);
-						state = rule.getFinalState(state, ts[j]);
-						done = true;
-					}
+			StateDispatch d = getDispatch(state);
+			ITokenDescription[] ds = d.descriptions;
+			for (int j = 0; j < ds.length; j++) {
+				if (ds[j].isStart(this, index)) {
+					ds[j].read(this, index);
+					state = d.tokenRules[j].getFinalState(state, d.tokenTypes[j]);
+					done = true;
+					break;
 				}
 			}
 			if(!done) {
@@ -120,7 +210,7 @@ public class Tokenizer {
 				} else {
 					SyntaxError error = new SyntaxError(index, state);
 					String problem = null;
-					for (IRule rule : rs) {
+					for (IRule rule : d.rules) {
 						problem = rule.getProblem(state, this);
 						if(problem != null) break;
 					}
@@ -137,7 +227,7 @@ public class Tokenizer {
 		if(last != null && last.getStart() + last.getLength() < sourceString.length()
 			&& last.getType() != LITERAL) {
 			int lastEnd = last.getStart() + last.getLength();
-			LexicalToken t = new LexicalToken(lastEnd, length, getCharSequence(lastEnd, sourceString.length()), LITERAL);
+			LexicalToken t = new LexicalToken(lastEnd, length, sourceString.substring(lastEnd), LITERAL);
 			last.setNextToken(t);
 			last = t;
 		}
@@ -166,12 +256,12 @@ public class Tokenizer {
 		int lastEnd = last.getStart() + last.getLength();
 		if(start > lastEnd) {
 			int length = start - lastEnd;
-			LexicalToken t = new LexicalToken(lastEnd, length, getCharSequence(lastEnd, start), LITERAL);
+			LexicalToken t = new LexicalToken(lastEnd, length, sourceString, lastEnd, LITERAL);
 			last.setNextToken(t);
 			last = t;
 			index = start;
 		}
-		LexicalToken t = new LexicalToken(start, end - start, getCharSequence(start, end), type);
+		LexicalToken t = new LexicalToken(start, end - start, sourceString, start, type);
 		last.setNextToken(t);
 		last = t;
 		index = end;
@@ -181,11 +271,6 @@ public class Tokenizer {
 		return context;
 	}
 
-	private CharSequence getCharSequence(int start, int end) {
-		String text = sourceString.substring(start, end);
-		return text.subSequence(0, text.length());
-	}
-
 	public char readNextChar() {
 		char c = '\0';
 		if (index < sourceString.length()) {
@@ -0,0 +1,426 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.common.el.core.resolver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IMember;
+import org.eclipse.jdt.core.IType;
+import org.jboss.tools.common.el.core.resolver.TypeInfoCollector.MemberInfo;
+import org.jboss.tools.common.el.core.resolver.TypeInfoCollector.SuperTypeInfo;
+
+/**
+ * Cache of member information collected by {@link TypeInfoCollector}.
+ *
+ * Entries are kept per project and grouped by the handle of the declaring type.
+ * Each project holds at most {@link #getTypeLimit()} types, the least recently
+ * used type is evicted first. The cache listens to Java element deltas and drops
+ * only the types affected by a change together with their cached subtypes.
+ *
+ * The cache is safe for concurrent use.
+ */
+public class TypeInfoCache implements IElementChangedListener {
+	public static final int DEFAULT_TYPE_LIMIT = 5000;
+
+	static final int DELTA_EVENTS = ElementChangedEvent.POST_CHANGE | ElementChangedEvent.POST_RECONCILE;
+
+	private static final int PROJECT_CHANGE_FLAGS = IJavaElementDelta.F_CLOSED
+			| IJavaElementDelta.F_OPENED
+			| IJavaElementDelta.F_CLASSPATH_CHANGED
+			| IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED;
+
+	private static final int ROOT_CHANGE_FLAGS = IJavaElementDelta.F_ARCHIVE_CONTENT_CHANGED
+			| IJavaElementDelta.F_ADDED_TO_CLASSPATH
+			| IJavaElementDelta.F_REMOVED_FROM_CLASSPATH
+			| IJavaElementDelta.F_REORDER;
+
+	private static final int UNIT_CHANGE_FLAGS = IJavaElementDelta.F_CONTENT
+			| IJavaElementDelta.F_CHILDREN
+			| IJavaElementDelta.F_FINE_GRAINED;
+
+	private final ConcurrentMap<IProject, ProjectCache> projects = new ConcurrentHashMap<IProject, ProjectCache>();
+
+	/**
+	 * Maps a type to the cached types which have it among their super types.
+	 */
+	private final ConcurrentMap<IType, Set<IType>> subTypes = new ConcurrentHashMap<IType, Set<IType>>();
+
+	private volatile int typeLimit = DEFAULT_TYPE_LIMIT;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+
+	static class TypeEntry {
+		final Map<IMember, MemberInfo> memberInfoTrue = new ConcurrentHashMap<IMember, MemberInfo>();
+		final Map<IMember, MemberInfo> memberInfoFalse = new ConcurrentHashMap<IMember, MemberInfo>();
+		volatile SuperTypeInfo superTypes;
+
+		Map<IMember, MemberInfo> getMemberInfos(boolean dataModel) {
+			return dataModel ? memberInfoTrue : memberInfoFalse;
+		}
+	}
+
+	class ProjectCache {
+		private final Map<IType, TypeEntry> types = new LinkedHashMap<IType, TypeEntry>(64, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<IType, TypeEntry> eldest) {
+				if(size() > typeLimit) {
+					evictions.incrementAndGet();
+					unlinkSuperTypes(eldest.getKey(), eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+
+		synchronized TypeEntry get(IType type) {
+			return types.get(type);
+		}
+
+		synchronized TypeEntry getOrCreate(IType type) {
+			TypeEntry entry = types.get(type);
+			if(entry == null) {
+				entry = new TypeEntry();
+				types.put(type, entry);
+			}
+			return entry;
+		}
+
+		synchronized TypeEntry remove(IType type) {
+			TypeEntry entry = types.remove(type);
+			if(entry != null) {
+				unlinkSuperTypes(type, entry);
+			}
+			return entry;
+		}
+
+		synchronized List<IType> getTypes() {
+			return new ArrayList<IType>(types.keySet());
+		}
+
+		synchronized int size() {
+			return types.size();
+		}
+	}
+
+	public TypeInfoCache() {}
+
+	/**
+	 * Returns cached member info or null.
+	 *
+	 * @param member
+	 * @param dataModel
+	 * @return
+	 */
+	public MemberInfo getMemberInfo(IMember member, boolean dataModel) {
+		IType type = getCacheType(member);
+		ProjectCache cache = getProjectCache(type, false);
+		TypeEntry entry = cache == null ? null : cache.get(type);
+		MemberInfo result = entry == null ? null : entry.getMemberInfos(dataModel).get(member);
+		(result != null ? hits : misses).incrementAndGet();
+		return result;
+	}
+
+	public void putMemberInfo(IMember member, boolean dataModel, MemberInfo info) {
+		IType type = getCacheType(member);
+		ProjectCache cache = getProjectCache(type, true);
+		if(cache != null) {
+			cache.getOrCreate(type).getMemberInfos(dataModel).put(member, info);
+		}
+	}
+
+	/**
+	 * Returns cached super types info or null.
+	 *
+	 * @param type
+	 * @return
+	 */
+	public SuperTypeInfo getSuperTypes(IType type) {
+		ProjectCache cache = getProjectCache(type, false);
+		TypeEntry entry = cache == null ? null : cache.get(type);
+		SuperTypeInfo result = entry == null ? null : entry.superTypes;
+		(result != null ? hits : misses).incrementAndGet();
+		return result;
+	}
+
+	public void putSuperTypes(IType type, SuperTypeInfo info) {
+		ProjectCache cache = getProjectCache(type, true);
+		if(cache == null) {
+			return;
+		}
+		cache.getOrCreate(type).superTypes = info;
+		for (IType superType: info.getSuperTypes()) {
+			addSubType(superType, type);
+		}
+	}
+
+	private void addSubType(IType superType, IType type) {
+		while(true) {
+			Set<IType> s = subTypes.get(superType);
+			if(s == null) {
+				s = Collections.newSetFromMap(new ConcurrentHashMap<IType, Boolean>());
+				Set<IType> old = subTypes.putIfAbsent(superType, s);
+				if(old != null) {
+					s = old;
+				}
+			}
+			s.add(type);
+			// The set may have been removed as empty meanwhile, then add to a new one
+			if(subTypes.get(superType) == s) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Removes cached information on the type and all cached types that inherit it.
+	 *
+	 * @param type
+	 */
+	public void invalidate(IType type) {
+		Set<IType> done = new HashSet<IType>();
+		List<IType> queue = new ArrayList<IType>();
+		queue.add(type);
+		while(!queue.isEmpty()) {
+			IType t = queue.remove(queue.size() - 1);
+			if(!done.add(t)) {
+				continue;
+			}
+			Set<IType> s = subTypes.remove(t);
+			if(s != null) {
+				queue.addAll(s);
+			}
+			ProjectCache cache = projects.get(getProject(t));
+			if(cache != null && cache.remove(t) != null) {
+				invalidations.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Removes cached information on all types of the project
+	 * and on cached types of other projects that inherit them.
+	 *
+	 * @param project
+	 */
+	public void clean(IProject project) {
+		ProjectCache cache = projects.remove(project);
+		if(cache != null) {
+			for (IType t: cache.getTypes()) {
+				invalidate(t);
+			}
+		}
+	}
+
+	public void clear() {
+		projects.clear();
+		subTypes.clear();
+	}
+
+	public int getTypeLimit() {
+		return typeLimit;
+	}
+
+	/**
+	 * Sets maximum number of types cached for each project.
+	 * The new limit is applied to a project on the next insertion.
+	 *
+	 * @param typeLimit
+	 */
+	public void setTypeLimit(int typeLimit) {
+		if(typeLimit < 1) {
+			throw new IllegalArgumentException("Type limit must be positive: " + typeLimit); //$NON-NLS-1$
+		}
+		this.typeLimit = typeLimit;
+	}
+
+	/**
+	 * Returns number of types cached for the project.
+	 *
+	 * @param project
+	 * @return
+	 */
+	public int getSize(IProject project) {
+		ProjectCache cache = projects.get(project);
+		return cache == null ? 0 : cache.size();
+	}
+
+	/**
+	 * Returns number of super types for which cached sub types are known.
+	 *
+	 * @return
+	 */
+	public int getSuperTypeCount() {
+		return subTypes.size();
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	public long getInvalidationCount() {
+		return invalidations.get();
+	}
+
+	public void resetStatistics() {
+		hits.set(0);
+		misses.set(0);
+		evictions.set(0);
+		invalidations.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return "TypeInfoCache[projects=" + projects.size() //$NON-NLS-1$
+				+ ", hits=" + hits //$NON-NLS-1$
+				+ ", misses=" + misses //$NON-NLS-1$
+				+ ", evictions=" + evictions //$NON-NLS-1$
+				+ ", invalidations=" + invalidations + "]"; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.jdt.core.IElementChangedListener#elementChanged(org.eclipse.jdt.core.ElementChangedEvent)
+	 */
+	public void elementChanged(ElementChangedEvent event) {
+		if(!projects.isEmpty()) {
+			processDelta(event.getDelta());
+		}
+	}
+
+	private void processDelta(IJavaElementDelta delta) {
+		IJavaElement element = delta.getElement();
+		int kind = delta.getKind();
+		int flags = delta.getFlags();
+		switch(element.getElementType()) {
+		case IJavaElement.JAVA_MODEL:
+		case IJavaElement.PACKAGE_FRAGMENT:
+			break;
+		case IJavaElement.JAVA_PROJECT:
+			if(kind != IJavaElementDelta.CHANGED || (flags & PROJECT_CHANGE_FLAGS) != 0) {
+				clean(((IJavaProject)element).getProject());
+				return;
+			}
+			break;
+		case IJavaElement.PACKAGE_FRAGMENT_ROOT:
+			if(kind != IJavaElementDelta.CHANGED || (flags & ROOT_CHANGE_FLAGS) != 0) {
+				clean(element.getJavaProject().getProject());
+				return;
+			}
+			break;
+		case IJavaElement.COMPILATION_UNIT:
+		case IJavaElement.CLASS_FILE:
+			if(kind == IJavaElementDelta.CHANGED) {
+				if((flags & UNIT_CHANGE_FLAGS) == 0) {
+					// Working copy opened/closed, markers etc.
+					return;
+				}
+				if((flags & IJavaElementDelta.F_FINE_GRAINED) != 0 && delta.getAffectedChildren().length > 0) {
+					break;
+				}
+			}
+			invalidateUnit(element);
+			return;
+		case IJavaElement.TYPE:
+			invalidate((IType)element);
+			return;
+		default:
+			IJavaElement type = element.getAncestor(IJavaElement.TYPE);
+			if(type != null) {
+				invalidate((IType)type);
+			}
+			return;
+		}
+		for (IJavaElementDelta child: delta.getAffectedChildren()) {
+			processDelta(child);
+		}
+	}
+
+	private void invalidateUnit(IJavaElement unit) {
+		IJavaProject jp = unit.getJavaProject();
+		ProjectCache cache = jp == null ? null : projects.get(jp.getProject());
+		if(cache != null) {
+			for (IType t: cache.getTypes()) {
+				if(unit.equals(t.getTypeRoot())) {
+					invalidate(t);
+				}
+			}
+		}
+	}
+
+	private void unlinkSuperTypes(IType type, TypeEntry entry) {
+		SuperTypeInfo info = entry.superTypes;
+		if(info != null) {
+			for (IType superType: info.getSuperTypes()) {
+				Set<IType> s = subTypes.get(superType);
+				if(s != null && s.remove(type) && s.isEmpty()) {
+					// Keeps the map from growing with the super types of evicted types
+					subTypes.remove(superType, s);
+				}
+			}
+		}
+	}
+
+	private ProjectCache getProjectCache(IType type, boolean create) {
+		IProject p = getProject(type);
+		if(p == null || !p.isAccessible()) {
+			return null;
+		}
+		ProjectCache cache = projects.get(p);
+		if(cache == null && create) {
+			cache = new ProjectCache();
+			ProjectCache old = projects.putIfAbsent(p, cache);
+			if(old != null) {
+				cache = old;
+			}
+		}
+		return cache;
+	}
+
+	private static IType getCacheType(IMember member) {
+		return member instanceof IType ? (IType)member : member.getDeclaringType();
+	}
+
+	private static IProject getProject(IJavaElement element) {
+		if(element == null) {
+			return null;
+		}
+		IJavaProject jp = element.getJavaProject();
+		return jp == null ? null : jp.getProject();
+	}
+}
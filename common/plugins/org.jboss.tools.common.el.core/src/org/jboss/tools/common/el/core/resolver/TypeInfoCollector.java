@@ -26,12 +26,12 @@ import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.jdt.core.IField;
 import org.eclipse.jdt.core.IJavaElement;
-import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.IMember;
 import org.eclipse.jdt.core.IMethod;
 import org.eclipse.jdt.core.IType;
 import org.eclipse.jdt.core.ITypeHierarchy;
 import org.eclipse.jdt.core.ITypeParameter;
+import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jdt.core.Signature;
 import org.jboss.tools.common.el.core.ELCorePlugin;
@@ -51,49 +51,19 @@ public class TypeInfoCollector {
 	List<MethodInfo> fMethods;
 	List<FieldInfo> fFields;
 	
-	private static class ProjectCache {
-		Map<IMember, MemberInfo> memberInfoCacheFalse = new HashMap<IMember, MemberInfo>();
-		Map<IMember, MemberInfo> memberInfoCacheTrue = new HashMap<IMember, MemberInfo>();
-		Map<IType, SuperTypeInfo> superTypesCache = new HashMap<IType, SuperTypeInfo>();
+	private static final TypeInfoCache cache = new TypeInfoCache();
+
+	static {
+		JavaCore.addElementChangedListener(cache, TypeInfoCache.DELTA_EVENTS);
 	}
-	
-	private static Caches caches = new Caches();
 
-	private static class Caches {
-		ProjectCache common = new ProjectCache();
-//		Map<IProject, ProjectCache> cache = new HashMap<IProject, ProjectCache>();
-		
-		public boolean contains(IProject p) {
-//			return p != null && cache.containsKey(p);
-			return true;
-		}
-		
-		public void clean(IProject p) {
-//			if(contains(p)) {
-//				cache.remove(p);
-//			}
-			common = new ProjectCache();
-		}
-		
-		public ProjectCache get(IProject p) {
-			if(p == null || !p.isAccessible()) return null;
-			return common;
-//			ProjectCache c = cache.get(p);
-//			if(c == null) {
-//				c = new ProjectCache();
-//				cache.put(p, c);
-//			}
-//			return c;
-		}
-		
-		public ProjectCache get(IJavaElement element) {
-			if(element == null) {
-				return null;
-			}
-			IJavaProject jp = element.getJavaProject();
-			IProject p = jp == null ? null : jp.getProject();
-			return get(p);			
-		}
+	/**
+	 * Returns the shared cache of member information.
+	 * 
+	 * @return
+	 */
+	public static TypeInfoCache getCache() {
+		return cache;
 	}
 
 	public static class Type {
@@ -922,16 +892,13 @@ public class TypeInfoCollector {
 		
 		SuperTypeInfo(IType type) throws JavaModelException {
 			this.type = type;
-			ProjectCache cache = caches.get(type);
-			if(cache != null) {
-				cache.superTypesCache.put(type, this);
-			}
 			ITypeHierarchy typeHierarchy = type.newSupertypeHierarchy(new NullProgressMonitor());
 			superTypes = typeHierarchy == null ? null : typeHierarchy.getAllSupertypes(type);
 			if(superTypes != null) for (int i = 0; i < superTypes.length; i++) {
 				names.add(superTypes[i].getFullyQualifiedName());
 			}
 			if(superTypes == null) superTypes = new IType[0];
+			cache.putSuperTypes(type, this);
 		}
 		
 		public Set<String> getNames() {
@@ -945,8 +912,7 @@ public class TypeInfoCollector {
 	
 	public static SuperTypeInfo getSuperTypes(IType type) throws JavaModelException {
 		if(type == null) return null;
-		ProjectCache cache = caches.get(type);
-		SuperTypeInfo ts = (cache != null) ? cache.superTypesCache.get(type) : null;
+		SuperTypeInfo ts = cache.getSuperTypes(type);
 		if(ts == null) {
 			ts = new SuperTypeInfo(type);
 		}
@@ -1374,17 +1340,15 @@ public class TypeInfoCollector {
 	}
 
 	public static void cleanCache() {
-		caches = new Caches();
+		cache.clear();
 	}
 
-	public static MemberInfo createMemberInfo(IMember member, boolean dataModel) {
-		ProjectCache pcache = caches.get(member);
+	public static void cleanCache(IProject project) {
+		cache.clean(project);
+	}
 
-		Map<IMember, MemberInfo> cache = null;
-		if(pcache != null) {
-			cache = dataModel ? pcache.memberInfoCacheTrue : pcache.memberInfoCacheFalse;
-		}
-		MemberInfo result = cache == null ? null : cache.get(member);
+	public static MemberInfo createMemberInfo(IMember member, boolean dataModel) {
+		MemberInfo result = cache.getMemberInfo(member, dataModel);
 		if(result != null) return result;
 		try {
 			if (member instanceof IType) {
@@ -1401,8 +1365,8 @@ public class TypeInfoCollector {
 		} catch (JavaModelException e) {
 			ELCorePlugin.getPluginLog().logError(e);
 		}
-		if(result != null && cache!=null) {
-			cache.put(member, result);
+		if(result != null) {
+			cache.putMemberInfo(member, dataModel, result);
 		}
 
 		return result;
@@ -86,10 +86,32 @@ public class ELModelImpl extends ELObjectImpl implements ELModel {
 		
 	}
 
+	/**
+	 * Sets errors of this model without assigning them to instances.
+	 * 
+	 * @param errors
+	 */
+	public void setModelErrors(List<SyntaxError> errors) {
+		this.errors = errors.isEmpty() ? null : errors;
+	}
+
 	public List<SyntaxError> getSyntaxErrors() {
 		return errors == null ? ELInstanceImpl.EMPTY : errors;
 	}
 
+	public int getDelta() {
+		return delta;
+	}
+
+	/**
+	 * Sets delta without shifting tokens, which must be already shifted by it.
+	 * 
+	 * @param delta
+	 */
+	public void setDelta(int delta) {
+		this.delta = delta;
+	}
+
 	public void shift(int delta) {
 		this.delta = delta;
 		if(instances.size() > 0) {
@@ -73,6 +73,7 @@ public class XModelImpl implements XModel {
     private static PrintWriter out = new PrintWriter(System.out, true);
     private HashMap<String,XModelObject> extraroots = new HashMap<String,XModelObject>(2);
     private String rootEntity = XModelObjectConstants.ROOT_OBJECT;
+    private final XModelPathIndex pathIndex = new XModelPathIndex();
 
     public XModelImpl(Properties properties, XModelMetaData metadata) {
         this.metadata = metadata;
@@ -166,7 +167,12 @@ public class XModelImpl implements XModel {
             return (ro == null || j + 2 >= path.length()) ? ro
                    : ro.getChildByPath(path.substring(j + 2));
         } else {
-            return getRoot().getChildByPath(path);
+            XModelObject o = pathIndex.get(pathIndex.paths, path);
+            if(o == null) {
+                o = getRoot().getChildByPath(path);
+                pathIndex.put(pathIndex.paths, path, o);
+            }
+            return o;
         }
     }
 
@@ -176,6 +182,19 @@ public class XModelImpl implements XModel {
      */
 
     public static XModelObject getByRelativePath(XModel model, String path) {
+        if(path == null || !(model instanceof XModelImpl)) {
+            return findByRelativePath(model, path);
+        }
+        XModelPathIndex index = ((XModelImpl)model).pathIndex;
+        XModelObject o = index.get(index.relativePaths, path);
+        if(o == null) {
+            o = findByRelativePath(model, path);
+            index.put(index.relativePaths, path, o);
+        }
+        return o;
+    }
+
+    private static XModelObject findByRelativePath(XModel model, String path) {
         XModelObject o = null;
         if(path != null && path.startsWith(XModelObjectConstants.SEPARATOR)) {
         	XModelObject wr = FileSystemsHelper.getWebRoot(model);
@@ -198,7 +217,7 @@ public class XModelImpl implements XModel {
         		if(c != null) return c;
         	}
         }
-        return getByRelativePath(model, path);
+        return findByRelativePath(model, path);
     }
     
     static XModelObject findMountedFileSystem(XModelObject folder) {
@@ -219,6 +238,15 @@ public class XModelImpl implements XModel {
     }
 
     public XModelObject getByPathInFileSystem(String path) {
+        XModelObject o = pathIndex.get(pathIndex.fileSystemPaths, path);
+        if(o == null) {
+            o = findByPathInFileSystem(path);
+            pathIndex.put(pathIndex.fileSystemPaths, path, o);
+        }
+        return o;
+    }
+
+    private XModelObject findByPathInFileSystem(String path) {
     	XModelObject fs = getByPath(FileSystemsHelper.FILE_SYSTEMS);
     	if(fs == null) return null;
         XModelObject[] cs = fs.getChildren();
@@ -499,7 +527,9 @@ public class XModelImpl implements XModel {
     }
 
 	void fireNodeChanged(XModelObject object, String info, Object details) {
-		if(object.getModel() != this || !object.isActive()) return;
+		if(object.getModel() != this) return;
+		pathIndex.nodeChanged(object, info);
+		if(!object.isActive()) return;
 		final XModelTreeEvent event = new XModelTreeEvent(this, object, 0, info, details);
 		XModelTreeListener[] ls = treeListenersArray;
 		for (int i = 0; i < ls.length; i++) {
@@ -520,7 +550,9 @@ public class XModelImpl implements XModel {
     
 
     public void fireStructureChanged(XModelObject object, int kind, Object info) {
-        if(object.getModel() != this || !object.isActive()) return;
+        if(object.getModel() != this) return;
+        pathIndex.structureChanged(object, kind, info);
+        if(!object.isActive()) return;
         final XModelTreeEvent event = new XModelTreeEvent(this, object, kind, info);
         XModelTreeListener[] ls = treeListenersArray;
 		for (int i = 0; i < ls.length; i++) {
@@ -585,4 +617,34 @@ public class XModelImpl implements XModel {
 	public Map<String,Object> getManagerMap() {
 		return Collections.unmodifiableMap(managers);
 	}
+
+	/**
+	 * Compares objects in the path index with objects found by walking the model,
+	 * for tests. Resolution of a path may load children.
+	 * @return paths for which the index is not consistent with the model
+	 */
+	public List<String> checkPathIndex() {
+		List<String> result = new ArrayList<String>();
+		for (String path: pathIndex.paths.keySet()) {
+			XModelObject o = pathIndex.get(pathIndex.paths, path);
+			if(o != null && o != getRoot().getChildByPath(path)) result.add(path);
+		}
+		for (String path: pathIndex.fileSystemPaths.keySet()) {
+			XModelObject o = pathIndex.get(pathIndex.fileSystemPaths, path);
+			if(o != null && o != findByPathInFileSystem(path)) result.add(XModelObjectConstants.SEPARATOR + path);
+		}
+		for (String path: pathIndex.relativePaths.keySet()) {
+			XModelObject o = pathIndex.get(pathIndex.relativePaths, path);
+			if(o != null && o != findByRelativePath(this, path)) result.add(path);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the number of paths in the path index.
+	 * @return
+	 */
+	public int getPathIndexSize() {
+		return pathIndex.size();
+	}
 }
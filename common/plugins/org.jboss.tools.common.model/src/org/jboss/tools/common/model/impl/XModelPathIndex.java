@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.common.model.impl;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jboss.tools.common.model.XModelObject;
+import org.jboss.tools.common.model.XModelObjectConstants;
+import org.jboss.tools.common.model.event.XModelTreeEvent;
+import org.jboss.tools.common.model.filesystems.FileSystemsHelper;
+
+/**
+ * Index of objects found by {@link XModelImpl} by path. It keeps three maps:
+ * paths relative to the root, paths relative to file systems, and paths
+ * resolved by {@link XModelImpl#getByRelativePath(org.jboss.tools.common.model.XModel, String)}.
+ *
+ * Entries are removed when the model fires structure changes under the object,
+ * or when the object is renamed. An entry is also checked on each hit: the object
+ * must be still in the model and have the same path part. Failed lookups are not
+ * indexed, since children of file system folders are loaded lazily.
+ */
+class XModelPathIndex {
+	static final String FILE_SYSTEMS_PREFIX = FileSystemsHelper.FILE_SYSTEMS + XModelObjectConstants.SEPARATOR;
+
+	static class Entry {
+		final XModelObject object;
+		final String longPath;
+		final String pathPart;
+
+		Entry(XModelObject object, String longPath) {
+			this.object = object;
+			this.longPath = longPath;
+			pathPart = object.getPathPart();
+		}
+
+		boolean isValid() {
+			return object.isActive() && pathPart != null && pathPart.equals(object.getPathPart());
+		}
+	}
+
+	final ConcurrentMap<String, Entry> paths = new ConcurrentHashMap<String, Entry>();
+	final ConcurrentMap<String, Entry> fileSystemPaths = new ConcurrentHashMap<String, Entry>();
+	final ConcurrentMap<String, Entry> relativePaths = new ConcurrentHashMap<String, Entry>();
+
+	XModelObject get(Map<String, Entry> map, String path) {
+		Entry e = map.get(path);
+		if(e == null) {
+			return null;
+		}
+		if(!e.isValid()) {
+			map.remove(path, e);
+			return null;
+		}
+		return e.object;
+	}
+
+	void put(Map<String, Entry> map, String path, XModelObject object) {
+		if(object == null || !isIndexable(path)) {
+			return;
+		}
+		String longPath = getLongPath(object);
+		if(longPath != null) {
+			map.put(path, new Entry(object, longPath));
+		}
+	}
+
+	/**
+	 * Paths with '.' and '..' parts are not indexed, because they can not be
+	 * matched against paths of changed objects.
+	 */
+	static boolean isIndexable(String path) {
+		int start = 0;
+		while(start <= path.length()) {
+			int end = path.indexOf(XModelObjectConstants.SEPARATOR, start);
+			if(end < 0) end = path.length();
+			String part = path.substring(start, end);
+			if(".".equals(part) || "..".equals(part)) { //$NON-NLS-1$ //$NON-NLS-2$
+				return false;
+			}
+			start = end + 1;
+		}
+		return true;
+	}
+
+	public void clear() {
+		paths.clear();
+		fileSystemPaths.clear();
+		relativePaths.clear();
+	}
+
+	public boolean isEmpty() {
+		return paths.isEmpty() && fileSystemPaths.isEmpty() && relativePaths.isEmpty();
+	}
+
+	public int size() {
+		return paths.size() + fileSystemPaths.size() + relativePaths.size();
+	}
+
+	void structureChanged(XModelObject object, int kind, Object info) {
+		if(isEmpty()) {
+			return;
+		}
+		String longPath = getLongPath(object);
+		if(longPath == null) {
+			// Objects out of the model are not indexed.
+			if(object.isActive()) clear();
+			return;
+		}
+		if(kind == XModelTreeEvent.CHILD_ADDED) {
+			// Existing objects keep their paths, but the new one may be found
+			// in a file system that precedes the file system of an indexed object.
+			if(info instanceof XModelObject) {
+				String childPath = getLongPath((XModelObject)info);
+				if(childPath != null) {
+					removeInFileSystems(childPath);
+				}
+			} else {
+				removeInFileSystems(longPath);
+			}
+		} else if(kind == XModelTreeEvent.CHILD_REMOVED && info instanceof String) {
+			String childPath = (String)info;
+			String childPart = childPath.substring(childPath.lastIndexOf('/') + 1);
+			remove(append(longPath, childPart));
+		} else {
+			remove(longPath);
+			removeInFileSystems(longPath);
+		}
+		if(longPath.length() == 0 || longPath.startsWith(FileSystemsHelper.FILE_SYSTEMS)) {
+			relativePaths.clear();
+		}
+	}
+
+	void nodeChanged(XModelObject object, Object info) {
+		if(!(info instanceof String) || isEmpty()) {
+			return;
+		}
+		String oldPath = (String)info;
+		String oldPart = oldPath.substring(oldPath.lastIndexOf('/') + 1);
+		String newPart = object.getPathPart();
+		if(newPart != null && newPart.equals(oldPart)) {
+			return;
+		}
+		// Renamed object.
+		XModelObject parent = object.getParent();
+		String parentPath = parent == null ? null : getLongPath(parent);
+		if(parentPath == null) {
+			if(object.isActive()) clear();
+			return;
+		}
+		remove(append(parentPath, oldPart));
+		fileSystemPaths.clear();
+		relativePaths.clear();
+	}
+
+	static String getLongPath(XModelObject object) {
+		return object instanceof XModelObjectImpl ? ((XModelObjectImpl)object).getLongPath() : null;
+	}
+
+	private static String append(String path, String part) {
+		return path.length() == 0 ? part : path + XModelObjectConstants.SEPARATOR + part;
+	}
+
+	private static boolean isUnder(String path, String prefix) {
+		return prefix.length() == 0 || path.equals(prefix)
+				|| (path.startsWith(prefix) && path.charAt(prefix.length()) == '/');
+	}
+
+	/**
+	 * Removes entries of objects with long path under the given one.
+	 */
+	private void remove(String longPath) {
+		removeByObject(paths, longPath);
+		removeByObject(fileSystemPaths, longPath);
+	}
+
+	private static void removeByObject(Map<String, Entry> map, String longPath) {
+		Iterator<Entry> it = map.values().iterator();
+		while(it.hasNext()) {
+			if(isUnder(it.next().longPath, longPath)) {
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Removes file system relative entries that may resolve to the object
+	 * with the given long path.
+	 */
+	private void removeInFileSystems(String longPath) {
+		if(fileSystemPaths.isEmpty()) {
+			return;
+		}
+		if(!longPath.startsWith(FILE_SYSTEMS_PREFIX)) {
+			if(isUnder(FileSystemsHelper.FILE_SYSTEMS, longPath)) {
+				fileSystemPaths.clear();
+			}
+			return;
+		}
+		int i = longPath.indexOf('/', FILE_SYSTEMS_PREFIX.length());
+		if(i < 0) {
+			// A file system is changed.
+			fileSystemPaths.clear();
+			return;
+		}
+		String relative = longPath.substring(i + 1);
+		Iterator<String> it = fileSystemPaths.keySet().iterator();
+		while(it.hasNext()) {
+			if(isUnder(it.next(), relative)) {
+				it.remove();
+			}
+		}
+	}
+}
@@ -12,11 +12,14 @@ package org.jboss.tools.common.text.ext.hyperlink;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.eclipse.core.runtime.IConfigurationElement;
 import org.eclipse.core.runtime.IExtensionRegistry;
+import org.eclipse.core.runtime.IRegistryChangeEvent;
+import org.eclipse.core.runtime.IRegistryChangeListener;
 import org.eclipse.core.runtime.Platform;
 import org.jboss.tools.common.text.ext.ExtensionsPlugin;
 import org.jboss.tools.common.text.ext.util.xpl.RegistryReader;
@@ -42,8 +45,9 @@ public class HyperlinkPartitionerBuilder extends RegistryReader {
 	public static final String ATT_CLASS = "class"; //$NON-NLS-1$
 	public static final String ATT_PATH = "path"; //$NON-NLS-1$
 	public static final String ATT_IGNORE_CASE = "ignoreCase"; //$NON-NLS-1$
-	
-	
+
+	// the number of contentType/partitionType/axis lookups which results are kept
+	private static final int MAX_CACHED_LOOKUPS = 512;
 
 	private static HyperlinkPartitionerBuilder fInstance;
 	private ArrayList fPartitionerDefs;
@@ -56,6 +60,9 @@ public class HyperlinkPartitionerBuilder extends RegistryReader {
 	private Map<String, String> fContentTypeSynonyms = 
 			new HashMap<String, String>();
 
+	// definitions compiled for the lookups, dropped when the contributions change
+	private volatile DispatchTable fDispatchTable;
+
 	/**
 	 * returns singleton instance of HyperlinkPartitionerBuilder
 	 * 
@@ -70,6 +77,26 @@ public class HyperlinkPartitionerBuilder extends RegistryReader {
 
 	private HyperlinkPartitionerBuilder() {
 	    super();
+	    IExtensionRegistry registry = Platform.getExtensionRegistry();
+	    if (registry != null) {
+	    	registry.addRegistryChangeListener(new IRegistryChangeListener() {
+	    		public void registryChanged(IRegistryChangeEvent event) {
+	    			if (event.getExtensionDeltas(PLUGIN_ID, PL_HYPERLINK_PARTITIONER).length > 0) {
+	    				reset();
+	    			}
+	    		}
+	    	}, PLUGIN_ID);
+	    }
+	}
+
+	/**
+	 * Forgets the definitions read so far, they are read and compiled
+	 * again by the next lookup.
+	 */
+	private synchronized void reset() {
+		fPartitionerDefs = null;
+		fContentTypeSynonyms = new HashMap<String, String>();
+		fDispatchTable = null;
 	}
 
 	/* (non-Javadoc)
@@ -272,7 +299,7 @@ public class HyperlinkPartitionerBuilder extends RegistryReader {
 		return value;
 	}
 
-	private void initCache() {
+	private synchronized void initCache() {
 	    if(fPartitionerDefs==null) {
 			readContributions(TAG_HYPERLINK_PARTITIONER, PL_HYPERLINK_PARTITIONER);			
 	    }
@@ -327,28 +354,161 @@ public class HyperlinkPartitionerBuilder extends RegistryReader {
 			return null;
 		}
 
-		String baseContentType = getBaseContentType(contentType);
-		
-		// entire list of hyperlink definition objects
-		HyperlinkPartitionerDefinition[] allDefs = getHyperlinkPartitionerDefinitions();
-		// current list of open on definitions valid for contentType/partitionType/axis
-		List defs = new ArrayList();
-
-		for(int i=0; i<allDefs.length; i++) {
-			// for each one check if it contains contentType
-			List contentTypes = allDefs[i].getContentTypes();
-			for(int j=0; j<contentTypes.size(); j++) {
-			    HyperlinkPartitionerDefinition.ContentType cType = (HyperlinkPartitionerDefinition.ContentType)contentTypes.get(j);
-			    if(contentType.equals(cType.getId()) || baseContentType.equals(cType.getId())) {
-				    HyperlinkPartitionerDefinition.PartitionType pType = cType.getPartitionType(partitionType);
-				    if(pType!=null && pType.containtsAxis(axis)) {
-			            defs.add(allDefs[i]); 
-				    }
-			    }
+		// the result is shared with the next lookups of the same contentType/partitionType/axis
+		return getDispatchTable().lookup(contentType, partitionType, axis).clone();
+	}
+
+	private DispatchTable getDispatchTable() {
+		DispatchTable table = fDispatchTable;
+		if (table == null) {
+			synchronized (this) {
+				table = fDispatchTable;
+				if (table == null) {
+					table = new DispatchTable(getHyperlinkPartitionerDefinitions());
+					fDispatchTable = table;
+				}
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * Definitions indexed by content type and partition type. The candidates of
+	 * one content type/partition type keep the order of the contributions, so
+	 * only their axes are left to check. The results are kept for the most
+	 * recent lookups, the same axes are asked again and again while the mouse
+	 * moves over the editor.
+	 */
+	private class DispatchTable {
+
+		// contentTypeId -> partitionTypeId -> candidates in the order of the definitions
+		private Map<String, Map<String, Candidate[]>> fCandidates = new HashMap<String, Map<String, Candidate[]>>();
+
+		private Map<LookupKey, HyperlinkPartitionerDefinition[]> fResults =
+				new LinkedHashMap<LookupKey, HyperlinkPartitionerDefinition[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<LookupKey, HyperlinkPartitionerDefinition[]> eldest) {
+				return size() > MAX_CACHED_LOOKUPS;
+			}
+		};
+
+		DispatchTable(HyperlinkPartitionerDefinition[] defs) {
+			Map<String, Map<String, List<Candidate>>> candidates = new HashMap<String, Map<String, List<Candidate>>>();
+			int order = 0;
+			for (int i = 0; i < defs.length; i++) {
+				List contentTypes = defs[i].getContentTypes();
+				for (int j = 0; j < contentTypes.size(); j++, order++) {
+					HyperlinkPartitionerDefinition.ContentType cType = (HyperlinkPartitionerDefinition.ContentType)contentTypes.get(j);
+					Map<String, List<Candidate>> byPartitionType = candidates.get(cType.getId());
+					if (byPartitionType == null) {
+						byPartitionType = new HashMap<String, List<Candidate>>();
+						candidates.put(cType.getId(), byPartitionType);
+					}
+					List partitionTypes = cType.getPartitionTypes();
+					for (int k = 0; k < partitionTypes.size(); k++) {
+						HyperlinkPartitionerDefinition.PartitionType pType = (HyperlinkPartitionerDefinition.PartitionType)partitionTypes.get(k);
+						List<Candidate> list = byPartitionType.get(pType.getId());
+						if (list == null) {
+							list = new ArrayList<Candidate>();
+							byPartitionType.put(pType.getId(), list);
+						}
+						list.add(new Candidate(order, defs[i], pType));
+					}
+				}
+			}
+			for (Map.Entry<String, Map<String, List<Candidate>>> contentType : candidates.entrySet()) {
+				Map<String, Candidate[]> byPartitionType = new HashMap<String, Candidate[]>();
+				for (Map.Entry<String, List<Candidate>> partitionType : contentType.getValue().entrySet()) {
+					List<Candidate> list = partitionType.getValue();
+					byPartitionType.put(partitionType.getKey(), list.toArray(new Candidate[list.size()]));
+				}
+				fCandidates.put(contentType.getKey(), byPartitionType);
 			}
 		}
 
-		// return the list
-		return (HyperlinkPartitionerDefinition[]) defs.toArray(new HyperlinkPartitionerDefinition[defs.size()]);
+		HyperlinkPartitionerDefinition[] lookup(String contentType, String partitionType, String axis) {
+			LookupKey key = new LookupKey(contentType, partitionType, axis);
+			synchronized (fResults) {
+				HyperlinkPartitionerDefinition[] result = fResults.get(key);
+				if (result != null) {
+					return result;
+				}
+			}
+			HyperlinkPartitionerDefinition[] result = match(contentType, partitionType, axis);
+			synchronized (fResults) {
+				fResults.put(key, result);
+			}
+			return result;
+		}
+
+		private HyperlinkPartitionerDefinition[] match(String contentType, String partitionType, String axis) {
+			String baseContentType = getBaseContentType(contentType);
+			Candidate[] candidates = getCandidates(contentType, partitionType);
+			Candidate[] baseCandidates = baseContentType.equals(contentType) ? null : getCandidates(baseContentType, partitionType);
+
+			// current list of open on definitions valid for contentType/partitionType/axis
+			List<HyperlinkPartitionerDefinition> defs = new ArrayList<HyperlinkPartitionerDefinition>();
+			int i = 0;
+			int j = 0;
+			while (i < candidates.length || (baseCandidates != null && j < baseCandidates.length)) {
+				// merge both lists, as if the definitions were scanned one after another
+				Candidate candidate = null;
+				if (baseCandidates == null || j == baseCandidates.length
+						|| (i < candidates.length && candidates[i].fOrder < baseCandidates[j].fOrder)) {
+					candidate = candidates[i++];
+				} else {
+					candidate = baseCandidates[j++];
+				}
+				if (candidate.fPartitionType.containtsAxis(axis)) {
+					defs.add(candidate.fDefinition);
+				}
+			}
+			return defs.toArray(new HyperlinkPartitionerDefinition[defs.size()]);
+		}
+
+		private Candidate[] getCandidates(String contentType, String partitionType) {
+			Map<String, Candidate[]> byPartitionType = fCandidates.get(contentType);
+			Candidate[] candidates = byPartitionType == null ? null : byPartitionType.get(partitionType);
+			return candidates == null ? new Candidate[0] : candidates;
+		}
+	}
+
+	private static class Candidate {
+		final int fOrder;
+		final HyperlinkPartitionerDefinition fDefinition;
+		final HyperlinkPartitionerDefinition.PartitionType fPartitionType;
+
+		Candidate(int order, HyperlinkPartitionerDefinition definition, HyperlinkPartitionerDefinition.PartitionType partitionType) {
+			fOrder = order;
+			fDefinition = definition;
+			fPartitionType = partitionType;
+		}
+	}
+
+	private static class LookupKey {
+		private final String fContentType;
+		private final String fPartitionType;
+		private final String fAxis;
+
+		LookupKey(String contentType, String partitionType, String axis) {
+			fContentType = contentType;
+			fPartitionType = partitionType;
+			fAxis = axis;
+		}
+
+		public int hashCode() {
+			int hash = fContentType.hashCode() * 31 + fPartitionType.hashCode();
+			return fAxis == null ? hash : hash * 31 + fAxis.hashCode();
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof LookupKey)) {
+				return false;
+			}
+			LookupKey key = (LookupKey)obj;
+			return fContentType.equals(key.fContentType) && fPartitionType.equals(key.fPartitionType)
+					&& (fAxis == null ? key.fAxis == null : fAxis.equals(key.fAxis));
+		}
 	}
 }
\ No newline at end of file
@@ -78,6 +78,16 @@ public class CommonValidationPlugin extends BaseUIPlugin implements IStartup {
 		super.start(context);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.ui.plugin.AbstractUIPlugin#stop(org.osgi.framework.BundleContext)
+	 */
+	@Override
+	public void stop(BundleContext context) throws Exception {
+		ParallelValidation.dispose();
+		super.stop(context);
+	}
+
 	@Override
 	public void earlyStartup() {
 		final IWorkbench workbench = PlatformUI.getWorkbench();
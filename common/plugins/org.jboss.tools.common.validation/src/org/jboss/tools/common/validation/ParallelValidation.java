@@ -0,0 +1,239 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.common.validation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.wst.validation.internal.provisional.core.IReporter;
+import org.jboss.tools.common.CommonPlugin;
+
+/**
+ * Runs validation of a set of files on a bounded pool of worker threads.
+ *
+ * Each file is validated with its own copy of the error manager, see
+ * {@link ValidationErrorManager#createWorkerCopy()}. Problems reported
+ * to the copy are collected per file and converted to markers in the calling thread,
+ * file by file in the order of their full paths, so the result does not depend
+ * on scheduling of the workers. Markers of a file are created in one
+ * workspace operation, in sequential mode too.
+ *
+ * The number of workers is set by system property {@link #THREADS_PROPERTY},
+ * by default it is the number of available processors. Value 1 turns
+ * the parallel mode off.
+ *
+ * Validators that use this class must be safe for concurrent validation
+ * of different files; validation contexts and EL resolver caches are.
+ */
+public class ParallelValidation {
+	public static final String THREADS_PROPERTY = "org.jboss.tools.common.validation.threads"; //$NON-NLS-1$
+
+	/**
+	 * Validates one file.
+	 */
+	public static interface IFileValidator {
+		/**
+		 * Validates the file and reports problems to the error manager.
+		 * @param file
+		 * @param errorManager the error manager of the file, in parallel mode a copy
+		 *  of the one passed to {@link ParallelValidation#validate(Collection, ValidationErrorManager, IReporter, IFileValidator)}
+		 * @throws Exception
+		 */
+		public void validate(IFile file, ValidationErrorManager errorManager) throws Exception;
+	}
+
+	private static int threadCount = Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()).intValue();
+
+	private static ThreadPoolExecutor executor;
+
+	private static final ThreadLocal<Boolean> worker = new ThreadLocal<Boolean>();
+
+	private static final Comparator<IFile> PATH_ORDER = new Comparator<IFile>() {
+		public int compare(IFile f1, IFile f2) {
+			return f1.getFullPath().toString().compareTo(f2.getFullPath().toString());
+		}
+	};
+
+	/**
+	 * Returns the number of threads that validate files in parallel.
+	 * @return
+	 */
+	public static synchronized int getThreadCount() {
+		return threadCount;
+	}
+
+	/**
+	 * Sets the number of threads that validate files in parallel.
+	 * Value 1 or less turns the parallel mode off.
+	 * @param count
+	 */
+	public static synchronized void setThreadCount(int count) {
+		threadCount = count < 1 ? 1 : count;
+		if(executor != null) {
+			int size = threadCount - 1;
+			if(size > executor.getMaximumPoolSize()) {
+				executor.setMaximumPoolSize(size);
+				executor.setCorePoolSize(size);
+			} else if(size > 0) {
+				executor.setCorePoolSize(size);
+				executor.setMaximumPoolSize(size);
+			} else {
+				executor.shutdown();
+				executor = null;
+			}
+		}
+	}
+
+	private static synchronized ThreadPoolExecutor getExecutor() {
+		if(executor == null && threadCount > 1) {
+			// The calling thread is a worker too.
+			int size = threadCount - 1;
+			executor = new ThreadPoolExecutor(size, size, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				AtomicInteger n = new AtomicInteger();
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "JBoss Tools Validation Worker " + n.incrementAndGet()); //$NON-NLS-1$
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			executor.allowCoreThreadTimeOut(true);
+		}
+		return executor;
+	}
+
+	/**
+	 * Stops worker threads.
+	 */
+	public static synchronized void dispose() {
+		if(executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+	}
+
+	/**
+	 * Validates the files. Markers for problems reported to the error manager are created
+	 * before this method returns, even if the calling thread is interrupted while it waits
+	 * for the workers; the interrupt status is restored then. Exceptions thrown by the file
+	 * validator are logged and do not stop validation of other files. Files not yet validated
+	 * are skipped if the reporter is cancelled.
+	 *
+	 * @param files
+	 * @param errorManager
+	 * @param reporter
+	 * @param validator
+	 */
+	public static void validate(Collection<IFile> files, final ValidationErrorManager errorManager, final IReporter reporter, final IFileValidator validator) {
+		ThreadPoolExecutor pool = (files.size() > 1 && worker.get() == null) ? getExecutor() : null;
+		if(pool == null) {
+			for (IFile file : files) {
+				if(reporter != null && reporter.isCancelled()) {
+					break;
+				}
+				boolean batch = errorManager.startBatch();
+				try {
+					validate(file, errorManager, validator);
+				} finally {
+					if(batch) {
+						errorManager.flushBatch();
+					}
+				}
+			}
+			return;
+		}
+
+		final IFile[] sorted = files.toArray(new IFile[files.size()]);
+		Arrays.sort(sorted, PATH_ORDER);
+		final Object[] results = new Object[sorted.length];
+		final AtomicInteger next = new AtomicInteger();
+		Runnable task = new Runnable() {
+			public void run() {
+				worker.set(Boolean.TRUE);
+				try {
+					int i;
+					while((i = next.getAndIncrement()) < sorted.length) {
+						List<PendingMarker> pending = null;
+						if(reporter == null || !reporter.isCancelled()) {
+							ValidationErrorManager fileErrorManager = errorManager.createWorkerCopy();
+							fileErrorManager.startCollectingMarkers();
+							try {
+								validate(sorted[i], fileErrorManager, validator);
+							} finally {
+								pending = fileErrorManager.stopCollectingMarkers();
+							}
+						}
+						synchronized (results) {
+							results[i] = pending != null ? pending : new ArrayList<PendingMarker>(0);
+							results.notifyAll();
+						}
+					}
+				} finally {
+					worker.remove();
+				}
+			}
+		};
+		int tasks = Math.min(pool.getMaximumPoolSize(), sorted.length - 1);
+		try {
+			for (int i = 0; i < tasks; i++) {
+				pool.execute(task);
+			}
+		} catch (RejectedExecutionException e) {
+			// Pool is being shut down, files left are validated by this thread.
+		}
+		task.run();
+
+		// Create markers in the order of files.
+		// Workers are not interrupted, so all results come; waiting is continued
+		// on interrupt, otherwise problems of the files left would be lost.
+		boolean interrupted = false;
+		try {
+			for (int i = 0; i < sorted.length; i++) {
+				Object result = null;
+				synchronized (results) {
+					while((result = results[i]) == null) {
+						try {
+							results.wait();
+						} catch (InterruptedException e) {
+							interrupted = true;
+						}
+					}
+					results[i] = null;
+				}
+				@SuppressWarnings("unchecked")
+				List<PendingMarker> pending = (List<PendingMarker>)result;
+				errorManager.createMarkers(pending);
+			}
+		} finally {
+			if(interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static void validate(IFile file, ValidationErrorManager errorManager, IFileValidator validator) {
+		try {
+			validator.validate(file, errorManager);
+		} catch (Exception e) {
+			// Log the exception and proceed to the next file
+			CommonPlugin.getDefault().logError(new JBTValidationException(e.getMessage(), e));
+		}
+	}
+}
@@ -0,0 +1,360 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.common.validation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.jboss.tools.common.el.core.ELReference;
+
+/**
+ * Problem reported by a validator while markers are being collected
+ * (see {@link ParallelValidation}). It is returned to the validator
+ * in place of a marker; attributes set on it are kept until the real marker
+ * is created by {@link ValidationErrorManager}, after that all calls
+ * are delegated to the real marker. If the marker is not created because
+ * the limit of markers per file is reached, the marker is dropped: it does
+ * not exist, and its attributes can still be read.
+ */
+public class PendingMarker implements IMarker {
+	final String message;
+	final int severity;
+	final Object[] messageArguments;
+	final int lineNumber;
+	final int length;
+	final int offset;
+	final IResource target;
+	final String markerId;
+	final Class<?> markerOwner;
+
+	private Map<String, Object> attributes = new HashMap<String, Object>();
+	private List<ELReference> references = null;
+	private boolean deleted = false;
+	private boolean dropped = false;
+	private IMarker marker;
+
+	PendingMarker(String message, int severity, Object[] messageArguments, int lineNumber, int length, int offset, IResource target, String markerId, Class<?> markerOwner) {
+		this.message = message;
+		this.severity = severity;
+		this.messageArguments = messageArguments;
+		this.lineNumber = lineNumber;
+		this.length = length;
+		this.offset = offset;
+		this.target = target;
+		this.markerId = markerId;
+		this.markerOwner = markerOwner;
+	}
+
+	/**
+	 * Returns the created marker, or null if it is not created yet.
+	 * @return
+	 */
+	public synchronized IMarker getMarker() {
+		return marker;
+	}
+
+	synchronized boolean isDeleted() {
+		return deleted;
+	}
+
+	synchronized Map<String, Object> getPendingAttributes() {
+		return attributes;
+	}
+
+	/**
+	 * Sets the created marker and registers it in EL references
+	 * that received this pending marker.
+	 * @param marker
+	 */
+	void setMarker(IMarker marker) {
+		List<ELReference> refs = null;
+		synchronized (this) {
+			this.marker = marker;
+			attributes = null;
+			refs = references;
+			references = null;
+		}
+		if(refs != null && marker != null) {
+			for (ELReference ref : refs) {
+				ref.addMarker(marker);
+			}
+		}
+	}
+
+	/**
+	 * Marks the marker as not created, for the limit of markers per file 
+	 * was reached. The attributes are kept.
+	 */
+	synchronized void drop() {
+		dropped = true;
+		references = null;
+	}
+
+	/**
+	 * Returns true if the marker was not created, for the limit of markers 
+	 * per file was reached.
+	 * @return
+	 */
+	public synchronized boolean isDropped() {
+		return dropped;
+	}
+
+	/**
+	 * Returns false if the marker is already created; then the reference
+	 * should keep the real marker.
+	 * @param reference
+	 * @return
+	 */
+	synchronized boolean addReference(ELReference reference) {
+		if(marker != null || deleted || dropped) {
+			return false;
+		}
+		if(references == null) {
+			references = new ArrayList<ELReference>(1);
+		}
+		references.add(reference);
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.core.runtime.IAdaptable#getAdapter(java.lang.Class)
+	 */
+	@SuppressWarnings("rawtypes")
+	public Object getAdapter(Class adapter) {
+		IMarker m = getMarker();
+		return m != null ? m.getAdapter(adapter) : null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.core.resources.IMarker#delete()
+	 */
+	public void delete() throws CoreException {
+		IMarker m = null;
+		synchronized (this) {
+			m = marker;
+			if(m == null) {
+				deleted = true;
+				references = null;
+			}
+		}
+		if(m != null) {
+			m.delete();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.core.resources.IMarker#exists()
+	 */
+	public boolean exists() {
+		IMarker m = null;
+		synchronized (this) {
+			m = marker;
+			if(m == null) {
+				return !deleted && !dropped;
+			}
+		}
+		return m.exists();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.core.resources.IMarker#getAttribute(java.lang.String)
+	 */
+	public Object getAttribute(String attributeName) throws CoreException {
+		synchronized (this) {
+			if(marker == null) {
+				return attributes.get(attributeName);
+			}
+		}
+		return marker.getAttribute(attributeName);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.core.resources.IMarker#getAttribute(java.lang.String, int)
+	 */
+	public int getAttribute(String attributeName, int defaultValue) {
+		Object value = getAttributeOrNull(attributeName);
+		return value instanceof Integer ? ((Integer)value).intValue() : defaultValue;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.core.resources.IMarker#getAttribute(java.lang.String, java.lang.String)
+	 */
+	public String getAttribute(String attributeName, String defaultValue) {
+		Object value = getAttributeOrNull(attributeName);
+		return value instanceof String ? (String)value : defaultValue;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.core.resources.IMarker#getAttribute(java.lang.String, boolean)
+	 */
+	public boolean getAttribute(String attributeName, boolean defaultValue) {
+		Object value = getAttributeOrNull(attributeName);
+		return value instanceof Boolean ? ((Boolean)value).booleanValue() : defaultValue;
+	}
+
+	private Object getAttributeOrNull(String attributeName) {
+		try {
+			return getAttribute(attributeName);
+		} catch (CoreException e) {
+			return null;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.core.resources.IMarker#getAttributes()
+	 */
+	@SuppressWarnings("rawtypes")
+	public Map getAttributes() throws CoreException {
+		synchronized (this) {
+			if(marker == null) {
+				return new HashMap<String, Object>(attributes);
+			}
+		}
+		return marker.getAttributes();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.core.resources.IMarker#getAttributes(java.lang.String[])
+	 */
+	public Object[] getAttributes(String[] attributeNames) throws CoreException {
+		synchronized (this) {
+			if(marker == null) {
+				Object[] result = new Object[attributeNames.length];
+				for (int i = 0; i < attributeNames.length; i++) {
+					result[i] = attributes.get(attributeNames[i]);
+				}
+				return result;
+			}
+		}
+		return marker.getAttributes(attributeNames);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.core.resources.IMarker#getCreationTime()
+	 */
+	public long getCreationTime() throws CoreException {
+		IMarker m = getMarker();
+		return m != null ? m.getCreationTime() : 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.core.resources.IMarker#getId()
+	 */
+	public long getId() {
+		IMarker m = getMarker();
+		return m != null ? m.getId() : -1;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.core.resources.IMarker#getResource()
+	 */
+	public IResource getResource() {
+		return target;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.core.resources.IMarker#getType()
+	 */
+	public String getType() throws CoreException {
+		IMarker m = getMarker();
+		return m != null ? m.getType() : null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.core.resources.IMarker#isSubtypeOf(java.lang.String)
+	 */
+	public boolean isSubtypeOf(String superType) throws CoreException {
+		IMarker m = getMarker();
+		return m != null && m.isSubtypeOf(superType);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.core.resources.IMarker#setAttribute(java.lang.String, int)
+	 */
+	public void setAttribute(String attributeName, int value) throws CoreException {
+		setAttribute(attributeName, Integer.valueOf(value));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.core.resources.IMarker#setAttribute(java.lang.String, java.lang.Object)
+	 */
+	public void setAttribute(String attributeName, Object value) throws CoreException {
+		synchronized (this) {
+			if(marker == null) {
+				attributes.put(attributeName, value);
+				return;
+			}
+		}
+		marker.setAttribute(attributeName, value);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.core.resources.IMarker#setAttribute(java.lang.String, boolean)
+	 */
+	public void setAttribute(String attributeName, boolean value) throws CoreException {
+		setAttribute(attributeName, Boolean.valueOf(value));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.core.resources.IMarker#setAttributes(java.lang.String[], java.lang.Object[])
+	 */
+	public void setAttributes(String[] attributeNames, Object[] values) throws CoreException {
+		synchronized (this) {
+			if(marker == null) {
+				for (int i = 0; i < attributeNames.length; i++) {
+					attributes.put(attributeNames[i], values[i]);
+				}
+				return;
+			}
+		}
+		marker.setAttributes(attributeNames, values);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.core.resources.IMarker#setAttributes(java.util.Map)
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public void setAttributes(Map attributes) throws CoreException {
+		synchronized (this) {
+			if(marker == null) {
+				if(attributes != null) {
+					this.attributes.putAll(attributes);
+				}
+				return;
+			}
+		}
+		marker.setAttributes(attributes);
+	}
+}
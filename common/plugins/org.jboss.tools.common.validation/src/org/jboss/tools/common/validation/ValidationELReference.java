@@ -10,6 +10,7 @@
  ******************************************************************************/ 
 package org.jboss.tools.common.validation;
 
+import org.eclipse.core.resources.IMarker;
 import org.jboss.tools.common.el.core.ELReference;
 
 /**
@@ -20,4 +21,20 @@ public class ValidationELReference extends ELReference {
 	public ValidationELReference() {
 		super(IValidator.MARKED_RESOURCE_MESSAGE_GROUP);
 	}
+
+	/**
+	 * Markers reported during parallel validation are not created yet;
+	 * the reference receives the real marker when it is created.
+	 */
+	@Override
+	public void addMarker(IMarker marker) {
+		if(marker instanceof PendingMarker) {
+			PendingMarker pending = (PendingMarker)marker;
+			if(pending.addReference(this)) {
+				return;
+			}
+			marker = pending.getMarker();
+		}
+		super.addMarker(marker);
+	}
 }
\ No newline at end of file
@@ -11,15 +11,23 @@
 package org.jboss.tools.common.validation;
 
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.jdt.core.IAnnotation;
@@ -48,7 +56,7 @@ import org.jboss.tools.common.util.EclipseUIUtil;
 /**
  * @author Alexey Kazakov
  */
-public abstract class ValidationErrorManager implements IValidationErrorManager {
+public abstract class ValidationErrorManager implements IValidationErrorManager, Cloneable {
 
 	public static String DEFAULT_VALIDATION_MARKER = ValidationPlugin.PLUGIN_ID + ".problemmarker"; //$NON-NLS-1$
 	static String VALIDATION_MARKER_OWNER = "owner"; //$NON-NLS-1$
@@ -325,7 +333,9 @@ public abstract class ValidationErrorManager implements IValidationErrorManager
 	}
 
 	protected void cleanSavedMarkers() {
-		markers.clear();
+		synchronized (markers) {
+			markers.clear();
+		}
 	}
 	
 	protected int getSeverity(String preferenceKey, IResource target) {
@@ -342,10 +352,12 @@ public abstract class ValidationErrorManager implements IValidationErrorManager
 		if (severity!=-1) {
 			if(shouldCheckDuplicateMarkers()) {
 				MarkerID id = new MarkerID(preferenceKey, length, offset, target.getFullPath().toOSString());
-				if(!markers.contains(id)) {
-					marker = addError(message, severity, messageArguments, lineNumber, length, offset, target, getDocumentProvider(), getMarkerId(), getMarkerOwner());
-					if(marker!=null) {
-						markers.add(id);
+				synchronized (markers) {
+					if(!markers.contains(id)) {
+						marker = addError(message, severity, messageArguments, lineNumber, length, offset, target, getDocumentProvider(), getMarkerId(), getMarkerOwner());
+						if(marker!=null) {
+							markers.add(id);
+						}
 					}
 				}
 			} else {
@@ -390,7 +402,7 @@ public abstract class ValidationErrorManager implements IValidationErrorManager
 		return addError(message, preferenceKey, messageArguments, 0, length, offset, target);
 	}
 
-	public TextFileDocumentProvider getDocumentProvider() {
+	public synchronized TextFileDocumentProvider getDocumentProvider() {
 		if(documentProvider==null) {
 			if(coreHelper!=null) {
 				documentProvider = coreHelper.getDocumentProvider();
@@ -494,18 +506,194 @@ public abstract class ValidationErrorManager implements IValidationErrorManager
 				CommonPlugin.getDefault().logError("Wrong offset [" + offset + "] of the problem marker [" + MessageFormat.format(message, messageArguments)  + "] for resource: " + target.getFullPath().toOSString(), e);  //$NON-NLS-1$ //$NON-NLS-2$//$NON-NLS-3$
 			}
 		}
+		List<PendingMarker> pending = pendingMarkers.get();
+		if(pending != null) {
+			// If line number is still unknown, it is computed when the marker is created.
+			PendingMarker marker = new PendingMarker(message, severity, messageArguments, lineNumber, length, offset, target, markerId, markerOwner);
+			pending.add(marker);
+			return marker;
+		}
 		MarkerManager.getDefault().getMarkers().add(getProblemType()); // We need to register the marker type in WST since this type is not equaled to ValidatorManager's type. WST need this type to remove markers when the validator is disabled. See https://issues.jboss.org/browse/JBIDE-12595
 		return addError(message, severity, messageArguments, lineNumber, length, offset, target, documentProvider, markerId, markerOwner, getMaxNumberOfMarkersPerFile(target.getProject()), getProblemType());
 	}
 
 	abstract public int getMaxNumberOfMarkersPerFile(IProject project);
 
+	private ThreadLocal<List<PendingMarker>> pendingMarkers = new ThreadLocal<List<PendingMarker>>();
+
+	/**
+	 * Validates the files by the file validator, in parallel if {@link ParallelValidation}
+	 * is configured to use more than one thread. The file validator must report problems
+	 * to the error manager passed to it, not to this one.
+	 * 
+	 * @param files
+	 * @param validator
+	 */
+	protected void validateFiles(Collection<IFile> files, ParallelValidation.IFileValidator validator) {
+		ParallelValidation.validate(files, this, reporter, validator);
+	}
+
+	/**
+	 * Returns a copy of this error manager to report problems of one file
+	 * in a worker thread of {@link ParallelValidation}. The copy has its own
+	 * current document and collected problems, and shares the rest of the state,
+	 * including the set of reported marker locations, with this manager.
+	 * Subclasses that keep other per-file state in fields should override
+	 * this method and reset that state in the copy.
+	 * 
+	 * @return
+	 */
+	protected ValidationErrorManager createWorkerCopy() {
+		try {
+			ValidationErrorManager copy = (ValidationErrorManager)clone();
+			copy.document = null;
+			copy.pendingMarkers = new ThreadLocal<List<PendingMarker>>();
+			return copy;
+		} catch (CloneNotSupportedException e) {
+			// Cannot happen, the class is cloneable
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Problems reported by the current thread after this call are not created
+	 * as markers but collected until {@link #stopCollectingMarkers()}.
+	 */
+	void startCollectingMarkers() {
+		pendingMarkers.set(new ArrayList<PendingMarker>());
+	}
+
+	/**
+	 * Returns problems collected by the current thread since {@link #startCollectingMarkers()}
+	 * in the order they were reported.
+	 * @return
+	 */
+	List<PendingMarker> stopCollectingMarkers() {
+		List<PendingMarker> result = pendingMarkers.get();
+		pendingMarkers.remove();
+		return result;
+	}
+
+	/**
+	 * Starts batched reporting in the current thread: problems are kept in memory
+	 * and reported markers are created by {@link #flushBatch()}, in one workspace
+	 * operation per call. Does nothing if problems of the current thread
+	 * are already collected, e.g. by {@link ParallelValidation}.
+	 * 
+	 * @return true if the batch is started and should be flushed by the caller
+	 */
+	public boolean startBatch() {
+		if(pendingMarkers.get() != null) {
+			return false;
+		}
+		startCollectingMarkers();
+		return true;
+	}
+
+	/**
+	 * Creates markers for problems reported in the current thread since {@link #startBatch()}
+	 * and ends batched reporting.
+	 */
+	public void flushBatch() {
+		createMarkers(stopCollectingMarkers());
+	}
+
+	/**
+	 * Creates markers for collected problems. Markers are created in one workspace
+	 * operation, so that one resource delta is reported for all of them.
+	 * Existing markers of a resource are counted once, to check the limit
+	 * of markers per file.
+	 * @param pending
+	 */
+	void createMarkers(List<PendingMarker> pending) {
+		if(pending == null || pending.isEmpty()) {
+			return;
+		}
+		MarkerManager.getDefault().getMarkers().add(getProblemType());
+		final Map<IResource, List<PendingMarker>> byResource = new LinkedHashMap<IResource, List<PendingMarker>>();
+		for (PendingMarker p : pending) {
+			if(p.isDeleted()) {
+				continue;
+			}
+			List<PendingMarker> ps = byResource.get(p.target);
+			if(ps == null) {
+				ps = new ArrayList<PendingMarker>();
+				byResource.put(p.target, ps);
+			}
+			ps.add(p);
+		}
+		if(byResource.isEmpty()) {
+			return;
+		}
+		IWorkspaceRunnable runnable = new IWorkspaceRunnable() {
+			public void run(IProgressMonitor monitor) throws CoreException {
+				for (Map.Entry<IResource, List<PendingMarker>> e : byResource.entrySet()) {
+					createMarkers(e.getKey(), e.getValue());
+				}
+			}
+		};
+		try {
+			ResourcesPlugin.getWorkspace().run(runnable, null, IWorkspace.AVOID_UPDATE, null);
+		} catch (CoreException e) {
+			CommonPlugin.getDefault().logError(e);
+		}
+	}
+
+	private void createMarkers(IResource target, List<PendingMarker> pending) {
+		String markerType = getProblemType();
+		if(markerType == null) {
+			markerType = DEFAULT_VALIDATION_MARKER;
+		}
+		int maxNumberOfMarkersPerFile = getMaxNumberOfMarkersPerFile(target.getProject());
+		TextFileDocumentProvider documentProvider = getDocumentProvider();
+		IDocument doc = null;
+		boolean connected = false;
+		try {
+			int count = 0;
+			if(maxNumberOfMarkersPerFile > 0) {
+				count = target.findMarkers(markerType, true, IResource.DEPTH_ZERO).length;
+			}
+			for (PendingMarker p : pending) {
+				if(maxNumberOfMarkersPerFile > 0 && count >= maxNumberOfMarkersPerFile) {
+					p.drop();
+					continue;
+				}
+				int lineNumber = p.lineNumber;
+				if(lineNumber < 1 && documentProvider != null) {
+					if(!connected) {
+						connected = true;
+						documentProvider.connect(target);
+						doc = documentProvider.getDocument(target);
+					}
+					if(doc != null) {
+						try {
+							lineNumber = doc.getLineOfOffset(p.offset) + 1;
+						} catch (BadLocationException e) {
+							CommonPlugin.getDefault().logError("Wrong offset [" + p.offset + "] of the problem marker [" + MessageFormat.format(p.message, p.messageArguments)  + "] for resource: " + target.getFullPath().toOSString(), e);  //$NON-NLS-1$ //$NON-NLS-2$//$NON-NLS-3$
+						}
+					}
+				}
+				IMarker marker = target.createMarker(markerType);
+				setTaskAttributes(marker, p.markerOwner.getName().intern(), lineNumber,
+						MessageFormat.format(p.message, p.messageArguments),
+						p.severity, p.markerId, p.offset, p.length, p.getPendingAttributes());
+				count++;
+				p.setMarker(marker);
+			}
+		} catch (CoreException e) {
+			CommonPlugin.getDefault().logError(
+					NLS.bind(ValidationMessages.EXCEPTION_DURING_CREATING_MARKER, target.getFullPath()), e);
+		} finally {
+			if (documentProvider != null && connected) {
+				documentProvider.disconnect(target);
+			}
+		}
+	}
+
 	private static IMarker addTask(String pluginId, IResource resource, int location, 
 			String message, int severityEnumValue, String targetObjectName, 
 			String groupName, int offset, int length, int maxNumberOfMarkersPerFile, String markerType) throws CoreException {
 
-		int severity = getSeverity(severityEnumValue);
-
 		if(markerType==null) {
 			markerType = DEFAULT_VALIDATION_MARKER;
 		}
@@ -518,10 +706,24 @@ public abstract class ValidationErrorManager implements IValidationErrorManager
 
 		IMarker item = resource.createMarker(markerType); // add a validation marker
 
+		setTaskAttributes(item, pluginId, location, message, severityEnumValue, groupName, offset, length, null);
+
+		return item;
+	}
+
+	/**
+	 * Sets all attributes of a new marker in one call.
+	 */
+	private static void setTaskAttributes(IMarker item, String pluginId, int location, 
+			String message, int severityEnumValue, String groupName, int offset, int length,
+			Map<String, Object> extraAttributes) throws CoreException {
+		int severity = getSeverity(severityEnumValue);
+
 		boolean offsetSet = ((offset != IMessage.OFFSET_UNSET) && (length != IMessage.OFFSET_UNSET));
 		int size = (offsetSet) ? 7 : 5;
-		String[] attribNames = new String[size];
-		Object[] attribValues = new Object[size];
+		int extraSize = (extraAttributes == null) ? 0 : extraAttributes.size();
+		String[] attribNames = new String[size + extraSize];
+		Object[] attribValues = new Object[size + extraSize];
 
 		attribNames[0] = VALIDATION_MARKER_OWNER;
 		attribValues[0] = pluginId;
@@ -543,9 +745,15 @@ public abstract class ValidationErrorManager implements IValidationErrorManager
 			attribValues[6] = new Integer(offset + length);
 		}
 
-		item.setAttributes(attribNames, attribValues);
+		if(extraSize > 0) {
+			int i = size;
+			for (Map.Entry<String, Object> e : extraAttributes.entrySet()) {
+				attribNames[i] = e.getKey();
+				attribValues[i++] = e.getValue();
+			}
+		}
 
-		return item;
+		item.setAttributes(attribNames, attribValues);
 	}
 
 	private static int getSeverity(int severityEnumValue) {
@@ -10,14 +10,22 @@
  ******************************************************************************/
 package org.jboss.tools.common.validation;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.jobs.ISchedulingRule;
 import org.eclipse.wst.validation.internal.core.ValidationException;
@@ -25,6 +33,7 @@ import org.eclipse.wst.validation.internal.provisional.core.IReporter;
 import org.eclipse.wst.validation.internal.provisional.core.IValidationContext;
 import org.eclipse.wst.validation.internal.provisional.core.IValidatorJob;
 import org.jboss.tools.common.CommonPlugin;
+import org.jboss.tools.common.validation.internal.ProjectValidationContext;
 
 /**
  * This Manager invokes all dependent validators that should be invoked in one job.
@@ -35,6 +44,13 @@ import org.jboss.tools.common.CommonPlugin;
 public class ValidatorManager implements IValidatorJob {
 
 	private static Set<IProject> validatingProjects = new HashSet<IProject>();
+	// Projects which ELs were restored from EL index in this session.
+	// A project is removed when it is closed or deleted.
+	private static Set<IProject> restoredProjects = new HashSet<IProject>();
+	// Files modified while validation is running, guarded by restoredProjects.
+	private static Set<IPath> modifiedFiles = new HashSet<IPath>();
+	private static int runningValidations = 0;
+	private static IResourceChangeListener resourceListener = null;
 	public static final String SLEEPING = "Sleeping"; //$NON-NLS-1$
 	public static final String RUNNING = "Running"; //$NON-NLS-1$
 	private static String STATUS = SLEEPING;
@@ -74,6 +90,7 @@ public class ValidatorManager implements IValidatorJob {
 				}
 				validatingProjects.addAll(rootProjects);
 			}
+			startTrackingModifiedFiles();
 			try {
 				validationContextManager.clearValidatedProjectsList();
 				Set<IFile> changedFiles = validationHelper.getChangedFiles();
@@ -85,11 +102,13 @@ public class ValidatorManager implements IValidatorJob {
 				}
 			} finally {
 				try {
+					storeELs(validationContextManager, rootProjects);
 					if(validationContextManager!=null) {
 						validationContextManager.clearRegisteredFiles();
 					}
 					validationHelper.cleanup(); // See https://issues.jboss.org/browse/JBIDE-8726
 				} finally {
+					stopTrackingModifiedFiles();
 					synchronized (validatingProjects) {
 						validatingProjects.removeAll(rootProjects);
 					}
@@ -108,7 +127,15 @@ public class ValidatorManager implements IValidatorJob {
 	private IStatus validate(Set<IFile> changedFiles, ContextValidationHelper validationHelper, IReporter reporter, Set<IProject> rootProjects) throws ValidationException {
 		IValidationContextManager validationContextManager = validationHelper.getValidationContextManager();
 		List<IValidator> validators = validationContextManager.getValidators();
-		removeMarkers(changedFiles);
+		// Files which links of ELs are restored are excluded from validation of ELs only.
+		Set<IFile> restored = restoreELs(changedFiles, validationContextManager, rootProjects);
+		Set<IFile> elChangedFiles = changedFiles;
+		if(!restored.isEmpty()) {
+			elChangedFiles = new HashSet<IFile>(changedFiles);
+			elChangedFiles.removeAll(restored);
+		}
+		removeMarkers(elChangedFiles);
+		removeMarkers(restored, getELMarkerOwners(validators));
 		AsYouTypeValidatorManager.removeMessages();
 		for (IValidator validator : validators) {
 			try {
@@ -137,7 +164,7 @@ public class ValidatorManager implements IValidatorJob {
 							if(validateAll.contains(rootProject)) {
 								validator.validateAll(rootProject, validationHelper, projectBrunch.getRootContext(), this, reporter);
 							} else {
-								validator.validate(changedFiles, rootProject, validationHelper, projectBrunch.getRootContext(), this, reporter);
+								validator.validate(isELValidator(validator) ? elChangedFiles : changedFiles, rootProject, validationHelper, projectBrunch.getRootContext(), this, reporter);
 							}
 						}
 					}
@@ -174,6 +201,143 @@ public class ValidatorManager implements IValidatorJob {
 		return OK_STATUS;
 	}
 
+	private static Set<ProjectValidationContext> getProjectContexts(IValidationContextManager validationContextManager, IProject rootProject) {
+		Set<ProjectValidationContext> result = new HashSet<ProjectValidationContext>();
+		for (IValidator validator : validationContextManager.getValidators()) {
+			IValidatingProjectTree tree = validationContextManager.getValidatingProjectTree(validator);
+			IValidatingProjectSet projectBrunch = tree == null ? null : tree.getBrunches().get(rootProject);
+			if(projectBrunch != null && projectBrunch.getRootContext() instanceof ProjectValidationContext) {
+				result.add((ProjectValidationContext)projectBrunch.getRootContext());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * On the first validation of a project in the session, restores core links
+	 * from their journals and links of ELs from EL index of the project.
+	 * @return changed files which content is confirmed to be the same as when their ELs
+	 *  were validated in the previous session, so that the validator of ELs skips them.
+	 *  Other validators revalidate all changed files.
+	 */
+	private Set<IFile> restoreELs(Set<IFile> changedFiles, IValidationContextManager validationContextManager, Set<IProject> rootProjects) {
+		Set<IFile> result = new HashSet<IFile>();
+		for (IProject rootProject : rootProjects) {
+			synchronized (restoredProjects) {
+				if(!restoredProjects.add(rootProject)) {
+					continue;
+				}
+			}
+			for (ProjectValidationContext context : getProjectContexts(validationContextManager, rootProject)) {
+				context.restoreLinks(rootProject);
+				result.addAll(context.restoreELs(rootProject, changedFiles));
+			}
+		}
+		return result;
+	}
+
+	private static boolean isELValidator(IValidator validator) {
+		return ProjectValidationContext.EL_VALIDATOR_ID.equals(validator.getId());
+	}
+
+	/*
+	 * Returns owners of markers created by the validator of ELs.
+	 */
+	private static Set<String> getELMarkerOwners(List<IValidator> validators) {
+		Set<String> result = new HashSet<String>();
+		for (IValidator validator : validators) {
+			if(isELValidator(validator)) {
+				result.add(validator.getClass().getName());
+			}
+		}
+		return result;
+	}
+
+	private void storeELs(IValidationContextManager validationContextManager, Set<IProject> rootProjects) {
+		if(validationContextManager == null) {
+			return;
+		}
+		Set<IPath> modified = getModifiedFiles();
+		for (IProject rootProject : rootProjects) {
+			for (ProjectValidationContext context : getProjectContexts(validationContextManager, rootProject)) {
+				// Attaches journals if the project was fully validated, so there was nothing to restore.
+				context.restoreLinks(rootProject);
+				context.storeLinks();
+				context.storeELs(rootProject, modified);
+			}
+		}
+	}
+
+	/*
+	 * Starts collecting files which content changes while validation is running:
+	 * their links of ELs may be computed for old content, so they are not confirmed in EL index.
+	 * Registers the listener that also forgets restored projects when they are closed or deleted.
+	 */
+	private static void startTrackingModifiedFiles() {
+		synchronized (restoredProjects) {
+			if(resourceListener == null) {
+				resourceListener = new ResourceListener();
+				ResourcesPlugin.getWorkspace().addResourceChangeListener(resourceListener,
+						IResourceChangeEvent.POST_CHANGE | IResourceChangeEvent.PRE_CLOSE | IResourceChangeEvent.PRE_DELETE);
+			}
+			runningValidations++;
+		}
+	}
+
+	private static void stopTrackingModifiedFiles() {
+		synchronized (restoredProjects) {
+			if(--runningValidations == 0) {
+				modifiedFiles.clear();
+			}
+		}
+	}
+
+	private static Set<IPath> getModifiedFiles() {
+		synchronized (restoredProjects) {
+			return new HashSet<IPath>(modifiedFiles);
+		}
+	}
+
+	private static class ResourceListener implements IResourceChangeListener, IResourceDeltaVisitor {
+		private static final int CONTENT_FLAGS = IResourceDelta.CONTENT | IResourceDelta.REPLACED | IResourceDelta.ENCODING;
+
+		public void resourceChanged(IResourceChangeEvent event) {
+			if(event.getType() != IResourceChangeEvent.POST_CHANGE) {
+				if(event.getResource() instanceof IProject) {
+					synchronized (restoredProjects) {
+						restoredProjects.remove(event.getResource());
+					}
+				}
+				return;
+			}
+			synchronized (restoredProjects) {
+				if(runningValidations == 0) {
+					return;
+				}
+			}
+			if(event.getDelta() != null) {
+				try {
+					event.getDelta().accept(this);
+				} catch (CoreException e) {
+					CommonPlugin.getDefault().logError(e);
+				}
+			}
+		}
+
+		public boolean visit(IResourceDelta delta) throws CoreException {
+			IResource resource = delta.getResource();
+			if(resource.getType() != IResource.FILE) {
+				return true;
+			}
+			if(delta.getKind() != IResourceDelta.CHANGED || (delta.getFlags() & CONTENT_FLAGS) != 0) {
+				synchronized (restoredProjects) {
+					modifiedFiles.add(resource.getFullPath());
+				}
+			}
+			return false;
+		}
+	}
+
 	private void removeMarkers(Set<IFile> files) {
 		try {
 			for (IFile file : files) {
@@ -186,6 +350,27 @@ public class ValidatorManager implements IValidatorJob {
 		}
 	}
 
+	/*
+	 * Removes markers from the files except for markers of the given owners.
+	 */
+	private void removeMarkers(Set<IFile> files, Set<String> keptOwners) {
+		try {
+			for (IFile file : files) {
+				if(file.isAccessible()) {
+					List<IMarker> markers = new ArrayList<IMarker>();
+					for (IMarker marker : file.findMarkers(IValidator.KB_PROBLEM_MARKER_TYPE, true, IResource.DEPTH_ZERO)) {
+						if(!keptOwners.contains(marker.getAttribute(ValidationErrorManager.VALIDATION_MARKER_OWNER, null))) {
+							markers.add(marker);
+						}
+					}
+					ResourcesPlugin.getWorkspace().deleteMarkers(markers.toArray(new IMarker[markers.size()]));
+				}
+			}
+		} catch (CoreException e) {
+			CommonPlugin.getDefault().logError(e);
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see org.eclipse.wst.validation.internal.provisional.core.IValidator#cleanup(org.eclipse.wst.validation.internal.provisional.core.IReporter)
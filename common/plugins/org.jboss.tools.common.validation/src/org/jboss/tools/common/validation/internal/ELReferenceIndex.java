@@ -0,0 +1,553 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.common.validation.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.jboss.tools.common.el.core.ELReference;
+import org.jboss.tools.common.validation.CommonValidationPlugin;
+import org.jboss.tools.common.validation.ValidationELReference;
+
+/**
+ * Binary store of EL references of a project, kept in the working location
+ * of the project, so that EL references of files that have not changed since
+ * the previous session can be restored without revalidation.
+ *
+ * The index is an append-only log, like {@link LinkJournal}: saving appends
+ * records for the files changed since the previous save, so that its cost depends
+ * on the number of changed files rather than on the size of the project. When the
+ * log grows much larger than the number of files, it is compacted: rewritten with
+ * one record per file.
+ *
+ * Format (version {@link #VERSION}):
+ * <pre>
+ * int magic, int version, records
+ * record: byte op, op arguments
+ *   PUT: UTF path, long timeStamp, long checksum, int blockLength, byte[blockLength] block
+ *   TIME_STAMP: UTF path, long timeStamp
+ *   REMOVE: UTF path
+ * block: int refCount, refCount x {int offset, int length, int lineNumber, int nameCount, nameCount x UTF name}
+ * </pre>
+ * Only the records are read when the index is opened, blocks are skipped; the block
+ * of a file is read when the file is restored. An index with a broken tail (e.g.
+ * the session was killed while appending) is read up to the broken record and
+ * compacted on the next save. Checksum -1 means that the file could be modified
+ * after its references were computed, such a file is never up to date.
+ */
+public class ELReferenceIndex {
+	public static final String ENABLED_PROPERTY = "org.jboss.tools.common.validation.elIndex"; //$NON-NLS-1$
+
+	static final int MAGIC = 0x454C5849;
+	static final int VERSION = 2;
+	static final String FILE_NAME = "el-references.index"; //$NON-NLS-1$
+
+	static final byte PUT = 0;
+	static final byte TIME_STAMP = 1;
+	static final byte REMOVE = 2;
+
+	/**
+	 * The index is compacted when it has more than
+	 * COMPACTION_RATIO * (number of files) + MIN_COMPACTION_RECORDS records.
+	 */
+	static final int COMPACTION_RATIO = 2;
+	static final int MIN_COMPACTION_RECORDS = 1000;
+
+	static class Entry {
+		long timeStamp;
+		long checksum;
+		/**
+		 * Position of block in the index file, or -1 if the block is kept in memory.
+		 */
+		long position = -1;
+		int length;
+		byte[] block;
+	}
+
+	private final File file;
+	private Map<String, Entry> entries = null;
+	// Paths of files which entries were changed since the previous save.
+	private Set<String> changes = new LinkedHashSet<String>();
+	// Number of records in the index file.
+	private int records = 0;
+	private boolean needsCompaction = false;
+
+	public ELReferenceIndex(File file) {
+		this.file = file;
+	}
+
+	public static boolean isEnabled() {
+		return !"false".equals(System.getProperty(ENABLED_PROPERTY)); //$NON-NLS-1$
+	}
+
+	/**
+	 * Returns index file of the project.
+	 * @param project
+	 * @return
+	 */
+	public static File getIndexFile(IProject project) {
+		return project.getWorkingLocation(CommonValidationPlugin.PLUGIN_ID).append(FILE_NAME).toFile();
+	}
+
+	private File getBackupFile() {
+		return new File(file.getParentFile(), file.getName() + ".bak"); //$NON-NLS-1$
+	}
+
+	private synchronized Map<String, Entry> getEntries() {
+		if(entries == null) {
+			entries = new LinkedHashMap<String, Entry>();
+			File backup = getBackupFile();
+			if(!file.exists() && backup.isFile()) {
+				// Compaction was interrupted after the index was moved to backup.
+				backup.renameTo(file);
+			}
+			if(file.isFile()) {
+				try {
+					read();
+				} catch (IOException e) {
+					// Index is broken or has other version, it will be rewritten.
+					entries.clear();
+					needsCompaction = true;
+				}
+			} else {
+				needsCompaction = true;
+			}
+		}
+		return entries;
+	}
+
+	private void read() throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Unsupported EL index format: " + file); //$NON-NLS-1$
+			}
+			long position = 8;
+			int op;
+			while((op = in.read()) >= 0) {
+				String path = in.readUTF();
+				position += 1 + 2 + utfLength(path);
+				switch(op) {
+				case PUT:
+					Entry e = new Entry();
+					e.timeStamp = in.readLong();
+					e.checksum = in.readLong();
+					e.length = in.readInt();
+					position += 8 + 8 + 4;
+					e.position = position;
+					skipFully(in, e.length);
+					position += e.length;
+					entries.put(path, e);
+					break;
+				case TIME_STAMP:
+					long timeStamp = in.readLong();
+					position += 8;
+					e = entries.get(path);
+					if(e != null) {
+						e.timeStamp = timeStamp;
+					}
+					break;
+				case REMOVE:
+					entries.remove(path);
+					break;
+				default:
+					throw new EOFException("Unknown record in EL index " + file); //$NON-NLS-1$
+				}
+				records++;
+			}
+		} catch (EOFException e) {
+			// The tail of the index is broken; records read so far are kept.
+			needsCompaction = true;
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void skipFully(DataInputStream in, int n) throws IOException {
+		while(n > 0) {
+			int skipped = in.skipBytes(n);
+			if(skipped <= 0) {
+				throw new EOFException("Unexpected end of EL index"); //$NON-NLS-1$
+			}
+			n -= skipped;
+		}
+	}
+
+	private static int utfLength(String s) {
+		int length = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			length += (c >= 0x0001 && c <= 0x007F) ? 1 : (c > 0x07FF ? 3 : 2);
+		}
+		return length;
+	}
+
+	/**
+	 * Returns the block of the entry.
+	 * @param e
+	 * @param in the index file opened by the caller, or null if the block is in memory
+	 * @return
+	 * @throws IOException
+	 */
+	private static byte[] getBlock(Entry e, RandomAccessFile in) throws IOException {
+		if(e.block != null) {
+			return e.block;
+		}
+		byte[] block = new byte[e.length];
+		in.seek(e.position);
+		in.readFully(block);
+		return block;
+	}
+
+	private RandomAccessFile openIfNeeded(Collection<Entry> entries) throws IOException {
+		for (Entry e : entries) {
+			if(e.block == null) {
+				return new RandomAccessFile(file, "r"); //$NON-NLS-1$
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns true if references of the file are stored and the content of the file
+	 * is the same as when they were computed. Time stamp alone does not confirm that,
+	 * a file may be replaced by another one with the same time stamp.
+	 * @param f
+	 * @return
+	 */
+	public synchronized boolean isUpToDate(IFile f) {
+		String path = f.getFullPath().toString();
+		Entry e = getEntries().get(path);
+		if(e == null || e.checksum == -1 || !f.isAccessible()) {
+			return false;
+		}
+		long checksum = getChecksum(f);
+		if(checksum == -1 || checksum != e.checksum) {
+			return false;
+		}
+		long timeStamp = f.getLocalTimeStamp();
+		if(timeStamp != e.timeStamp) {
+			e.timeStamp = timeStamp;
+			changes.add(path);
+		}
+		return true;
+	}
+
+	/**
+	 * Adds references of the stored file to the context.
+	 * @param f
+	 * @param context
+	 * @return false if the file is not stored or can not be read
+	 */
+	public synchronized boolean restore(IFile f, ELValidatorContext context) {
+		Entry e = getEntries().get(f.getFullPath().toString());
+		if(e == null) {
+			return false;
+		}
+		try {
+			RandomAccessFile in = openIfNeeded(Collections.singleton(e));
+			try {
+				restore(f.getFullPath(), getBlock(e, in), context);
+			} finally {
+				if(in != null) {
+					in.close();
+				}
+			}
+		} catch (IOException ex) {
+			CommonValidationPlugin.getDefault().logError(ex);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Adds references of all stored files to the context, except for the excluded ones.
+	 * The index file is opened once for all the files.
+	 * @param context
+	 * @param excluded paths of files which references should not be restored
+	 * @return false if the index does not exist or can not be read
+	 */
+	public synchronized boolean restoreAll(ELValidatorContext context, Set<IPath> excluded) {
+		if(getEntries().isEmpty() && !file.isFile()) {
+			return false;
+		}
+		try {
+			RandomAccessFile in = openIfNeeded(entries.values());
+			try {
+				for (Map.Entry<String, Entry> e : entries.entrySet()) {
+					IPath path = new Path(e.getKey());
+					if(!excluded.contains(path)) {
+						restore(path, getBlock(e.getValue(), in), context);
+					}
+				}
+			} finally {
+				if(in != null) {
+					in.close();
+				}
+			}
+		} catch (IOException ex) {
+			CommonValidationPlugin.getDefault().logError(ex);
+			return false;
+		}
+		return true;
+	}
+
+	private static void restore(IPath path, byte[] block, ELValidatorContext context) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(block));
+		int refCount = in.readInt();
+		for (int i = 0; i < refCount; i++) {
+			ELReference el = new ValidationELReference();
+			el.setPath(path);
+			el.setStartPosition(in.readInt());
+			el.setLength(in.readInt());
+			el.setLineNumber(in.readInt());
+			el.setNeedToInitMarkers(true);
+			int nameCount = in.readInt();
+			for (int j = 0; j < nameCount; j++) {
+				context.addLinkedEl(in.readUTF(), el);
+			}
+		}
+	}
+
+	/**
+	 * Stores references of the file.
+	 * @param f
+	 * @param els references with names of variables they use
+	 * @param confirmed false if the file could be modified after the references were computed
+	 */
+	public synchronized void update(IFile f, Map<ELReference, Set<String>> els, boolean confirmed) {
+		String path = f.getFullPath().toString();
+		if(els == null || els.isEmpty() || !f.isAccessible()) {
+			remove(f.getFullPath());
+			return;
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(els.size());
+			for (Map.Entry<ELReference, Set<String>> el : els.entrySet()) {
+				ELReference ref = el.getKey();
+				out.writeInt(ref.getStartPosition());
+				out.writeInt(ref.getLength());
+				out.writeInt(ref.getLineNumber());
+				Collection<String> names = el.getValue();
+				out.writeInt(names.size());
+				for (String name : names) {
+					out.writeUTF(name);
+				}
+			}
+			out.flush();
+		} catch (IOException ex) {
+			// Not expected for byte array.
+			CommonValidationPlugin.getDefault().logError(ex);
+			return;
+		}
+		Entry e = new Entry();
+		e.timeStamp = f.getLocalTimeStamp();
+		e.checksum = confirmed ? getChecksum(f) : -1;
+		e.block = bytes.toByteArray();
+		e.length = e.block.length;
+		getEntries().put(path, e);
+		changes.add(path);
+	}
+
+	public synchronized void remove(IPath path) {
+		if(getEntries().remove(path.toString()) != null) {
+			changes.add(path.toString());
+		}
+	}
+
+	public synchronized void clear() {
+		if(!getEntries().isEmpty()) {
+			entries.clear();
+			changes.clear();
+			needsCompaction = true;
+		}
+	}
+
+	public synchronized int size() {
+		return getEntries().size();
+	}
+
+	/**
+	 * Returns the number of records written to the index file.
+	 * @return
+	 */
+	public synchronized int getRecordCount() {
+		return records;
+	}
+
+	/**
+	 * Writes changes of the index. Appends records for the files changed since
+	 * the previous save, or rewrites the index if it does not exist, or is broken,
+	 * or was cleared, or is too long.
+	 * @throws IOException
+	 */
+	public synchronized void save() throws IOException {
+		getEntries();
+		if(needsCompaction || records + changes.size() > COMPACTION_RATIO * entries.size() + MIN_COMPACTION_RECORDS) {
+			compact();
+		} else if(!changes.isEmpty()) {
+			append();
+		}
+	}
+
+	private void append() throws IOException {
+		long base = file.length();
+		Map<Entry, Long> positions = new HashMap<Entry, Long>();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+		try {
+			for (String path : changes) {
+				Entry e = entries.get(path);
+				if(e == null) {
+					out.writeByte(REMOVE);
+					out.writeUTF(path);
+				} else if(e.block == null) {
+					out.writeByte(TIME_STAMP);
+					out.writeUTF(path);
+					out.writeLong(e.timeStamp);
+				} else {
+					out.writeByte(PUT);
+					out.writeUTF(path);
+					out.writeLong(e.timeStamp);
+					out.writeLong(e.checksum);
+					out.writeInt(e.length);
+					positions.put(e, Long.valueOf(base + out.size()));
+					out.write(e.block);
+				}
+			}
+		} catch (IOException ex) {
+			// A part of records could be written, they are dropped by compaction.
+			needsCompaction = true;
+			throw ex;
+		} finally {
+			out.close();
+		}
+		for (Map.Entry<Entry, Long> p : positions.entrySet()) {
+			p.getKey().position = p.getValue().longValue();
+			p.getKey().block = null;
+		}
+		records += changes.size();
+		changes.clear();
+	}
+
+	/*
+	 * Writes the index with one record per file to a temporary file, copying blocks
+	 * of unchanged files from the old index, and replaces the old index with it.
+	 */
+	private void compact() throws IOException {
+		File tmp = new File(file.getParentFile(), file.getName() + ".tmp"); //$NON-NLS-1$
+		Map<Entry, Long> positions = new HashMap<Entry, Long>();
+		RandomAccessFile in = openIfNeeded(entries.values());
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				for (Map.Entry<String, Entry> p : entries.entrySet()) {
+					Entry e = p.getValue();
+					out.writeByte(PUT);
+					out.writeUTF(p.getKey());
+					out.writeLong(e.timeStamp);
+					out.writeLong(e.checksum);
+					out.writeInt(e.length);
+					positions.put(e, Long.valueOf(out.size()));
+					out.write(getBlock(e, in));
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			if(in != null) {
+				in.close();
+			}
+		}
+		replace(tmp);
+		for (Map.Entry<Entry, Long> p : positions.entrySet()) {
+			p.getKey().position = p.getValue().longValue();
+			p.getKey().block = null;
+		}
+		records = entries.size();
+		changes.clear();
+		needsCompaction = false;
+	}
+
+	/**
+	 * Replaces the index file with the written temporary file. Renaming replaces
+	 * the file at once where the file system allows that; otherwise the index
+	 * is moved to backup first, so that either the old or the new index is kept
+	 * if saving is interrupted.
+	 * @param tmp
+	 * @throws IOException
+	 */
+	private void replace(File tmp) throws IOException {
+		if(tmp.renameTo(file)) {
+			return;
+		}
+		File backup = getBackupFile();
+		backup.delete();
+		if(file.exists() && !file.renameTo(backup)) {
+			tmp.delete();
+			throw new IOException("Cannot replace EL index " + file); //$NON-NLS-1$
+		}
+		if(!tmp.renameTo(file)) {
+			backup.renameTo(file);
+			tmp.delete();
+			throw new IOException("Cannot write EL index " + file); //$NON-NLS-1$
+		}
+		backup.delete();
+	}
+
+	static long getChecksum(IFile f) {
+		CRC32 crc = new CRC32();
+		try {
+			InputStream in = f.getContents(true);
+			try {
+				byte[] buffer = new byte[8192];
+				int n;
+				while((n = in.read(buffer)) > 0) {
+					crc.update(buffer, 0, n);
+				}
+			} finally {
+				in.close();
+			}
+		} catch (CoreException e) {
+			return -1;
+		} catch (IOException e) {
+			return -1;
+		}
+		return crc.getValue();
+	}
+}
@@ -10,12 +10,15 @@
  ******************************************************************************/ 
 package org.jboss.tools.common.validation.internal;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.IPath;
 import org.jboss.tools.common.el.core.ELReference;
 import org.jboss.tools.common.validation.ValidationELReference;
@@ -31,6 +34,10 @@ public class ELValidatorContext extends LinkCollection {
 	private Map<ELReference, Set<String>> variableNamesByEl = new HashMap<ELReference, Set<String>>();
 	private Map<IPath, Set<ELReference>> elsByResource = new HashMap<IPath, Set<ELReference>>();
 
+	// Resources which links were changed since the last update of EL index.
+	private Set<IPath> changedResources = new HashSet<IPath>();
+	private boolean cleared = false;
+
 	public ELValidatorContext(String id) {
 		super(id);
 	}
@@ -73,6 +80,7 @@ public class ELValidatorContext extends LinkCollection {
 		if(els.add(el)) {
 			modifications++;
 		}
+		changedResources.add(el.getPath());
 	}
 
 	public synchronized void removeLinkedEls(Set<IFile> resorces) {
@@ -82,6 +90,7 @@ public class ELValidatorContext extends LinkCollection {
 	}
 
 	public synchronized void removeLinkedEls(IFile resource) {
+		changedResources.add(resource.getFullPath());
 		String name = resource.getFullPath().toString(); // Resource path is also a variable name
 		Set<ELReference> linkedEls = elsByVariableName.remove(name);
 		if(linkedEls!=null ) {
@@ -124,6 +133,7 @@ public class ELValidatorContext extends LinkCollection {
 		if(!names.isEmpty()) {
 			modifications++;
 		}
+		changedResources.add(el.getPath());
 		for (String name : names) {
 			Set<ELReference> els = elsByVariableName.get(name);
 			if(els!=null) {
@@ -161,6 +171,7 @@ public class ELValidatorContext extends LinkCollection {
 				variableNamesByEl.remove(el);
 			}
 		}
+		changedResources.add(el.getPath());
 	}
 
 	/**
@@ -197,6 +208,75 @@ public class ELValidatorContext extends LinkCollection {
 		elsByVariableName.clear();
 		variableNamesByEl.clear();
 		elsByResource.clear();
+		changedResources.clear();
+		cleared = true;
+	}
+
+	/**
+	 * Returns true if the context has links of ELs.
+	 * @return
+	 */
+	public synchronized boolean hasLinkedEls() {
+		return !elsByResource.isEmpty();
+	}
+
+	/**
+	 * Forgets changes made before, so that they are not written to EL index.
+	 */
+	public synchronized void clearChanges() {
+		changedResources.clear();
+		cleared = false;
+	}
+
+	/**
+	 * Returns resources which links were changed since the previous update of EL index.
+	 * @return
+	 */
+	public synchronized Set<IPath> getChangedResources() {
+		return new HashSet<IPath>(changedResources);
+	}
+
+	/**
+	 * Marks links of all resources as changed, so that the next update
+	 * replaces the content of EL index with them.
+	 */
+	public synchronized void changeAll() {
+		changedResources.addAll(elsByResource.keySet());
+		cleared = true;
+	}
+
+	/**
+	 * Writes links of ELs of resources changed since the previous update to the index.
+	 * @param index
+	 */
+	public void updateIndex(ELReferenceIndex index) {
+		updateIndex(index, Collections.<IPath>emptySet());
+	}
+
+	/**
+	 * Writes links of ELs of resources changed since the previous update to the index.
+	 * @param index
+	 * @param modifiedFiles files modified after their links were computed, their links
+	 *  are written as not confirmed
+	 */
+	public synchronized void updateIndex(ELReferenceIndex index, Set<IPath> modifiedFiles) {
+		if(cleared) {
+			index.clear();
+		}
+		for (IPath path : changedResources) {
+			Map<ELReference, Set<String>> els = new LinkedHashMap<ELReference, Set<String>>();
+			Set<ELReference> resourceEls = elsByResource.get(path);
+			if(resourceEls != null) {
+				for (ELReference el : resourceEls) {
+					Set<String> names = variableNamesByEl.get(el);
+					if(names != null && !names.isEmpty()) {
+						els.put(el, names);
+					}
+				}
+			}
+			index.update(ResourcesPlugin.getWorkspace().getRoot().getFile(path), els, !modifiedFiles.contains(path));
+		}
+		clearChanges();
 	}
 
 	/*
@@ -244,5 +324,7 @@ public class ELValidatorContext extends LinkCollection {
 				addLinkedEl(name, el);
 			}
 		}
+		// Loaded links are not changes.
+		clearChanges();
 	}
 }
\ No newline at end of file
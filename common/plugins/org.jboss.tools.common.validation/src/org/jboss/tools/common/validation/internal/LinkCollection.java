@@ -10,10 +10,16 @@
  ******************************************************************************/ 
 package org.jboss.tools.common.validation.internal;
 
-import java.util.HashMap;
-import java.util.HashSet;
+import java.io.IOException;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.Path;
@@ -24,31 +30,328 @@ import org.jboss.tools.common.xml.XMLUtilities;
 import org.w3c.dom.Element;
 
 /**
+ * Links between resources and variable names.
+ * 
+ * Paths and names are interned to int ids, and links of each key are kept
+ * as an immutable sorted array of ids with the linked values, in both directions,
+ * which takes a fraction of memory of hash sets of paths and names. Ids of paths
+ * and names that have no links left are reused. Modifications are synchronized
+ * and replace the arrays of changed keys; getters do not lock and return the
+ * published arrays as unmodifiable snapshots.
+ * 
  * @author Alexey Kazakov
  */
 public class LinkCollection {
-	protected Map<String, Set<IPath>> resourcesByVariableName = new HashMap<String, Set<IPath>>();
-	protected Map<IPath, Set<String>> variableNamesByResource = new HashMap<IPath, Set<String>>();
-	protected Map<String, Set<IPath>> resourcesByDeclaringVariableName = new HashMap<String, Set<IPath>>();
-	protected Map<IPath, Set<String>> declaringVariableNamesByResource = new HashMap<IPath, Set<String>>();
-	protected Set<IPath> unnamedResources = new HashSet<IPath>();
+	private volatile IdTable<IPath> pathIds = new IdTable<IPath>();
+	private volatile IdTable<String> nameIds = new IdTable<String>();
+	private volatile LinkSetMap resourcesByVariableName = new LinkSetMap();
+	private final LinkSetMap variableNamesByResource = new LinkSetMap();
+	private final LinkSetMap resourcesByDeclaringVariableName = new LinkSetMap();
+	private final LinkSetMap declaringVariableNamesByResource = new LinkSetMap();
+	protected final Set<IPath> unnamedResources = Collections.newSetFromMap(new ConcurrentHashMap<IPath, Boolean>());
 	private String id;
+	private LinkJournal journal;
+
+	/**
+	 * Assigns int ids to values. Each id counts links in which it is used;
+	 * the id of a value that is not used by any link is released and reused.
+	 * Ids are assigned and released under the lock of the collection, getId()
+	 * may be called without locking.
+	 */
+	private static class IdTable<T> {
+		private final Map<Object, Integer> ids = new ConcurrentHashMap<Object, Integer>();
+		private Object[] values = new Object[64];
+		private int[] references = new int[64];
+		private int size = 0;
+		private int[] free = new int[16];
+		private int freeCount = 0;
+
+		/**
+		 * Returns id of the value, or -1 if the value has no id.
+		 */
+		public int getId(Object value) {
+			Integer id = value == null ? null : ids.get(value);
+			return id == null ? -1 : id.intValue();
+		}
+
+		/**
+		 * Returns id of the value, assigning a new one if needed.
+		 * An id that gets no references must be passed to releaseIfUnused().
+		 */
+		public int intern(T value) {
+			Integer id = ids.get(value);
+			if(id != null) {
+				return id.intValue();
+			}
+			int result;
+			if(freeCount > 0) {
+				result = free[--freeCount];
+			} else {
+				if(size == values.length) {
+					values = Arrays.copyOf(values, size * 2);
+					references = Arrays.copyOf(references, size * 2);
+				}
+				result = size++;
+			}
+			values[result] = value;
+			ids.put(value, Integer.valueOf(result));
+			return result;
+		}
+
+		@SuppressWarnings("unchecked")
+		public T get(int id) {
+			return (T)values[id];
+		}
+
+		public void addReference(int id) {
+			references[id]++;
+		}
+
+		public void removeReferences(int id, int count) {
+			references[id] -= count;
+			releaseIfUnused(id);
+		}
+
+		public void releaseIfUnused(int id) {
+			if(references[id] > 0 || values[id] == null) {
+				return;
+			}
+			ids.remove(values[id]);
+			values[id] = null;
+			if(freeCount == free.length) {
+				free = Arrays.copyOf(free, freeCount * 2);
+			}
+			free[freeCount++] = id;
+		}
+
+		public int size() {
+			return ids.size();
+		}
+	}
+
+	/**
+	 * Immutable set of values linked to a key, with their ids in ascending order.
+	 * A change of links replaces the set of the key, so that readers use the published
+	 * sets without locking, and a set returned by a getter is a snapshot at no cost.
+	 */
+	private static class LinkSet<T> extends AbstractSet<T> {
+		private final Object key;
+		private final IdTable<T> table;
+		private final int[] ids;
+		private final Object[] values;
+
+		LinkSet(Object key, IdTable<T> table, int[] ids, Object[] values) {
+			this.key = key;
+			this.table = table;
+			this.ids = ids;
+			this.values = values;
+		}
+
+		/**
+		 * Returns ids of the values, the array must not be modified.
+		 */
+		public int[] getIds() {
+			return ids;
+		}
+
+		public boolean containsId(int id) {
+			return Arrays.binarySearch(ids, id) >= 0;
+		}
+
+		/**
+		 * Returns the set with the value added, or this set if it has the value.
+		 */
+		public LinkSet<T> with(int id, Object value) {
+			int i = Arrays.binarySearch(ids, id);
+			if(i >= 0) {
+				return this;
+			}
+			i = -i - 1;
+			int[] newIds = new int[ids.length + 1];
+			Object[] newValues = new Object[ids.length + 1];
+			System.arraycopy(ids, 0, newIds, 0, i);
+			System.arraycopy(values, 0, newValues, 0, i);
+			newIds[i] = id;
+			newValues[i] = value;
+			System.arraycopy(ids, i, newIds, i + 1, ids.length - i);
+			System.arraycopy(values, i, newValues, i + 1, ids.length - i);
+			return new LinkSet<T>(key, table, newIds, newValues);
+		}
+
+		/**
+		 * Returns the set with the value removed, or this set if it has no value,
+		 * or null if no values are left.
+		 */
+		public LinkSet<T> without(int id) {
+			int i = Arrays.binarySearch(ids, id);
+			if(i < 0) {
+				return this;
+			}
+			if(ids.length == 1) {
+				return null;
+			}
+			int[] newIds = new int[ids.length - 1];
+			Object[] newValues = new Object[ids.length - 1];
+			System.arraycopy(ids, 0, newIds, 0, i);
+			System.arraycopy(values, 0, newValues, 0, i);
+			System.arraycopy(ids, i + 1, newIds, i, ids.length - i - 1);
+			System.arraycopy(values, i + 1, newValues, i, ids.length - i - 1);
+			return new LinkSet<T>(key, table, newIds, newValues);
+		}
+
+		@Override
+		public Iterator<T> iterator() {
+			return new Iterator<T>() {
+				int i = 0;
+
+				public boolean hasNext() {
+					return i < values.length;
+				}
+
+				@SuppressWarnings("unchecked")
+				public T next() {
+					if(i >= values.length) {
+						throw new NoSuchElementException();
+					}
+					return (T)values[i++];
+				}
+
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			// The id may be reused by another value after the snapshot was taken.
+			int i = Arrays.binarySearch(ids, table.getId(o));
+			return i >= 0 && values[i].equals(o);
+		}
+
+		@Override
+		public int size() {
+			return values.length;
+		}
+	}
+
+	/**
+	 * Maps int keys to sets of linked values. Sets are published in an atomic
+	 * array, so that they can be read without locking; modifications are done
+	 * under the lock of the collection.
+	 */
+	private static class LinkSetMap {
+		private volatile AtomicReferenceArray<LinkSet<?>> sets = new AtomicReferenceArray<LinkSet<?>>(64);
+		private int keyCount = 0;
+
+		public LinkSet<?> get(int key) {
+			AtomicReferenceArray<LinkSet<?>> sets = this.sets;
+			return key >= 0 && key < sets.length() ? sets.get(key) : null;
+		}
+
+		/**
+		 * Returns the set of the key, or null if there is no set or the id of the key
+		 * was reused by another key since the caller had obtained it.
+		 */
+		@SuppressWarnings("unchecked")
+		public <T> Set<T> get(int key, Object keyValue) {
+			LinkSet<?> set = get(key);
+			return set != null && set.key.equals(keyValue) ? (Set<T>)set : null;
+		}
+
+		public int capacity() {
+			return sets.length();
+		}
+
+		public boolean isEmpty() {
+			return keyCount == 0;
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		public boolean add(int key, Object keyValue, int id, Object value, IdTable<?> table) {
+			if(key >= sets.length()) {
+				AtomicReferenceArray<LinkSet<?>> grown = new AtomicReferenceArray<LinkSet<?>>(Math.max(key + 1, sets.length() * 2));
+				for (int i = 0; i < sets.length(); i++) {
+					grown.set(i, sets.get(i));
+				}
+				sets = grown;
+			}
+			LinkSet<?> set = sets.get(key);
+			if(set == null) {
+				sets.set(key, new LinkSet(keyValue, table, new int[]{id}, new Object[]{value}));
+				keyCount++;
+				return true;
+			}
+			LinkSet<?> newSet = set.with(id, value);
+			if(newSet == set) {
+				return false;
+			}
+			sets.set(key, newSet);
+			return true;
+		}
+
+		public boolean remove(int key, int id) {
+			LinkSet<?> set = get(key);
+			if(set == null) {
+				return false;
+			}
+			LinkSet<?> newSet = set.without(id);
+			if(newSet == set) {
+				return false;
+			}
+			sets.set(key, newSet);
+			if(newSet == null) {
+				keyCount--;
+			}
+			return true;
+		}
+
+		public LinkSet<?> removeKey(int key) {
+			LinkSet<?> set = get(key);
+			if(set != null) {
+				sets.set(key, null);
+				keyCount--;
+			}
+			return set;
+		}
+
+		public static boolean contains(LinkSet<?> set, int id) {
+			return set != null && set.containsId(id);
+		}
+
+		public void clear() {
+			sets = new AtomicReferenceArray<LinkSet<?>>(64);
+			keyCount = 0;
+		}
+	}
 
 	public LinkCollection(String id) {
 		this.id = id;
 	}
 
-	public void disableResourcesByVariableName() {
+	public synchronized void disableResourcesByVariableName() {
 		resourcesByVariableName = null;
 	}
 
 	protected int modifications = 0;
 
+	/**
+	 * Sets journal that records changes of the collection.
+	 * @param journal
+	 */
+	public synchronized void setJournal(LinkJournal journal) {
+		this.journal = journal;
+	}
+
+	public synchronized LinkJournal getJournal() {
+		return journal;
+	}
+
 	/**
 	 * Save link between resource and variable name.
 	 * It's needed for incremental validation because we must save all linked resources of changed java file.
 	 */
-	public void addLinkedResource(String variableName, IPath linkedResourcePath, boolean declaration) {
+	public synchronized void addLinkedResource(String variableName, IPath linkedResourcePath, boolean declaration) {
 		if(linkedResourcePath==null) {
 			throw new IllegalArgumentException(ValidationMessages.VALIDATION_CONTEXT_LINKED_RESOURCE_PATH_MUST_NOT_BE_NULL);
 		}
@@ -56,60 +359,43 @@ public class LinkCollection {
 			throw new IllegalArgumentException(ValidationMessages.VALIDATION_CONTEXT_VARIABLE_NAME_MUST_NOT_BE_NULL);
 		}
 		
-		linkedResourcePath = UniquePaths.getInstance().intern(linkedResourcePath);
+		IPath pathValue = UniquePaths.getInstance().intern(linkedResourcePath);
+		String nameValue = variableName.intern();
+		int path = pathIds.intern(pathValue);
+		int name = nameIds.intern(nameValue);
+		int m = modifications;
 
 		if(resourcesByVariableName != null) {
-			synchronized(this) {
-				Set<IPath> linkedResources = resourcesByVariableName.get(variableName);
-				if(linkedResources==null) {
-					// create set of linked resources with variable name.
-					linkedResources = new HashSet<IPath>();
-					resourcesByVariableName.put(variableName, linkedResources);
-				}
-				//save linked resources.
-				if(linkedResources.add(linkedResourcePath)) {
-					modifications++;
-				}
+			//save linked resources.
+			if(resourcesByVariableName.add(name, nameValue, path, pathValue, pathIds)) {
+				modifications++;
 			}
 		}
 
-		Set<String> variableNames = null;
 		// Save link between resource and variable names. It's needed if variable name changes in resource file.
-		synchronized(this) {
-			variableNames = variableNamesByResource.get(linkedResourcePath);
-			if(variableNames==null) {
-				variableNames = new HashSet<String>();
-				variableNamesByResource.put(linkedResourcePath, variableNames);
-			}
-			if(variableNames.add(variableName.intern())) {
-				modifications++;
-			}
+		// All links are kept in this map, so ids are referenced once per link in it.
+		if(variableNamesByResource.add(path, pathValue, name, nameValue, nameIds)) {
+			pathIds.addReference(path);
+			nameIds.addReference(name);
+			modifications++;
 		}
 
 		if(declaration) {
-			synchronized(this) {
-				Set<IPath> linkedResources = resourcesByDeclaringVariableName.get(variableName);
-				if(linkedResources==null) {
-					// create set of linked resources with declaring variable name.
-					linkedResources = new HashSet<IPath>();
-					resourcesByDeclaringVariableName.put(variableName, linkedResources);
-				}
-				// save linked resources.
-				if(linkedResources.add(linkedResourcePath)) {
-					modifications++;
-				}
+			// save linked resources.
+			if(resourcesByDeclaringVariableName.add(name, nameValue, path, pathValue, pathIds)) {
+				modifications++;
 			}
 
 			// Save link between resource and declaring  variable names. It's needed if variable name changes in resource file.
-			variableNames = declaringVariableNamesByResource.get(linkedResourcePath);
-			if(variableNames==null) {
-				variableNames = new HashSet<String>();
-				declaringVariableNamesByResource.put(linkedResourcePath, variableNames);
-			}
-			if(variableNames.add(variableName)) {
+			if(declaringVariableNamesByResource.add(path, pathValue, name, nameValue, nameIds)) {
 				modifications++;
 			}
 		}
+		if(journal != null && m != modifications) {
+			journal.linkAdded(nameValue, pathValue, declaration);
+		}
+		pathIds.releaseIfUnused(path);
+		nameIds.releaseIfUnused(name);
 	}
 
 	/**
@@ -117,52 +403,38 @@ public class LinkCollection {
 	 * @param oldVariableName
 	 * @param linkedResourcePath
 	 */
-	public void removeLinkedResource(String name, IPath linkedResourcePath) {
-		if(resourcesByVariableName != null) {
-			synchronized(this) {
-				Set<IPath> linkedResources = resourcesByVariableName.get(name);
-				if(linkedResources!=null) {
-					// remove linked resource.
-					if(linkedResources.remove(linkedResourcePath)) {
-						modifications++;
-					}
-				}
-				if(linkedResources.isEmpty()) {
-					resourcesByVariableName.remove(name);
-				}
-			}
+	public synchronized void removeLinkedResource(String name, IPath linkedResourcePath) {
+		int nameId = nameIds.getId(name);
+		int path = pathIds.getId(linkedResourcePath);
+		if(nameId < 0 || path < 0) {
+			return;
 		}
-		// Remove link between resource and declaring variable names.
-		Set<String> variableNames = variableNamesByResource.get(linkedResourcePath);
-		if(variableNames!=null) {
-			if(variableNames.remove(name)) {
+		int m = modifications;
+		if(resourcesByVariableName != null) {
+			// remove linked resource.
+			if(resourcesByVariableName.remove(nameId, path)) {
 				modifications++;
 			}
 		}
-		if(variableNames.isEmpty()) {
-			variableNamesByResource.remove(linkedResourcePath);
+		// Remove link between resource and declaring variable names.
+		boolean removed = variableNamesByResource.remove(path, nameId);
+		if(removed) {
+			modifications++;
 		}
-		synchronized(this) {
-			Set<IPath> linkedResources = resourcesByDeclaringVariableName.get(name);
-			if(linkedResources!=null) {
-				// remove linked resource.
-				if(linkedResources.remove(linkedResourcePath)) {
-					modifications++;
-				}
-			}
-			if(linkedResources.isEmpty()) {
-				resourcesByDeclaringVariableName.remove(name);
-			}
+		// remove linked resource.
+		if(resourcesByDeclaringVariableName.remove(nameId, path)) {
+			modifications++;
 		}
 		// Remove link between resource and declaring variable names.
-		variableNames = declaringVariableNamesByResource.get(linkedResourcePath);
-		if(variableNames!=null) {
-			if(variableNames.remove(name)) {
-				modifications++;
-			}
+		if(declaringVariableNamesByResource.remove(path, nameId)) {
+			modifications++;
+		}
+		if(journal != null && m != modifications) {
+			journal.linkRemoved(nameIds.get(nameId), pathIds.get(path));
 		}
-		if(variableNames.isEmpty()) {
-			declaringVariableNamesByResource.remove(linkedResourcePath);
+		if(removed) {
+			pathIds.removeReferences(path, 1);
+			nameIds.removeReferences(nameId, 1);
 		}
 	}
 
@@ -181,61 +453,74 @@ public class LinkCollection {
 	 * @param linkedResources
 	 */
 	public synchronized void removeLinkedResource(IPath resource) {
-		Set<String> resourceNames = variableNamesByResource.get(resource);
-		if(resourceNames!=null && resourcesByVariableName != null) {
-			for (String name : resourceNames) {
-				Set<IPath> linkedResources = resourcesByVariableName.get(name);
-				if(linkedResources!=null) {
-					if(linkedResources.remove(resource)) {
+		int path = pathIds.getId(resource);
+		if(path < 0) {
+			return;
+		}
+		int m = modifications;
+		LinkSet<?> linkedNames = variableNamesByResource.removeKey(path);
+		int[] names = linkedNames == null ? null : linkedNames.getIds();
+		if(names != null) {
+			modifications++;
+			if(resourcesByVariableName != null) {
+				for (int name : names) {
+					if(resourcesByVariableName.remove(name, path)) {
 						modifications++;
 					}
-					if(linkedResources.isEmpty()) {
-						resourcesByVariableName.remove(name);
-					}
 				}
 			}
 		}
-		if(variableNamesByResource.remove(resource) != null) {
-			modifications++;
-		}
 
-		resourceNames = declaringVariableNamesByResource.get(resource);
-		if(resourceNames!=null) {
-			for (String name : resourceNames) {
-				Set<IPath> linkedResources = resourcesByDeclaringVariableName.get(name);
-				if(linkedResources!=null) {
-					if(linkedResources.remove(resource)) {
-						modifications++;
-					}
-					if(linkedResources.isEmpty()) {
-						resourcesByDeclaringVariableName.remove(name);
-					}
+		LinkSet<?> declaringNames = declaringVariableNamesByResource.removeKey(path);
+		if(declaringNames != null) {
+			modifications++;
+			for (int name : declaringNames.getIds()) {
+				if(resourcesByDeclaringVariableName.remove(name, path)) {
+					modifications++;
 				}
 			}
 		}
-		if(declaringVariableNamesByResource.remove(resource) != null) {
-			modifications++;
+		if(journal != null && m != modifications) {
+			journal.resourceRemoved(pathIds.get(path));
+		}
+		if(names != null) {
+			for (int name : names) {
+				nameIds.removeReferences(name, 1);
+			}
+			pathIds.removeReferences(path, names.length);
 		}
 	}
 
+	/**
+	 * Returns an unmodifiable snapshot of resources linked to the variable name,
+	 * or null if there are none.
+	 */
 	public Set<IPath> getResourcesByVariableName(String variableName, boolean declaration) {
-		if(!declaration && resourcesByVariableName == null) {
+		LinkSetMap map = declaration ? resourcesByDeclaringVariableName : resourcesByVariableName;
+		if(map == null) {
 			throw new RuntimeException("ResourcesByVariableName are disabled.");
 		}
-		return declaration ? resourcesByDeclaringVariableName.get(variableName) : resourcesByVariableName.get(variableName);
+		return map.get(nameIds.getId(variableName), variableName);
 	}
 
-	public synchronized Set<String> getVariableNamesByResource(IPath fullPath, boolean declaration) {
-		return declaration?declaringVariableNamesByResource.get(fullPath):variableNamesByResource.get(fullPath);
+	/**
+	 * Returns an unmodifiable snapshot of variable names linked to the resource,
+	 * or null if there are none.
+	 */
+	public Set<String> getVariableNamesByResource(IPath fullPath, boolean declaration) {
+		return (declaration ? declaringVariableNamesByResource : variableNamesByResource).get(pathIds.getId(fullPath), fullPath);
 	}
 
 	/**
 	 * Adds resource without any link to any context variable name.
 	 * @param fullPath
 	 */
-	public void addUnnamedResource(IPath fullPath) {
+	public synchronized void addUnnamedResource(IPath fullPath) {
 		if(unnamedResources.add(fullPath)) {
 			modifications++;
+			if(journal != null) {
+				journal.unnamedAdded(fullPath);
+			}
 		}
 	}
 
@@ -251,9 +536,12 @@ public class LinkCollection {
 	 * Removes unnamed resource.
 	 * @param fullPath
 	 */
-	public void removeUnnamedResource(IPath fullPath) {
+	public synchronized void removeUnnamedResource(IPath fullPath) {
 		if(unnamedResources.remove(fullPath)) {
 			modifications++;
+			if(journal != null) {
+				journal.unnamedRemoved(fullPath);
+			}
 		}
 	}
 
@@ -268,7 +556,65 @@ public class LinkCollection {
 		declaringVariableNamesByResource.clear();
 		resourcesByDeclaringVariableName.clear();
 		unnamedResources.clear();
+		pathIds = new IdTable<IPath>();
+		nameIds = new IdTable<String>();
 		modifications = 0;
+		if(journal != null) {
+			journal.cleared();
+		}
+	}
+
+	/**
+	 * Returns the number of links between resources and variable names
+	 * and of unnamed resources.
+	 */
+	public synchronized int getLinkCount() {
+		int count = unnamedResources.size();
+		int capacity = variableNamesByResource.capacity();
+		for (int pathId = 0; pathId < capacity; pathId++) {
+			LinkSet<?> names = variableNamesByResource.get(pathId);
+			if(names != null) {
+				count += names.size();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Records all links of the collection to the journal.
+	 * @param journal
+	 */
+	synchronized void writeSnapshot(LinkJournal journal) {
+		int capacity = variableNamesByResource.capacity();
+		for (int pathId = 0; pathId < capacity; pathId++) {
+			LinkSet<?> names = variableNamesByResource.get(pathId);
+			if(names == null) continue;
+			IPath path = pathIds.get(pathId);
+			LinkSet<?> declaringNames = declaringVariableNamesByResource.get(pathId);
+			for (int nameId: names.getIds()) {
+				journal.linkAdded(nameIds.get(nameId), path, LinkSetMap.contains(declaringNames, nameId));
+			}
+		}
+		for (IPath path: unnamedResources) {
+			journal.unnamedAdded(path);
+		}
+	}
+
+	/**
+	 * Writes changes made since the previous save to the attached journal.
+	 * @return false if the collection has no journal
+	 * @throws IOException
+	 */
+	public boolean saveJournal() throws IOException {
+		LinkJournal journal = getJournal();
+		if(journal == null) {
+			return false;
+		}
+		journal.save(this);
+		synchronized (this) {
+			modifications = 0;
+		}
+		return true;
 	}
 
 	/**
@@ -276,16 +622,18 @@ public class LinkCollection {
 	 * @param root
 	 */
 	public synchronized void store(Element root, Map<String, String> pathAliases) {
-		Set<IPath> paths = variableNamesByResource.keySet();
-		for (IPath path: paths) {
+		int capacity = variableNamesByResource.capacity();
+		for (int pathId = 0; pathId < capacity; pathId++) {
+			LinkSet<?> variables = variableNamesByResource.get(pathId);
+			if(variables == null || variables.size() == 0) continue;
+			IPath path = pathIds.get(pathId);
 			String pathAlias = ELReference.getAlias(pathAliases, path.toString());
-			Set<String> variables = variableNamesByResource.get(path);
-			if(variables == null || variables.isEmpty()) continue;
+			LinkSet<?> declaringVariables = declaringVariableNamesByResource.get(pathId);
 			StringBuilder declarationFalseNames = new StringBuilder();
 			StringBuilder declarationTrueNames = new StringBuilder();
-			for (String name: variables) {
-				String nameAlias = ELReference.getAlias(pathAliases, name);
-				if(checkDeclaration(path, name)) {
+			for (int nameId: variables.getIds()) {
+				String nameAlias = ELReference.getAlias(pathAliases, nameIds.get(nameId));
+				if(LinkSetMap.contains(declaringVariables, nameId)) {
 					declarationTrueNames.append(nameAlias).append(";");
 				} else {
 					declarationFalseNames.append(nameAlias).append(";");
@@ -319,7 +667,7 @@ public class LinkCollection {
 	 * Load the collection from XML
 	 * @param root
 	 */
-	public void load(Element root, Map<String, String> pathAliases) {
+	public synchronized void load(Element root, Map<String, String> pathAliases) {
 		if(root == null) return;
 		Element[] linkedResources = XMLUtilities.getChildren(root, "linked-resource"); //$NON-NLS-1$
 		if(linkedResources != null) for (int i = 0; i < linkedResources.length; i++) {
@@ -354,18 +702,6 @@ public class LinkCollection {
 		modifications = 0;
 	}
 
-	private boolean checkDeclaration(IPath resource, String variableName) {
-		Set<IPath> paths = resourcesByDeclaringVariableName.get(variableName);
-		if(paths!=null) {
-			for (IPath path : paths) {
-				if(path.equals(resource)) {
-					return true;
-				}
-			}
-		}
-		return false;
-	}
-
 	public int getModificationsSinceLastStore() {
 		return modifications;
 	}
@@ -374,7 +710,7 @@ public class LinkCollection {
 		return id;
 	}
 
-	public boolean isEmpty() {
+	public synchronized boolean isEmpty() {
 		return (resourcesByVariableName == null || resourcesByVariableName.isEmpty()) && variableNamesByResource.isEmpty() && resourcesByDeclaringVariableName.isEmpty() && declaringVariableNamesByResource.isEmpty() && unnamedResources.isEmpty();
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,395 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.common.validation.internal;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.jboss.tools.common.validation.CommonValidationPlugin;
+
+/**
+ * Append-only journal of changes of a {@link LinkCollection}, kept in the working
+ * location of the project. Saving appends the changes made since the previous save,
+ * so that its cost depends on the number of modifications rather than on the size
+ * of the collection. When the journal grows much larger than the collection, it is
+ * compacted: rewritten with one record per link.
+ *
+ * Format (version {@link #VERSION}):
+ * <pre>
+ * int magic, int version, records
+ * record: byte op, op arguments
+ *   STRING: int id, UTF value (defines id used by the next records)
+ *   ADD: int name, int path, boolean declaration
+ *   REMOVE: int name, int path
+ *   REMOVE_RESOURCE: int path
+ *   ADD_UNNAMED, REMOVE_UNNAMED: int path
+ *   CLEAR
+ * </pre>
+ * A journal with a broken tail (e.g. the session was killed while appending)
+ * is replayed up to the broken record and compacted on the next save.
+ */
+public class LinkJournal {
+	public static final String ENABLED_PROPERTY = "org.jboss.tools.common.validation.linkJournal"; //$NON-NLS-1$
+
+	static final int MAGIC = 0x4C4E4B4A;
+	static final int VERSION = 1;
+	static final String FILE_PREFIX = "links-"; //$NON-NLS-1$
+	static final String FILE_SUFFIX = ".journal"; //$NON-NLS-1$
+
+	static final byte STRING = 0;
+	static final byte ADD = 1;
+	static final byte REMOVE = 2;
+	static final byte REMOVE_RESOURCE = 3;
+	static final byte ADD_UNNAMED = 4;
+	static final byte REMOVE_UNNAMED = 5;
+	static final byte CLEAR = 6;
+
+	/**
+	 * The journal is compacted when it has more than
+	 * COMPACTION_RATIO * (number of links) + MIN_COMPACTION_RECORDS records.
+	 */
+	static final int COMPACTION_RATIO = 2;
+	static final int MIN_COMPACTION_RECORDS = 1000;
+
+	private final File file;
+	private final Map<String, Integer> strings = new HashMap<String, Integer>();
+	private final ByteArrayOutputStream pendingBytes = new ByteArrayOutputStream();
+	private final DataOutputStream pending = new DataOutputStream(pendingBytes);
+	private int pendingRecords = 0;
+	private int records = 0;
+	private boolean needsSnapshot = true;
+
+	public LinkJournal(File file) {
+		this.file = file;
+	}
+
+	public static boolean isEnabled() {
+		return !"false".equals(System.getProperty(ENABLED_PROPERTY)); //$NON-NLS-1$
+	}
+
+	/**
+	 * Returns journal file of the link collection of the validator in the project.
+	 * @param project
+	 * @param validatorId
+	 * @return
+	 */
+	public static File getJournalFile(IProject project, String validatorId) {
+		StringBuilder name = new StringBuilder(FILE_PREFIX);
+		for (int i = 0; i < validatorId.length(); i++) {
+			char c = validatorId.charAt(i);
+			name.append(Character.isLetterOrDigit(c) || c == '.' || c == '-' ? c : '_');
+		}
+		name.append(FILE_SUFFIX);
+		return project.getWorkingLocation(CommonValidationPlugin.PLUGIN_ID).append(name.toString()).toFile();
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the number of records written to the journal file.
+	 * @return
+	 */
+	public synchronized int getRecordCount() {
+		return records;
+	}
+
+	/**
+	 * Applies the records of the journal file to the collection. The collection
+	 * should not be attached to a journal while it is replayed.
+	 * @param links
+	 * @return false if the journal does not exist or can not be read
+	 */
+	public synchronized boolean replay(LinkCollection links) {
+		strings.clear();
+		records = 0;
+		needsSnapshot = true;
+		File backup = getBackupFile();
+		if(!file.exists() && backup.isFile()) {
+			// Writing of snapshot was interrupted after the journal was moved to backup.
+			backup.renameTo(file);
+		}
+		if(!file.isFile()) {
+			return false;
+		}
+		List<String> values = new ArrayList<String>();
+		boolean header = false;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+					return false;
+				}
+				header = true;
+				int count = 0;
+				int op;
+				while((op = in.read()) >= 0) {
+					switch(op) {
+					case STRING:
+						int id = in.readInt();
+						String value = in.readUTF();
+						if(id != values.size()) {
+							throw new IOException("Unexpected string id in link journal " + file); //$NON-NLS-1$
+						}
+						values.add(value);
+						break;
+					case ADD:
+						String name = values.get(in.readInt());
+						IPath path = new Path(values.get(in.readInt()));
+						links.addLinkedResource(name, path, in.readBoolean());
+						count++;
+						break;
+					case REMOVE:
+						name = values.get(in.readInt());
+						links.removeLinkedResource(name, new Path(values.get(in.readInt())));
+						count++;
+						break;
+					case REMOVE_RESOURCE:
+						links.removeLinkedResource(new Path(values.get(in.readInt())));
+						count++;
+						break;
+					case ADD_UNNAMED:
+						links.addUnnamedResource(new Path(values.get(in.readInt())));
+						count++;
+						break;
+					case REMOVE_UNNAMED:
+						links.removeUnnamedResource(new Path(values.get(in.readInt())));
+						count++;
+						break;
+					case CLEAR:
+						links.clearAll();
+						count++;
+						break;
+					default:
+						throw new IOException("Unknown record in link journal " + file); //$NON-NLS-1$
+					}
+				}
+				records = count;
+				for (int i = 0; i < values.size(); i++) {
+					strings.put(values.get(i), Integer.valueOf(i));
+				}
+				needsSnapshot = false;
+			} finally {
+				in.close();
+			}
+		} catch (EOFException e) {
+			if(!header) {
+				// The journal ends inside its header, it is corrupt.
+				return false;
+			}
+			// The tail of the journal is broken; records read so far are applied.
+		} catch (IndexOutOfBoundsException e) {
+			CommonValidationPlugin.getDefault().logError(e);
+			return false;
+		} catch (IOException e) {
+			CommonValidationPlugin.getDefault().logError(e);
+			return false;
+		}
+		return true;
+	}
+
+	private int getStringId(String value) throws IOException {
+		Integer id = strings.get(value);
+		if(id == null) {
+			id = Integer.valueOf(strings.size());
+			strings.put(value, id);
+			pending.writeByte(STRING);
+			pending.writeInt(id.intValue());
+			pending.writeUTF(value);
+		}
+		return id.intValue();
+	}
+
+	synchronized void linkAdded(String name, IPath path, boolean declaration) {
+		try {
+			int nameId = getStringId(name);
+			int pathId = getStringId(path.toString());
+			pending.writeByte(ADD);
+			pending.writeInt(nameId);
+			pending.writeInt(pathId);
+			pending.writeBoolean(declaration);
+			pendingRecords++;
+		} catch (IOException e) {
+			// Not expected for byte array.
+			needsSnapshot = true;
+		}
+	}
+
+	synchronized void linkRemoved(String name, IPath path) {
+		try {
+			int nameId = getStringId(name);
+			int pathId = getStringId(path.toString());
+			pending.writeByte(REMOVE);
+			pending.writeInt(nameId);
+			pending.writeInt(pathId);
+			pendingRecords++;
+		} catch (IOException e) {
+			needsSnapshot = true;
+		}
+	}
+
+	synchronized void resourceRemoved(IPath path) {
+		writePathRecord(REMOVE_RESOURCE, path);
+	}
+
+	synchronized void unnamedAdded(IPath path) {
+		writePathRecord(ADD_UNNAMED, path);
+	}
+
+	synchronized void unnamedRemoved(IPath path) {
+		writePathRecord(REMOVE_UNNAMED, path);
+	}
+
+	synchronized void cleared() {
+		try {
+			pending.writeByte(CLEAR);
+			pendingRecords++;
+		} catch (IOException e) {
+			needsSnapshot = true;
+		}
+	}
+
+	private void writePathRecord(byte op, IPath path) {
+		try {
+			int pathId = getStringId(path.toString());
+			pending.writeByte(op);
+			pending.writeInt(pathId);
+			pendingRecords++;
+		} catch (IOException e) {
+			needsSnapshot = true;
+		}
+	}
+
+	private void resetPending() {
+		strings.clear();
+		pendingBytes.reset();
+		pendingRecords = 0;
+	}
+
+	/**
+	 * Writes changes of the collection attached to this journal. Appends records
+	 * made since the previous save, or rewrites the journal with the current links
+	 * if it was not replayed, or is broken, or is too long.
+	 * @param links
+	 * @throws IOException
+	 */
+	public void save(LinkCollection links) throws IOException {
+		int linkCount = links.getLinkCount();
+		boolean snapshot;
+		synchronized (this) {
+			snapshot = needsSnapshot || records + pendingRecords > COMPACTION_RATIO * linkCount + MIN_COMPACTION_RECORDS;
+			if(snapshot) {
+				resetPending();
+			}
+		}
+		if(snapshot) {
+			// Changes recorded while the snapshot is written are applied over it.
+			links.writeSnapshot(this);
+		}
+		synchronized (this) {
+			if(!snapshot && pendingRecords == 0) {
+				return;
+			}
+			try {
+				if(snapshot) {
+					writeSnapshot();
+				} else {
+					append();
+				}
+			} catch (IOException e) {
+				needsSnapshot = true;
+				throw e;
+			} finally {
+				pendingBytes.reset();
+			}
+		}
+	}
+
+	private void writeSnapshot() throws IOException {
+		File parent = file.getParentFile();
+		if(parent != null && !parent.isDirectory()) {
+			parent.mkdirs();
+		}
+		File tmp = new File(parent, file.getName() + ".tmp"); //$NON-NLS-1$
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			pendingBytes.writeTo(out);
+		} finally {
+			out.close();
+		}
+		replace(tmp);
+		records = pendingRecords;
+		pendingRecords = 0;
+		needsSnapshot = false;
+	}
+
+	private File getBackupFile() {
+		return new File(file.getParentFile(), file.getName() + ".bak"); //$NON-NLS-1$
+	}
+
+	/**
+	 * Replaces the journal file with the written temporary file. Renaming replaces
+	 * the file at once where the file system allows that; otherwise the journal
+	 * is moved to backup first, so that either the old or the new journal is kept
+	 * if writing is interrupted.
+	 * @param tmp
+	 * @throws IOException
+	 */
+	private void replace(File tmp) throws IOException {
+		if(tmp.renameTo(file)) {
+			return;
+		}
+		File backup = getBackupFile();
+		backup.delete();
+		if(file.exists() && !file.renameTo(backup)) {
+			tmp.delete();
+			throw new IOException("Cannot replace link journal " + file); //$NON-NLS-1$
+		}
+		if(!tmp.renameTo(file)) {
+			backup.renameTo(file);
+			tmp.delete();
+			throw new IOException("Cannot write link journal " + file); //$NON-NLS-1$
+		}
+		backup.delete();
+	}
+
+	private void append() throws IOException {
+		if(!file.isFile()) {
+			needsSnapshot = true;
+			throw new IOException("Link journal is removed " + file); //$NON-NLS-1$
+		}
+		FileOutputStream out = new FileOutputStream(file, true);
+		try {
+			pendingBytes.writeTo(out);
+		} finally {
+			out.close();
+		}
+		records += pendingRecords;
+		pendingRecords = 0;
+	}
+}
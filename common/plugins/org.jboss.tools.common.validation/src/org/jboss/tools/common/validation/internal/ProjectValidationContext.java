@@ -10,15 +10,20 @@
  ******************************************************************************/
 package org.jboss.tools.common.validation.internal;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.IPath;
 import org.jboss.tools.common.el.core.ELReference;
+import org.jboss.tools.common.validation.CommonValidationPlugin;
 import org.jboss.tools.common.validation.IProjectValidationContext;
 import org.jboss.tools.common.validation.ValidationResourceRegister;
 import org.jboss.tools.common.xml.XMLUtilities;
@@ -30,6 +35,11 @@ import org.w3c.dom.Element;
  * @author Alexey Kazakov
  */
 public class ProjectValidationContext implements IProjectValidationContext {
+	/**
+	 * ID of the validator of ELs, which links are kept by the context.
+	 */
+	public static final String EL_VALIDATOR_ID = "jboss.el"; //$NON-NLS-1$
+
 	static String VALIDATION = "validation"; //$NON-NLS-1$
 	static String CORE = "core"; //$NON-NLS-1$
 	static String EL = "el"; //$NON-NLS-1$
@@ -40,10 +50,12 @@ public class ProjectValidationContext implements IProjectValidationContext {
 	static String FULL_VALIDATION_REQUIRED = "fullValidationRequired"; //$NON-NLS-1$
 	static String VALIDATOR_ID = "validator-id"; //$NON-NLS-1$
 	static String TRUE = "true"; //$NON-NLS-1$
+	static String JOURNAL = "journal"; //$NON-NLS-1$
+	static String EL_INDEX = "index"; //$NON-NLS-1$
 
 	// We should load/save these collections between eclipse sessions.
 	private Map<String, LinkCollection> coreLinks = new HashMap<String, LinkCollection>();
-	private ELValidatorContext elLinks = new ELValidatorContext("jboss.el"); //$NON-NLS-1$
+	private ELValidatorContext elLinks = new ELValidatorContext(EL_VALIDATOR_ID);
 
 	private Map<String, Set<String>> oldVariableNamesForELValidation = new HashMap<String, Set<String>>();
 
@@ -51,21 +63,34 @@ public class ProjectValidationContext implements IProjectValidationContext {
 
 	private boolean fullValidationRequired = false;
 
+	private ELReferenceIndex elIndex;
+	private IProject elIndexProject;
+
+	// Project which keeps journals of core links, see restoreLinks(IProject).
+	private IProject journalProject;
+	// True if core links were stored to journals instead of XML.
+	private boolean linksInJournals = false;
+	// True if links of ELs were stored to EL index instead of XML.
+	private boolean elLinksInIndex = false;
+
 	public ProjectValidationContext() {}
 
-	public LinkCollection getCoreLinks(String validatorId) {
+	public synchronized LinkCollection getCoreLinks(String validatorId) {
 		LinkCollection linkCollection = coreLinks.get(validatorId);
 		if(linkCollection==null) {
 			linkCollection = new LinkCollection(validatorId);
 			if(validatorId.equals("jboss.cdi.core")) {
 				linkCollection.disableResourcesByVariableName();
 			}
+			if(journalProject != null) {
+				linkCollection.setJournal(new LinkJournal(LinkJournal.getJournalFile(journalProject, validatorId)));
+			}
 			coreLinks.put(validatorId, linkCollection);
 		}
 		return linkCollection;
 	}
 
-	private Set<String> getOldVariableNamesForELValidation(String validatorId) {
+	private synchronized Set<String> getOldVariableNamesForELValidation(String validatorId) {
 		Set<String> linkCollection = oldVariableNamesForELValidation.get(validatorId);
 		if(linkCollection==null) {
 			linkCollection = new HashSet<String>();
@@ -74,7 +99,7 @@ public class ProjectValidationContext implements IProjectValidationContext {
 		return linkCollection;
 	}
 
-	private Set<String> getIds() {
+	private synchronized Set<String> getIds() {
 		Set<String> ids = new HashSet<String>();
 		ids.addAll(coreLinks.keySet());
 		ids.addAll(oldVariableNamesForELValidation.keySet());
@@ -173,7 +198,7 @@ public class ProjectValidationContext implements IProjectValidationContext {
 	 * (non-Javadoc)
 	 * @see org.jboss.tools.jst.web.kb.validation.IValidationContext#addVariableNameForELValidation(java.lang.String)
 	 */
-	public void addVariableNameForELValidation(String validatorId, String name) {
+	public synchronized void addVariableNameForELValidation(String validatorId, String name) {
 		getOldVariableNamesForELValidation(validatorId).add(name);
 	}
 
@@ -237,13 +262,16 @@ public class ProjectValidationContext implements IProjectValidationContext {
 		coreLinks.clear();
 		elLinks.clearAll();
 		oldVariableNamesForELValidation.clear();
+		// Journals and EL index have nothing to restore after links are cleared.
+		linksInJournals = false;
+		elLinksInIndex = false;
 	}
 
 	/*
 	 * (non-Javadoc)
 	 * @see org.jboss.tools.jst.web.kb.validation.IValidationContext#clearOldVariableNameForElValidation()
 	 */
-	public void clearOldVariableNameForElValidation() {
+	public synchronized void clearOldVariableNameForElValidation() {
 		oldVariableNamesForELValidation.clear();
 	}
 
@@ -289,13 +317,26 @@ public class ProjectValidationContext implements IProjectValidationContext {
 		if(isFullValidationRequired()) {
 			validation.setAttribute(FULL_VALIDATION_REQUIRED, TRUE);
 		}
-		for (LinkCollection links : coreLinks.values()) {
+		// Links are in journals if they were saved, or if they were not restored yet.
+		boolean journals = journalProject != null ? storeLinks() : linksInJournals;
+		if(journals) {
+			validation.setAttribute(JOURNAL, TRUE);
+		}
+		for (LinkCollection links : getCoreLinksList()) {
 			Element core = XMLUtilities.createElement(validation, CORE);
 			core.setAttribute(VALIDATOR_ID, links.getId());
-			links.store(core, pathAliases);
+			if(!journals) {
+				links.store(core, pathAliases);
+			}
 		}
 		Element el = XMLUtilities.createElement(validation, EL);
-		elLinks.store(el, pathAliases);
+		// Links of ELs are in the index if it was saved, or if they were not restored yet.
+		boolean index = getELIndexProject() != null ? saveELIndex() : elLinksInIndex;
+		if(index) {
+			el.setAttribute(EL_INDEX, TRUE);
+		} else {
+			elLinks.store(el, pathAliases);
+		}
 		
 		Element aliases = XMLUtilities.createElement(root, ALIASES);
 		for (String path: pathAliases.keySet()) {
@@ -325,6 +366,7 @@ public class ProjectValidationContext implements IProjectValidationContext {
 		Element validation = XMLUtilities.getUniqueChild(root, VALIDATION);
 		if(validation == null) return;
 		setFullValidationRequired(TRUE.equals(validation.getAttribute(FULL_VALIDATION_REQUIRED)));
+		linksInJournals = TRUE.equals(validation.getAttribute(JOURNAL));
 		Element[] cores = XMLUtilities.getChildren(validation, CORE);
 		for (Element core : cores) {
 			String id = core.getAttribute(VALIDATOR_ID);
@@ -334,7 +376,159 @@ public class ProjectValidationContext implements IProjectValidationContext {
 		}
 		Element[] els = XMLUtilities.getChildren(validation, EL);
 		for (Element el : els) {
-			elLinks.load(el, pathAliases);
+			if(TRUE.equals(el.getAttribute(EL_INDEX))) {
+				elLinksInIndex = true;
+			} else {
+				elLinks.load(el, pathAliases);
+			}
+		}
+	}
+
+	private synchronized ELReferenceIndex getELIndex(IProject project) {
+		if(!ELReferenceIndex.isEnabled() || !project.isAccessible()) {
+			return null;
+		}
+		if(elIndex == null || !project.equals(elIndexProject)) {
+			elIndex = new ELReferenceIndex(ELReferenceIndex.getIndexFile(project));
+			elIndexProject = project;
+		}
+		return elIndex;
+	}
+
+	private synchronized IProject getELIndexProject() {
+		return elIndexProject;
+	}
+
+	/*
+	 * Writes changes of links of ELs to EL index of the project which links were restored.
+	 * Links changed after the last validation are written as not confirmed, since the
+	 * content of their files is not tracked outside of validation.
+	 * Returns false if the index is disabled or cannot be written.
+	 */
+	private boolean saveELIndex() {
+		ELReferenceIndex index = getELIndex(getELIndexProject());
+		if(index == null) {
+			return false;
+		}
+		elLinks.updateIndex(index, elLinks.getChangedResources());
+		try {
+			index.save();
+		} catch (IOException e) {
+			CommonValidationPlugin.getDefault().logError(e);
+			return false;
+		}
+		return true;
+	}
+
+	private synchronized List<LinkCollection> getCoreLinksList() {
+		return new ArrayList<LinkCollection>(coreLinks.values());
+	}
+
+	/**
+	 * Attaches journals of the project to core links. If core links were stored
+	 * to journals by store(Element), replays the journals; if a journal cannot be
+	 * read, full validation is required. Does nothing if journals are attached already.
+	 * @param project
+	 */
+	public void restoreLinks(IProject project) {
+		if(!LinkJournal.isEnabled() || !project.isAccessible()) {
+			return;
+		}
+		synchronized (this) {
+			if(project.equals(journalProject)) {
+				return;
+			}
+			journalProject = project;
+		}
+		for (LinkCollection links : getCoreLinksList()) {
+			LinkJournal journal = new LinkJournal(LinkJournal.getJournalFile(project, links.getId()));
+			if(linksInJournals && links.isEmpty() && !journal.replay(links)) {
+				setFullValidationRequired(true);
+			}
+			links.setJournal(journal);
+		}
+		linksInJournals = false;
+	}
+
+	/**
+	 * Appends changes of core links to their journals.
+	 * @return false if links are not journaled or a journal cannot be written
+	 */
+	public boolean storeLinks() {
+		if(journalProject == null || !journalProject.isAccessible()) {
+			return false;
+		}
+		boolean result = true;
+		for (LinkCollection links : getCoreLinksList()) {
+			try {
+				if(!links.saveJournal()) {
+					result = false;
+				}
+			} catch (IOException e) {
+				CommonValidationPlugin.getDefault().logError(e);
+				result = false;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * If links of ELs were stored to EL index of the project by store(Element), restores
+	 * them from the index, except for links of the given changed files which content differs
+	 * from the one they were computed for. If the index cannot be read, full validation
+	 * is required. If links of ELs were loaded from XML, they replace the content of
+	 * the index on the next save.
+	 * @param project
+	 * @param files changed files
+	 * @return changed files which links are restored and do not need revalidation of ELs
+	 */
+	public Set<IFile> restoreELs(IProject project, Set<IFile> files) {
+		Set<IFile> restored = new HashSet<IFile>();
+		ELReferenceIndex index = getELIndex(project);
+		if(index == null) {
+			return restored;
+		}
+		boolean inIndex;
+		synchronized (this) {
+			inIndex = elLinksInIndex;
+			elLinksInIndex = false;
+		}
+		if(!inIndex) {
+			// The index may be older than the links loaded from XML.
+			elLinks.changeAll();
+			return restored;
+		}
+		Set<IPath> stale = new HashSet<IPath>();
+		for (IFile file : files) {
+			if(index.isUpToDate(file)) {
+				restored.add(file);
+			} else {
+				stale.add(file.getFullPath());
+			}
+		}
+		if(!index.restoreAll(elLinks, stale)) {
+			setFullValidationRequired(true);
+			restored.clear();
+		}
+		// Restored links are in the index already.
+		elLinks.clearChanges();
+		return restored;
+	}
+
+	/**
+	 * Writes links of ELs changed since the previous call to EL index of the project.
+	 * @param project
+	 * @param modifiedFiles files modified while they were validated
+	 */
+	public void storeELs(IProject project, Set<IPath> modifiedFiles) {
+		ELReferenceIndex index = getELIndex(project);
+		if(index != null) {
+			elLinks.updateIndex(index, modifiedFiles);
+			try {
+				index.save();
+			} catch (IOException e) {
+				CommonValidationPlugin.getDefault().logError(e);
+			}
 		}
 	}
 
@@ -21,7 +21,8 @@ import org.junit.runners.Suite;
 	WebUtilsTest.class,
 	HttpUtilTest.class,
 	BeanUtilTest.class,
-	JandexTest.class})
+	JandexTest.class,
+	TypeResolutionCacheTest.class})
 public class CommonCoreTestSuite {
 
 }
\ No newline at end of file
@@ -10,7 +10,10 @@
  ******************************************************************************/
 package org.jboss.tools.common.core.test;
 
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -22,6 +25,7 @@ import org.eclipse.jdt.core.JavaCore;
 import org.jboss.tools.common.java.IParametedType;
 import org.jboss.tools.common.java.ParametedType;
 import org.jboss.tools.common.java.ParametedTypeFactory;
+import org.jboss.tools.common.java.ParametedTypeInterner;
 import org.jboss.tools.common.util.EclipseJavaUtil;
 import org.jboss.tools.test.util.ResourcesUtils;
 import org.junit.Before;
@@ -111,4 +115,83 @@ public class ParametedTypeTest {
 		}
 	}
 
+	@Test
+	public void testSharedInstances() throws Exception {
+		IJavaProject javaProject = JavaCore.create(project);
+		IType dependencies = EclipseJavaUtil.findType(javaProject, "parameters.Dependencies");
+		assertNotNull(dependencies);
+		IField f1 = dependencies.getField("f1");
+		assertNotNull(f1);
+		if(!ParametedTypeInterner.getInstance().isEnabled()) {
+			return;
+		}
+
+		ParametedTypeFactory factory1 = new ParametedTypeFactory();
+		ParametedTypeFactory factory2 = new ParametedTypeFactory();
+		ParametedType t1 = factory1.getParametedType(dependencies, f1.getTypeSignature());
+		assertNotNull(t1);
+		assertSame(t1, factory2.getParametedType(dependencies, f1.getTypeSignature()));
+
+		// Type referenced elsewhere survives cleaning of factories.
+		factory1.clean();
+		factory2.clean();
+		assertSame(t1, factory1.getParametedType(dependencies, f1.getTypeSignature()));
+	}
+
+	@Test
+	public void testSharedInstancesAreReadOnly() throws Exception {
+		IJavaProject javaProject = JavaCore.create(project);
+		IType dependencies = EclipseJavaUtil.findType(javaProject, "parameters.Dependencies");
+		IField f1 = dependencies.getField("f1");
+		if(!ParametedTypeInterner.getInstance().isEnabled()) {
+			return;
+		}
+
+		ParametedTypeFactory factory = new ParametedTypeFactory();
+		ParametedType t1 = factory.getParametedType(dependencies, f1.getTypeSignature());
+		assertTrue(t1.isShared());
+		assertNotSame(factory, t1.getFactory());
+		try {
+			t1.setSignature(ParametedTypeFactory.OBJECT);
+			fail("Shared type is modified");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		try {
+			t1.addParameter(new ParametedType());
+			fail("Shared type is modified");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		for (IParametedType p: t1.getParameters()) {
+			assertTrue(((ParametedType)p).isShared());
+		}
+		// Inheritance of a shared type is built without the factory that built it.
+		factory.clean();
+		assertNotNull(t1.getSuperType());
+		assertFalse(t1.getInheritedTypes().isEmpty());
+	}
+
+	@Test
+	public void testKeysDependOnContext() throws Exception {
+		IJavaProject javaProject = JavaCore.create(project);
+		IType dependencies = EclipseJavaUtil.findType(javaProject, "parameters.Dependencies");
+		IType type4 = EclipseJavaUtil.findType(javaProject, "parameters.Dependencies.Type4");
+		IField f2 = type4.getField("f2");
+		if(!ParametedTypeInterner.getInstance().isEnabled()) {
+			return;
+		}
+
+		// Unresolved signature means different types in different contexts.
+		ParametedType inType4 = new ParametedTypeFactory().getParametedType(type4, f2.getTypeSignature());
+		ParametedType inDependencies = new ParametedTypeFactory().getParametedType(dependencies, f2.getTypeSignature());
+		assertNotNull(inType4);
+		assertNotNull(inDependencies);
+		assertNotSame(inType4, inDependencies);
+
+		// Resolved signature means the same type in any context of the project.
+		String object = "Ljava.lang.Object;";
+		assertSame(new ParametedTypeFactory().getParametedType(type4, object), new ParametedTypeFactory().getParametedType(dependencies, object));
+	}
+
 }
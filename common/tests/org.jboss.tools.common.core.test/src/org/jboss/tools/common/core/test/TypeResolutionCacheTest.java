@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.common.core.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragment;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaCore;
+import org.jboss.tools.common.util.EclipseJavaUtil;
+import org.jboss.tools.common.util.TypeResolutionCache;
+import org.jboss.tools.test.util.ResourcesUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TypeResolutionCacheTest {
+	IJavaProject javaProject;
+	IClasspathEntry[] classpath;
+	IType dependencies;
+	IProject provider;
+
+	@Before
+	public void setUp() throws Exception {
+		IProject project = ResourcesPlugin.getWorkspace().getRoot().getProject("JavaProject");
+		if(!project.exists()) {
+			project = ResourcesUtils.importProject("org.jboss.tools.common.core.test", "projects/JavaProject");
+		}
+		javaProject = JavaCore.create(project);
+		classpath = javaProject.getRawClasspath();
+		dependencies = EclipseJavaUtil.findType(javaProject, "parameters.Dependencies");
+		assertNotNull(dependencies);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if(provider != null) {
+			javaProject.setRawClasspath(classpath, null);
+			provider.delete(true, null);
+		}
+		IType added = EclipseJavaUtil.findType(javaProject, "parameters.Added");
+		if(added != null) {
+			added.getCompilationUnit().delete(true, null);
+		}
+	}
+
+	@Test
+	public void testMemoizedLookups() throws Exception {
+		TypeResolutionCache cache = TypeResolutionCache.getInstance();
+		cache.clean();
+		cache.resetStatistics();
+
+		assertEquals("parameters.Dependencies.Type1", cache.resolveType(dependencies, "Type1"));
+		assertEquals("parameters.Dependencies.Type1", cache.resolveType(dependencies, "Type1"));
+		assertEquals(1, cache.getSize());
+		assertEquals(1, cache.getUnitReadCount());
+		assertEquals(2, cache.getHitCount());
+
+		assertNull(cache.resolveType(dependencies, "UnknownType"));
+		assertNull(cache.resolveType(dependencies, "UnknownType"));
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.getUnresolvedHitCount());
+
+		// Same unit is not read again for another handle of the type.
+		IType type1 = dependencies.getType("Type1");
+		assertEquals("java.lang.String", cache.resolveType(type1, "String"));
+		assertEquals(1, cache.getUnitReadCount());
+	}
+
+	@Test
+	public void testAddedTypeInvalidatesUnresolvedName() throws Exception {
+		TypeResolutionCache cache = TypeResolutionCache.getInstance();
+		cache.clean();
+
+		assertNull(cache.resolveType(dependencies, "Added"));
+		IPackageFragment p = dependencies.getPackageFragment();
+		p.createCompilationUnit("Added.java", "package parameters;\npublic class Added {}\n", true, null);
+		assertEquals("parameters.Added", cache.resolveType(dependencies, "Added"));
+	}
+
+	@Test
+	public void testChangesInRequiredProjectInvalidateUnresolvedName() throws Exception {
+		TypeResolutionCache cache = TypeResolutionCache.getInstance();
+		cache.clean();
+
+		provider = ResourcesPlugin.getWorkspace().getRoot().getProject("ProviderProject");
+		provider.create(null);
+		provider.open(null);
+		IProjectDescription description = provider.getDescription();
+		description.setNatureIds(new String[]{JavaCore.NATURE_ID});
+		provider.setDescription(description, null);
+		IFolder src = provider.getFolder("src");
+		src.create(true, true, null);
+		IJavaProject providerJava = JavaCore.create(provider);
+		providerJava.setRawClasspath(new IClasspathEntry[]{
+				JavaCore.newSourceEntry(src.getFullPath()),
+				JavaCore.newContainerEntry(new Path("org.eclipse.jdt.launching.JRE_CONTAINER"))
+			}, null);
+
+		IClasspathEntry[] newClasspath = new IClasspathEntry[classpath.length + 1];
+		System.arraycopy(classpath, 0, newClasspath, 0, classpath.length);
+		newClasspath[classpath.length] = JavaCore.newProjectEntry(provider.getFullPath());
+		javaProject.setRawClasspath(newClasspath, null);
+
+		assertNull(cache.resolveType(dependencies, "Provided"));
+
+		IPackageFragment p = providerJava.getPackageFragmentRoot(src).createPackageFragment("parameters", true, null);
+		p.createCompilationUnit("Provided.java", "package parameters;\npublic class Provided {}\n", true, null);
+		assertEquals("parameters.Provided", cache.resolveType(dependencies, "Provided"));
+
+		// Classpath change of the required project
+		long unresolved = cache.getUnresolvedHitCount();
+		assertNull(cache.resolveType(dependencies, "Missing"));
+		assertNull(cache.resolveType(dependencies, "Missing"));
+		assertEquals(unresolved + 1, cache.getUnresolvedHitCount());
+		IFolder src2 = provider.getFolder("src2");
+		src2.create(true, true, null);
+		providerJava.setRawClasspath(new IClasspathEntry[]{
+				JavaCore.newSourceEntry(src.getFullPath()),
+				JavaCore.newSourceEntry(src2.getFullPath()),
+				JavaCore.newContainerEntry(new Path("org.eclipse.jdt.launching.JRE_CONTAINER"))
+			}, null);
+		assertNull(cache.resolveType(dependencies, "Missing"));
+		assertEquals("Name was not resolved again after the classpath changed", unresolved + 1, cache.getUnresolvedHitCount());
+	}
+
+}
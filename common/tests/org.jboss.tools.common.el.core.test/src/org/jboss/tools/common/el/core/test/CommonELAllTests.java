@@ -32,6 +32,7 @@ public class CommonELAllTests {
 		suite.addTestSuite(ElVarSearcherTest.class);
 		suite.addTestSuite(ELResolverFactoryManagerTest.class);
 		suite.addTestSuite(TypeInfoCollectorTest.class);
+		suite.addTestSuite(ELResolutionCacheTest.class);
 		return suite;
 	}
 }
\ No newline at end of file
@@ -26,6 +26,7 @@ import org.jboss.tools.common.el.core.model.ELParameters;
 import org.jboss.tools.common.el.core.model.ELPropertyInvocation;
 import org.jboss.tools.common.el.core.parser.ELParser;
 import org.jboss.tools.common.el.core.parser.ELParserUtil;
+import org.jboss.tools.common.el.core.parser.IncrementalELParser;
 
 import junit.framework.TestCase;
 
@@ -153,4 +154,50 @@ public class ELModelTest extends TestCase {
 		assertTrue(keys.contains("b(c)"));
 	}
 
+	public void testIncrementalParse() {
+		String el = "aa#{a.b}bb#{c.d(e)}cc#{f}";
+		ELModel model = ELParserUtil.getJbossFactory().createParser().parse(el);
+		ELInstance first = model.getInstances().get(0);
+		ELInstance last = model.getInstances().get(2);
+
+		// Edit inside of second instance.
+		ELModel result = createIncrementalParser().parse(model, 16, 1, "xyz");
+		checkIncrementalParse("aa#{a.b}bb#{c.d(xyz)}cc#{f}", result);
+		assertSame(first, result.getInstances().get(0));
+		assertSame(last, result.getInstances().get(2));
+		assertEquals(23, last.getStartPosition());
+		assertEquals("#{f}", last.getText());
+
+		// Edit opens a new instance that is not closed.
+		result = createIncrementalParser().parse(result, 8, 0, "#{g.");
+		checkIncrementalParse("aa#{a.b}#{g.bb#{c.d(xyz)}cc#{f}", result);
+
+		// Edit that removes a closing brace.
+		model = ELParserUtil.getJbossFactory().createParser().parse(el);
+		result = createIncrementalParser().parse(model, 7, 1, "");
+		checkIncrementalParse("aa#{a.bbb#{c.d(e)}cc#{f}", result);
+	}
+
+	private IncrementalELParser createIncrementalParser() {
+		ELParser parser = ELParserUtil.getJbossFactory().createParser();
+		assertTrue(parser instanceof IncrementalELParser);
+		return (IncrementalELParser)parser;
+	}
+
+	private void checkIncrementalParse(String expected, ELModel result) {
+		ELModel model = ELParserUtil.getJbossFactory().createParser().parse(expected);
+		assertEquals(expected, result.getSource());
+		assertEquals(model.toString(), result.toString());
+		assertEquals(model.getInstances().size(), result.getInstances().size());
+		for (int i = 0; i < model.getInstances().size(); i++) {
+			ELInstance i1 = model.getInstances().get(i);
+			ELInstance i2 = result.getInstances().get(i);
+			assertEquals(i1.getStartPosition(), i2.getStartPosition());
+			assertEquals(i1.getEndPosition(), i2.getEndPosition());
+			assertEquals(i1.getText(), i2.getText());
+			assertEquals(i1.getErrors().size(), i2.getErrors().size());
+		}
+		assertEquals(model.getSyntaxErrors().size(), result.getSyntaxErrors().size());
+	}
+
 }
@@ -287,6 +287,21 @@ public class ELParserTest extends TestCase {
 		
 	}
 
+	public void testTokenText() {
+		Tokenizer t = TokenizerFactory.createJbossTokenizer();
+		String test = "aaa#{a.b}bbb";
+		LexicalToken token = t.parse(test, 3, 6);
+		assertEquals(3, token.getStart());
+		assertEquals("#{", token.getText());
+		token.shift(10);
+		assertEquals(13, token.getStart());
+		LexicalToken name = token.getNextToken();
+		assertEquals("a", name.getText());
+		assertEquals(15, name.getStart());
+		assertEquals(1, name.getLength());
+		assertEquals("#{a.b}", token.getCombinedToken(name.getNextToken().getNextToken().getNextToken()).getText());
+	}
+
 	private void checkCorrectEL(Tokenizer t, String test) {
 		LexicalToken token = t.parse(test);
 		assertEquals(test, restore(token));
@@ -365,6 +380,22 @@ public class ELParserTest extends TestCase {
 		return sb.toString();
 	}
 
+	public void testParserPool() {
+		ELParserFactory factory = ELParserUtil.getJbossFactory();
+		ELParserUtil.PoolStatistics statistics = ELParserUtil.getPoolStatistics(factory);
+		assertNotNull(statistics);
+		int inUse = statistics.getInUseCount();
+		ELParser parser = factory.createParser();
+		assertEquals(inUse + 1, statistics.getInUseCount());
+		parser.parse("#{a.b}");
+		assertEquals(inUse, statistics.getInUseCount());
+		long reused = statistics.getReusedCount();
+		parser = factory.createParser();
+		assertEquals(reused + 1, statistics.getReusedCount());
+		parser.parse("#{a.b}");
+		assertEquals(inUse, statistics.getInUseCount());
+	}
+
 	static int TREAD_NUMBER = 20;
 	static int CALL_NUMBER = 1000;
 
@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.common.el.core.test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.jface.resource.ImageDescriptor;
+import org.jboss.tools.common.el.core.ca.AbstractELCompletionEngine;
+import org.jboss.tools.common.el.core.ca.ELResolutionCache;
+import org.jboss.tools.common.el.core.model.ELInvocationExpression;
+import org.jboss.tools.common.el.core.parser.ELParserFactory;
+import org.jboss.tools.common.el.core.parser.ELParserUtil;
+import org.jboss.tools.common.el.core.resolver.ELContext;
+import org.jboss.tools.common.el.core.resolver.IVariable;
+import org.jboss.tools.common.el.core.resolver.SimpleELContext;
+import org.jboss.tools.common.el.core.resolver.TypeInfoCollector.MemberInfo;
+import org.jboss.tools.common.el.core.resolver.Var;
+import org.jboss.tools.test.util.JobUtils;
+import org.jboss.tools.test.util.ResourcesUtils;
+
+import junit.framework.TestCase;
+
+public class ELResolutionCacheTest extends TestCase {
+	protected static String PLUGIN_ID = "org.jboss.tools.common.el.core.test";
+
+	ELResolutionCache cache;
+	IProject project1;
+	IProject project2;
+
+	protected void setUp() throws Exception {
+		project1 = ResourcesUtils.importProject(PLUGIN_ID, "/projects/JavaProject1");
+		project1.refreshLocal(IResource.DEPTH_INFINITE, new NullProgressMonitor());
+		// JavaProject2 requires JavaProject1
+		project2 = ResourcesUtils.importProject(PLUGIN_ID, "/projects/JavaProject2");
+		project2.refreshLocal(IResource.DEPTH_INFINITE, new NullProgressMonitor());
+		JobUtils.waitForIdle();
+
+		cache = ELResolutionCache.getInstance();
+		cache.clear();
+		cache.resetStatistics();
+	}
+
+	protected void tearDown() throws Exception {
+		cache.setEnabled(true);
+		cache.clear();
+		boolean saveAutoBuild = ResourcesUtils.setBuildAutomatically(false);
+		JobUtils.waitForIdle();
+		project1.delete(true, true, null);
+		project2.delete(true, true, null);
+		JobUtils.waitForIdle();
+		ResourcesUtils.setBuildAutomatically(saveAutoBuild);
+	}
+
+	public void testKey() {
+		List<Var> vars1 = new ArrayList<Var>();
+		vars1.add(new Var(ELParserUtil.getJbossFactory(), "item", "#{bean.items}", 0, 0));
+		List<Var> vars2 = new ArrayList<Var>();
+		vars2.add(new Var(ELParserUtil.getJbossFactory(), "item", "#{bean.list}", 0, 0));
+
+		ELResolutionCache.Key k1 = new ELResolutionCache.Key(getClass(), "scope", "item.name", true, false, vars1);
+		ELResolutionCache.Key k2 = new ELResolutionCache.Key(getClass(), "scope", "item.name", true, false, vars1);
+		assertEquals(k1, k2);
+		assertEquals(k1.hashCode(), k2.hashCode());
+
+		assertFalse(k1.equals(new ELResolutionCache.Key(getClass(), "scope", "item.name", true, false, vars2)));
+		assertFalse(k1.equals(new ELResolutionCache.Key(getClass(), "scope2", "item.name", true, false, vars1)));
+		assertFalse(k1.equals(new ELResolutionCache.Key(getClass(), "scope", "item.name", false, false, vars1)));
+		assertFalse(k1.equals(new ELResolutionCache.Key(Object.class, "scope", "item.name", true, false, vars1)));
+	}
+
+	public void testHitsAndDisabling() {
+		ELResolutionCache.Key key = new ELResolutionCache.Key(getClass(), "scope", "a.b", false, true, null);
+		assertNull(cache.get(key));
+		cache.put(key, Collections.emptyList());
+		assertNotNull(cache.get(key));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+
+		cache.clear();
+		assertEquals(0, cache.getSize());
+		assertEquals(1, cache.getInvalidationCount());
+
+		cache.setEnabled(false);
+		cache.put(key, Collections.emptyList());
+		assertEquals(0, cache.getSize());
+	}
+
+	public void testResolutionIsSharedInProject() {
+		TestEngine engine = new TestEngine();
+		engine.resolve(project1.getFile(".project"), "#{a.b}");
+		engine.resolve(project1.getFile(".project"), "#{a.b}");
+		assertEquals(1, engine.resolved);
+		// Another page of the same project
+		engine.resolve(project1.getFile(".classpath"), "#{a.b}");
+		assertEquals(1, engine.resolved);
+		engine.resolve(project1.getFile(".classpath"), "#{a.c}");
+		assertEquals(2, engine.resolved);
+		engine.resolve(project2.getFile(".project"), "#{a.b}");
+		assertEquals(3, engine.resolved);
+		assertEquals(2, cache.getHitCount());
+	}
+
+	public void testInvalidation() throws Exception {
+		TestEngine engine = new TestEngine();
+		engine.resolve(project1.getFile(".project"), "#{a.b}");
+		engine.resolve(project2.getFile(".project"), "#{a.b}");
+		assertEquals(2, engine.resolved);
+
+		// JavaProject1 does not depend on JavaProject2
+		cache.invalidate(project2);
+		engine.resolve(project1.getFile(".project"), "#{a.b}");
+		assertEquals(2, engine.resolved);
+		engine.resolve(project2.getFile(".project"), "#{a.b}");
+		assertEquals(3, engine.resolved);
+
+		// JavaProject2 depends on JavaProject1
+		cache.invalidate(project1);
+		assertEquals(0, cache.getSize());
+
+		engine.resolve(project1.getFile(".project"), "#{a.b}");
+		engine.resolve(project2.getFile(".project"), "#{a.b}");
+		assertEquals(5, engine.resolved);
+
+		// Change of file content in JavaProject2 keeps entries of JavaProject1
+		IFile file = project2.getFile("test.txt");
+		file.create(new ByteArrayInputStream("a".getBytes()), true, null);
+		engine.resolve(project1.getFile(".project"), "#{a.b}");
+		assertEquals(5, engine.resolved);
+		engine.resolve(project2.getFile(".project"), "#{a.b}");
+		assertEquals(6, engine.resolved);
+
+		file.setContents(new ByteArrayInputStream("b".getBytes()), true, false, null);
+		engine.resolve(project1.getFile(".project"), "#{a.b}");
+		assertEquals(6, engine.resolved);
+		engine.resolve(project2.getFile(".project"), "#{a.b}");
+		assertEquals(7, engine.resolved);
+	}
+
+	/**
+	 * Counts calls of resolveVariables() that are not answered by the cache.
+	 */
+	static class TestEngine extends AbstractELCompletionEngine<IVariable> {
+		int resolved = 0;
+
+		void resolve(IFile file, String el) {
+			SimpleELContext context = new SimpleELContext();
+			context.setResource(file);
+			ELInvocationExpression expr = (ELInvocationExpression)getParserFactory().createParser().parse(el).getInstances().get(0).getExpression();
+			resolveVariablesCached(file, context, expr, true, false, 0);
+		}
+
+		@Override
+		public List<IVariable> resolveVariables(IFile file, ELContext context, ELInvocationExpression expr, boolean isFinal, boolean onlyEqualNames, int offset) {
+			resolved++;
+			return new ArrayList<IVariable>();
+		}
+
+		public ELParserFactory getParserFactory() {
+			return ELParserUtil.getJbossFactory();
+		}
+
+		@Override
+		protected ImageDescriptor getELProposalImageForMember(MemberInfo memberInfo) {
+			return null;
+		}
+
+		@Override
+		protected void log(Exception e) {
+			fail(e.getMessage());
+		}
+
+		@Override
+		protected MemberInfo getMemberInfoByVariable(IVariable var, ELContext context, boolean onlyEqualNames, int offset) {
+			return null;
+		}
+
+		@Override
+		protected boolean isStaticMethodsCollectingEnabled() {
+			return false;
+		}
+	}
+
+}
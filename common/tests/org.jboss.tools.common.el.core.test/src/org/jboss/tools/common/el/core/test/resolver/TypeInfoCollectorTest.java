@@ -25,6 +25,7 @@ import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.IMethod;
 import org.eclipse.jdt.core.IType;
 import org.eclipse.jdt.core.JavaCore;
+import org.jboss.tools.common.el.core.resolver.TypeInfoCache;
 import org.jboss.tools.common.el.core.resolver.TypeInfoCollector;
 import org.jboss.tools.common.el.core.resolver.TypeInfoCollector.MemberInfo;
 import org.jboss.tools.common.util.EclipseJavaUtil;
@@ -132,6 +133,84 @@ public class TypeInfoCollectorTest extends TestCase {
 		assertTrue(ns2.contains("getState")); //$NON-NLS-1$
 	}
 
+	public void testMemberInfoCache() throws CoreException {
+		IJavaProject jp = JavaCore.create(project2);
+		IType bean = jp.findType("test.TestE"); //$NON-NLS-1$
+		TypeInfoCache cache = TypeInfoCollector.getCache();
+		TypeInfoCollector.cleanCache();
+		cache.resetStatistics();
+
+		MemberInfo info = TypeInfoCollector.createMemberInfo(bean);
+		assertNotNull(info);
+		assertEquals(1, cache.getMissCount());
+		assertSame(info, TypeInfoCollector.createMemberInfo(bean));
+		assertEquals(1, cache.getHitCount());
+		assertNotSame(info, TypeInfoCollector.createMemberInfo(bean, true));
+		assertEquals(1, cache.getSize(project2));
+
+		TypeInfoCollector.cleanCache(project2);
+		assertEquals(0, cache.getSize(project2));
+		assertNotSame(info, TypeInfoCollector.createMemberInfo(bean));
+	}
+
+	public void testCacheInvalidatesSubTypes() throws CoreException {
+		IJavaProject jp = JavaCore.create(project2);
+		IType c1 = jp.findType("test.TestC1"); //$NON-NLS-1$
+		IType c3 = jp.findType("test.TestC3"); //$NON-NLS-1$
+		IType e = jp.findType("test.TestE"); //$NON-NLS-1$
+		TypeInfoCache cache = TypeInfoCollector.getCache();
+		TypeInfoCollector.cleanCache();
+
+		TypeInfoCollector.getSuperTypes(c1);
+		MemberInfo info = TypeInfoCollector.createMemberInfo(e);
+		assertNotNull(cache.getSuperTypes(c1));
+
+		cache.invalidate(c3);
+		assertNull(cache.getSuperTypes(c1));
+		assertSame(info, TypeInfoCollector.createMemberInfo(e));
+	}
+
+	public void testCacheForgetsSuperTypesOfRemovedTypes() throws CoreException {
+		IJavaProject jp = JavaCore.create(project2);
+		TypeInfoCache cache = TypeInfoCollector.getCache();
+		TypeInfoCollector.cleanCache();
+		int limit = cache.getTypeLimit();
+		cache.setTypeLimit(1);
+		try {
+			TypeInfoCollector.getSuperTypes(jp.findType("test.TestC1")); //$NON-NLS-1$
+			assertTrue(cache.getSuperTypeCount() > 0);
+			// Evicts TestC1, the super types of TestE are tracked instead
+			TypeInfoCollector.getSuperTypes(jp.findType("test.TestE")); //$NON-NLS-1$
+			int count = cache.getSuperTypeCount();
+			TypeInfoCollector.getSuperTypes(jp.findType("test.TestC1")); //$NON-NLS-1$
+			TypeInfoCollector.getSuperTypes(jp.findType("test.TestE")); //$NON-NLS-1$
+			assertEquals(count, cache.getSuperTypeCount());
+
+			TypeInfoCollector.cleanCache(project2);
+			assertEquals(0, cache.getSuperTypeCount());
+		} finally {
+			cache.setTypeLimit(limit);
+		}
+	}
+
+	public void testCacheLimit() throws CoreException {
+		IJavaProject jp = JavaCore.create(project2);
+		TypeInfoCache cache = TypeInfoCollector.getCache();
+		TypeInfoCollector.cleanCache();
+		cache.resetStatistics();
+		int limit = cache.getTypeLimit();
+		cache.setTypeLimit(2);
+		try {
+			for (int i = 1; i < 5; i++) {
+				TypeInfoCollector.createMemberInfo(jp.findType("test.TestC" + i)); //$NON-NLS-1$
+			}
+			assertEquals(2, cache.getSize(project2));
+			assertEquals(2, cache.getEvictionCount());
+		} finally {
+			cache.setTypeLimit(limit);
+		}
+	}
+
 	Set<String> getNames(List<MemberInfo> ms) {
 		Set<String> result = new HashSet<String>();
 		for (MemberInfo i: ms) {
@@ -22,6 +22,7 @@ import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.ui.ide.ResourceUtil;
 import org.jboss.tools.common.model.XModelObject;
+import org.jboss.tools.common.model.impl.XModelImpl;
 import org.jboss.tools.common.model.util.EclipseResourceUtil;
 import org.jboss.tools.test.util.JobUtils;
 import org.jboss.tools.test.util.TestProjectProvider;
@@ -55,4 +56,16 @@ public class VirtualFolderTest extends TestCase {
 		assertNotNull(p);
 	}
 
+	public void testPathIndex() throws CoreException, IOException {
+		IFile f = project.getFile(new Path("v/f/a.xml"));
+		XModelObject p = EclipseResourceUtil.createObjectForResource(f);
+		assertNotNull(p);
+		XModelImpl model = (XModelImpl)p.getModel();
+		String path = p.getPath();
+		assertSame(p, model.getByPath(path));
+		assertSame(p, model.getByPath(path));
+		assertTrue(model.getPathIndexSize() > 0);
+		assertTrue(model.checkPathIndex().isEmpty());
+	}
+
 }
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.common.text.ext.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.jboss.tools.common.text.ext.hyperlink.HyperlinkPartitionerBuilder;
+import org.jboss.tools.common.text.ext.hyperlink.HyperlinkPartitionerDefinition;
+
+public class HyperlinkPartitionerBuilderTest extends TestCase {
+
+	private HyperlinkPartitionerBuilder builder = HyperlinkPartitionerBuilder.getInstance();
+
+	// contentType, partitionType, axis
+	private List<String[]> lookups = new ArrayList<String[]>();
+
+	@Override
+	protected void setUp() throws Exception {
+		HyperlinkPartitionerDefinition[] defs = builder.getHyperlinkPartitionerDefinitions();
+		for (int i = 0; i < defs.length; i++) {
+			List contentTypes = defs[i].getContentTypes();
+			for (int j = 0; j < contentTypes.size(); j++) {
+				HyperlinkPartitionerDefinition.ContentType cType = (HyperlinkPartitionerDefinition.ContentType)contentTypes.get(j);
+				List partitionTypes = cType.getPartitionTypes();
+				for (int k = 0; k < partitionTypes.size(); k++) {
+					HyperlinkPartitionerDefinition.PartitionType pType = (HyperlinkPartitionerDefinition.PartitionType)partitionTypes.get(k);
+					addLookups(cType.getId(), pType);
+				}
+			}
+		}
+	}
+
+	private void addLookups(String contentType, HyperlinkPartitionerDefinition.PartitionType pType) {
+		String partitionType = pType.getId();
+		lookups.add(new String[] {contentType, partitionType, null});
+		lookups.add(new String[] {contentType, partitionType, "/unknown/"});
+		List axises = pType.getAxises();
+		for (int i = 0; i < axises.size(); i++) {
+			String path = ((HyperlinkPartitionerDefinition.Axis)axises.get(i)).getPath();
+			lookups.add(new String[] {contentType, partitionType, path});
+			lookups.add(new String[] {contentType, partitionType, path.replace("*", "root/child")});
+			lookups.add(new String[] {contentType, partitionType, path.toUpperCase()});
+		}
+		lookups.add(new String[] {contentType, "unknown", null});
+	}
+
+	public void testLookupsMatchDefinitions() {
+		assertFalse(lookups.isEmpty());
+		for (String[] lookup : lookups) {
+			List<HyperlinkPartitionerDefinition> expected = scan(lookup[0], lookup[1], lookup[2]);
+			// the second lookup is answered from the cache
+			for (int i = 0; i < 2; i++) {
+				HyperlinkPartitionerDefinition[] defs = builder.getHyperlinkPartitionerDefinitions(lookup[0], lookup[1], lookup[2]);
+				assertEquals(Arrays.toString(lookup), expected, Arrays.asList(defs));
+			}
+		}
+		assertNull(builder.getHyperlinkPartitionerDefinitions(null, "unknown", null));
+		assertEquals(0, builder.getHyperlinkPartitionerDefinitions("unknown", "unknown", null).length);
+	}
+
+	/*
+	 * Checks every definition, as the lookups did before they were compiled
+	 */
+	private List<HyperlinkPartitionerDefinition> scan(String contentType, String partitionType, String axis) {
+		String baseContentType = builder.getBaseContentType(contentType);
+		HyperlinkPartitionerDefinition[] allDefs = builder.getHyperlinkPartitionerDefinitions();
+		List<HyperlinkPartitionerDefinition> defs = new ArrayList<HyperlinkPartitionerDefinition>();
+		for (int i = 0; i < allDefs.length; i++) {
+			List contentTypes = allDefs[i].getContentTypes();
+			for (int j = 0; j < contentTypes.size(); j++) {
+				HyperlinkPartitionerDefinition.ContentType cType = (HyperlinkPartitionerDefinition.ContentType)contentTypes.get(j);
+				if (contentType.equals(cType.getId()) || baseContentType.equals(cType.getId())) {
+					HyperlinkPartitionerDefinition.PartitionType pType = cType.getPartitionType(partitionType);
+					if (pType != null && pType.containtsAxis(axis)) {
+						defs.add(allDefs[i]);
+					}
+				}
+			}
+		}
+		return defs;
+	}
+}
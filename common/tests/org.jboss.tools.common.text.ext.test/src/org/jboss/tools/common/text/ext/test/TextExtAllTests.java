@@ -14,7 +14,7 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
 @RunWith (Suite.class)
-@Suite.SuiteClasses({UtilsTest.class,StructuredModelWrapperTest.class})
+@Suite.SuiteClasses({UtilsTest.class,StructuredModelWrapperTest.class,HyperlinkPartitionerBuilderTest.class})
 public class TextExtAllTests {
 	public static final String PLUGIN_ID = "org.jboss.tools.common.text.ext"; //$NON-NLS-1$
 }
\ No newline at end of file
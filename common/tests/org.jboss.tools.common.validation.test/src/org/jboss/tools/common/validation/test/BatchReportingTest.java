@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.common.validation.test;
+
+import java.io.ByteArrayInputStream;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.wst.validation.internal.provisional.core.IMessage;
+import org.jboss.tools.common.preferences.SeverityPreferences;
+import org.jboss.tools.common.validation.PendingMarker;
+import org.jboss.tools.common.validation.ValidationErrorManager;
+
+public class BatchReportingTest extends TestCase {
+	private static final String TEXT = "line one\nan error\nanother error\nlast error\n";
+
+	private IFolder folder;
+	private IFile file;
+	private TestErrorManager errorManager = new TestErrorManager();
+
+	@Override
+	protected void setUp() throws Exception {
+		IProject project = ResourcesPlugin.getWorkspace().getRoot().getProject("JavaProject");
+		folder = project.getFolder("batch");
+		folder.create(true, true, null);
+		file = folder.getFile("test.txt");
+		file.create(new ByteArrayInputStream(TEXT.getBytes("UTF-8")), true, null);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		folder.delete(true, null);
+	}
+
+	public void testMarkersAreCreatedOnFlush() throws Exception {
+		assertTrue(errorManager.startBatch());
+		assertFalse("Nested batch should not be started", errorManager.startBatch());
+		IMarker marker = addError(1);
+		assertTrue(marker instanceof PendingMarker);
+		marker.setAttribute("test", "value");
+		assertEquals(0, getMarkers().length);
+
+		errorManager.flushBatch();
+		IMarker[] markers = getMarkers();
+		assertEquals(1, markers.length);
+		assertEquals(markers[0], ((PendingMarker)marker).getMarker());
+		assertEquals(2, markers[0].getAttribute(IMarker.LINE_NUMBER, -1));
+		assertEquals(TEXT.indexOf("error"), markers[0].getAttribute(IMarker.CHAR_START, -1));
+		assertEquals("value", markers[0].getAttribute("test"));
+		assertTrue(marker.exists());
+
+		// The batch is ended by the flush
+		assertFalse(addError(2) instanceof PendingMarker);
+		assertEquals(2, getMarkers().length);
+	}
+
+	public void testDeletedMarkerIsNotCreated() throws Exception {
+		assertTrue(errorManager.startBatch());
+		IMarker marker = addError(1);
+		marker.delete();
+		assertFalse(marker.exists());
+		errorManager.flushBatch();
+		assertEquals(0, getMarkers().length);
+	}
+
+	public void testFlushRespectsMarkerLimit() throws Exception {
+		errorManager.maxMarkers = 2;
+		assertTrue(errorManager.startBatch());
+		addError(1);
+		addError(2);
+		PendingMarker third = (PendingMarker)addError(3);
+		third.setAttribute("test", "value");
+		errorManager.flushBatch();
+		assertEquals(2, getMarkers().length);
+		assertNull(third.getMarker());
+
+		// A marker dropped at the limit does not exist, its attributes are kept
+		assertTrue(third.isDropped());
+		assertFalse(third.exists());
+		assertEquals("value", third.getAttribute("test"));
+		assertEquals("value", third.getAttribute("test", ""));
+		assertEquals(-1, third.getAttribute(IMarker.LINE_NUMBER, -1));
+		assertEquals("value", third.getAttributes().get("test"));
+		third.setAttribute("test", "other");
+		assertEquals("other", third.getAttribute("test"));
+	}
+
+	public void testMarkerIsCreatedWithoutBatch() throws Exception {
+		IMarker marker = addError(1);
+		assertFalse(marker instanceof PendingMarker);
+		assertEquals(1, getMarkers().length);
+		assertEquals(2, marker.getAttribute(IMarker.LINE_NUMBER, -1));
+	}
+
+	/*
+	 * Reports the n-th occurrence of "error" without line number.
+	 */
+	private IMarker addError(int n) {
+		int offset = -1;
+		for (int i = 0; i < n; i++) {
+			offset = TEXT.indexOf("error", offset + 1);
+		}
+		return errorManager.addError("Error {0}", IMessage.HIGH_SEVERITY, new String[]{"" + n}, -1, 5, offset, file);
+	}
+
+	private IMarker[] getMarkers() throws CoreException {
+		return file.findMarkers(ValidationErrorManager.DEFAULT_VALIDATION_MARKER, false, IResource.DEPTH_ZERO);
+	}
+
+	static class TestErrorManager extends ValidationErrorManager {
+		int maxMarkers = 0;
+
+		public TestErrorManager() {
+			setProblemType(DEFAULT_VALIDATION_MARKER);
+		}
+
+		@Override
+		protected String getPreference(IProject project, String preferenceKey) {
+			return SeverityPreferences.WARNING;
+		}
+
+		@Override
+		public int getMaxNumberOfMarkersPerFile(IProject project) {
+			return maxMarkers;
+		}
+
+		@Override
+		protected void registerPreferenceInfo() {
+		}
+	}
+}
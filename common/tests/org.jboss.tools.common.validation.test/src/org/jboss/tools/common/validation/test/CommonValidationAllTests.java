@@ -32,6 +32,9 @@ public class CommonValidationAllTests {
 		TestSuite suite = new TestSuite(ValidationTest.class.getName());
 		suite.addTestSuite(ValidationTest.class);
 		suite.addTestSuite(ContextValidationTest.class);
+		suite.addTestSuite(ELReferenceIndexTest.class);
+		suite.addTestSuite(ParallelValidationTest.class);
+		suite.addTestSuite(BatchReportingTest.class);
 
 		ProjectImportTestSetup testSetup = new ProjectImportTestSetup(suite,
 				"org.jboss.tools.common.validation.test",
@@ -40,6 +43,8 @@ public class CommonValidationAllTests {
 		suiteAll.addTest(testSetup);
 
 		suiteAll.addTestSuite(SynchronizationTest.class);
+		suiteAll.addTestSuite(LinkCollectionTest.class);
+		suiteAll.addTestSuite(LinkJournalTest.class);
 
 		return suiteAll;
 	}
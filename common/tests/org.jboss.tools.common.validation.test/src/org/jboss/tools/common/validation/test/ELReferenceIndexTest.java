@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.common.validation.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IPath;
+import org.jboss.tools.common.el.core.ELReference;
+import org.jboss.tools.common.validation.ValidationELReference;
+import org.jboss.tools.common.validation.internal.ELReferenceIndex;
+import org.jboss.tools.common.validation.internal.ELValidatorContext;
+import org.jboss.tools.common.validation.internal.ProjectValidationContext;
+import org.jboss.tools.common.xml.XMLUtilities;
+import org.w3c.dom.Element;
+
+public class ELReferenceIndexTest extends TestCase {
+
+	private IProject project;
+	private File indexFile;
+
+	@Override
+	protected void setUp() throws Exception {
+		project = ResourcesPlugin.getWorkspace().getRoot().getProject("JavaProject");
+		indexFile = File.createTempFile("el", ".index");
+		indexFile.delete();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		indexFile.delete();
+	}
+
+	public void testStoreAndRestore() throws Exception {
+		IFile testJava = project.getFile("src/test/Test.java");
+		ELValidatorContext context = new ELValidatorContext("test");
+		ELReference el = new ValidationELReference();
+		el.setResource(testJava);
+		el.setStartPosition(10);
+		el.setLength(5);
+		el.setLineNumber(2);
+		context.addLinkedEl("bean", el);
+		context.addLinkedEl("bean.name", el);
+
+		ELReferenceIndex index = new ELReferenceIndex(indexFile);
+		context.updateIndex(index);
+		index.save();
+		assertTrue(indexFile.isFile());
+
+		index = new ELReferenceIndex(indexFile);
+		assertEquals(1, index.size());
+		assertTrue(index.isUpToDate(testJava));
+		assertFalse(index.isUpToDate(project.getFile("src/test/Test2.java")));
+
+		ELValidatorContext restored = new ELValidatorContext("test");
+		assertTrue(index.restore(testJava, restored));
+		Set<ELReference> els = restored.getElsByVariableName("bean.name");
+		assertNotNull(els);
+		assertEquals(1, els.size());
+		ELReference r = els.iterator().next();
+		assertEquals(testJava.getFullPath(), r.getPath());
+		assertEquals(10, r.getStartPosition());
+		assertEquals(5, r.getLength());
+		assertEquals(2, r.getLineNumber());
+		assertTrue(restored.getElsByVariableName("bean").contains(r));
+
+		// Removed links are removed from the index.
+		context.removeLinkedEls(testJava);
+		context.updateIndex(index);
+		index.save();
+		assertEquals(0, new ELReferenceIndex(indexFile).size());
+	}
+
+	public void testOnlyConfirmedContentIsUpToDate() throws Exception {
+		IFile file = project.getFile("src/test/index.txt");
+		file.create(new ByteArrayInputStream("#{bean}".getBytes()), true, null);
+		try {
+			ELReferenceIndex index = new ELReferenceIndex(indexFile);
+			index.update(file, createEls(file), true);
+			index.save();
+			index = new ELReferenceIndex(indexFile);
+			assertTrue(index.isUpToDate(file));
+
+			// Time stamp changes, content does not.
+			file.setContents(new ByteArrayInputStream("#{bean}".getBytes()), true, false, null);
+			assertTrue(index.isUpToDate(file));
+
+			file.setContents(new ByteArrayInputStream("#{bean2}".getBytes()), true, false, null);
+			assertFalse(index.isUpToDate(file));
+
+			// References computed for content that could change since then.
+			index.update(file, createEls(file), false);
+			assertFalse(index.isUpToDate(file));
+			index.save();
+			assertFalse(new ELReferenceIndex(indexFile).isUpToDate(file));
+		} finally {
+			file.delete(true, null);
+		}
+	}
+
+	public void testSaveReplacesIndex() throws Exception {
+		IFile testJava = project.getFile("src/test/Test.java");
+		ELReferenceIndex index = new ELReferenceIndex(indexFile);
+		index.update(testJava, createEls(testJava), true);
+		index.save();
+		assertEquals(1, new ELReferenceIndex(indexFile).size());
+
+		index.remove(testJava.getFullPath());
+		index.save();
+		assertEquals(0, new ELReferenceIndex(indexFile).size());
+		File dir = indexFile.getParentFile();
+		assertFalse(new File(dir, indexFile.getName() + ".tmp").exists());
+		assertFalse(new File(dir, indexFile.getName() + ".bak").exists());
+	}
+
+	public void testSaveAppendsChangedFiles() throws Exception {
+		IFile testJava = project.getFile("src/test/Test.java");
+		IFile test2Java = project.getFile("src/test/Test2.java");
+		ELReferenceIndex index = new ELReferenceIndex(indexFile);
+		index.update(testJava, createEls(testJava), false);
+		index.update(test2Java, createEls(test2Java), false);
+		index.save();
+		assertEquals(2, index.getRecordCount());
+		long length = indexFile.length();
+
+		index.update(testJava, createEls(testJava, "bean2"), false);
+		index.save();
+		assertEquals(3, index.getRecordCount());
+		assertTrue(indexFile.length() > length);
+
+		index = new ELReferenceIndex(indexFile);
+		assertEquals(2, index.size());
+		ELValidatorContext restored = new ELValidatorContext("test");
+		assertTrue(index.restoreAll(restored, Collections.<IPath>emptySet()));
+		Set<ELReference> els = restored.getElsByVariableName("bean");
+		assertEquals(1, els.size());
+		assertEquals(test2Java.getFullPath(), els.iterator().next().getPath());
+		assertEquals(1, restored.getElsByVariableName("bean2").size());
+	}
+
+	public void testIndexIsCompacted() throws Exception {
+		IFile testJava = project.getFile("src/test/Test.java");
+		ELReferenceIndex index = new ELReferenceIndex(indexFile);
+		index.update(testJava, createEls(testJava), false);
+		index.save();
+		long length = indexFile.length();
+		int saves = 0;
+		while(index.getRecordCount() > 1 || saves == 0) {
+			index.update(testJava, createEls(testJava), false);
+			index.save();
+			assertTrue("Index is not compacted", ++saves < 2000);
+		}
+		assertEquals(length, indexFile.length());
+		File dir = indexFile.getParentFile();
+		assertFalse(new File(dir, indexFile.getName() + ".tmp").exists());
+
+		index = new ELReferenceIndex(indexFile);
+		assertEquals(1, index.size());
+		assertTrue(index.restore(testJava, new ELValidatorContext("test")));
+	}
+
+	public void testBrokenTailIsDropped() throws Exception {
+		IFile testJava = project.getFile("src/test/Test.java");
+		IFile test2Java = project.getFile("src/test/Test2.java");
+		ELReferenceIndex index = new ELReferenceIndex(indexFile);
+		index.update(testJava, createEls(testJava), false);
+		index.save();
+		long length = indexFile.length();
+		index.update(test2Java, createEls(test2Java), false);
+		index.save();
+		RandomAccessFile f = new RandomAccessFile(indexFile, "rw");
+		try {
+			f.setLength(indexFile.length() - 3);
+		} finally {
+			f.close();
+		}
+
+		index = new ELReferenceIndex(indexFile);
+		assertEquals(1, index.size());
+		assertTrue(index.restore(testJava, new ELValidatorContext("test")));
+		index.save();
+		assertEquals(length, indexFile.length());
+	}
+
+	public void testLinksOfElsAreRestoredFromIndexAfterLoad() throws Exception {
+		IFile changed = project.getFile("src/test/changed.txt");
+		IFile unchanged = project.getFile("src/test/unchanged.txt");
+		changed.create(new ByteArrayInputStream("#{bean}".getBytes()), true, null);
+		unchanged.create(new ByteArrayInputStream("#{bean}".getBytes()), true, null);
+		File projectIndex = ELReferenceIndex.getIndexFile(project);
+		try {
+			ProjectValidationContext context = new ProjectValidationContext();
+			context.restoreELs(project, Collections.<IFile>emptySet());
+			for (ELReference el : createEls(changed).keySet()) {
+				context.addLinkedEl("bean", el);
+			}
+			for (ELReference el : createEls(unchanged).keySet()) {
+				context.addLinkedEl("bean", el);
+			}
+			context.storeELs(project, Collections.<IPath>emptySet());
+			Element root = XMLUtilities.createDocumentElement("test");
+			context.store(root);
+
+			// Links of ELs are not written to XML.
+			Element el = XMLUtilities.getUniqueChild(XMLUtilities.getUniqueChild(root, "validation"), "el");
+			assertEquals(0, XMLUtilities.getChildren(el, "linked-el").length);
+
+			context = new ProjectValidationContext();
+			context.load(root);
+			assertNull(context.getElsByVariableName("bean"));
+			Set<IFile> restored = context.restoreELs(project, Collections.singleton(changed));
+			assertEquals(Collections.singleton(changed), restored);
+			assertEquals(2, context.getElsByVariableName("bean").size());
+			assertFalse(context.isFullValidationRequired());
+		} finally {
+			changed.delete(true, null);
+			unchanged.delete(true, null);
+			projectIndex.delete();
+		}
+	}
+
+	private Map<ELReference, Set<String>> createEls(IFile file) {
+		return createEls(file, "bean");
+	}
+
+	private Map<ELReference, Set<String>> createEls(IFile file, String name) {
+		ELReference el = new ValidationELReference();
+		el.setResource(file);
+		el.setStartPosition(2);
+		el.setLength(4);
+		el.setLineNumber(1);
+		Map<ELReference, Set<String>> els = new HashMap<ELReference, Set<String>>();
+		els.put(el, Collections.singleton(name));
+		return els;
+	}
+
+}
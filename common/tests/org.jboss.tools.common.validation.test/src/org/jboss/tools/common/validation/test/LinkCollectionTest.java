@@ -0,0 +1,247 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.common.validation.test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.jboss.tools.common.validation.internal.LinkCollection;
+import org.jboss.tools.common.xml.XMLUtilities;
+import org.w3c.dom.Element;
+
+public class LinkCollectionTest extends TestCase {
+	static final int LINK_COUNT = 100000;
+
+	public void testLinks() {
+		LinkCollection links = new LinkCollection("test");
+		IPath a = new Path("/p/a.xhtml");
+		IPath b = new Path("/p/b.xhtml");
+		assertTrue(links.isEmpty());
+		links.addLinkedResource("x", a, false);
+		links.addLinkedResource("x", b, true);
+		links.addLinkedResource("y", a, true);
+
+		Set<IPath> paths = links.getResourcesByVariableName("x", false);
+		assertEquals(2, paths.size());
+		assertTrue(paths.contains(a));
+		assertTrue(paths.contains(b));
+		assertEquals(1, links.getResourcesByVariableName("x", true).size());
+		assertNull(links.getResourcesByVariableName("z", false));
+
+		Set<String> names = links.getVariableNamesByResource(a, false);
+		assertEquals(2, names.size());
+		assertTrue(names.contains("x"));
+		assertTrue(names.contains("y"));
+		assertEquals(1, links.getVariableNamesByResource(a, true).size());
+
+		links.removeLinkedResource("x", a);
+		assertFalse(links.getResourcesByVariableName("x", false).contains(a));
+		assertTrue(paths.contains(a));
+		assertEquals(1, links.getVariableNamesByResource(a, false).size());
+
+		links.removeLinkedResource(a);
+		assertNull(links.getVariableNamesByResource(a, false));
+		assertNull(links.getResourcesByVariableName("y", true));
+		links.removeLinkedResource(b);
+		assertTrue(links.isEmpty());
+	}
+
+	public void testStoreAndLoad() {
+		LinkCollection links = new LinkCollection("test");
+		IPath a = new Path("/p/a.xhtml");
+		links.addLinkedResource("x", a, false);
+		links.addLinkedResource("y", a, true);
+		links.addUnnamedResource(new Path("/p/c.xhtml"));
+		Element root = XMLUtilities.createDocumentElement("root");
+		links.store(root, new HashMap<String, String>());
+		assertEquals(0, links.getModificationsSinceLastStore());
+
+		LinkCollection loaded = new LinkCollection("test");
+		loaded.load(root, new HashMap<String, String>());
+		assertEquals(links.getVariableNamesByResource(a, false), loaded.getVariableNamesByResource(a, false));
+		assertEquals(links.getVariableNamesByResource(a, true), loaded.getVariableNamesByResource(a, true));
+		assertEquals(links.getUnnamedResources(), loaded.getUnnamedResources());
+	}
+
+	public void testSnapshotsSurviveReuseOfIds() {
+		LinkCollection links = new LinkCollection("test");
+		IPath a = new Path("/p/a.xhtml");
+		links.addLinkedResource("x", a, false);
+		Set<String> names = links.getVariableNamesByResource(a, false);
+		Set<IPath> paths = links.getResourcesByVariableName("x", false);
+
+		links.removeLinkedResource(a);
+		assertTrue(links.isEmpty());
+		// Ids of a and x are free now and are taken by new values.
+		IPath b = new Path("/p/b.xhtml");
+		links.addLinkedResource("y", b, false);
+		assertEquals(Collections.singleton("x"), names);
+		assertEquals(Collections.singleton(a), paths);
+		assertNull(links.getVariableNamesByResource(a, false));
+		assertNull(links.getResourcesByVariableName("x", false));
+		assertEquals(Collections.singleton("y"), links.getVariableNamesByResource(b, false));
+		assertEquals(Collections.singleton(b), links.getResourcesByVariableName("y", false));
+	}
+
+	public void testClearAll() {
+		LinkCollection links = new LinkCollection("test");
+		IPath a = new Path("/p/a.xhtml");
+		links.addLinkedResource("x", a, true);
+		links.addUnnamedResource(new Path("/p/b.xhtml"));
+		links.clearAll();
+		assertTrue(links.isEmpty());
+		assertEquals(0, links.getLinkCount());
+		assertNull(links.getVariableNamesByResource(a, false));
+		assertNull(links.getResourcesByVariableName("x", true));
+
+		links.addLinkedResource("y", a, false);
+		assertEquals(Collections.singleton("y"), links.getVariableNamesByResource(a, false));
+		assertNull(links.getVariableNamesByResource(a, true));
+	}
+
+	/**
+	 * Builds a synthetic collection of 100k links, with a variable name
+	 * linked to every resource, and checks it against plain sets of links.
+	 */
+	public void testLargeCollection() {
+		IPath[] paths = new IPath[LINK_COUNT / 10];
+		for (int i = 0; i < paths.length; i++) {
+			paths[i] = new Path("/p/WebContent/page" + i + ".xhtml");
+		}
+		String[] names = new String[LINK_COUNT / 20];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = "bean" + i + ".property";
+		}
+		Map<String, Set<IPath>> expected = new HashMap<String, Set<IPath>>();
+		Map<String, Set<IPath>> expectedDeclarations = new HashMap<String, Set<IPath>>();
+		LinkCollection links = new LinkCollection("test");
+		for (int i = 0; i < LINK_COUNT; i++) {
+			String name = names[(i * 7) % names.length];
+			IPath path = paths[i / 10];
+			links.addLinkedResource(name, path, i % 3 == 0);
+			add(expected, name, path);
+			if(i % 3 == 0) {
+				add(expectedDeclarations, name, path);
+			}
+		}
+		for (IPath path: paths) {
+			links.addLinkedResource("common", path, false);
+			add(expected, "common", path);
+		}
+		assertEquals(LINK_COUNT + paths.length, links.getLinkCount());
+		assertEquals(expected.size(), names.length + 1);
+		for (String name: expected.keySet()) {
+			assertEquals(name, expected.get(name), links.getResourcesByVariableName(name, false));
+			assertEquals(name, expectedDeclarations.get(name), links.getResourcesByVariableName(name, true));
+		}
+		for (int i = 0; i < paths.length; i += 2) {
+			links.removeLinkedResource("common", paths[i]);
+		}
+		assertEquals(paths.length / 2, links.getResourcesByVariableName("common", false).size());
+		for (int i = 0; i < paths.length; i++) {
+			assertEquals(i % 2 == 1, links.getVariableNamesByResource(paths[i], false).contains("common"));
+			links.removeLinkedResource(paths[i]);
+		}
+		assertTrue(links.isEmpty());
+		assertEquals(0, links.getLinkCount());
+	}
+
+	public void testGettersReturnPublishedSnapshots() {
+		LinkCollection links = new LinkCollection("test");
+		IPath a = new Path("/p/a.xhtml");
+		links.addLinkedResource("x", a, false);
+		Set<IPath> paths = links.getResourcesByVariableName("x", false);
+		Set<String> names = links.getVariableNamesByResource(a, false);
+		// Getters allocate nothing, they return the sets published by the last change.
+		assertSame(paths, links.getResourcesByVariableName("x", false));
+		assertSame(names, links.getVariableNamesByResource(a, false));
+
+		links.addLinkedResource("x", a, false);
+		assertSame(paths, links.getResourcesByVariableName("x", false));
+		links.addLinkedResource("x", new Path("/p/b.xhtml"), false);
+		assertNotSame(paths, links.getResourcesByVariableName("x", false));
+		assertEquals(1, paths.size());
+		assertSame(names, links.getVariableNamesByResource(a, false));
+	}
+
+	/**
+	 * Checks that the collection of 100k links takes less than half of the heap
+	 * taken by the same links in hash maps of hash sets.
+	 */
+	public void testFootprint() {
+		IPath[] paths = new IPath[LINK_COUNT / 10];
+		for (int i = 0; i < paths.length; i++) {
+			paths[i] = new Path("/p/WebContent/page" + i + ".xhtml");
+		}
+		String[] names = new String[LINK_COUNT / 20];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = ("bean" + i + ".property").intern();
+		}
+
+		long before = getUsedMemory();
+		LinkCollection links = new LinkCollection("test");
+		for (int i = 0; i < LINK_COUNT; i++) {
+			links.addLinkedResource(names[(i * 7) % names.length], paths[i / 10], i % 3 == 0);
+		}
+		long linksMemory = getUsedMemory() - before;
+
+		before = getUsedMemory();
+		Map<String, Set<IPath>> resourcesByName = new HashMap<String, Set<IPath>>();
+		Map<String, Set<IPath>> resourcesByDeclaringName = new HashMap<String, Set<IPath>>();
+		Map<IPath, Set<String>> namesByResource = new HashMap<IPath, Set<String>>();
+		Map<IPath, Set<String>> declaringNamesByResource = new HashMap<IPath, Set<String>>();
+		for (int i = 0; i < LINK_COUNT; i++) {
+			String name = names[(i * 7) % names.length];
+			IPath path = paths[i / 10];
+			add(resourcesByName, name, path);
+			add(namesByResource, path, name);
+			if(i % 3 == 0) {
+				add(resourcesByDeclaringName, name, path);
+				add(declaringNamesByResource, path, name);
+			}
+		}
+		long mapsMemory = getUsedMemory() - before;
+
+		// Both structures are kept reachable until they are measured.
+		assertEquals(LINK_COUNT, links.getLinkCount());
+		assertEquals(paths.length, namesByResource.size());
+		assertEquals(names.length, resourcesByName.size());
+		assertFalse(resourcesByDeclaringName.isEmpty() || declaringNamesByResource.isEmpty());
+		assertTrue("Links take " + linksMemory + " bytes, hash sets take " + mapsMemory + " bytes", linksMemory * 2 < mapsMemory);
+	}
+
+	private static long getUsedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+			used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+		}
+		return used;
+	}
+
+	private static <K, V> void add(Map<K, Set<V>> links, K key, V value) {
+		Set<V> values = links.get(key);
+		if(values == null) {
+			values = new HashSet<V>();
+			links.put(key, values);
+		}
+		values.add(value);
+	}
+
+}
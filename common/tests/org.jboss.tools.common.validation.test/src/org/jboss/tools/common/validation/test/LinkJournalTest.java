@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.common.validation.test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.jboss.tools.common.validation.internal.LinkCollection;
+import org.jboss.tools.common.validation.internal.LinkJournal;
+
+public class LinkJournalTest extends TestCase {
+	private File journalFile;
+
+	@Override
+	protected void setUp() throws Exception {
+		journalFile = File.createTempFile("links", ".journal");
+		journalFile.delete();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		journalFile.delete();
+	}
+
+	public void testAppendAndReplay() throws Exception {
+		IPath a = new Path("/p/a.xhtml");
+		IPath b = new Path("/p/b.xhtml");
+		LinkCollection links = new LinkCollection("test");
+		links.addLinkedResource("x", a, true);
+		links.setJournal(new LinkJournal(journalFile));
+		assertTrue(links.saveJournal());
+		long snapshotLength = journalFile.length();
+
+		links.addLinkedResource("y", b, false);
+		links.addUnnamedResource(new Path("/p/c.xhtml"));
+		links.removeLinkedResource("x", a);
+		assertTrue(links.saveJournal());
+		assertEquals(0, links.getModificationsSinceLastStore());
+		assertTrue(journalFile.length() > snapshotLength);
+
+		LinkCollection restored = new LinkCollection("test");
+		LinkJournal journal = new LinkJournal(journalFile);
+		assertTrue(journal.replay(restored));
+		assertEquals(4, journal.getRecordCount());
+		assertNull(restored.getResourcesByVariableName("x", false));
+		assertTrue(restored.getResourcesByVariableName("y", false).contains(b));
+		assertTrue(restored.getUnnamedResources().contains(new Path("/p/c.xhtml")));
+
+		// Appending continues after replay.
+		restored.setJournal(journal);
+		restored.removeLinkedResource(b);
+		assertTrue(restored.saveJournal());
+		LinkCollection restored2 = new LinkCollection("test");
+		assertTrue(new LinkJournal(journalFile).replay(restored2));
+		assertNull(restored2.getVariableNamesByResource(b, false));
+		assertEquals(1, restored2.getUnnamedResources().size());
+	}
+
+	public void testInterruptedSnapshotKeepsJournal() throws Exception {
+		IPath a = new Path("/p/a.xhtml");
+		LinkCollection links = new LinkCollection("test");
+		links.addLinkedResource("x", a, true);
+		links.setJournal(new LinkJournal(journalFile));
+		assertTrue(links.saveJournal());
+
+		// The session was killed after the journal was moved to backup
+		// and before the new snapshot replaced it.
+		File backup = new File(journalFile.getParentFile(), journalFile.getName() + ".bak");
+		File tmp = new File(journalFile.getParentFile(), journalFile.getName() + ".tmp");
+		try {
+			assertTrue(journalFile.renameTo(backup));
+			assertTrue(tmp.createNewFile());
+
+			LinkCollection restored = new LinkCollection("test");
+			LinkJournal journal = new LinkJournal(journalFile);
+			assertTrue(journal.replay(restored));
+			assertTrue(restored.getResourcesByVariableName("x", true).contains(a));
+			assertFalse(backup.exists());
+			assertTrue(journalFile.isFile());
+		} finally {
+			backup.delete();
+			tmp.delete();
+		}
+	}
+
+	public void testCompaction() throws Exception {
+		IPath a = new Path("/p/a.xhtml");
+		LinkCollection links = new LinkCollection("test");
+		LinkJournal journal = new LinkJournal(journalFile);
+		links.setJournal(journal);
+		links.addLinkedResource("x", a, false);
+		links.saveJournal();
+		for (int i = 0; i < 100; i++) {
+			links.removeLinkedResource("x", a);
+			links.addLinkedResource("x", a, false);
+		}
+		links.saveJournal();
+		assertEquals(201, journal.getRecordCount());
+
+		for (int i = 0; i < 1000; i++) {
+			links.removeLinkedResource("x", a);
+			links.addLinkedResource("x", a, false);
+		}
+		links.saveJournal();
+		assertEquals(1, journal.getRecordCount());
+
+		LinkCollection restored = new LinkCollection("test");
+		assertTrue(new LinkJournal(journalFile).replay(restored));
+		assertTrue(restored.getVariableNamesByResource(a, false).contains("x"));
+	}
+
+	public void testBrokenTail() throws Exception {
+		IPath a = new Path("/p/a.xhtml");
+		IPath b = new Path("/p/b.xhtml");
+		LinkCollection links = new LinkCollection("test");
+		links.setJournal(new LinkJournal(journalFile));
+		links.addLinkedResource("x", a, false);
+		links.saveJournal();
+		links.addLinkedResource("y", b, false);
+		links.saveJournal();
+
+		RandomAccessFile f = new RandomAccessFile(journalFile, "rw");
+		try {
+			f.setLength(f.length() - 2);
+		} finally {
+			f.close();
+		}
+		LinkCollection restored = new LinkCollection("test");
+		LinkJournal journal = new LinkJournal(journalFile);
+		assertTrue(journal.replay(restored));
+		assertTrue(restored.getVariableNamesByResource(a, false).contains("x"));
+		assertNull(restored.getVariableNamesByResource(b, false));
+
+		// The journal is rewritten on the next save.
+		restored.setJournal(journal);
+		restored.saveJournal();
+		assertEquals(1, journal.getRecordCount());
+	}
+
+	public void testBrokenHeader() throws Exception {
+		LinkCollection links = new LinkCollection("test");
+		links.setJournal(new LinkJournal(journalFile));
+		links.addLinkedResource("x", new Path("/p/a.xhtml"), false);
+		links.saveJournal();
+
+		for (int length = 6; length >= 0; length -= 3) {
+			RandomAccessFile f = new RandomAccessFile(journalFile, "rw");
+			try {
+				f.setLength(length);
+			} finally {
+				f.close();
+			}
+			LinkCollection restored = new LinkCollection("test");
+			assertFalse("Journal of " + length + " bytes is replayed", new LinkJournal(journalFile).replay(restored));
+			assertTrue(restored.isEmpty());
+		}
+	}
+}
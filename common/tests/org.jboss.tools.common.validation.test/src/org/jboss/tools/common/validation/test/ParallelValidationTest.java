@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.common.validation.test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.wst.validation.internal.provisional.core.IMessage;
+import org.jboss.tools.common.preferences.SeverityPreferences;
+import org.jboss.tools.common.validation.ParallelValidation;
+import org.jboss.tools.common.validation.ValidationErrorManager;
+
+public class ParallelValidationTest extends TestCase {
+	private static final String ERROR = "error";
+	private static final int FILE_COUNT = 16;
+
+	private IProject project;
+	private IFolder folder;
+	private Map<IFile, String> contents = new HashMap<IFile, String>();
+	private int threadCount;
+
+	@Override
+	protected void setUp() throws Exception {
+		threadCount = ParallelValidation.getThreadCount();
+		project = ResourcesPlugin.getWorkspace().getRoot().getProject("JavaProject");
+		folder = project.getFolder("parallel");
+		folder.create(true, true, null);
+		for (int i = 0; i < FILE_COUNT; i++) {
+			StringBuilder text = new StringBuilder();
+			for (int line = 0; line < 10 + i; line++) {
+				text.append(line % 3 == i % 3 ? "an error in line " : "line ").append(line).append('\n');
+			}
+			IFile file = folder.getFile("file" + i + ".txt");
+			file.create(new ByteArrayInputStream(text.toString().getBytes("UTF-8")), true, null);
+			contents.put(file, text.toString());
+		}
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		ParallelValidation.setThreadCount(threadCount);
+		folder.delete(true, null);
+	}
+
+	public void testParallelMarkersMatchSequential() throws Exception {
+		ParallelValidation.setThreadCount(1);
+		TestErrorManager errorManager = new TestErrorManager();
+		errorManager.validate(contents.keySet(), new TestFileValidator());
+		List<String> sequential = getMarkers();
+		assertEquals(getExpectedMarkers(), sequential);
+
+		deleteMarkers();
+		ParallelValidation.setThreadCount(4);
+		errorManager = new TestErrorManager();
+		errorManager.validate(contents.keySet(), new TestFileValidator());
+		assertEquals(sequential, getMarkers());
+		assertNull("Per-file state of a worker leaked to the error manager", errorManager.getDocument());
+	}
+
+	public void testInterruptedValidationCreatesAllMarkers() throws Exception {
+		ParallelValidation.setThreadCount(4);
+		TestErrorManager errorManager = new TestErrorManager();
+		Thread.currentThread().interrupt();
+		try {
+			errorManager.validate(contents.keySet(), new TestFileValidator());
+		} finally {
+			assertTrue("Interrupt status is not restored", Thread.interrupted());
+		}
+		assertEquals(getExpectedMarkers(), getMarkers());
+	}
+
+	public void testExceptionDoesNotStopValidation() throws Exception {
+		ParallelValidation.setThreadCount(4);
+		final IFile failing = folder.getFile("file0.txt");
+		TestErrorManager errorManager = new TestErrorManager();
+		errorManager.validate(contents.keySet(), new TestFileValidator() {
+			@Override
+			public void validate(IFile file, ValidationErrorManager errorManager) throws Exception {
+				if(file.equals(failing)) {
+					throw new Exception("Test exception");
+				}
+				super.validate(file, errorManager);
+			}
+		});
+		List<String> expected = new ArrayList<String>();
+		for (String marker : getExpectedMarkers()) {
+			if(!marker.startsWith(failing.getFullPath().toString() + ":")) {
+				expected.add(marker);
+			}
+		}
+		assertEquals(expected, getMarkers());
+	}
+
+	/*
+	 * Markers that the file validator should create: path, line, offset, length, message
+	 */
+	private List<String> getExpectedMarkers() {
+		List<String> result = new ArrayList<String>();
+		for (IFile file : contents.keySet()) {
+			String text = contents.get(file);
+			String[] lines = text.split("\n");
+			int offset = 0;
+			for (int i = 0; i < lines.length; i++) {
+				int index = lines[i].indexOf(ERROR);
+				if(index >= 0) {
+					result.add(toString(file, i + 1, offset + index, ERROR.length(), file.getName()));
+				}
+				offset += lines[i].length() + 1;
+			}
+		}
+		Collections.sort(result);
+		return result;
+	}
+
+	private List<String> getMarkers() throws CoreException {
+		List<String> result = new ArrayList<String>();
+		for (IFile file : contents.keySet()) {
+			for (IMarker marker : file.findMarkers(ValidationErrorManager.DEFAULT_VALIDATION_MARKER, false, IResource.DEPTH_ZERO)) {
+				int start = marker.getAttribute(IMarker.CHAR_START, -1);
+				int end = marker.getAttribute(IMarker.CHAR_END, -1);
+				result.add(toString(file, marker.getAttribute(IMarker.LINE_NUMBER, -1), start, end - start, marker.getAttribute(IMarker.MESSAGE, "")));
+			}
+		}
+		Collections.sort(result);
+		return result;
+	}
+
+	private void deleteMarkers() throws CoreException {
+		folder.deleteMarkers(ValidationErrorManager.DEFAULT_VALIDATION_MARKER, false, IResource.DEPTH_INFINITE);
+	}
+
+	private static String toString(IFile file, int line, int offset, int length, String message) {
+		return file.getFullPath() + ":" + line + ":" + offset + ":" + length + ":" + message;
+	}
+
+	/*
+	 * Reports every occurrence of "error". Keeps the document of the file
+	 * in the error manager, so that line numbers are computed from it.
+	 */
+	class TestFileValidator implements ParallelValidation.IFileValidator {
+		public void validate(IFile file, ValidationErrorManager errorManager) throws Exception {
+			TestErrorManager manager = (TestErrorManager)errorManager;
+			String text = contents.get(file);
+			manager.setDocument(new Document(text));
+			int index = -1;
+			while((index = text.indexOf(ERROR, index + 1)) >= 0) {
+				// Let other workers change their state in between
+				Thread.yield();
+				manager.addError("{0}", IMessage.HIGH_SEVERITY, new String[]{file.getName()}, -1, ERROR.length(), index, file);
+			}
+		}
+	}
+
+	static class TestErrorManager extends ValidationErrorManager {
+		public TestErrorManager() {
+			setProblemType(DEFAULT_VALIDATION_MARKER);
+		}
+
+		public void validate(Collection<IFile> files, ParallelValidation.IFileValidator validator) {
+			validateFiles(files, validator);
+		}
+
+		public void setDocument(IDocument document) {
+			this.document = document;
+		}
+
+		public IDocument getDocument() {
+			return document;
+		}
+
+		@Override
+		protected String getPreference(IProject project, String preferenceKey) {
+			return SeverityPreferences.WARNING;
+		}
+
+		@Override
+		public int getMaxNumberOfMarkersPerFile(IProject project) {
+			return 0;
+		}
+
+		@Override
+		protected void registerPreferenceInfo() {
+		}
+	}
+}
@@ -10,7 +10,10 @@
  ******************************************************************************/
 package org.jboss.tools.foundation.core.ecf;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
 import java.net.URL;
@@ -20,9 +23,14 @@ import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubProgressMonitor;
+import org.jboss.tools.foundation.core.digest.DigestUtils;
 import org.jboss.tools.foundation.core.ecf.internal.InternalURLTransport;
+import org.jboss.tools.foundation.core.ecf.internal.InternalURLTransport.ConditionalResponse;
+import org.jboss.tools.foundation.core.ecf.internal.RangeDownload;
+import org.jboss.tools.foundation.core.ecf.internal.SharedDownload;
 import org.jboss.tools.foundation.core.ecf.internal.URLTransportCache;
 import org.jboss.tools.foundation.core.internal.FoundationCorePlugin;
 import org.jboss.tools.foundation.core.jobs.BarrierProgressWaitJob;
@@ -51,6 +59,12 @@ public class URLTransportUtility {
 	 * the eclipse session ends.
 	 */
 	public static final int CACHE_UNTIL_EXIT = 2;
+	
+	/**
+	 * System property for the number of byte ranges fetched at once 
+	 * when downloading a url to a file.
+	 */
+	public static final String DOWNLOAD_PARTS_PROPERTY = "org.jboss.tools.foundation.core.ecf.downloadParts";
 
 
 	/**
@@ -129,6 +143,18 @@ public class URLTransportUtility {
 
 	
 	
+	/**
+	 * Get the file cached for the url by an earlier download in the default cache folder,
+	 * without any remote access. The file may be outdated.
+	 *
+	 * @param url			The URL
+	 * @return 				The cached file, or null if the url was never downloaded
+	 * @since 1.3
+	 */
+	public File getCachedFile(String url) {
+		return URLTransportCache.getDefault().getCachedFile(url);
+	}
+
 	public boolean isCacheOutdated(String url, IProgressMonitor mon) throws CoreException {
 		return isCacheOutdated(url, URLTransportCache.getDefault(), mon);
 	}
@@ -173,12 +199,26 @@ public class URLTransportUtility {
 	 * @return 				A file representing the cached or newly cached file, or null if none exists
 	 * @throws CoreException  If a download failed, was canceled, or unexpected error occurred
 	 */
-	private File getCachedFileForURL(String url, String displayName, int lifespan,
+	private File getCachedFileForURL(final String url, final String displayName, final int lifespan,
+			final URLTransportCache cache, final int timeout, IProgressMonitor monitor) throws CoreException {
+		// Concurrent requests for the same url wait for one download
+		return SharedDownload.get(url, displayName, cache, lifespan, timeout, new SharedDownload.IDownload() {
+			public File run(IProgressMonitor monitor) throws CoreException {
+				return downloadOrGetCachedFile(url, displayName, lifespan, cache, timeout, monitor);
+			}
+		}, monitor);
+	}
+	
+	private File downloadOrGetCachedFile(String url, String displayName, int lifespan,
 			URLTransportCache cache, int timeout, IProgressMonitor monitor) throws CoreException {
 
 		monitor.beginTask(displayName, 200);
-		IProgressMonitor sub1 = new SubProgressMonitor(monitor, 100);
 		try {
+			if( InternalURLTransport.supportsConditionalRequests(url)) {
+				// One conditional request, it returns 304 if the cached copy is up to date
+				return cache.downloadIfModified(url, displayName, lifespan, this, timeout, new SubProgressMonitor(monitor, 200));
+			}
+			IProgressMonitor sub1 = new SubProgressMonitor(monitor, 100);
 			if( cache.isCacheOutdated(url, sub1)) {
 				sub1.done();
 				// If the remote cache is outdated, fetch the new copy
@@ -336,6 +376,148 @@ public class URLTransportUtility {
 		return FoundationCorePlugin.statusFactory().cancelStatus(Messages.ECFTransport_Operation_canceled);
 	}
 	
+	/**
+	 * Download the given url to a file. Http and https urls are fetched with 
+	 * Range requests when the server supports them, so that a download which 
+	 * failed or was canceled is resumed by the next call for the same destination. 
+	 * The number of ranges fetched at once is given by system property 
+	 * {@link #DOWNLOAD_PARTS_PROPERTY}, 1 by default. A partial download is kept
+	 * in the files returned by {@link #getPartialDownloadFiles(File)}.
+	 * 
+	 * @param displayName A string representation of the URL suitable for display / progress purposes
+	 * @param url  The URL to fetch
+	 * @param user  User for basic authentication, or null
+	 * @param pass  Password for basic authentication, or null
+	 * @param destination  The file to write
+	 * @param sha1  The expected SHA1 of the file, or null to skip verification
+	 * @param timeout a timeout duration for how long connections should attempt to connect
+	 * @param monitor A progress monitor
+	 * @return A status object indicating the success or failure
+	 */
+	public IStatus download(String displayName, String url, String user, String pass, 
+			File destination, String sha1, int timeout, IProgressMonitor monitor) {
+		return download(displayName, url, user, pass, destination, sha1, getDefaultDownloadParts(), timeout, monitor);
+	}
+	
+	/**
+	 * Download the given url to a file, fetching up to the given number of 
+	 * byte ranges of the file at once. 
+	 * 
+	 * @param displayName A string representation of the URL suitable for display / progress purposes
+	 * @param url  The URL to fetch
+	 * @param user  User for basic authentication, or null
+	 * @param pass  Password for basic authentication, or null
+	 * @param destination  The file to write
+	 * @param sha1  The expected SHA1 of the file, or null to skip verification
+	 * @param parts  The number of ranges to fetch at once
+	 * @param timeout a timeout duration for how long connections should attempt to connect
+	 * @param monitor A progress monitor
+	 * @return A status object indicating the success or failure
+	 * @see #download(String, String, String, String, File, String, int, IProgressMonitor)
+	 */
+	public IStatus download(final String displayName, final String url, final String user, final String pass, 
+			final File destination, final String sha1, final int parts, final int timeout, final IProgressMonitor monitor2) {
+		if( InternalURLTransport.supportsConditionalRequests(url)) {
+			BarrierProgressWaitJob j = new BarrierProgressWaitJob("Download Remote URL",  new IRunnableWithProgress() {
+				public Object run(IProgressMonitor monitor) throws Exception {
+					return Boolean.valueOf(getTransport().rangeDownload(displayName, url, user, pass, destination, sha1, parts, timeout, monitor));
+				}
+			});
+			j.schedule();
+			// This join will also poll the provided monitor for cancelations
+			j.monitorSafeJoin(monitor2);
+			Throwable t = j.getThrowable();
+			if( monitor2.isCanceled() || t instanceof OperationCanceledException)
+				return FoundationCorePlugin.statusFactory().cancelStatus(Messages.ECFTransport_Operation_canceled);
+			if( Boolean.TRUE.equals(j.getReturnValue()))
+				return Status.OK_STATUS;
+			if( t != null && RangeDownload.getPartialFile(destination).exists()) {
+				// Received bytes are kept, the next call resumes the download
+				return FoundationCorePlugin.statusFactory().errorStatus(Messages.ECFExamplesTransport_IO_error, t);
+			}
+			// Ranges are not supported, or the server could not be reached without ECF
+		}
+		
+		OutputStream out = null;
+		try {
+			out = new BufferedOutputStream(new FileOutputStream(destination));
+		} catch(IOException ioe) {
+			return FoundationCorePlugin.statusFactory().errorStatus(Messages.ECFExamplesTransport_IO_error, ioe);
+		}
+		// The stream is closed by the transport
+		IStatus s = download(displayName, url, user, pass, out, timeout, monitor2);
+		if( s.isOK() && sha1 != null ) {
+			try {
+				String actual = DigestUtils.sha1(destination);
+				if( !sha1.equalsIgnoreCase(actual)) {
+					destination.delete();
+					return FoundationCorePlugin.statusFactory().errorStatus("SHA1 of " + url + " is " + actual + ", expected " + sha1);
+				}
+			} catch(IOException ioe) {
+				return FoundationCorePlugin.statusFactory().errorStatus(Messages.ECFExamplesTransport_IO_error, ioe);
+			}
+		}
+		return s;
+	}
+	
+	/**
+	 * Get the files which keep a partial download to the given destination,
+	 * so that a caller which deletes the destination can delete them as well.
+	 * 
+	 * @param destination  The file to write
+	 * @return The files, which may not exist
+	 */
+	public static File[] getPartialDownloadFiles(File destination) {
+		return new File[] { RangeDownload.getPartialFile(destination), RangeDownload.getStateFile(destination) };
+	}
+	
+	private static int getDefaultDownloadParts() {
+		try {
+			return Math.max(1, Integer.parseInt(System.getProperty(DOWNLOAD_PARTS_PROPERTY, "1")));
+		} catch(NumberFormatException nfe) {
+			return 1;
+		}
+	}
+	
+	/**
+	 * Send a single GET request for an http or https url with If-None-Match and 
+	 * If-Modified-Since headers built from the given validators. The body is 
+	 * written to the destination only if the server answers 200. The request
+	 * uses the proxy settings and credentials like other downloads.
+	 * 
+	 * @param displayName A string representation of the URL suitable for display / progress purposes
+	 * @param url  The http or https URL to fetch
+	 * @param eTag  The ETag of a local copy, or null
+	 * @param lastModified  The Last-Modified of a local copy, or null
+	 * @param destination  The output stream to feed the contents to, or null to only check validators
+	 * @param timeout a timeout duration for how long connections should attempt to connect
+	 * @param monitor A progress monitor
+	 * @return The response code and the validators of the remote file
+	 * @throws IOException if the request failed or was answered with neither 200 nor 304
+	 * @throws OperationCanceledException if the monitor was canceled
+	 */
+	public ConditionalResponse conditionalDownload(final String displayName, final String url, final String eTag, 
+			final String lastModified, final OutputStream destination, final int timeout, final IProgressMonitor monitor2) throws IOException {
+		BarrierProgressWaitJob j = new BarrierProgressWaitJob("Download Remote URL",  new IRunnableWithProgress() {
+			public Object run(IProgressMonitor monitor) throws Exception {
+				return getTransport().conditionalDownload(displayName, url, eTag, lastModified, destination, timeout, monitor);
+			}
+		});
+		j.schedule();
+		// This join will also poll the provided monitor for cancelations
+		j.monitorSafeJoin(monitor2);
+		if( monitor2.isCanceled())
+			throw new OperationCanceledException();
+		if( j.getThrowable() != null ) {
+			if( j.getThrowable() instanceof IOException)
+				throw (IOException)j.getThrowable();
+			if( j.getThrowable() instanceof OperationCanceledException)
+				throw (OperationCanceledException)j.getThrowable();
+			throw new RuntimeException(j.getThrowable());
+		}
+		return (ConditionalResponse)j.getReturnValue();
+	}
+	
 	/*
 	 * Get the internal transport object
 	 */
@@ -10,9 +10,11 @@
  ******************************************************************************/
 package org.jboss.tools.foundation.core.ecf.internal;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
 import java.net.ProtocolException;
 import java.net.URL;
 import java.net.URLEncoder;
@@ -386,6 +388,238 @@ public class InternalURLTransport {
 		return result[0];
 	}
 	
+	/**
+	 * Response to a conditional request, with validators of the remote file.
+	 */
+	public static class ConditionalResponse {
+		private final int responseCode;
+		private final String eTag;
+		private final String lastModified;
+
+		public ConditionalResponse(int responseCode, String eTag, String lastModified) {
+			this.responseCode = responseCode;
+			this.eTag = eTag;
+			this.lastModified = lastModified;
+		}
+
+		public int getResponseCode() {
+			return responseCode;
+		}
+
+		/**
+		 * @return value of ETag header, or null
+		 */
+		public String getETag() {
+			return eTag;
+		}
+
+		/**
+		 * @return value of Last-Modified header, or null
+		 */
+		public String getLastModified() {
+			return lastModified;
+		}
+
+		public boolean isOK() {
+			return responseCode == HttpURLConnection.HTTP_OK;
+		}
+
+		public boolean isNotModified() {
+			return responseCode == HttpURLConnection.HTTP_NOT_MODIFIED;
+		}
+	}
+
+	/**
+	 * Returns true if conditional requests can be sent to the url,
+	 * i.e. it is an http or https url.
+	 */
+	public static boolean supportsConditionalRequests(String url) {
+		String lower = url.toLowerCase();
+		return lower.startsWith("http://") || lower.startsWith("https://"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/**
+	 * Sends a single GET request with If-None-Match and If-Modified-Since headers
+	 * built from the validators of a local copy. The request is sent with ECF, 
+	 * so the proxy settings and stored credentials are used as for other downloads. 
+	 * If the server answers 200, the body is written to the destination; 
+	 * if it answers 304 Not Modified, there is no body. 
+	 * 
+	 * The destination stream, if any, is closed by this method.
+	 * 
+	 * @param name  A user-visible name of the file
+	 * @param url  An http or https url
+	 * @param eTag  ETag of the local copy, or null
+	 * @param lastModified  Last-Modified of the local copy, or null
+	 * @param destination  Stream for the body, or null to only check the validators 
+	 * @param timeout  Connect and read timeout in ms, a negative value for the default
+	 * @param monitor
+	 * @return the response, either 200 or 304
+	 * @throws IOException if the request fails or the server answers with another code
+	 * @throws OperationCanceledException if the monitor or the login prompt is canceled
+	 */
+	public ConditionalResponse conditionalDownload(String name, String url, String eTag, String lastModified, 
+			OutputStream destination, int timeout, IProgressMonitor monitor) throws IOException {
+		Trace.trace(Trace.STRING_FINER, "Sending conditional request for " + url);
+		try {
+			IRetrieveFileTransferFactory factory = (IRetrieveFileTransferFactory) getFileTransferServiceTracker().getService();
+			if (factory == null)
+				throw new IOException(Messages.ECFExamplesTransport_IO_error);
+			Map<String, String> headers = new HashMap<String, String>();
+			if( eTag != null )
+				headers.put("If-None-Match", eTag); //$NON-NLS-1$
+			if( lastModified != null )
+				headers.put("If-Modified-Since", lastModified); //$NON-NLS-1$
+			IConnectContext context = getConnectionContext(url, false);
+			for (int i = 0; i < LOGIN_RETRIES; i++) {
+				if( monitor.isCanceled())
+					throw new OperationCanceledException();
+				try {
+					ConditionalResponse response = conditionalTransfer(name, factory.newInstance(), url, headers, 
+							eTag, lastModified, destination, context, timeout, monitor);
+					Trace.trace(Trace.STRING_FINER, "Conditional request for " + url + " returned " + response.getResponseCode());
+					return response;
+				} catch (ProtocolException e) {
+					if (e != ERROR_401)
+						throw e;
+					context = getConnectionContext(url, true);
+				}
+			}
+			//reached maximum number of retries without success
+			throw new IOException(Messages.ECFExamplesTransport_IO_error);
+		} catch (UserCancelledException e) {
+			throw new OperationCanceledException();
+		} catch (CoreException e) {
+			throw new IOException(e.getMessage(), e);
+		} finally {
+			if( destination != null ) {
+				try {
+					destination.close();
+				} catch(IOException ioe) {
+					// ignore secondary failure
+				}
+			}
+		}
+	}
+
+	private ConditionalResponse conditionalTransfer(String name, IRetrieveFileTransferContainerAdapter retrievalContainer, String url, 
+			Map<String, String> headers, String eTag, String lastModified, final OutputStream destination, 
+			IConnectContext context, int timeout, IProgressMonitor monitor) throws IOException {
+		final IStatus[] result = new IStatus[1];
+		final IIncomingFileTransferReceiveStartEvent[] cancelable = new IIncomingFileTransferReceiveStartEvent[1];
+		final Map<?, ?>[] responseHeaders = new Map<?, ?>[1];
+		final IFileTransferListener delegate = getFileTransferListener(result, cancelable, destination, url, name, monitor);
+		IFileTransferListener listener = new IFileTransferListener() {
+			private boolean validatorsOnly = false;
+
+			public void handleTransferEvent(IFileTransferEvent event) {
+				if( validatorsOnly )
+					return;
+				if (event instanceof IIncomingFileTransferReceiveStartEvent) {
+					IIncomingFileTransferReceiveStartEvent rse = (IIncomingFileTransferReceiveStartEvent) event;
+					responseHeaders[0] = rse.getResponseHeaders();
+					if( destination == null ) {
+						// Only the validators are needed, the body is not read
+						validatorsOnly = true;
+						rse.cancel();
+						synchronized (result) {
+							result[0] = Status.OK_STATUS;
+							result.notify();
+						}
+						return;
+					}
+				}
+				delegate.handleTransferEvent(event);
+			}
+		};
+
+		HashMap<Object, Object> map = new HashMap<Object, Object>();
+		if( timeout >= 0 ) {
+			map.put(IRetrieveFileTransferOptions.CONNECT_TIMEOUT, new Integer(timeout));
+			map.put(IRetrieveFileTransferOptions.READ_TIMEOUT, new Integer(timeout));
+		}
+		map.put(IRetrieveFileTransferOptions.REQUEST_HEADERS, headers);
+		try {
+			retrievalContainer.setConnectContextForAuthentication(context);
+			retrievalContainer.sendRetrieveRequest(FileIDFactory.getDefault().createFileID(retrievalContainer.getRetrieveNamespace(), url), listener, map);
+		} catch (IncomingFileTransferException e) {
+			int code = e.getErrorCode();
+			if( code == HttpURLConnection.HTTP_NOT_MODIFIED ) {
+				// The validators of the local copy still apply if the response does not repeat them
+				Map<?, ?> h = e.getResponseHeaders();
+				String newETag = getHeader(h, "ETag"); //$NON-NLS-1$
+				String newLastModified = getHeader(h, "Last-Modified"); //$NON-NLS-1$
+				return new ConditionalResponse(code, newETag == null ? eTag : newETag, 
+						newLastModified == null ? lastModified : newLastModified);
+			}
+			if( code == HttpURLConnection.HTTP_UNAUTHORIZED )
+				throw ERROR_401;
+			Throwable exception = e.getStatus().getException();
+			if (exception instanceof IOException) {
+				if (exception.getMessage() != null && (exception.getMessage().indexOf("401") != -1 || exception.getMessage().indexOf(SERVER_REDIRECT) != -1)) //$NON-NLS-1$
+					throw ERROR_401;
+			}
+			throw new IOException(e.getMessage(), e);
+		} catch (FileCreateException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+
+		try {
+			waitFor(url, result);
+		} catch(InterruptedException ie) {
+			if( cancelable[0] != null )
+				cancelable[0].cancel();
+			throw new OperationCanceledException();
+		}
+		IStatus status = result[0];
+		if( status.getSeverity() == IStatus.CANCEL )
+			throw new OperationCanceledException();
+		if( !status.isOK())
+			throw new IOException(status.getMessage(), status.getException());
+		return new ConditionalResponse(HttpURLConnection.HTTP_OK, 
+				getHeader(responseHeaders[0], "ETag"), getHeader(responseHeaders[0], "Last-Modified")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/*
+	 * Header names are case insensitive
+	 */
+	private static String getHeader(Map<?, ?> headers, String name) {
+		if( headers == null )
+			return null;
+		for( Map.Entry<?, ?> e : headers.entrySet()) {
+			if( e.getKey() != null && name.equalsIgnoreCase(e.getKey().toString()) && e.getValue() != null )
+				return e.getValue().toString();
+		}
+		return null;
+	}
+
+	/**
+	 * Downloads an http or https url to a file with Range requests, resuming 
+	 * a previous partial download of the same file, and optionally fetching 
+	 * several ranges of the file at once. 
+	 * 
+	 * The request does not use ECF, so it does not prompt for credentials.
+	 * 
+	 * @param name  A user-visible name of the file
+	 * @param url  An http or https url
+	 * @param user  User for basic authentication, or null
+	 * @param pass  Password for basic authentication, or null
+	 * @param destination  The file to write
+	 * @param sha1  The expected SHA1 of the file, or null
+	 * @param parts  The number of ranges to fetch at once
+	 * @param timeout  Connect and read timeout in ms, a negative value for the default
+	 * @param monitor
+	 * @return false if the server does not support Range requests for the url; 
+	 *          callers should fall back to ECF
+	 * @throws IOException if the download fails; received bytes are kept for a later resume
+	 * @throws OperationCanceledException if the monitor is canceled
+	 * @see RangeDownload
+	 */
+	public boolean rangeDownload(String name, String url, String user, String pass, File destination, 
+			String sha1, int parts, int timeout, IProgressMonitor monitor) throws IOException {
+		return new RangeDownload(name, url, user, pass, destination, timeout).run(sha1, parts, monitor);
+	}
+
 	private IFileTransferListener getFileTransferListener(final IStatus[] result, final IIncomingFileTransferReceiveStartEvent[] cancelable, 
 			final OutputStream target, final String toDownload, final String name, final IProgressMonitor monitor) {
 		
@@ -0,0 +1,524 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.foundation.core.ecf.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.core.net.proxy.IProxyData;
+import org.eclipse.core.net.proxy.IProxyService;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.equinox.internal.p2.core.helpers.ServiceHelper;
+import org.eclipse.osgi.util.NLS;
+import org.jboss.tools.foundation.core.digest.DigestUtils;
+import org.jboss.tools.foundation.core.ecf.Messages;
+import org.jboss.tools.foundation.core.internal.FoundationCorePlugin;
+import org.jboss.tools.foundation.core.internal.Trace;
+
+/**
+ * Downloads an http or https url to a file with Range requests, so that
+ * a broken download is resumed where it stopped rather than started again.
+ *
+ * Received bytes are written to a partial file next to the destination,
+ * and the ranges still to be fetched are kept in a state file beside it,
+ * together with the validators of the remote file. A later download of the
+ * same url resumes the missing ranges if the remote file did not change.
+ *
+ * The file may be fetched in several byte ranges at once, each by its own
+ * connection, written at their positions in the partial file. When all ranges
+ * are received, the file is verified against the expected SHA1, if any, and
+ * renamed to the destination. A partial download which was not resumed
+ * for {@link #MAX_PARTIAL_AGE} is started over.
+ *
+ * Connections go through the proxy selected for the url by the Eclipse
+ * proxy settings, like the other transfers which go through ECF.
+ */
+public class RangeDownload {
+	private static final String PARTIAL_SUFFIX = ".part";
+	private static final String STATE_SUFFIX = ".part.properties";
+	private static final String KEY_URL = "url";
+	private static final String KEY_LENGTH = "length";
+	private static final String KEY_ETAG = "etag";
+	private static final String KEY_LAST_MODIFIED = "lastModified";
+	private static final String KEY_RANGES = "ranges";
+
+	/**
+	 * Ranges are not made smaller than this
+	 */
+	static final long MIN_RANGE_SIZE = 1024 * 1024;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int DEFAULT_TIMEOUT = 30000;
+	/**
+	 * How often the state file is written while downloading, in ms
+	 */
+	private static final long STATE_SAVE_INTERVAL = 2000;
+	/**
+	 * How long a partial download can be resumed, in ms
+	 */
+	static final long MAX_PARTIAL_AGE = 7L * 24 * 60 * 60 * 1000;
+
+	/**
+	 * Bytes [start, end) of the remote file, of which [start, next) are received
+	 */
+	static class Range {
+		final long start;
+		final AtomicLong next;
+		final long end;
+
+		Range(long start, long next, long end) {
+			this.start = start;
+			this.next = new AtomicLong(next);
+			this.end = end;
+		}
+
+		boolean isDone() {
+			return next.get() >= end;
+		}
+	}
+
+	private final String name;
+	private final String url;
+	private final File destination;
+	private final File partial;
+	private final File stateFile;
+	private final String authorization;
+	private final int timeout;
+
+	private Proxy proxy;
+	private String proxyAuthorization;
+
+	private long length;
+	private String eTag;
+	private String lastModified;
+	private List<Range> ranges;
+	private volatile boolean canceled = false;
+	private volatile boolean changed = false;
+
+	/**
+	 * @param name  A user-visible name of the file
+	 * @param url  An http or https url
+	 * @param user  User for basic authentication, or null
+	 * @param pass  Password for basic authentication, or null
+	 * @param destination  The file to write
+	 * @param timeout  Connect and read timeout in ms, a negative value for the default
+	 */
+	public RangeDownload(String name, String url, String user, String pass, File destination, int timeout) {
+		this.name = name;
+		this.url = url;
+		this.destination = destination;
+		this.partial = getPartialFile(destination);
+		this.stateFile = getStateFile(destination);
+		this.timeout = timeout >= 0 ? timeout : DEFAULT_TIMEOUT;
+		authorization = user != null && pass != null ? getBasicAuthorization(user, pass) : null;
+	}
+
+	private static String getBasicAuthorization(String user, String pass) {
+		return "Basic " + Base64.getEncoder().encodeToString((user + ":" + pass).getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Get the file which keeps received bytes of a download to the given destination
+	 */
+	public static File getPartialFile(File destination) {
+		return new File(destination.getPath() + PARTIAL_SUFFIX);
+	}
+
+	/**
+	 * Get the file which keeps the ranges still to be fetched of a download to the given destination
+	 */
+	public static File getStateFile(File destination) {
+		return new File(destination.getPath() + STATE_SUFFIX);
+	}
+
+	/**
+	 * Download the file, resuming a previous partial download if possible.
+	 *
+	 * @param sha1  The expected SHA1 of the file, or null to skip verification
+	 * @param parts  The number of ranges to fetch at once; 1 fetches the file in one request
+	 * @param monitor
+	 * @return false if the server does not report the length of the file or does not
+	 *         accept Range requests; nothing is written in this case
+	 * @throws IOException if the download failed; received bytes are kept for a later resume
+	 *         unless the file does not match the SHA1
+	 * @throws OperationCanceledException if the monitor is canceled; received bytes are kept
+	 */
+	public boolean run(String sha1, int parts, IProgressMonitor monitor) throws IOException {
+		if( !probe())
+			return false;
+		if( !resume() )
+			start(parts);
+
+		long remaining = 0;
+		for( Range r : ranges )
+			remaining += r.end - r.next.get();
+		Trace.trace(Trace.STRING_FINER, "Downloading " + remaining + " of " + length + " bytes of " + url + " in " + ranges.size() + " ranges");
+
+		monitor.beginTask(NLS.bind(Messages.ECFExamplesTransport_Downloading, name), 1000);
+		try {
+			fetch(monitor);
+			if( sha1 != null ) {
+				String actual = DigestUtils.sha1(partial);
+				if( !sha1.equalsIgnoreCase(actual)) {
+					clear();
+					throw new IOException("SHA1 of " + url + " is " + actual + ", expected " + sha1);
+				}
+			}
+			if( destination.exists() && !destination.delete())
+				throw new IOException("Cannot replace " + destination);
+			if( !partial.renameTo(destination))
+				throw new IOException("Cannot rename " + partial + " to " + destination);
+			stateFile.delete();
+			return true;
+		} finally {
+			monitor.done();
+		}
+	}
+
+	/*
+	 * Delete the partial file and its state
+	 */
+	private void clear() {
+		partial.delete();
+		stateFile.delete();
+	}
+
+	/*
+	 * Get the length and the validators of the remote file.
+	 */
+	private boolean probe() throws IOException {
+		HttpURLConnection connection = openConnection();
+		try {
+			connection.setRequestMethod("HEAD");
+			int code = connection.getResponseCode();
+			if( code != HttpURLConnection.HTTP_OK )
+				return false;
+			String len = connection.getHeaderField("Content-Length");
+			if( len == null || !"bytes".equalsIgnoreCase(connection.getHeaderField("Accept-Ranges")))
+				return false;
+			try {
+				length = Long.parseLong(len.trim());
+			} catch(NumberFormatException nfe) {
+				return false;
+			}
+			eTag = connection.getHeaderField("ETag");
+			lastModified = connection.getHeaderField("Last-Modified");
+			return true;
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	/*
+	 * Load the state of a previous download of the same remote file
+	 */
+	private boolean resume() {
+		if( !stateFile.isFile() || !partial.isFile() || partial.length() != length )
+			return false;
+		if( System.currentTimeMillis() - stateFile.lastModified() > MAX_PARTIAL_AGE ) {
+			Trace.trace(Trace.STRING_FINER, "Partial download of " + url + " expired");
+			return false;
+		}
+		Properties p = new Properties();
+		try {
+			InputStream in = new FileInputStream(stateFile);
+			try {
+				p.load(in);
+			} finally {
+				in.close();
+			}
+		} catch(IOException ioe) {
+			return false;
+		}
+		if( !url.equals(p.getProperty(KEY_URL)) || !String.valueOf(length).equals(p.getProperty(KEY_LENGTH)))
+			return false;
+		if( eTag == null && lastModified == null )
+			return false;
+		if( !equals(eTag, p.getProperty(KEY_ETAG)) || !equals(lastModified, p.getProperty(KEY_LAST_MODIFIED)))
+			return false;
+		List<Range> loaded = new ArrayList<Range>();
+		String[] list = p.getProperty(KEY_RANGES, "").split(",");
+		try {
+			for( int i = 0; i < list.length; i++ ) {
+				if( list[i].length() == 0 )
+					continue;
+				String[] r = list[i].split("-");
+				long start = Long.parseLong(r[0]);
+				long next = Long.parseLong(r[1]);
+				long end = Long.parseLong(r[2]);
+				if( start < 0 || next < start || end < next || end > length )
+					return false;
+				loaded.add(new Range(start, next, end));
+			}
+		} catch(RuntimeException re) {
+			return false;
+		}
+		Trace.trace(Trace.STRING_FINER, "Resuming download of " + url);
+		ranges = loaded;
+		return true;
+	}
+
+	private static boolean equals(String s1, String s2) {
+		return s1 == null ? s2 == null : s1.equals(s2);
+	}
+
+	/*
+	 * Split the file into ranges and allocate the partial file
+	 */
+	private void start(int parts) throws IOException {
+		clear();
+		File parent = partial.getParentFile();
+		if( parent != null )
+			parent.mkdirs();
+		int count = (int)Math.max(1, Math.min(parts, length / MIN_RANGE_SIZE));
+		ranges = new ArrayList<Range>();
+		long size = length / count;
+		for( int i = 0; i < count; i++ ) {
+			long start = i * size;
+			long end = i == count - 1 ? length : start + size;
+			ranges.add(new Range(start, start, end));
+		}
+		RandomAccessFile f = new RandomAccessFile(partial, "rw");
+		try {
+			f.setLength(length);
+		} finally {
+			f.close();
+		}
+		saveState();
+	}
+
+	private synchronized void saveState() throws IOException {
+		Properties p = new Properties();
+		p.setProperty(KEY_URL, url);
+		p.setProperty(KEY_LENGTH, String.valueOf(length));
+		if( eTag != null )
+			p.setProperty(KEY_ETAG, eTag);
+		if( lastModified != null )
+			p.setProperty(KEY_LAST_MODIFIED, lastModified);
+		StringBuffer sb = new StringBuffer();
+		for( Range r : ranges ) {
+			if( sb.length() > 0 )
+				sb.append(',');
+			sb.append(r.start).append('-').append(r.next.get()).append('-').append(r.end);
+		}
+		p.setProperty(KEY_RANGES, sb.toString());
+		File tmp = new File(stateFile.getPath() + ".tmp");
+		OutputStream out = new FileOutputStream(tmp);
+		try {
+			p.store(out, null);
+		} finally {
+			out.close();
+		}
+		if( stateFile.exists() )
+			stateFile.delete();
+		if( !tmp.renameTo(stateFile))
+			throw new IOException("Cannot write " + stateFile);
+	}
+
+	/*
+	 * Fetch the missing ranges, each by its own connection, while
+	 * reporting progress and polling the monitor on this thread.
+	 */
+	private void fetch(IProgressMonitor monitor) throws IOException {
+		final List<Range> todo = new ArrayList<Range>();
+		for( Range r : ranges ) {
+			if( !r.isDone())
+				todo.add(r);
+		}
+		if( todo.isEmpty())
+			return;
+		RandomAccessFile file = new RandomAccessFile(partial, "rw");
+		final FileChannel channel = file.getChannel();
+		ExecutorService executor = Executors.newFixedThreadPool(todo.size());
+		List<Future<Object>> futures = new ArrayList<Future<Object>>();
+		IOException failure = null;
+		try {
+			for( final Range r : todo ) {
+				futures.add(executor.submit(new Callable<Object>() {
+					public Object call() throws Exception {
+						fetch(r, channel);
+						return null;
+					}
+				}));
+			}
+			int reported = 0;
+			long lastSave = System.currentTimeMillis();
+			for( int i = 0; i < futures.size(); ) {
+				try {
+					futures.get(i).get(200, TimeUnit.MILLISECONDS);
+					i++;
+				} catch(TimeoutException te) {
+					// poll the monitor and report progress
+				} catch(InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					canceled = true;
+				} catch(ExecutionException ee) {
+					Throwable t = ee.getCause();
+					if( failure == null )
+						failure = t instanceof IOException ? (IOException)t : new IOException(t);
+					// stop the other ranges, received bytes are kept
+					canceled = true;
+					i++;
+				}
+				int w = (int)(1000 * getReceived() / length);
+				if( w > reported ) {
+					monitor.worked(w - reported);
+					reported = w;
+				}
+				if( monitor.isCanceled())
+					canceled = true;
+				if( System.currentTimeMillis() - lastSave > STATE_SAVE_INTERVAL && !changed ) {
+					// The state must not claim bytes that are not yet on disk
+					channel.force(false);
+					saveState();
+					lastSave = System.currentTimeMillis();
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+			try {
+				executor.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+			} catch(InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+			try {
+				if( !changed ) {
+					channel.force(false);
+					saveState();
+				}
+			} finally {
+				file.close();
+				if( changed )
+					clear();
+			}
+		}
+		if( failure != null )
+			throw failure;
+		if( canceled )
+			throw new OperationCanceledException();
+	}
+
+	private long getReceived() {
+		long received = 0;
+		for( Range r : ranges )
+			received += r.next.get() - r.start;
+		return received;
+	}
+
+	/*
+	 * Fetch one range and write it at its position
+	 */
+	private void fetch(Range r, FileChannel channel) throws IOException {
+		HttpURLConnection connection = openConnection();
+		try {
+			connection.setRequestProperty("Range", "bytes=" + r.next.get() + "-" + (r.end - 1));
+			// The server sends the whole file instead of the range if it has changed;
+			// the partial file is dropped then and the next download starts over
+			String validator = eTag != null ? eTag : lastModified;
+			if( validator != null )
+				connection.setRequestProperty("If-Range", validator);
+			int code = connection.getResponseCode();
+			if( code != HttpURLConnection.HTTP_PARTIAL ) {
+				if( code == HttpURLConnection.HTTP_OK )
+					changed = true;
+				throw new IOException("Unexpected response to range request for " + url + ": " + code);
+			}
+			InputStream in = connection.getInputStream();
+			try {
+				byte[] buffer = new byte[BUFFER_SIZE];
+				int n;
+				while( !r.isDone() && (n = in.read(buffer, 0, (int)Math.min(buffer.length, r.end - r.next.get()))) != -1 ) {
+					if( canceled || Thread.currentThread().isInterrupted())
+						return;
+					ByteBuffer bb = ByteBuffer.wrap(buffer, 0, n);
+					long position = r.next.get();
+					while( bb.hasRemaining())
+						position += channel.write(bb, position);
+					r.next.set(position);
+				}
+			} finally {
+				in.close();
+			}
+			if( !r.isDone())
+				throw new IOException("Connection closed before the end of range of " + url);
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	private HttpURLConnection openConnection() throws IOException {
+		HttpURLConnection connection = (HttpURLConnection)new URL(url).openConnection(getProxy());
+		connection.setConnectTimeout(timeout);
+		connection.setReadTimeout(timeout);
+		connection.setUseCaches(false);
+		if( authorization != null )
+			connection.setRequestProperty("Authorization", authorization);
+		if( proxyAuthorization != null )
+			connection.setRequestProperty("Proxy-Authorization", proxyAuthorization);
+		return connection;
+	}
+
+	/*
+	 * Get the proxy which the Eclipse proxy settings select for the url,
+	 * and the credentials for it
+	 */
+	private synchronized Proxy getProxy() {
+		if( proxy != null )
+			return proxy;
+		proxy = Proxy.NO_PROXY;
+		FoundationCorePlugin plugin = FoundationCorePlugin.getDefault();
+		IProxyService service = plugin == null ? null : 
+			(IProxyService)ServiceHelper.getService(plugin.getBundleContext(), IProxyService.class.getName());
+		if( service == null )
+			return proxy;
+		IProxyData[] data;
+		try {
+			data = service.select(new URI(url));
+		} catch(URISyntaxException use) {
+			return proxy;
+		}
+		if( data.length == 0 || data[0].getHost() == null || data[0].getPort() < 0 )
+			return proxy;
+		IProxyData d = data[0];
+		Proxy.Type type = IProxyData.SOCKS_PROXY_TYPE.equals(d.getType()) ? Proxy.Type.SOCKS : Proxy.Type.HTTP;
+		proxy = new Proxy(type, InetSocketAddress.createUnresolved(d.getHost(), d.getPort()));
+		if( type == Proxy.Type.HTTP && d.isRequiresAuthentication() && d.getUserId() != null )
+			proxyAuthorization = getBasicAuthorization(d.getUserId(), d.getPassword() == null ? "" : d.getPassword());
+		Trace.trace(Trace.STRING_FINER, "Downloading ranges of " + url + " through proxy " + d.getHost() + ":" + d.getPort());
+		return proxy;
+	}
+}
@@ -0,0 +1,272 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.foundation.core.ecf.internal;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.ProgressMonitorWrapper;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.jboss.tools.foundation.core.internal.Trace;
+
+/**
+ * A download of a url into a cache which is shared by all callers
+ * asking for the same url, with the same lifespan and timeout, at the same time.
+ *
+ * The download runs in a system job. Each caller, including the one which 
+ * started it, waits for the result while polling its own progress monitor, 
+ * and the progress of the download is reported to each caller's monitor. 
+ * When a caller's monitor is canceled, only that caller stops waiting; 
+ * the download is canceled when no caller is left waiting for it.
+ */
+public class SharedDownload {
+
+	/**
+	 * The work to be shared
+	 */
+	public interface IDownload {
+		public File run(IProgressMonitor monitor) throws CoreException;
+	}
+
+	private static final int TOTAL_WORK = 1000;
+
+	/**
+	 * Downloads in progress. Also guards the number of waiters of each download.
+	 */
+	private static final HashMap<Key, SharedDownload> inProgress = new HashMap<Key, SharedDownload>();
+
+	private static final AtomicLong started = new AtomicLong();
+	private static final AtomicLong joined = new AtomicLong();
+
+	/**
+	 * Get the result of the download of the given url, starting the download
+	 * only if there is none in progress for the url, the cache, the lifespan
+	 * and the timeout.
+	 *
+	 * @param url			The URL
+	 * @param displayName	A user-visible string for this task
+	 * @param cache			The cache the file is downloaded into
+	 * @param lifespan		How long the downloaded file is kept in the cache
+	 * @param timeout		The timeout of the download
+	 * @param download		The work which downloads the file or gets it from the cache
+	 * @param monitor		Progress monitor of the caller
+	 * @return 				The result of the download, or the cached file if the monitor is canceled
+	 * @throws CoreException  If the download failed
+	 */
+	public static File get(String url, String displayName, URLTransportCache cache, int lifespan, 
+			int timeout, IDownload download, IProgressMonitor monitor) throws CoreException {
+		Key key = new Key(url, cache, lifespan, timeout);
+		SharedDownload d;
+		synchronized(inProgress) {
+			d = inProgress.get(key);
+			if( d == null ) {
+				d = new SharedDownload(key, displayName, download);
+				inProgress.put(key, d);
+				d.job.schedule();
+				started.incrementAndGet();
+			} else {
+				Trace.trace(Trace.STRING_FINER, "Joining download in progress of " + url); //$NON-NLS-1$
+				joined.incrementAndGet();
+			}
+			d.waiters++;
+		}
+		if( !d.waitFor(displayName, monitor)) {
+			d.leave();
+			return cache.getCachedFile(url);
+		}
+		return d.getResult();
+	}
+
+	/**
+	 * Get the number of downloads started
+	 */
+	public static long getStartedCount() {
+		return started.get();
+	}
+
+	/**
+	 * Get the number of callers which waited for a download started by another caller
+	 */
+	public static long getJoinedCount() {
+		return joined.get();
+	}
+
+	private final Key key;
+	private final Job job;
+	private final CountDownLatch done = new CountDownLatch(1);
+	private int waiters = 0;
+
+	// Progress of the download
+	private volatile int totalWork = 0;
+	private volatile double worked = 0;
+	private volatile String subTask = null;
+
+	// Result of the download
+	private volatile File result;
+	private volatile CoreException error;
+	private volatile RuntimeException runtimeError;
+
+	private SharedDownload(Key key, String displayName, final IDownload download) {
+		this.key = key;
+		this.job = new Job(displayName) {
+			protected IStatus run(IProgressMonitor monitor) {
+				try {
+					result = download.run(new SharedMonitor(monitor));
+				} catch(CoreException ce) {
+					error = ce;
+				} catch(RuntimeException re) {
+					runtimeError = re;
+				} finally {
+					finished();
+				}
+				return Status.OK_STATUS;
+			}
+		};
+		job.setSystem(true);
+	}
+
+	private void finished() {
+		synchronized(inProgress) {
+			if( inProgress.get(key) == this )
+				inProgress.remove(key);
+		}
+		done.countDown();
+	}
+
+	/*
+	 * A caller stops waiting. The last one cancels the download, 
+	 * so that a later caller starts a new one.
+	 */
+	private void leave() {
+		synchronized(inProgress) {
+			waiters--;
+			if( waiters > 0 || done.getCount() == 0 )
+				return;
+			if( inProgress.get(key) == this )
+				inProgress.remove(key);
+		}
+		Trace.trace(Trace.STRING_FINER, "All callers canceled the download of " + key.url); //$NON-NLS-1$
+		job.cancel();
+	}
+
+	/*
+	 * Waits until the download is done, or the monitor is canceled
+	 */
+	private boolean waitFor(String displayName, IProgressMonitor monitor) {
+		monitor.beginTask(displayName, TOTAL_WORK);
+		try {
+			int reported = 0;
+			String reportedSubTask = null;
+			while( true ) {
+				boolean finished = false;
+				try {
+					finished = done.await(200, TimeUnit.MILLISECONDS);
+				} catch(InterruptedException ie) {
+					Thread.currentThread().interrupt();
+				}
+				// Report progress of the download to this caller
+				int total = totalWork;
+				if( total > 0 ) {
+					int w = (int)Math.min(TOTAL_WORK, TOTAL_WORK * worked / total);
+					if( w > reported ) {
+						monitor.worked(w - reported);
+						reported = w;
+					}
+				}
+				String s = subTask;
+				if( s != null && !s.equals(reportedSubTask)) {
+					monitor.subTask(s);
+					reportedSubTask = s;
+				}
+				if( finished )
+					return true;
+				if( monitor.isCanceled() || Thread.currentThread().isInterrupted())
+					return false;
+			}
+		} finally {
+			monitor.done();
+		}
+	}
+
+	private File getResult() throws CoreException {
+		if( error != null )
+			throw new CoreException(error.getStatus());
+		if( runtimeError != null )
+			throw runtimeError;
+		return result;
+	}
+
+	/*
+	 * Downloads are shared only if they fill the same cache
+	 * the same way
+	 */
+	private static class Key {
+		private final String url;
+		private final URLTransportCache cache;
+		private final int lifespan;
+		private final int timeout;
+
+		Key(String url, URLTransportCache cache, int lifespan, int timeout) {
+			this.url = url;
+			this.cache = cache;
+			this.lifespan = lifespan;
+			this.timeout = timeout;
+		}
+
+		public boolean equals(Object o) {
+			if( !(o instanceof Key))
+				return false;
+			Key k = (Key)o;
+			return url.equals(k.url) && cache == k.cache 
+					&& lifespan == k.lifespan && timeout == k.timeout;
+		}
+
+		public int hashCode() {
+			return ((url.hashCode() * 31 + System.identityHashCode(cache)) * 31 + lifespan) * 31 + timeout;
+		}
+	}
+
+	/*
+	 * Records the progress of the download for the waiting callers
+	 */
+	private class SharedMonitor extends ProgressMonitorWrapper {
+		SharedMonitor(IProgressMonitor monitor) {
+			super(monitor);
+		}
+
+		public void beginTask(String name, int total) {
+			if( totalWork == 0 && total > 0 )
+				totalWork = total;
+			super.beginTask(name, total);
+		}
+
+		public void worked(int work) {
+			internalWorked(work);
+		}
+
+		public void internalWorked(double work) {
+			worked += work;
+			super.internalWorked(work);
+		}
+
+		public void subTask(String name) {
+			subTask = name;
+			super.subTask(name);
+		}
+	}
+}
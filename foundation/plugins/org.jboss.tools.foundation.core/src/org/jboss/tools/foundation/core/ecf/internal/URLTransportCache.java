@@ -24,19 +24,29 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.security.SecureRandom;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.core.runtime.preferences.InstanceScope;
 import org.jboss.tools.foundation.core.digest.DigestUtils;
 import org.jboss.tools.foundation.core.ecf.Messages;
 import org.jboss.tools.foundation.core.ecf.URLTransportUtility;
+import org.jboss.tools.foundation.core.ecf.internal.InternalURLTransport.ConditionalResponse;
 import org.jboss.tools.foundation.core.internal.FoundationCorePlugin;
 import org.jboss.tools.foundation.core.internal.Trace;
 
@@ -62,6 +72,29 @@ public class URLTransportCache {
 	 */
 	private static final String CACHE_INDEX_FILE = "URLTransportCache.cacheIndex.properties";
 	
+	/**
+	 * Prefix of index keys for validators (ETag and Last-Modified) of cached files.
+	 * Encoded urls never contain ':', so these keys do not clash with the urls,
+	 * and older versions skip them since they are not existing files.
+	 */
+	private static final String VALIDATORS_KEY_PREFIX = "validators:";
+	
+	/**
+	 * System property for the maximum size of files in a cache, in bytes.
+	 */
+	public static final String MAX_SIZE_PROPERTY = "org.jboss.tools.foundation.core.ecf.cacheMaxSize";
+	
+	/**
+	 * The default maximum size of files in a cache
+	 */
+	public static final long DEFAULT_MAX_SIZE = 1024L * 1024 * 1024;
+	
+	/**
+	 * Delay in ms before the index is written, so that additions made 
+	 * close to each other are written at once
+	 */
+	private static final long SAVE_DELAY = 1000;
+	
 	
 	/**
 	 * The default cache folder
@@ -89,14 +122,65 @@ public class URLTransportCache {
 		return c;
 	}
 	
+	/**
+	 * Write pending index changes of all caches in use
+	 */
+	public synchronized static void flushAll() {
+		Iterator<URLTransportCache> it = cacheDirToCache.values().iterator();
+		while(it.hasNext()) {
+			it.next().flush();
+		}
+	}
 	
-	private HashMap<String, String> cache;
+	/**
+	 * A cached file with validators of the remote file
+	 */
+	private static class Entry {
+		private final String path;
+		private final long size;
+		private String eTag;
+		private String lastModified;
+		
+		Entry(String path, long size) {
+			this.path = path;
+			this.size = size;
+		}
+	}
+	
+	/**
+	 * Entries by url, in access order: the least recently used entry is the first one.
+	 * Guarded by this cache.
+	 */
+	private LinkedHashMap<String, Entry> cache;
+	private long totalSize = 0;
+	private long maxSize;
 	private IPath cacheRoot;
+	private Job saveJob;
+	private final Object indexLock = new Object();
+	
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong bytesServed = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	
 	protected URLTransportCache(IPath cacheRoot) {
 		this.cacheRoot = cacheRoot;
-		this.cache = new HashMap<String, String>();
+		this.cache = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+		this.maxSize = getDefaultMaxSize();
 		load();
 	}
+	
+	private static long getDefaultMaxSize() {
+		String val = System.getProperty(MAX_SIZE_PROPERTY);
+		if( val != null ) {
+			try {
+				return Long.parseLong(val.trim());
+			} catch(NumberFormatException nfe) {
+				FoundationCorePlugin.pluginLog().logWarning("Invalid value of " + MAX_SIZE_PROPERTY + ": " + val);
+			}
+		}
+		return DEFAULT_MAX_SIZE;
+	}
 
 	/**
 	 * Get a cached file for the given url only if it is downloaded and exists.
@@ -105,14 +189,99 @@ public class URLTransportCache {
 	 * @return
 	 */
 	public File getCachedFile(String url) {
-		String cacheVal = cache.get(url);
-		if (cacheVal == null)
+		File f = lookup(url);
+		if( f == null ) {
+			misses.incrementAndGet();
+		} else {
+			hits.incrementAndGet();
+			bytesServed.addAndGet(f.length());
+		}
+		return f;
+	}
+	
+	/*
+	 * Get a cached file without counting a hit or a miss
+	 */
+	private synchronized File lookup(String url) {
+		Entry e = cache.get(url);
+		if (e == null)
 			return null;
-		File f = new File(cacheVal);
+		File f = new File(e.path);
 		if (f.exists())
 			return f;
 		return null;
 	}
+	
+	/**
+	 * Get the maximum size of cached files in bytes. When it is exceeded, 
+	 * the least recently used files are removed.
+	 */
+	public synchronized long getMaxSize() {
+		return maxSize;
+	}
+	
+	public void setMaxSize(long maxSize) {
+		synchronized(this) {
+			this.maxSize = maxSize;
+			if( !evict(null))
+				return;
+		}
+		scheduleSave();
+	}
+	
+	/**
+	 * Get the total size of cached files in bytes
+	 */
+	public synchronized long getSize() {
+		return totalSize;
+	}
+	
+	public synchronized int getEntryCount() {
+		return cache.size();
+	}
+	
+	/**
+	 * Get the number of requests answered with a cached file
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+	
+	/**
+	 * Get the number of requests which had to download the file
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+	
+	/**
+	 * Get the number of bytes in cached files returned to clients
+	 */
+	public long getBytesServed() {
+		return bytesServed.get();
+	}
+	
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+	
+	public void resetStatistics() {
+		hits.set(0);
+		misses.set(0);
+		bytesServed.set(0);
+		evictions.set(0);
+	}
+	
+	@Override
+	public String toString() {
+		return "URLTransportCache[root=" + cacheRoot 
+				+ ", entries=" + getEntryCount()
+				+ ", size=" + getSize() 
+				+ ", hits=" + hits 
+				+ ", misses=" + misses 
+				+ ", bytesServed=" + bytesServed 
+				+ ", evictions=" + evictions + "]";
+	}
 
 	/**
 	 * Check whether the cache is outdated
@@ -121,10 +290,26 @@ public class URLTransportCache {
 	public boolean isCacheOutdated(String url, IProgressMonitor monitor)
 			throws CoreException {
 		Trace.trace(Trace.STRING_FINER, "Checking if cache is outdated for " + url);
-		File f = getCachedFile(url);
+		File f = lookup(url);
 		if (f == null)
 			return true;
 
+		String[] v = getValidators(url);
+		if( v != null ) {
+			// A single request that returns 304 without a body if the file is not modified
+			try {
+				ConditionalResponse response = new URLTransportUtility().conditionalDownload(
+						url, url, v[0], v[1], null, -1, monitor);
+				return !response.isNotModified();
+			} catch(IOException ioe) {
+				throw new CoreException(FoundationCorePlugin.statusFactory()
+						.errorStatus(Messages.ECFExamplesTransport_IO_error, ioe));
+			} catch(OperationCanceledException oce) {
+				// As for the last modified check below, a canceled check keeps the local copy
+				return !f.exists();
+			}
+		}
+
 		URL url2 = null;
 		try {
 			url2 = new URL(url);
@@ -170,6 +355,7 @@ public class URLTransportCache {
 
 		Trace.trace(Trace.STRING_FINER, "Downloading and caching " + url + " with lifespan=" + lifespan);
 
+		misses.incrementAndGet();
 		File existing = getExistingRemoteFileCacheLocation(url);
 		File target = createNewRemoteFileCacheLocation(url);
 		try {
@@ -181,7 +367,7 @@ public class URLTransportCache {
 					target.deleteOnExit();	
 				addToCache(url, target);
 				if( existing != null && existing.exists())
-					existing.delete();
+					deleteFile(existing);
 				return target != null && target.exists() ? target : null;
 			}
 			// Download did not go as planned. Delete the new, return the old
@@ -195,9 +381,115 @@ public class URLTransportCache {
 		}
 	}
 
+	/**
+	 * Downloads the url with one conditional request if the url is http or https.
+	 * If the cached copy is not modified, the server answers 304 without a body and 
+	 * the cached file is returned. 
+	 * 
+	 * @return the cached or downloaded file; null if the url is not http or https, 
+	 * or if the monitor was canceled and there is no cached copy
+	 * @throws CoreException if the request failed
+	 */
+	public File downloadIfModified(String url, String displayName, int lifespan,
+			URLTransportUtility util, int timeout, IProgressMonitor monitor) throws CoreException {
+		if( !InternalURLTransport.supportsConditionalRequests(url))
+			return null;
+		File existing = lookup(url);
+		String[] v = existing == null ? null : getValidators(url);
+		File target = createNewRemoteFileCacheLocation(url);
+		ConditionalResponse response = null;
+		try {
+			response = util.conditionalDownload(displayName, url, 
+					v == null ? null : v[0], v == null ? null : v[1], new FileOutputStream(target), timeout, monitor);
+		} catch(IOException ioe) {
+			target.delete();
+			throw new CoreException(FoundationCorePlugin.statusFactory()
+					.errorStatus(Messages.ECFExamplesTransport_IO_error, ioe));
+		} catch(OperationCanceledException oce) {
+			Trace.trace(Trace.STRING_FINER, "Conditional request canceled for " + url);
+			target.delete();
+			return existing;
+		}
+		if( response.isNotModified() && existing != null ) {
+			target.delete();
+			hits.incrementAndGet();
+			bytesServed.addAndGet(existing.length());
+			return existing;
+		}
+		if( response.isOK()) {
+			misses.incrementAndGet();
+			if (lifespan == URLTransportUtility.CACHE_UNTIL_EXIT)
+				target.deleteOnExit();
+			addToCache(url, target, response.getETag(), response.getLastModified());
+			if( existing != null && existing.exists() && !existing.equals(target))
+				deleteFile(existing);
+			return target;
+		}
+		target.delete();
+		return null;
+	}
+
+	private synchronized String[] getValidators(String url) {
+		Entry e = cache.get(url);
+		return e == null || (e.eTag == null && e.lastModified == null) ? null : new String[]{e.eTag, e.lastModified};
+	}
+
 	private void addToCache(String url, File target) {
-		cache.put(url, target.getAbsolutePath());
-		savePreferences();
+		// Validators of the previous copy do not apply to a file downloaded without a conditional request
+		addToCache(url, target, null, null);
+	}
+
+	private void addToCache(String url, File target, String eTag, String lastModified) {
+		synchronized(this) {
+			Entry e = new Entry(target.getAbsolutePath(), target.length());
+			e.eTag = eTag;
+			e.lastModified = lastModified;
+			put(url, e);
+			evict(url);
+		}
+		scheduleSave();
+	}
+	
+	private synchronized void put(String url, Entry e) {
+		Entry old = cache.put(url, e);
+		if( old != null )
+			totalSize -= old.size;
+		totalSize += e.size;
+	}
+	
+	/*
+	 * Delete a file which is no longer in the cache. Callers get no new 
+	 * references to it, and a later request for its url downloads it again. 
+	 * If the file cannot be deleted now, e.g. it is open on Windows, 
+	 * it is deleted on exit.
+	 */
+	private void deleteFile(File f) {
+		if( !f.delete() && f.exists())
+			f.deleteOnExit();
+	}
+	
+	/*
+	 * Remove the least recently used entries and their files while the size 
+	 * of the cache exceeds the maximum.
+	 * 
+	 * @param keep  The url which must not be evicted, or null
+	 * @return true if any entry was removed
+	 */
+	private synchronized boolean evict(String keep) {
+		boolean evicted = false;
+		Iterator<Map.Entry<String, Entry>> it = cache.entrySet().iterator();
+		while( totalSize > maxSize && it.hasNext()) {
+			Map.Entry<String, Entry> next = it.next();
+			if( next.getKey().equals(keep))
+				continue;
+			Trace.trace(Trace.STRING_FINER, "Evicting " + next.getKey() + " from cache " + cacheRoot);
+			it.remove();
+			totalSize -= next.getValue().size;
+			deleteFile(new File(next.getValue().path));
+			evictions.incrementAndGet();
+			evicted = true;
+		}
+		return evicted;
 	}
 	
 	private void load() {
@@ -224,15 +516,27 @@ public class URLTransportCache {
 	private void loadIndexFromString(String val) {
 		if( !isEmpty(val)) {
 			String[] byLine = val.split("\n");
+			// Validators follow the entries. They are read first and set before 
+			// an entry is put, since a lookup would change the saved order of use.
+			Map<String, String> validators = new HashMap<String, String>();
+			for( int i = 0; i < byLine.length; i++ ) {
+				String[] kv = byLine[i].split("=");
+				if( kv.length == 2 && kv[0].startsWith(VALIDATORS_KEY_PREFIX))
+					validators.put(kv[0].substring(VALIDATORS_KEY_PREFIX.length()), kv[1]);
+			}
 			for( int i = 0; i < byLine.length; i++ ) {
 				if( isEmpty(byLine[i]))
 					continue;
 				String[] kv = byLine[i].split("=");
-				if( kv.length == 2 && !isEmpty(kv[0]) && !isEmpty(kv[1])) {
+				if( kv.length == 2 && !isEmpty(kv[0]) && !isEmpty(kv[1]) && !kv[0].startsWith(VALIDATORS_KEY_PREFIX)) {
 					try {
 						String decodedUrl = URLDecoder.decode(kv[0],ENCODING);
-						if( new File(kv[1]).exists() )
-							cache.put(decodedUrl,kv[1]);
+						File f = new File(kv[1]);
+						if( f.exists() ) {
+							Entry e = new Entry(kv[1], f.length());
+							setValidators(e, validators.get(kv[0]));
+							put(decodedUrl, e);
+						}
 					} catch(UnsupportedEncodingException uee) {
 						// Should not be hit
 						FoundationCorePlugin.pluginLog().logError(uee);
@@ -243,36 +547,116 @@ public class URLTransportCache {
 	}
 	
 	
+	private void setValidators(Entry e, String val) throws UnsupportedEncodingException {
+		if( val == null )
+			return;
+		String[] v = val.split(",", -1);
+		if( v.length != 2 )
+			return;
+		e.eTag = isEmpty(v[0]) ? null : URLDecoder.decode(v[0], ENCODING);
+		e.lastModified = isEmpty(v[1]) ? null : URLDecoder.decode(v[1], ENCODING);
+	}
+	
+	private static String encode(String s) throws UnsupportedEncodingException {
+		return s == null ? "" : URLEncoder.encode(s, ENCODING);
+	}
+	
 	private boolean isEmpty(String s) {
 		return s == null || "".equals(s);
 	}
 	
-	private void savePreferences() {
-		// Saves are now done to an index file in the cache root. 
-		File index = cacheRoot.append(CACHE_INDEX_FILE).toFile();
-		
-		Trace.trace(Trace.STRING_FINER, "Saving " + cache.size() + " cache file locations to " + index.getAbsolutePath());
-
+	/*
+	 * Schedule writing of the index. Additions made before the job runs 
+	 * are written at once.
+	 */
+	private void scheduleSave() {
+		Job j;
+		synchronized(this) {
+			if( saveJob == null ) {
+				saveJob = new Job("Save URL transport cache index") {
+					protected IStatus run(IProgressMonitor monitor) {
+						saveIndex();
+						return Status.OK_STATUS;
+					}
+				};
+				saveJob.setSystem(true);
+			}
+			j = saveJob;
+		}
+		j.schedule(SAVE_DELAY);
+	}
+	
+	/**
+	 * Write pending changes of the index now. 
+	 */
+	public void flush() {
+		Job j;
+		synchronized(this) {
+			j = saveJob;
+		}
+		if( j != null && j.cancel()) {
+			// The job was waiting; write the index on this thread instead
+			saveIndex();
+		} else if( j != null ) {
+			try {
+				j.join();
+			} catch(InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	/*
+	 * Write the index to a temporary file and move it over the index, 
+	 * so that the index is never left half written. 
+	 * Entries are written from the least recently used one, so that 
+	 * the order is restored when the index is loaded.
+	 */
+	private void saveIndex() {
+		synchronized(indexLock) {
+			String contents;
+			synchronized(this) {
+				contents = getIndexContents();
+			}
+			// Saves are now done to an index file in the cache root. 
+			File index = cacheRoot.append(CACHE_INDEX_FILE).toFile();
+			Trace.trace(Trace.STRING_FINER, "Saving cache file locations to " + index.getAbsolutePath());
+			File tmp = new File(index.getParentFile(), index.getName() + ".tmp");
+			try {
+				index.getParentFile().mkdirs();
+				setContents(tmp, contents);
+				try {
+					Files.move(tmp.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				} catch(AtomicMoveNotSupportedException amnse) {
+					Files.move(tmp.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				}
+			} catch (IOException e) {
+				tmp.delete();
+				FoundationCorePlugin.pluginLog().logError(e);
+			}
+		}
+	}
+	
+	private String getIndexContents() {
 		StringBuffer sb = new StringBuffer();
-		Iterator<String> it = cache.keySet().iterator();
+		StringBuffer vsb = new StringBuffer();
+		Iterator<Map.Entry<String, Entry>> it = cache.entrySet().iterator();
 		while(it.hasNext()) {
-			String k = it.next();
-			String v = cache.get(k);
-			String encodedURL = null;
+			Map.Entry<String, Entry> next = it.next();
+			Entry e = next.getValue();
 			try {
-				encodedURL = URLEncoder.encode(k, ENCODING);
+				String encodedURL = URLEncoder.encode(next.getKey(), ENCODING);
+				sb.append(encodedURL + "=" + e.path + "\n");
+				if( e.eTag != null || e.lastModified != null ) {
+					vsb.append(VALIDATORS_KEY_PREFIX + encodedURL + "=" 
+							+ encode(e.eTag) + "," + encode(e.lastModified) + "\n");
+				}
 			} catch(UnsupportedEncodingException uee) {
 				// Should never happen
 			}
-			if( encodedURL != null )
-				sb.append(encodedURL + "=" + v + "\n");
-		}
-
-		try {
-			setContents(index, sb.toString());
-		} catch (IOException e) {
-			FoundationCorePlugin.pluginLog().logError(e);
 		}
+		sb.append(vsb);
+		return sb.toString();
 	}
 
 	/*
@@ -282,10 +666,9 @@ public class URLTransportCache {
 	 */
 	private synchronized File getExistingRemoteFileCacheLocation(String url) {
 		// If this url is already cached, use it
-		String cachedLoc = cache.get(url);
-		if (cachedLoc != null) {
-			File f = new File(cache.get(url));
-			return f;
+		Entry e = cache.get(url);
+		if (e != null) {
+			return new File(e.path);
 		}
 		return null;
 	}	
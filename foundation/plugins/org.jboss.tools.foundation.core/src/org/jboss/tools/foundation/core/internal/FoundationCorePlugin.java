@@ -11,6 +11,7 @@
 package org.jboss.tools.foundation.core.internal;
 
 import org.eclipse.core.runtime.Platform;
+import org.jboss.tools.foundation.core.ecf.internal.URLTransportCache;
 import org.jboss.tools.foundation.core.plugin.BaseCorePlugin;
 import org.jboss.tools.foundation.core.plugin.log.IPluginLog;
 import org.jboss.tools.foundation.core.plugin.log.StatusFactory;
@@ -51,6 +52,7 @@ public class FoundationCorePlugin extends BaseCorePlugin {
     
     @Override
     public void stop(BundleContext context) throws Exception {
+    	URLTransportCache.flushAll();
     	myContext = null;
     	super.stop(context);
     }
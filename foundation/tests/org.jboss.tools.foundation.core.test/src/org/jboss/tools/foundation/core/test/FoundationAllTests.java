@@ -10,6 +10,8 @@
  ************************************************************************************/
 package org.jboss.tools.foundation.core.test;
 
+import org.jboss.tools.foundation.core.test.ecf.RangeDownloadTest;
+import org.jboss.tools.foundation.core.test.ecf.URLTransportCacheTest;
 import org.jboss.tools.foundation.core.test.ecf.URLTransportUtilTest;
 import org.jboss.tools.foundation.core.test.jobs.WaitJobTest;
 import org.junit.runner.RunWith;
@@ -19,6 +21,8 @@ import org.junit.runners.Suite;
 @Suite.SuiteClasses({
 	WaitJobTest.class,
 	URLTransportUtilTest.class,
+	URLTransportCacheTest.class,
+	RangeDownloadTest.class,
 })
 
 @RunWith(Suite.class)
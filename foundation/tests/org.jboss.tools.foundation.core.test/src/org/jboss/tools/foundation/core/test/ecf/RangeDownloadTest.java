@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.foundation.core.test.ecf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.jboss.tools.foundation.core.digest.DigestUtils;
+import org.jboss.tools.foundation.core.ecf.internal.RangeDownload;
+import org.jboss.tools.foundation.core.test.testutils.HttpFileServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RangeDownloadTest {
+	private static final int SIZE = 3 * 1024 * 1024 + 100;
+
+	private byte[] content;
+	private HttpFileServer server;
+	private File destination;
+
+	@Before
+	public void setUp() throws IOException {
+		content = new byte[SIZE];
+		new Random(17).nextBytes(content);
+		server = new HttpFileServer(content);
+		destination = File.createTempFile("rangedownload", ".zip");
+		destination.delete();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+		destination.delete();
+		RangeDownload.getPartialFile(destination).delete();
+		RangeDownload.getStateFile(destination).delete();
+	}
+
+	private RangeDownload createDownload() throws IOException {
+		return new RangeDownload("runtime.zip", server.getUrl("runtime.zip").toExternalForm(), null, null, destination, 5000);
+	}
+
+	@Test
+	public void testParallelDownload() throws Exception {
+		String sha1 = DigestUtils.sha1(new ByteArrayInputStream(content));
+		assertTrue(createDownload().run(sha1, 3, new NullProgressMonitor()));
+		assertEquals(3, server.getPartialCount());
+		assertArrayEquals(content, read(destination));
+		assertFalse(RangeDownload.getPartialFile(destination).exists());
+	}
+
+	@Test
+	public void testResume() throws Exception {
+		server.setMaxBodyBytes(1024 * 1024);
+		try {
+			createDownload().run(null, 1, new NullProgressMonitor());
+			fail("The connection should be closed before the end of the file");
+		} catch(IOException ioe) {
+			// expected
+		}
+		assertFalse(destination.exists());
+		assertTrue(RangeDownload.getPartialFile(destination).exists());
+
+		// Only the rest of the file is requested
+		server.setMaxBodyBytes(-1);
+		assertTrue(createDownload().run(DigestUtils.sha1(new ByteArrayInputStream(content)), 1, new NullProgressMonitor()));
+		assertTrue(server.getLastRange().endsWith("-" + (SIZE - 1)));
+		assertFalse(server.getLastRange().startsWith("bytes=0-"));
+		assertArrayEquals(content, read(destination));
+	}
+
+	@Test
+	public void testChangedFileIsDownloadedAgain() throws Exception {
+		server.setMaxBodyBytes(1024 * 1024);
+		try {
+			createDownload().run(null, 2, new NullProgressMonitor());
+			fail("The connection should be closed before the end of the file");
+		} catch(IOException ioe) {
+			// expected
+		}
+		byte[] changed = content.clone();
+		changed[0]++;
+		server.setContent(changed);
+		server.setMaxBodyBytes(-1);
+		assertTrue(createDownload().run(null, 2, new NullProgressMonitor()));
+		assertArrayEquals(changed, read(destination));
+	}
+
+	@Test
+	public void testExpiredPartialDownloadIsStartedOver() throws Exception {
+		server.setMaxBodyBytes(1024 * 1024);
+		try {
+			createDownload().run(null, 1, new NullProgressMonitor());
+			fail("The connection should be closed before the end of the file");
+		} catch(IOException ioe) {
+			// expected
+		}
+		File state = RangeDownload.getStateFile(destination);
+		assertTrue(state.setLastModified(System.currentTimeMillis() - 8L * 24 * 60 * 60 * 1000));
+
+		server.setMaxBodyBytes(-1);
+		assertTrue(createDownload().run(null, 1, new NullProgressMonitor()));
+		assertTrue(server.getLastRange().startsWith("bytes=0-"));
+		assertArrayEquals(content, read(destination));
+		assertFalse(state.exists());
+	}
+
+	@Test
+	public void testWrongSha1() throws Exception {
+		try {
+			createDownload().run("0000000000000000000000000000000000000000", 2, new NullProgressMonitor());
+			fail("The SHA1 should not match");
+		} catch(IOException ioe) {
+			// expected
+		}
+		assertFalse(destination.exists());
+		assertFalse(RangeDownload.getPartialFile(destination).exists());
+	}
+
+	private static byte[] read(File f) throws IOException {
+		FileInputStream in = new FileInputStream(f);
+		try {
+			byte[] bytes = new byte[(int)f.length()];
+			int offset = 0;
+			while( offset < bytes.length ) {
+				int n = in.read(bytes, offset, bytes.length - offset);
+				if( n < 0 )
+					break;
+				offset += n;
+			}
+			return bytes;
+		} finally {
+			in.close();
+		}
+	}
+}
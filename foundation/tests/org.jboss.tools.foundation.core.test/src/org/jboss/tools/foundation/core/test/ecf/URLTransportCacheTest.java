@@ -0,0 +1,405 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.foundation.core.test.ecf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Path;
+import org.jboss.tools.foundation.core.ecf.URLTransportUtility;
+import org.jboss.tools.foundation.core.ecf.internal.SharedDownload;
+import org.jboss.tools.foundation.core.ecf.internal.URLTransportCache;
+import org.jboss.tools.foundation.core.test.testutils.HttpFileServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class URLTransportCacheTest {
+	private HttpFileServer server;
+	private IPath cacheRoot;
+
+	@Before
+	public void setUp() throws IOException {
+		server = new HttpFileServer("version 1".getBytes());
+		File tmp = File.createTempFile("urlcache", "");
+		tmp.delete();
+		cacheRoot = new Path(tmp.getAbsolutePath());
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+		File[] files = cacheRoot.toFile().listFiles();
+		if( files != null ) {
+			for( File f : files )
+				f.delete();
+		}
+		cacheRoot.toFile().delete();
+	}
+
+	@Test
+	public void testNotModified() throws Exception {
+		String url = server.getUrl("stacks.yaml").toExternalForm();
+		URLTransportCache cache = URLTransportCache.getCache(cacheRoot);
+		URLTransportUtility util = new URLTransportUtility();
+
+		File first = util.getCachedFileForURL(url, "stacks", URLTransportUtility.CACHE_FOREVER, cacheRoot, new NullProgressMonitor());
+		assertNotNull(first);
+		assertEquals("version 1", read(first));
+		assertEquals(1, server.getRequestCount());
+
+		// One conditional request, answered with 304 without a body
+		File second = util.getCachedFileForURL(url, "stacks", URLTransportUtility.CACHE_FOREVER, cacheRoot, new NullProgressMonitor());
+		assertEquals(first, second);
+		assertEquals(2, server.getRequestCount());
+		assertEquals(1, server.getNotModifiedCount());
+		assertFalse(cache.isCacheOutdated(url, new NullProgressMonitor()));
+
+		server.setContent("version 2".getBytes());
+		assertTrue(cache.isCacheOutdated(url, new NullProgressMonitor()));
+		File third = util.getCachedFileForURL(url, "stacks", URLTransportUtility.CACHE_FOREVER, cacheRoot, new NullProgressMonitor());
+		assertEquals("version 2", read(third));
+		assertFalse(first.exists());
+	}
+
+	@Test
+	public void testValidatorsArePersisted() throws Exception {
+		String url = server.getUrl("runtimes.json").toExternalForm();
+		URLTransportUtility util = new URLTransportUtility();
+		File first = util.getCachedFileForURL(url, "runtimes", URLTransportUtility.CACHE_FOREVER, cacheRoot, new NullProgressMonitor());
+
+		// A new instance reads the index written by the first one
+		URLTransportCache.getCache(cacheRoot).flush();
+		URLTransportCache cache = new URLTransportCache(cacheRoot) {};
+		File second = cache.downloadIfModified(url, "runtimes", URLTransportUtility.CACHE_FOREVER, util, -1, new NullProgressMonitor());
+		assertEquals(first, second);
+		assertEquals(1, server.getNotModifiedCount());
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		URLTransportCache cache = new URLTransportCache(cacheRoot) {};
+		URLTransportUtility util = new URLTransportUtility();
+		cache.setMaxSize(2 * "version 1".length());
+		File a = cache.downloadAndCache(server.getUrl("a").toExternalForm(), "a", URLTransportUtility.CACHE_FOREVER, util, -1, new NullProgressMonitor());
+		File b = cache.downloadAndCache(server.getUrl("b").toExternalForm(), "b", URLTransportUtility.CACHE_FOREVER, util, -1, new NullProgressMonitor());
+		// "a" becomes the most recently used one
+		assertEquals(a, cache.getCachedFile(server.getUrl("a").toExternalForm()));
+		File c = cache.downloadAndCache(server.getUrl("c").toExternalForm(), "c", URLTransportUtility.CACHE_FOREVER, util, -1, new NullProgressMonitor());
+
+		assertTrue(a.exists());
+		// The file of "b" is deleted, the next request for it downloads it again
+		assertFalse(b.exists());
+		assertTrue(c.exists());
+		assertNull(cache.getCachedFile(server.getUrl("b").toExternalForm()));
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals(2, cache.getEntryCount());
+		assertEquals(2 * "version 1".length(), cache.getSize());
+
+		// The order of use is kept in the index
+		cache.flush();
+		URLTransportCache reloaded = new URLTransportCache(cacheRoot) {};
+		reloaded.setMaxSize("version 1".length());
+		assertTrue(c.exists());
+		assertFalse(a.exists());
+	}
+
+	@Test
+	public void testEvictionOrderWithValidators() throws Exception {
+		URLTransportCache cache = new URLTransportCache(cacheRoot) {};
+		URLTransportUtility util = new URLTransportUtility();
+		// "a" is stored with validators, "c" without
+		File a = cache.downloadIfModified(server.getUrl("a").toExternalForm(), "a", URLTransportUtility.CACHE_FOREVER, util, -1, new NullProgressMonitor());
+		File c = cache.downloadAndCache(server.getUrl("c").toExternalForm(), "c", URLTransportUtility.CACHE_FOREVER, util, -1, new NullProgressMonitor());
+		cache.flush();
+
+		// Loading the validators does not make "a" the most recently used entry
+		URLTransportCache reloaded = new URLTransportCache(cacheRoot) {};
+		reloaded.setMaxSize("version 1".length());
+		assertFalse(a.exists());
+		assertTrue(c.exists());
+		assertEquals(1, reloaded.getEvictionCount());
+		assertNull(reloaded.getCachedFile(server.getUrl("a").toExternalForm()));
+		assertEquals(c, reloaded.getCachedFile(server.getUrl("c").toExternalForm()));
+	}
+
+	@Test
+	public void testStatistics() throws Exception {
+		String url = server.getUrl("stats").toExternalForm();
+		URLTransportCache cache = URLTransportCache.getCache(cacheRoot);
+		URLTransportUtility util = new URLTransportUtility();
+		cache.resetStatistics();
+
+		util.getCachedFileForURL(url, "stats", URLTransportUtility.CACHE_FOREVER, cacheRoot, new NullProgressMonitor());
+		util.getCachedFileForURL(url, "stats", URLTransportUtility.CACHE_FOREVER, cacheRoot, new NullProgressMonitor());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.getHitCount());
+		assertEquals("version 1".length(), cache.getBytesServed());
+	}
+
+	@Test
+	public void testConcurrentDownloadsAreShared() throws Exception {
+		server.stop();
+		BlockingHttpFileServer blocking = new BlockingHttpFileServer("version 1".getBytes());
+		server = blocking;
+		final String url = server.getUrl("shared").toExternalForm();
+		final File[] results = new File[4];
+		Thread[] threads = new Thread[results.length];
+		for( int i = 0; i < threads.length; i++ ) {
+			final int index = i;
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						results[index] = new URLTransportUtility().getCachedFileForURL(url, "shared", 
+								URLTransportUtility.CACHE_FOREVER, cacheRoot, new NullProgressMonitor());
+					} catch(CoreException ce) {
+						// results stays null
+					}
+				}
+			};
+		}
+		long joined = SharedDownload.getJoinedCount();
+		threads[0].start();
+		assertTrue(blocking.requested.await(10, TimeUnit.SECONDS));
+		for( int i = 1; i < threads.length; i++ ) 
+			threads[i].start();
+		waitForJoined(joined + threads.length - 1);
+		blocking.release.countDown();
+		for( int i = 0; i < threads.length; i++ ) {
+			threads[i].join();
+			assertNotNull(results[i]);
+			assertEquals(results[0], results[i]);
+		}
+		assertEquals(1, server.getRequestCount());
+	}
+
+	@Test
+	public void testDownloadsWithOtherLifespanAreNotShared() throws Exception {
+		server.stop();
+		BlockingHttpFileServer blocking = new BlockingHttpFileServer("version 1".getBytes());
+		server = blocking;
+		final String url = server.getUrl("lifespan").toExternalForm();
+		final int[] lifespans = new int[] {URLTransportUtility.CACHE_FOREVER, URLTransportUtility.CACHE_UNTIL_EXIT};
+		final File[] results = new File[lifespans.length];
+		Thread[] threads = new Thread[lifespans.length];
+		for( int i = 0; i < threads.length; i++ ) {
+			final int index = i;
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						results[index] = new URLTransportUtility().getCachedFileForURL(url, "lifespan", 
+								lifespans[index], cacheRoot, new NullProgressMonitor());
+					} catch(CoreException ce) {
+						// results stays null
+					}
+				}
+			};
+			threads[i].start();
+		}
+		// Both requests reach the server before any is answered
+		for( int i = 0; i < 1000 && server.getRequestCount() < lifespans.length; i++ )
+			Thread.sleep(10);
+		assertEquals(lifespans.length, server.getRequestCount());
+		blocking.release.countDown();
+		for( int i = 0; i < threads.length; i++ ) {
+			threads[i].join();
+			assertNotNull(results[i]);
+		}
+	}
+
+	@Test
+	public void testDownloadContinuesWhileSomeoneWaits() throws Exception {
+		server.stop();
+		BlockingHttpFileServer blocking = new BlockingHttpFileServer("version 1".getBytes());
+		server = blocking;
+		final String url = server.getUrl("cancel").toExternalForm();
+		final File[] result = new File[1];
+		Thread downloading = new Thread() {
+			public void run() {
+				try {
+					result[0] = new URLTransportUtility().getCachedFileForURL(url, "cancel", 
+							URLTransportUtility.CACHE_FOREVER, cacheRoot, new NullProgressMonitor());
+				} catch(CoreException ce) {
+					// result stays null
+				}
+			}
+		};
+		downloading.start();
+		assertTrue(blocking.requested.await(10, TimeUnit.SECONDS));
+
+		// This caller gives up, the other one still gets the file
+		NullProgressMonitor canceled = new NullProgressMonitor();
+		canceled.setCanceled(true);
+		assertNull(new URLTransportUtility().getCachedFileForURL(url, "cancel", 
+				URLTransportUtility.CACHE_FOREVER, cacheRoot, canceled));
+		blocking.release.countDown();
+		downloading.join();
+		assertNotNull(result[0]);
+		assertEquals("version 1", read(result[0]));
+	}
+
+	@Test
+	public void testDownloadContinuesWhenFirstCallerCancels() throws Exception {
+		final URLTransportCache cache = URLTransportCache.getCache(cacheRoot);
+		final String url = server.getUrl("first").toExternalForm();
+		final File file = new File("first");
+		final CountDownLatch running = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final boolean[] canceled = new boolean[1];
+		final NullProgressMonitor firstMonitor = new NullProgressMonitor();
+		final File[] results = new File[2];
+		final SharedDownload.IDownload download = new SharedDownload.IDownload() {
+			public File run(IProgressMonitor monitor) throws CoreException {
+				running.countDown();
+				try {
+					release.await();
+				} catch(InterruptedException ie) {
+					// return
+				}
+				canceled[0] = monitor.isCanceled();
+				return file;
+			}
+		};
+		Thread firstCaller = new Thread() {
+			public void run() {
+				try {
+					results[0] = SharedDownload.get(url, "first", cache, URLTransportUtility.CACHE_FOREVER, -1, 
+							download, firstMonitor);
+				} catch(CoreException ce) {
+					// results stays null
+				}
+			}
+		};
+		Thread secondCaller = new Thread() {
+			public void run() {
+				try {
+					results[1] = SharedDownload.get(url, "first", cache, URLTransportUtility.CACHE_FOREVER, -1, 
+							download, new NullProgressMonitor());
+				} catch(CoreException ce) {
+					// results stays null
+				}
+			}
+		};
+		long started = SharedDownload.getStartedCount();
+		long joined = SharedDownload.getJoinedCount();
+		firstCaller.start();
+		assertTrue(running.await(10, TimeUnit.SECONDS));
+		secondCaller.start();
+		waitForJoined(joined + 1);
+
+		// The caller which started the download gives up, the download goes on for the other one
+		firstMonitor.setCanceled(true);
+		firstCaller.join();
+		assertNull(results[0]);
+		release.countDown();
+		secondCaller.join();
+		assertFalse(canceled[0]);
+		assertEquals(file, results[1]);
+		assertEquals(started + 1, SharedDownload.getStartedCount());
+	}
+
+	@Test
+	public void testDownloadIsCanceledWhenAllCallersCancel() throws Exception {
+		final URLTransportCache cache = URLTransportCache.getCache(cacheRoot);
+		final String url = server.getUrl("last").toExternalForm();
+		final CountDownLatch running = new CountDownLatch(1);
+		final CountDownLatch stopped = new CountDownLatch(1);
+		final NullProgressMonitor callerMonitor = new NullProgressMonitor();
+		Thread caller = new Thread() {
+			public void run() {
+				try {
+					SharedDownload.get(url, "last", cache, URLTransportUtility.CACHE_FOREVER, -1, 
+							new SharedDownload.IDownload() {
+						public File run(IProgressMonitor monitor) throws CoreException {
+							running.countDown();
+							while( !monitor.isCanceled()) {
+								try {
+									Thread.sleep(10);
+								} catch(InterruptedException ie) {
+									break;
+								}
+							}
+							stopped.countDown();
+							return null;
+						}
+					}, callerMonitor);
+				} catch(CoreException ce) {
+					// ignore
+				}
+			}
+		};
+		caller.start();
+		assertTrue(running.await(10, TimeUnit.SECONDS));
+		callerMonitor.setCanceled(true);
+		caller.join();
+		assertTrue(stopped.await(10, TimeUnit.SECONDS));
+	}
+
+	private static void waitForJoined(long count) throws InterruptedException {
+		for( int i = 0; i < 1000 && SharedDownload.getJoinedCount() < count; i++ )
+			Thread.sleep(10);
+		assertEquals(count, SharedDownload.getJoinedCount());
+	}
+
+	/**
+	 * A server which answers once it is released, so that requests overlap
+	 */
+	private static class BlockingHttpFileServer extends HttpFileServer {
+		final CountDownLatch requested = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+
+		BlockingHttpFileServer(byte[] content) throws IOException {
+			super(content);
+		}
+
+		protected void respond(String requestLine, Map<String, String> headers, OutputStream out) throws IOException {
+			requested.countDown();
+			try {
+				release.await();
+			} catch(InterruptedException ie) {
+				return;
+			}
+			super.respond(requestLine, headers, out);
+		}
+	}
+
+	private static String read(File f) throws IOException {
+		FileInputStream in = new FileInputStream(f);
+		try {
+			byte[] bytes = new byte[(int)f.length()];
+			int offset = 0;
+			while( offset < bytes.length ) {
+				int n = in.read(bytes, offset, bytes.length - offset);
+				if( n < 0 )
+					break;
+				offset += n;
+			}
+			return new String(bytes);
+		} finally {
+			in.close();
+		}
+	}
+}
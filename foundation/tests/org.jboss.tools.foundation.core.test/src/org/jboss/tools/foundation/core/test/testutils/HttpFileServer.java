@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.foundation.core.test.testutils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local stand-in for a web server that serves one file with ETag and
+ * Last-Modified headers, answers conditional requests with 304, and 
+ * Range requests with 206.
+ */
+public class HttpFileServer {
+	public static final String LAST_MODIFIED = "Wed, 21 Oct 2015 07:28:00 GMT";
+
+	private final ServerSocket serverSocket;
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+	private volatile byte[] content;
+	private volatile String eTag;
+	private final AtomicInteger requests = new AtomicInteger();
+	private final AtomicInteger notModified = new AtomicInteger();
+	private final AtomicInteger partial = new AtomicInteger();
+	private volatile String lastRange;
+	private volatile int maxBodyBytes = -1;
+
+	public HttpFileServer(byte[] content) throws IOException {
+		setContent(content);
+		serverSocket = new ServerSocket(0);
+		executor.submit(new Runnable() {
+			public void run() {
+				while(!serverSocket.isClosed()) {
+					try {
+						final Socket socket = serverSocket.accept();
+						executor.submit(new Runnable() {
+							public void run() {
+								handle(socket);
+							}
+						});
+					} catch(IOException ioe) {
+						// closed
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Replaces the served file, a new ETag is generated
+	 */
+	public void setContent(byte[] content) {
+		this.content = content;
+		this.eTag = "\"" + Integer.toHexString(Arrays.hashCode(content)) + "\"";
+	}
+
+	public URL getUrl(String path) throws IOException {
+		return new URL("http://localhost:" + serverSocket.getLocalPort() + "/" + path);
+	}
+
+	public int getRequestCount() {
+		return requests.get();
+	}
+
+	public int getNotModifiedCount() {
+		return notModified.get();
+	}
+
+	/**
+	 * Get the number of requests answered with 206 Partial Content
+	 */
+	public int getPartialCount() {
+		return partial.get();
+	}
+
+	/**
+	 * Get the value of the Range header of the last range request
+	 */
+	public String getLastRange() {
+		return lastRange;
+	}
+
+	/**
+	 * Close each connection after the given number of body bytes, 
+	 * a negative value to send whole bodies
+	 */
+	public void setMaxBodyBytes(int max) {
+		this.maxBodyBytes = max;
+	}
+
+	public void stop() {
+		try {
+			serverSocket.close();
+		} catch(IOException ioe) {
+			// ignore
+		}
+		executor.shutdownNow();
+	}
+
+	private void handle(Socket socket) {
+		try {
+			try {
+				BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
+				String requestLine = in.readLine();
+				Map<String, String> headers = new HashMap<String, String>();
+				String line;
+				while((line = in.readLine()) != null && line.length() > 0) {
+					int i = line.indexOf(':');
+					if( i > 0 )
+						headers.put(line.substring(0, i).trim().toLowerCase(), line.substring(i + 1).trim());
+				}
+				if( requestLine == null )
+					return;
+				requests.incrementAndGet();
+				respond(requestLine, headers, socket.getOutputStream());
+			} finally {
+				socket.close();
+			}
+		} catch(IOException ioe) {
+			// client went away
+		}
+	}
+
+	protected void respond(String requestLine, Map<String, String> headers, OutputStream out) throws IOException {
+		byte[] body = content;
+		String tag = eTag;
+		String ifNoneMatch = headers.get("if-none-match");
+		String ifModifiedSince = headers.get("if-modified-since");
+		String range = headers.get("range");
+		String ifRange = headers.get("if-range");
+		boolean head = requestLine.startsWith("HEAD ");
+		StringBuilder response = new StringBuilder();
+		if( tag.equals(ifNoneMatch) || (ifNoneMatch == null && LAST_MODIFIED.equals(ifModifiedSince))) {
+			notModified.incrementAndGet();
+			response.append("HTTP/1.1 304 Not Modified\r\n");
+			body = null;
+		} else if( range != null && range.startsWith("bytes=") && (ifRange == null || ifRange.equals(tag))) {
+			lastRange = range;
+			String[] r = range.substring("bytes=".length()).split("-");
+			int start = Integer.parseInt(r[0]);
+			int end = r.length > 1 && r[1].length() > 0 ? Integer.parseInt(r[1]) : body.length - 1;
+			partial.incrementAndGet();
+			response.append("HTTP/1.1 206 Partial Content\r\n");
+			response.append("Content-Range: bytes ").append(start).append('-').append(end).append('/').append(body.length).append("\r\n");
+			response.append("Content-Length: ").append(end - start + 1).append("\r\n");
+			body = Arrays.copyOfRange(body, start, end + 1);
+		} else {
+			response.append("HTTP/1.1 200 OK\r\n");
+			response.append("Content-Length: ").append(body.length).append("\r\n");
+			response.append("Accept-Ranges: bytes\r\n");
+		}
+		response.append("ETag: ").append(tag).append("\r\n");
+		response.append("Last-Modified: ").append(LAST_MODIFIED).append("\r\n");
+		response.append("Connection: close\r\n\r\n");
+		out.write(response.toString().getBytes("ISO-8859-1"));
+		if( body != null && !head ) {
+			int max = maxBodyBytes;
+			out.write(body, 0, max >= 0 ? Math.min(max, body.length) : body.length);
+		}
+		out.flush();
+	}
+}
@@ -11,16 +11,20 @@
 package org.jboss.tools.runtime.core;
 
 import java.io.File;
-import java.io.FileFilter;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.Path;
+import org.jboss.tools.runtime.core.internal.DirectoryFingerprint;
+import org.jboss.tools.runtime.core.internal.RuntimeSearch;
 import org.jboss.tools.runtime.core.model.IRuntimeDetector;
 import org.jboss.tools.runtime.core.model.RuntimeDefinition;
+import org.jboss.tools.runtime.core.model.RuntimePath;
 
 /**
  * @author snjeza
@@ -42,6 +46,46 @@ public class JBossRuntimeLocator {
 		searchForRuntimes(collector, path, monitor);
 		return collector;
 	}
+
+	/**
+	 * Searches the folder of a runtime path, and records the fingerprint
+	 * of the searched folders for the next search of the runtime path.
+	 * 
+	 * @param runtimePath
+	 * @param incremental  Whether only the folders which changed since the
+	 * 			last search are searched again; the runtime definitions of
+	 * 			unchanged folders are taken from the runtime path
+	 * @param monitor
+	 * @return the runtime definitions found
+	 */
+	public List<RuntimeDefinition> searchForRuntimes(RuntimePath runtimePath, boolean incremental, 
+			IProgressMonitor monitor) {
+		List<RuntimeDefinition> collector = new ArrayList<RuntimeDefinition>();
+		String path = runtimePath.getPath();
+		if (path == null || !new File(path).isDirectory()) {
+			return collector;
+		}
+		Set<IRuntimeDetector> runtimeDetectors = RuntimeCoreActivator.getDefault().getRuntimeDetectors();
+		String detectorsKey = DirectoryFingerprint.getDetectorsKey(runtimeDetectors);
+		DirectoryFingerprint previous = null;
+		Map<File, RuntimeDefinition> previousDefinitions = new HashMap<File, RuntimeDefinition>();
+		if (incremental) {
+			previous = DirectoryFingerprint.load(path, detectorsKey);
+			for (RuntimeDefinition definition : runtimePath.getRuntimeDefinitions()) {
+				if (definition.getLocation() != null) {
+					previousDefinitions.put(definition.getLocation(), definition);
+				}
+			}
+		}
+		RuntimeSearch search = new RuntimeSearch(runtimeDetectors);
+		DirectoryFingerprint fingerprint = search.search(new File(path), collector, DEPTH, 
+				previous, previousDefinitions, monitor);
+		if (fingerprint != null) {
+			DirectoryFingerprint.save(path, detectorsKey, fingerprint);
+		}
+		monitor.worked(100);
+		return collector;
+	}
 	
 	private void searchForRuntimes(List<RuntimeDefinition> runtimeCollector, IPath path, 
 			IProgressMonitor monitor) {
@@ -91,7 +135,9 @@ public class JBossRuntimeLocator {
 	
 	/**
 	 * Allows a given set or subset of runtime detectors
-	 * the ability to search through a folder
+	 * the ability to search through a folder. Sub-folders are 
+	 * searched concurrently, and runtimes are added in the order
+	 * of a depth-first walk with sub-folders sorted by name.
 	 * 
 	 * @param directory
 	 * @param runtimeCollector
@@ -102,40 +148,7 @@ public class JBossRuntimeLocator {
 	public void searchDirectory(File directory, 
 			List<RuntimeDefinition> runtimeCollector,
 			int depth, Set<IRuntimeDetector> runtimeDetectors, IProgressMonitor monitor) {
-
-		if (depth == 0 || monitor.isCanceled() || directory == null || !directory.isDirectory()) {
-			return;
-		}
-		
-		monitor.setTaskName(Messages.JBossRuntimeLocator_Searching + directory.getAbsolutePath());
-		
-		for (IRuntimeDetector detector:runtimeDetectors) {
-			if (monitor.isCanceled()) {
-				return;
-			}
-			if (!detector.isEnabled()) {
-				continue;
-			}
-			RuntimeDefinition runtimeDefinition = detector.getRuntimeDefinition(directory, monitor);
-			if (runtimeDefinition != null) {
-				runtimeCollector.add(runtimeDefinition);
-				return;
-			}
-		}
-		
-		File[] files = directory.listFiles(new FileFilter() {
-			public boolean accept(File file) {
-				return file.isDirectory();
-			}
-		});
-		if (files != null) {
-			int size = files.length;
-			for (int i = 0; i < size; i++) {
-				if (monitor.isCanceled())
-					return;
-				searchDirectory(files[i], runtimeCollector, depth - 1, runtimeDetectors, monitor);
-			}
-		}
+		new RuntimeSearch(runtimeDetectors).search(directory, runtimeCollector, depth, monitor);
 	}
 
 }
@@ -16,8 +16,11 @@ public class Messages extends NLS {
 	private static final String BUNDLE_NAME = "org.jboss.tools.runtime.core.Messages"; //$NON-NLS-1$
 
 	public static String DownloadRuntime_Unable_to_fetch_license;
+	public static String ExtractProgress_Files;
+	public static String ExtractProgress_Uncompressing;
 	public static String JBossRuntimeLocator_Searching;
 	public static String RuntimeExtensionManager_Invalid_runtime;
+	public static String UntarUtility_Extracting;
 	
 	static {
 		NLS.initializeMessages(BUNDLE_NAME, Messages.class);
@@ -21,6 +21,7 @@ import org.jboss.tools.foundation.core.plugin.log.StatusFactory;
 import org.jboss.tools.runtime.core.internal.RuntimeCorePreferences;
 import org.jboss.tools.runtime.core.internal.RuntimeExtensionManager;
 import org.jboss.tools.runtime.core.model.DownloadRuntime;
+import org.jboss.tools.runtime.core.model.IDownloadRuntimesListener;
 import org.jboss.tools.runtime.core.model.IDownloadRuntimes;
 import org.jboss.tools.runtime.core.model.IRuntimeDetector;
 import org.osgi.framework.BundleContext;
@@ -164,6 +165,20 @@ public class RuntimeCoreActivator extends BaseCorePlugin {
 	}
 
 	
+	/**
+	 * Add a listener notified with the runtimes of each download runtime provider
+	 * as soon as it returns, while the download runtimes are loaded. 
+	 * 
+	 * @param listener
+	 */
+	public void addDownloadRuntimesListener(IDownloadRuntimesListener listener) {
+		RuntimeExtensionManager.getDefault().addDownloadRuntimesListener(listener);
+	}
+	
+	public void removeDownloadRuntimesListener(IDownloadRuntimesListener listener) {
+		RuntimeExtensionManager.getDefault().removeDownloadRuntimesListener(listener);
+	}
+	
 	/**
 	 * This method will check for a download runtime by checking it's
 	 * id, or, if none is found, by checking for a PROPERTY_ALTERNATE_ID
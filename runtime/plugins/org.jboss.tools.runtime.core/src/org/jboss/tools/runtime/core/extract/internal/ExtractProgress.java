@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.runtime.core.extract.internal;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.osgi.util.NLS;
+import org.jboss.tools.runtime.core.Messages;
+
+/**
+ * Counts the files and bytes written by an extraction, and shows
+ * the throughput as sub-task of the progress monitor.
+ *
+ * Files may be counted on any thread, but the monitor is only
+ * updated by {@link #report(String)} on the thread which owns it,
+ * and not more often than every 200 ms.
+ */
+public class ExtractProgress {
+	private static final long INTERVAL = 200;
+
+	private final IProgressMonitor monitor;
+	private final long start = System.currentTimeMillis();
+	private final AtomicInteger files = new AtomicInteger();
+	private final AtomicLong bytes = new AtomicLong();
+	private long lastReport = 0;
+
+	public ExtractProgress(IProgressMonitor monitor) {
+		this.monitor = monitor;
+	}
+
+	/**
+	 * Counts a written file
+	 */
+	public void written(long size) {
+		files.incrementAndGet();
+		bytes.addAndGet(size);
+	}
+
+	public int getFileCount() {
+		return files.get();
+	}
+
+	public long getByteCount() {
+		return bytes.get();
+	}
+
+	/**
+	 * Returns the bytes written per second since the start
+	 */
+	public long getThroughput() {
+		long elapsed = Math.max(1, System.currentTimeMillis() - start);
+		return bytes.get() * 1000 / elapsed;
+	}
+
+	/**
+	 * Shows the file being extracted and the throughput,
+	 * unless the monitor was updated less than 200 ms ago.
+	 *
+	 * @param name  The file being extracted, or null
+	 */
+	public void report(String name) {
+		long now = System.currentTimeMillis();
+		if (now - lastReport < INTERVAL) {
+			return;
+		}
+		lastReport = now;
+		String rate = String.valueOf(getThroughput() * 10 / (1024 * 1024) / 10.0);
+		if (name == null) {
+			monitor.subTask(NLS.bind(Messages.ExtractProgress_Files, getFileCount(), rate));
+		} else {
+			monitor.subTask(NLS.bind(Messages.ExtractProgress_Uncompressing, name, rate));
+		}
+	}
+}
@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.runtime.core.extract.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads a stream on its own thread, typically a GZIPInputStream,
+ * so that inflating the archive overlaps with writing the extracted files.
+ * The data is passed in chunks through a bounded queue.
+ */
+public class InflaterPipe extends InputStream {
+	private static final int CHUNK_SIZE = 64 * 1024;
+	private static final int CHUNKS = 16;
+	private static final byte[] END = new byte[0];
+
+	private final InputStream in;
+	private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<byte[]>(CHUNKS);
+	private final Thread thread;
+	private volatile boolean closed = false;
+	private volatile IOException error;
+	private byte[] chunk;
+	private int position;
+
+	public InflaterPipe(InputStream in) {
+		this.in = in;
+		this.thread = new Thread("Extract Inflater") { //$NON-NLS-1$
+			public void run() {
+				pump();
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void pump() {
+		try {
+			while (!closed) {
+				byte[] buffer = new byte[CHUNK_SIZE];
+				int length = 0;
+				int r = 0;
+				while (length < buffer.length && (r = in.read(buffer, length, buffer.length - length)) >= 0) {
+					length += r;
+				}
+				if (length > 0) {
+					put(length == buffer.length ? buffer : Arrays.copyOf(buffer, length));
+				}
+				if (r < 0) {
+					break;
+				}
+			}
+		} catch (IOException e) {
+			error = e;
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
+				// ignore
+			}
+			put(END);
+		}
+	}
+
+	private void put(byte[] data) {
+		try {
+			while (!closed && !queue.offer(data, 200, TimeUnit.MILLISECONDS)) {
+				// The reader is slower; wait
+			}
+		} catch (InterruptedException e) {
+			closed = true;
+		}
+	}
+
+	private boolean next() throws IOException {
+		if (chunk == END) {
+			return false;
+		}
+		if (chunk == null || position == chunk.length) {
+			try {
+				chunk = queue.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while extracting"); //$NON-NLS-1$
+			}
+			position = 0;
+			if (chunk == END) {
+				if (error != null) {
+					throw error;
+				}
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public int read() throws IOException {
+		if (!next()) {
+			return -1;
+		}
+		return chunk[position++] & 0xff;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!next()) {
+			return -1;
+		}
+		int n = Math.min(len, chunk.length - position);
+		System.arraycopy(chunk, position, b, off, n);
+		position += n;
+		return n;
+	}
+
+	public int available() {
+		return chunk == null || chunk == END ? 0 : chunk.length - position;
+	}
+
+	/**
+	 * Stops the thread, and closes the underlying stream.
+	 */
+	public void close() throws IOException {
+		closed = true;
+		queue.clear();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
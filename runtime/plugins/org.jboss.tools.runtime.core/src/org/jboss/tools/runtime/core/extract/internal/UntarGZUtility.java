@@ -10,9 +10,9 @@
  ************************************************************************************/
 package org.jboss.tools.runtime.core.extract.internal;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.zip.GZIPInputStream;
@@ -34,6 +34,10 @@ public class UntarGZUtility extends UntarUtility {
 		super(file);
 	}
 	
+	/*
+	 * The archive is inflated on another thread and extracted as a stream,
+	 * without an intermediate tar file.
+	 */
 	@Override
 	public IStatus extract(File destination, IOverwrite overwriteQuery, IProgressMonitor progress) throws CoreException {
 		
@@ -41,28 +45,12 @@ public class UntarGZUtility extends UntarUtility {
 		progress.beginTask(NLS.bind("Extracting {0}", name), 1000);
 		
 		IPath path = new Path(destination.getAbsolutePath());
-		int slashIdx = name.lastIndexOf('/');
-		if (slashIdx >= 0)
-			name = name.substring(slashIdx + 1);
-		FileInputStream in = null;
+		CountingInputStream counter = null;
+		InputStream in = null;
 		try {
-			in = new FileInputStream(file);
-			File tarFile = File.createTempFile("runtime", ".tar");
-			tarFile.deleteOnExit();
-			String tarName = name;
-			if (slashIdx >= 0)
-				tarName = name.substring(0, name.length() - 3);
-			
-			progress.subTask(NLS.bind("Extracting {0}", tarName));
-			int tempSize = Integer.MAX_VALUE;
-			if (file.length() < Integer.MAX_VALUE)
-				tempSize = (int)file.length();
-			
-			ungzip(in, tarFile, new SubProgressMonitor(progress, 500), tempSize);
-			if (!progress.isCanceled()) {
-				in = new FileInputStream(tarFile);
-				untar(in, path, new SubProgressMonitor(progress, 500));
-			}
+			counter = new CountingInputStream(new FileInputStream(file));
+			in = new InflaterPipe(new GZIPInputStream(new BufferedInputStream(counter, BUFFER_SIZE), BUFFER_SIZE));
+			untar(in, counter, path, new SubProgressMonitor(progress, 1000));
 		} catch (Exception e) {
 			throw new CoreException(new Status(IStatus.ERROR, RuntimeCoreActivator.PLUGIN_ID, 0,
 				NLS.bind("Error extracting runtime {0}", e.getLocalizedMessage()), e));
@@ -70,38 +58,13 @@ public class UntarGZUtility extends UntarUtility {
 			try {
 				if (in != null)
 					in.close();
+				else if (counter != null)
+					counter.close();
 			} catch (IOException e) {
 				// ignore
 			}
 			progress.done();
 		}
-		return Status.OK_STATUS;
+		return progress.isCanceled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
 	}
-	
-	protected void ungzip(InputStream in, File tarFile, IProgressMonitor monitor, int size) throws IOException {
-		GZIPInputStream gzin = null;
-		FileOutputStream fout = null;
-		try {
-			gzin = new GZIPInputStream(in);
-			fout = new FileOutputStream(tarFile);
-			copyWithSize(gzin, fout, monitor, size);
-		} finally {
-			if (gzin != null) {
-				try {
-					gzin.close();
-				} catch (IOException e) {
-					// ignore
-				}
-				if (fout != null) {
-					try {
-						fout.close();
-					} catch (IOException e) {
-						// ignore
-					}
-				}
-			}
-		}
-	}
-	
-	
 }
@@ -14,9 +14,12 @@ import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
@@ -24,8 +27,8 @@ import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Status;
-import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.osgi.util.NLS;
+import org.jboss.tools.runtime.core.Messages;
 import org.jboss.tools.runtime.core.RuntimeCoreActivator;
 import org.jboss.tools.runtime.core.extract.IOverwrite;
 import org.jboss.tools.runtime.core.extract.internal.xpl.TarEntry;
@@ -33,6 +36,7 @@ import org.jboss.tools.runtime.core.extract.internal.xpl.TarInputStream;
 
 public class UntarUtility implements IExtractUtility {
 	private static final String SEPARATOR = "/"; //$NON-NLS-1$
+	protected static final int BUFFER_SIZE = 64 * 1024;
 
 	protected File file;
 	private String discoveredRoot = null;
@@ -42,13 +46,11 @@ public class UntarUtility implements IExtractUtility {
 		this.file = file;
 	}
 	
-	private byte[] BUFFER = null;
-	
 	public IStatus extract(File destination, IOverwrite overwriteQuery, IProgressMonitor monitor) throws CoreException {
-		FileInputStream in = null;
+		CountingInputStream in = null;
 		try {
-			in = new FileInputStream(file);
-			untar(in, new Path(destination.getAbsolutePath()), monitor);
+			in = new CountingInputStream(new FileInputStream(file));
+			untar(new BufferedInputStream(in, BUFFER_SIZE), in, new Path(destination.getAbsolutePath()), monitor);
 		} catch(IOException ioe) {
 			throw new CoreException(new Status(IStatus.ERROR, RuntimeCoreActivator.PLUGIN_ID, 0,
 					NLS.bind("Error extracting runtime", ioe.getLocalizedMessage()), ioe));
@@ -61,41 +63,47 @@ public class UntarUtility implements IExtractUtility {
 			}
 			monitor.done();
 		}
-		return null;
+		return monitor.isCanceled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
 	}
 	
 
-	protected void untar(InputStream in, IPath path, IProgressMonitor monitor) throws IOException {
+	/**
+	 * Extract a tar stream. The progress is the part of the archive file read so far.
+	 * 
+	 * @param in       The tar stream
+	 * @param counter  The stream reading the archive file, which counts the bytes read
+	 * @param path     The destination
+	 * @param monitor
+	 * @throws IOException
+	 */
+	protected void untar(InputStream in, CountingInputStream counter, IPath path, IProgressMonitor monitor) throws IOException {
 		String possibleRoot = null;
 
-		int fileCnt = -1;
-		SubMonitor progress = SubMonitor.convert(monitor, (fileCnt > 0) ? fileCnt : 500);
-		String archivePath = null;
-		BufferedInputStream bin = new BufferedInputStream(in);
-		TarInputStream zin = new TarInputStream(bin);
+		monitor.beginTask(NLS.bind(Messages.UntarUtility_Extracting, file.getName()), toWork(file.length()));
+		ExtractProgress progress = new ExtractProgress(monitor);
+		Set<File> directories = new HashSet<File>();
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int reported = 0;
+		TarInputStream zin = new TarInputStream(in);
 		TarEntry entry = zin.getNextEntry();
-		while (entry != null) {
+		while (entry != null && !monitor.isCanceled()) {
 			String name = entry.getName();
-			progress.subTask(NLS.bind("Uncompressing {0}", name));
-			if (archivePath != null && name.startsWith(archivePath)) {
-				name = name.substring(archivePath.length());
-				if (name.length() > 1)
-					name = name.substring(1);
-			}
-			
 			if (name != null && name.length() > 0) {
-				if (entry.getFileType() == TarEntry.DIRECTORY)
-					path.append(name).toFile().mkdirs();
-				else {
-					File dir = path.append(name).removeLastSegments(1).toFile();
-					if (!dir.exists())
+				File target = path.append(name).toFile();
+				if (entry.getFileType() == TarEntry.DIRECTORY) {
+					if (directories.add(target))
+						target.mkdirs();
+				} else {
+					File dir = target.getParentFile();
+					if (directories.add(dir))
 						dir.mkdirs();
 					
-					FileOutputStream fout = new FileOutputStream(path.append(name).toFile());
-					copyWithSize(zin, fout, progress.newChild(1), (int)entry.getSize());
-					fout.close();
-					if (fileCnt <= 0)
-						progress.setWorkRemaining(500);
+					FileOutputStream fout = new FileOutputStream(target);
+					try {
+						progress.written(copy(zin, fout, buffer));
+					} finally {
+						fout.close();
+					}
 				}
 			}
 			
@@ -116,22 +124,34 @@ public class UntarUtility implements IExtractUtility {
 				}
 			}
 			
+			int work = toWork(counter.getCount());
+			if (work > reported) {
+				monitor.worked(work - reported);
+				reported = work;
+			}
+			progress.report(name);
 			entry = zin.getNextEntry();
 		}
 		this.discoveredRoot = possibleRoot;
 		zin.close();
 	}
 	
-	protected void copyWithSize(InputStream in, OutputStream out, IProgressMonitor monitor, int size) throws IOException {
-		if (BUFFER == null)
-			BUFFER = new byte[8192];
-		SubMonitor progress = SubMonitor.convert(monitor, size);
-		int r = in.read(BUFFER);
+	/*
+	 * The work of the progress monitor is counted in KB of the archive
+	 */
+	private static int toWork(long bytes) {
+		return (int)Math.min(Integer.MAX_VALUE, bytes / 1024);
+	}
+	
+	private static long copy(InputStream in, OutputStream out, byte[] buffer) throws IOException {
+		long size = 0;
+		int r = in.read(buffer);
 		while (r >= 0) {
-			out.write(BUFFER, 0, r);
-			progress.worked(r);
-			r = in.read(BUFFER);
+			out.write(buffer, 0, r);
+			size += r;
+			r = in.read(buffer);
 		}
+		return size;
 	}
 	
 	public String getRoot(IProgressMonitor monitor) throws CoreException {
@@ -143,4 +163,41 @@ public class UntarUtility implements IExtractUtility {
 		// We don't have the .tar file anymore, so can't analyze it. 
 		return null;
 	}
+	
+	/**
+	 * Counts the bytes read from the archive file. The count 
+	 * may be read by another thread than the one reading.
+	 */
+	protected static class CountingInputStream extends FilterInputStream {
+		private volatile long count = 0;
+		
+		public CountingInputStream(InputStream in) {
+			super(in);
+		}
+		
+		public long getCount() {
+			return count;
+		}
+		
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0)
+				count++;
+			return b;
+		}
+		
+		public int read(byte[] b, int off, int len) throws IOException {
+			int r = super.read(b, off, len);
+			if (r > 0)
+				count += r;
+			return r;
+		}
+		
+		public long skip(long n) throws IOException {
+			long r = super.skip(n);
+			if (r > 0)
+				count += r;
+			return r;
+		}
+	}
 }
@@ -12,12 +12,23 @@ package org.jboss.tools.runtime.core.extract.internal;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
@@ -30,6 +41,13 @@ import org.jboss.tools.runtime.core.RuntimeCoreActivator;
 import org.jboss.tools.runtime.core.extract.IOverwrite;
 
 public class UnzipUtility implements IExtractUtility {
+	/**
+	 * System property for the number of threads writing the extracted files, 1 writes them on the calling thread
+	 */
+	public static final String THREADS_PROPERTY = "org.jboss.tools.runtime.core.extractThreads"; //$NON-NLS-1$
+
+	private static final int DEFAULT_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+	private static final int BUFFER_SIZE = 64 * 1024;
 	private static String EXTRACTING = "Extracting ..."; //$NON-NLS-1$
 	private static final String SEPARATOR = "/"; //$NON-NLS-1$
 	
@@ -42,6 +60,11 @@ public class UnzipUtility implements IExtractUtility {
 	}
 	
 	
+	/*
+	 * The entries are read twice: first to ask the overwrite query in order
+	 * and create the folders, then the files are written concurrently, 
+	 * as a ZipFile can read several entries at the same time. 
+	 */
 	public IStatus extract(File destination, IOverwrite overwriteQuery, IProgressMonitor monitor) {
 		if( file == null || !file.exists()) {
 			return new Status(IStatus.ERROR, RuntimeCoreActivator.PLUGIN_ID, 
@@ -54,21 +77,25 @@ public class UnzipUtility implements IExtractUtility {
 		
 		ZipFile zipFile = null;
 		int overwrite = IOverwrite.NO;
+		// Nothing can be overwritten in a new or empty folder
+		String[] existing = destination.list();
+		boolean empty = existing == null || existing.length == 0;
 		destination.mkdirs();
 		try {
 			zipFile = new ZipFile(file);
 			Enumeration<? extends ZipEntry> entries = zipFile.entries();
 			monitor.beginTask(EXTRACTING, zipFile.size());
+			List<ZipEntry> files = new ArrayList<ZipEntry>();
+			Set<String> directories = new TreeSet<String>();
 			while (entries.hasMoreElements()) {
-				monitor.worked(1);
 				if (monitor.isCanceled() || overwrite == IOverwrite.CANCEL) {
 					return Status.CANCEL_STATUS;
 				}
 				ZipEntry entry = (ZipEntry) entries.nextElement();
 				String entryName = entry.getName();
 				File entryFile = new File(destination, entryName);
-				monitor.subTask(entry.getName());
-				if (overwrite != IOverwrite.ALL && overwrite != IOverwrite.NO_ALL && entryFile.exists()) {
+				boolean exists = !empty && entryFile.exists();
+				if (overwrite != IOverwrite.ALL && overwrite != IOverwrite.NO_ALL && exists) {
 					overwrite = overwriteQuery.overwrite(entryFile);
 					switch (overwrite) {
 					case IOverwrite.CANCEL:
@@ -77,8 +104,16 @@ public class UnzipUtility implements IExtractUtility {
 						break;
 					}
 				}
-				if (!entryFile.exists() || overwrite == IOverwrite.YES || overwrite == IOverwrite.ALL) {
-					createEntry(monitor, zipFile, entry, entryFile);
+				if (!exists || overwrite == IOverwrite.YES || overwrite == IOverwrite.ALL) {
+					if (entry.isDirectory()) {
+						directories.add(entryName);
+					} else {
+						files.add(entry);
+						int slash = entryName.lastIndexOf(SEPARATOR);
+						if (slash > 0) {
+							directories.add(entryName.substring(0, slash));
+						}
+					}
 				}
 				
 				// Lets check for a possible root, to avoid scanning the archive again later
@@ -87,16 +122,26 @@ public class UnzipUtility implements IExtractUtility {
 					if (entryName == null || entryName.isEmpty() || entryName.startsWith(SEPARATOR) || entryName.indexOf(SEPARATOR) == -1) {
 						rootEntryImpossible = true;
 						possibleRoot = null;
-					}
-					String directory = entryName.substring(0, entryName.indexOf(SEPARATOR));
-					if (possibleRoot == null) {
-						possibleRoot = directory;
-					} else if (!directory.equals(possibleRoot)) {
-						rootEntryImpossible = true;
-						possibleRoot = null;
+					} else {
+						String directory = entryName.substring(0, entryName.indexOf(SEPARATOR));
+						if (possibleRoot == null) {
+							possibleRoot = directory;
+						} else if (!directory.equals(possibleRoot)) {
+							rootEntryImpossible = true;
+							possibleRoot = null;
+						}
 					}
 				}
 			}
+			
+			// Create the whole tree first, so that writers don't race on parent folders
+			for (String directory : directories) {
+				new File(destination, directory).mkdirs();
+			}
+			monitor.worked(zipFile.size() - files.size());
+			if (!writeFiles(zipFile, files, destination, monitor)) {
+				return Status.CANCEL_STATUS;
+			}
 		} catch (IOException e) {
 
 			boolean isZipped = false;
@@ -134,46 +179,143 @@ public class UnzipUtility implements IExtractUtility {
 		return Status.OK_STATUS;
 	}
 
-	
-	private void createEntry(IProgressMonitor monitor, ZipFile zipFile,
-			ZipEntry entry, File entryFile) throws IOException,
-			FileNotFoundException {
-		monitor.setTaskName(EXTRACTING + entry.getName());
-		if (entry.isDirectory()) {
-			entryFile.mkdirs();
-		} else {
-			entryFile.getParentFile().mkdirs();
-			InputStream in = null;
-			OutputStream out = null;
+	private static int getThreads() {
+		String value = System.getProperty(THREADS_PROPERTY);
+		if (value != null) {
 			try {
-				in = zipFile.getInputStream(entry);
-				out = new FileOutputStream(entryFile);
-				copy(in, out);
-			} finally {
-				if (in != null) {
-					try {
-						in.close();
-					} catch (Exception e) {
-						// ignore
-					}
+				return Math.max(1, Integer.parseInt(value.trim()));
+			} catch (NumberFormatException e) {
+				RuntimeCoreActivator.pluginLog().logWarning("Invalid value of " + THREADS_PROPERTY + ": " + value); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		}
+		return DEFAULT_THREADS;
+	}
+
+	/*
+	 * Write the files with a pool of threads, while this thread 
+	 * reports the progress and polls the monitor for cancelation.
+	 * Returns false if canceled.
+	 */
+	private boolean writeFiles(final ZipFile zipFile, List<ZipEntry> files, final File destination, 
+			IProgressMonitor monitor) throws IOException {
+		final ExtractProgress progress = new ExtractProgress(monitor);
+		int threads = getThreads();
+		if (threads == 1 || files.size() < 2) {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			for (ZipEntry entry : files) {
+				if (monitor.isCanceled()) {
+					return false;
 				}
-				if (out != null) {
-					try {
-						out.close();
-					} catch (Exception e) {
-						// ignore
+				createEntry(zipFile, entry, new File(destination, entry.getName()), buffer, progress);
+				monitor.worked(1);
+				progress.report(entry.getName());
+			}
+			return true;
+		}
+
+		final AtomicBoolean canceled = new AtomicBoolean();
+		final AtomicReference<IOException> error = new AtomicReference<IOException>();
+		final CountDownLatch done = new CountDownLatch(files.size());
+		final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>() {
+			protected byte[] initialValue() {
+				return new byte[BUFFER_SIZE];
+			}
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Extract " + count.incrementAndGet()); //$NON-NLS-1$
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		try {
+			for (final ZipEntry entry : files) {
+				executor.execute(new Runnable() {
+					public void run() {
+						try {
+							if (!canceled.get() && error.get() == null) {
+								createEntry(zipFile, entry, new File(destination, entry.getName()), buffers.get(), progress);
+							}
+						} catch (IOException e) {
+							error.compareAndSet(null, e);
+						} catch (RuntimeException e) {
+							error.compareAndSet(null, new IOException(entry.getName(), e));
+						} finally {
+							done.countDown();
+						}
 					}
+				});
+			}
+			int reported = 0;
+			boolean finished = false;
+			while (!finished && error.get() == null) {
+				try {
+					finished = done.await(200, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					canceled.set(true);
+				}
+				int written = progress.getFileCount();
+				monitor.worked(written - reported);
+				reported = written;
+				progress.report(null);
+				if (monitor.isCanceled()) {
+					canceled.set(true);
+				}
+				if (canceled.get()) {
+					return false;
+				}
+			}
+			if (error.get() != null) {
+				throw error.get();
+			}
+			return true;
+		} finally {
+			executor.shutdownNow();
+			try {
+				// Don't leave files being written behind
+				executor.awaitTermination(30, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	private static void createEntry(ZipFile zipFile, ZipEntry entry, File entryFile, 
+			byte[] buffer, ExtractProgress progress) throws IOException {
+		InputStream in = null;
+		OutputStream out = null;
+		try {
+			in = zipFile.getInputStream(entry);
+			out = new FileOutputStream(entryFile);
+			progress.written(copy(in, out, buffer));
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (Exception e) {
+					// ignore
+				}
+			}
+			if (out != null) {
+				try {
+					out.close();
+				} catch (Exception e) {
+					// ignore
 				}
 			}
 		}
 	}
 	
-	private void copy(InputStream in, OutputStream out) throws IOException {
-		byte[] buffer = new byte[16 * 1024];
+	private static long copy(InputStream in, OutputStream out, byte[] buffer) throws IOException {
+		long size = 0;
 		int len;
 		while ((len = in.read(buffer)) >= 0) {
 			out.write(buffer, 0, len);
+			size += len;
 		}
+		return size;
 	}
 	
 	
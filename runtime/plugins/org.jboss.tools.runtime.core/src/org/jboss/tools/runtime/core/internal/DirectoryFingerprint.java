@@ -0,0 +1,307 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.runtime.core.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.jboss.tools.foundation.core.digest.DigestUtils;
+import org.jboss.tools.runtime.core.RuntimeCoreActivator;
+import org.jboss.tools.runtime.core.model.IRuntimeDetector;
+
+/**
+ * The state of a searched directory: its modification time, a hash of
+ * the names it contains, whether a runtime was found in it, and the
+ * fingerprints of the sub-directories which were searched. The hash of
+ * a runtime directory covers the modification times of its entries too,
+ * so that marker files which are replaced in place are noticed.
+ *
+ * A search of a runtime path records the fingerprint of the tree it walked,
+ * so that the next search only needs to ask the detectors about
+ * the directories whose fingerprint changed.
+ */
+public class DirectoryFingerprint {
+	private static final int VERSION = 2;
+	private static final String FOLDER = "fingerprints"; //$NON-NLS-1$
+	private static final String EXTENSION = ".fingerprint"; //$NON-NLS-1$
+
+	private final long lastModified;
+	private final int namesHash;
+	private final boolean runtime;
+	private final Map<String, DirectoryFingerprint> children;
+
+	/**
+	 * @param lastModified  The modification time of the directory
+	 * @param namesHash     The hash of the sorted names in the directory, see {@link #hash(String[])},
+	 * 						or of a runtime directory, see {@link #hash(File, String[])}
+	 * @param runtime       Whether a runtime was found in the directory
+	 * @param children      The fingerprints of the searched sub-directories by name
+	 */
+	public DirectoryFingerprint(long lastModified, int namesHash, boolean runtime, Map<String, DirectoryFingerprint> children) {
+		this.lastModified = lastModified;
+		this.namesHash = namesHash;
+		this.runtime = runtime;
+		this.children = new TreeMap<String, DirectoryFingerprint>(children);
+	}
+
+	/**
+	 * Returns the hash of the names of a directory.
+	 *
+	 * @param sortedNames  The names, sorted; null if the directory cannot be listed
+	 */
+	public static int hash(String[] sortedNames) {
+		return sortedNames == null ? 0 : Arrays.hashCode(sortedNames);
+	}
+
+	/**
+	 * Returns the hash of the names of a runtime directory and of
+	 * the modification times of its entries.
+	 *
+	 * @param directory    The directory
+	 * @param sortedNames  The names, sorted; null if the directory cannot be listed
+	 */
+	public static int hash(File directory, String[] sortedNames) {
+		if (sortedNames == null) {
+			return 0;
+		}
+		int hash = hash(sortedNames);
+		for (int i = 0; i < sortedNames.length; i++) {
+			long modified = new File(directory, sortedNames[i]).lastModified();
+			hash = 31 * hash + (int)(modified ^ (modified >>> 32));
+		}
+		return hash;
+	}
+
+	/**
+	 * Returns the sorted names of the directory, or null if it cannot be listed.
+	 */
+	public static String[] list(File directory) {
+		String[] names = directory.list();
+		if (names != null) {
+			Arrays.sort(names);
+		}
+		return names;
+	}
+
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	public int getNamesHash() {
+		return namesHash;
+	}
+
+	public boolean isRuntime() {
+		return runtime;
+	}
+
+	public DirectoryFingerprint getChild(String name) {
+		return children.get(name);
+	}
+
+	/**
+	 * Returns the names of the searched sub-directories, sorted.
+	 */
+	public List<String> getChildNames() {
+		return Collections.unmodifiableList(new ArrayList<String>(children.keySet()));
+	}
+
+	/**
+	 * Returns the number of directories in this fingerprint.
+	 */
+	public int getDirectoryCount() {
+		int count = 1;
+		for (DirectoryFingerprint child : children.values()) {
+			count += child.getDirectoryCount();
+		}
+		return count;
+	}
+
+	public boolean matches(long lastModified, int namesHash) {
+		return this.lastModified == lastModified && this.namesHash == namesHash;
+	}
+
+	/**
+	 * Returns whether the directory or any of its searched sub-directories
+	 * differs from this fingerprint. This only lists directories,
+	 * the detectors are not asked.
+	 */
+	public boolean isModified(File directory) {
+		String[] names = list(directory);
+		if (!matches(directory.lastModified(), runtime ? hash(directory, names) : hash(names))) {
+			return true;
+		}
+		for (Map.Entry<String, DirectoryFingerprint> entry : children.entrySet()) {
+			if (entry.getValue().isModified(new File(directory, entry.getKey()))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public void write(DataOutputStream out) throws IOException {
+		out.writeLong(lastModified);
+		out.writeInt(namesHash);
+		out.writeBoolean(runtime);
+		out.writeInt(children.size());
+		for (Map.Entry<String, DirectoryFingerprint> entry : children.entrySet()) {
+			out.writeUTF(entry.getKey());
+			entry.getValue().write(out);
+		}
+	}
+
+	public static DirectoryFingerprint read(DataInputStream in) throws IOException {
+		long lastModified = in.readLong();
+		int namesHash = in.readInt();
+		boolean runtime = in.readBoolean();
+		int size = in.readInt();
+		Map<String, DirectoryFingerprint> children = new TreeMap<String, DirectoryFingerprint>();
+		for (int i = 0; i < size; i++) {
+			String name = in.readUTF();
+			children.put(name, read(in));
+		}
+		return new DirectoryFingerprint(lastModified, namesHash, runtime, children);
+	}
+
+	/**
+	 * Returns a key for the enabled detectors. A fingerprint is only valid
+	 * for a search with the same detectors.
+	 */
+	public static String getDetectorsKey(Collection<IRuntimeDetector> detectors) {
+		Set<String> ids = new TreeSet<String>();
+		for (IRuntimeDetector detector : detectors) {
+			if (detector.isEnabled()) {
+				ids.add(detector.getId());
+			}
+		}
+		return ids.toString();
+	}
+
+	private static File getFolder() {
+		return RuntimeCoreActivator.getDefault().getStateLocation().append(FOLDER).toFile();
+	}
+
+	private static File getFile(String path) {
+		String name;
+		try {
+			name = DigestUtils.sha1(path);
+		} catch (IOException e) {
+			// Not thrown for a string
+			throw new IllegalStateException(e);
+		}
+		return new File(getFolder(), name + EXTENSION);
+	}
+
+	/**
+	 * Deletes the fingerprints of all runtime paths but the given ones.
+	 *
+	 * @param paths  The runtime paths whose fingerprint is kept
+	 */
+	public static void deleteAllExcept(Collection<String> paths) {
+		File[] files = getFolder().listFiles();
+		if (files == null) {
+			return;
+		}
+		Set<String> keep = new HashSet<String>();
+		for (String path : paths) {
+			keep.add(getFile(path).getName());
+		}
+		for (File file : files) {
+			String name = file.getName();
+			if (name.endsWith(EXTENSION) && !keep.contains(name) && !file.delete()) {
+				RuntimeCoreActivator.pluginLog().logWarning("Cannot delete " + file); //$NON-NLS-1$
+			}
+		}
+	}
+
+	/**
+	 * Returns the fingerprint recorded by the last search of the runtime path,
+	 * or null if there is none for these detectors.
+	 *
+	 * @param path          The runtime path
+	 * @param detectorsKey  The key of the enabled detectors, see {@link #getDetectorsKey(Collection)}
+	 */
+	public static DirectoryFingerprint load(String path, String detectorsKey) {
+		File file = getFile(path);
+		if (!file.isFile()) {
+			return null;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (in.readInt() != VERSION || !path.equals(in.readUTF()) || !detectorsKey.equals(in.readUTF())) {
+				return null;
+			}
+			return read(in);
+		} catch (IOException e) {
+			RuntimeCoreActivator.pluginLog().logWarning("Cannot read the fingerprint of " + path, e); //$NON-NLS-1$
+			return null;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	/**
+	 * Records the fingerprint of a search of the runtime path.
+	 */
+	public static void save(String path, String detectorsKey, DirectoryFingerprint fingerprint) {
+		File file = getFile(path);
+		file.getParentFile().mkdirs();
+		File tmp = new File(file.getPath() + ".tmp"); //$NON-NLS-1$
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			out.writeInt(VERSION);
+			out.writeUTF(path);
+			out.writeUTF(detectorsKey);
+			fingerprint.write(out);
+			out.close();
+			out = null;
+			file.delete();
+			if (!tmp.renameTo(file)) {
+				RuntimeCoreActivator.pluginLog().logWarning("Cannot save the fingerprint of " + path); //$NON-NLS-1$
+			}
+		} catch (IOException e) {
+			RuntimeCoreActivator.pluginLog().logWarning("Cannot save the fingerprint of " + path, e); //$NON-NLS-1$
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+			tmp.delete();
+		}
+	}
+}
@@ -19,6 +19,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IConfigurationElement;
@@ -26,11 +27,13 @@ import org.eclipse.core.runtime.IExtension;
 import org.eclipse.core.runtime.IExtensionPoint;
 import org.eclipse.core.runtime.IExtensionRegistry;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.ListenerList;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.SubProgressMonitor;
 import org.jboss.tools.runtime.core.RuntimeCoreActivator;
 import org.jboss.tools.runtime.core.model.DownloadRuntime;
+import org.jboss.tools.runtime.core.model.IDownloadRuntimesListener;
 import org.jboss.tools.runtime.core.model.IDownloadRuntimesProvider;
 import org.jboss.tools.runtime.core.model.IRuntimeDetector;
 import org.jboss.tools.runtime.core.model.IRuntimeDetectorDelegate;
@@ -42,9 +45,52 @@ public class RuntimeExtensionManager {
 	public static final String DOWNLOAD_RUNTIMES_PROVIDER_EXTENSION_ID = "org.jboss.tools.runtime.core.downloadRuntimeProvider"; //$NON-NLS-1$
 	private static final String RUNTIME_INSTALLER_EXTENSION_ID = "org.jboss.tools.runtime.core.runtimeInstaller"; //$NON-NLS-1$
 	
+	/**
+	 * System property for the number of seconds a download runtime provider
+	 * may take before its runtimes are left out
+	 */
+	public static final String PROVIDER_TIMEOUT_PROPERTY = "org.jboss.tools.runtime.core.downloadRuntimeProviderTimeout"; //$NON-NLS-1$
+	
+	/**
+	 * System property for the number of seconds the runtimes of a provider are kept
+	 * when the runtimes of other providers could not be loaded
+	 */
+	public static final String PROVIDER_CACHE_TTL_PROPERTY = "org.jboss.tools.runtime.core.downloadRuntimeProviderCacheTTL"; //$NON-NLS-1$
+	
+	private static final long DEFAULT_PROVIDER_TIMEOUT = 60;
+	private static final long DEFAULT_PROVIDER_CACHE_TTL = 30 * 60;
+	
 	// Member variables
 	private IDownloadRuntimesProvider[] downloadRuntimeProviders = null;
 	private Set<IRuntimeDetector> runtimeDetectors;
+	private ListenerList downloadRuntimesListeners = new ListenerList();
+	
+	/*
+	 * The runtimes of each provider, kept when a load was incomplete, 
+	 * so that only the providers which did not return are asked again.
+	 */
+	private final Map<IDownloadRuntimesProvider, CachedRuntimes> providerCache = 
+			new HashMap<IDownloadRuntimesProvider, CachedRuntimes>();
+	
+	/*
+	 * The providers which were asked for their runtimes and did not return yet.
+	 * A provider is not asked again while it is running, so that one which hangs
+	 * keeps at most one thread.
+	 */
+	private final Map<IDownloadRuntimesProvider, ProviderLoad> runningLoads = 
+			new HashMap<IDownloadRuntimesProvider, ProviderLoad>();
+	// Guards the running loads, and is notified when a load is done
+	private final Object loadLock = new Object();
+	private final AtomicInteger threadCount = new AtomicInteger();
+	
+	private static class CachedRuntimes {
+		private final DownloadRuntime[] runtimes;
+		private final long expiration;
+		public CachedRuntimes(DownloadRuntime[] runtimes, long expiration) {
+			this.runtimes = runtimes;
+			this.expiration = expiration;
+		}
+	}
 	
 
 	// property keyys for download runtime provider ext pt. 
@@ -182,7 +228,11 @@ public class RuntimeExtensionManager {
 		return getDownloadRuntimes( new NullProgressMonitor() );
 	}
 	
-	private Map<String, DownloadRuntime> cachedDownloadRuntimes = null;
+	/*
+	 * The runtimes of all providers, once all providers have returned.
+	 * Until then the list is loaded again by each call.
+	 */
+	private volatile Map<String, DownloadRuntime> cachedDownloadRuntimes = null;
 	public Map<String, DownloadRuntime> getDownloadRuntimes(IProgressMonitor monitor) {
 
 		// Cache for now, since we still fetch remote files
@@ -190,15 +240,42 @@ public class RuntimeExtensionManager {
 		// need to cache this, and in fact should not. 
 		// Individual providers can cache on their own, or not, a they wish
 		// We still return the actual data map. This is pretty bad. 
-		if( cachedDownloadRuntimes == null ) {
-			Map<String, DownloadRuntime> tmp = loadDownloadRuntimes(monitor);
-			if( monitor.isCanceled()) {
-				// Do not cache, as the list is incomplete and should be loaded again.
-				return tmp;
-			}
+		Map<String, DownloadRuntime> cached = cachedDownloadRuntimes;
+		if( cached != null ) 
+			return cached;
+		Map<String, DownloadRuntime> tmp = new HashMap<String, DownloadRuntime>();
+		boolean complete = loadDownloadRuntimes(tmp, monitor);
+		if( complete && !monitor.isCanceled()) {
 			cachedDownloadRuntimes = tmp;
 		}
-		return cachedDownloadRuntimes;
+		// Else the list is incomplete and is loaded again by the next call.
+		// The runtimes of the providers which returned are cached separately.
+		return tmp;
+	}
+	
+	/**
+	 * Add a listener notified as each download runtime provider returns
+	 * while the download runtimes are loaded.
+	 * 
+	 * @param listener
+	 */
+	public synchronized void addDownloadRuntimesListener(IDownloadRuntimesListener listener) {
+		downloadRuntimesListeners.add(listener);
+	}
+	
+	public synchronized void removeDownloadRuntimesListener(IDownloadRuntimesListener listener) {
+		downloadRuntimesListeners.remove(listener);
+	}
+	
+	private void fireDownloadRuntimesLoaded(IDownloadRuntimesProvider provider, DownloadRuntime[] runtimes) {
+		Object[] listeners = downloadRuntimesListeners.getListeners();
+		for (int i = 0; i < listeners.length; i++) {
+			try {
+				((IDownloadRuntimesListener)listeners[i]).downloadRuntimesLoaded(provider, runtimes);
+			} catch(RuntimeException re) {
+				RuntimeCoreActivator.pluginLog().logError(re);
+			}
+		}
 	}
 
 	/**
@@ -246,13 +323,33 @@ public class RuntimeExtensionManager {
 		return null;
 	}
 	
-	private Map<String, DownloadRuntime> loadDownloadRuntimes(IProgressMonitor monitor) {
-		HashMap<String, DownloadRuntime> tmp = new HashMap<String, DownloadRuntime>();
+	private boolean loadDownloadRuntimes(Map<String, DownloadRuntime> map, IProgressMonitor monitor) {
 		monitor.beginTask("Loading Downloadable Runtimes", 300);
-		loadDownloadableRuntimesFromProviders(tmp, new SubProgressMonitor(monitor, 300));
-		return tmp;
+		boolean complete = loadDownloadableRuntimesFromProviders(getDownloadRuntimeProviders(), map, 
+				getMillis(PROVIDER_TIMEOUT_PROPERTY, DEFAULT_PROVIDER_TIMEOUT), true, new SubProgressMonitor(monitor, 300));
+		if( complete ) {
+			synchronized(providerCache) {
+				providerCache.clear();
+			}
+		}
+		return complete;
 	}	
 	
+	/*
+	 * Get a system property given in seconds, in milliseconds
+	 */
+	private static long getMillis(String property, long defaultSeconds) {
+		String value = System.getProperty(property);
+		if( value != null ) {
+			try {
+				return Long.parseLong(value.trim()) * 1000;
+			} catch(NumberFormatException nfe) {
+				RuntimeCoreActivator.pluginLog().logWarning("Invalid value of " + property + ": " + value); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		}
+		return defaultSeconds * 1000;
+	}
+	
 
 	/**
 	 * This method is NOT PUBLIC. 
@@ -261,18 +358,203 @@ public class RuntimeExtensionManager {
 	 * @param map
 	 */
 	public void loadDownloadableRuntimesFromProviders(Map<String, DownloadRuntime> map, IProgressMonitor monitor) {
-		IDownloadRuntimesProvider[] providers = getDownloadRuntimeProviders();
+		loadDownloadableRuntimesFromProviders(getDownloadRuntimeProviders(), map, 
+				getMillis(PROVIDER_TIMEOUT_PROPERTY, DEFAULT_PROVIDER_TIMEOUT), false, monitor);
+	}
+	
+	/**
+	 * This method is NOT PUBLIC. 
+	 * It is only exposed for TESTING purposes.
+	 * 
+	 * Asks the providers for their runtimes concurrently, and adds them to 
+	 * the map as each provider returns. For an id found by several providers,
+	 * the runtime of the last provider is kept, as if they were asked one after
+	 * another. Providers which take longer than the timeout are canceled, 
+	 * and their runtimes are left out. A provider which did not return since 
+	 * it was canceled is asked again only once it returns.
+	 * 
+	 * @param providers
+	 * @param map
+	 * @param timeout  The time in milliseconds the providers may take
+	 * @param useCache Whether the runtimes of providers cached by an incomplete load are used
+	 * @param monitor
+	 * @return whether all providers returned their runtimes
+	 */
+	public boolean loadDownloadableRuntimesFromProviders(IDownloadRuntimesProvider[] providers, 
+			Map<String, DownloadRuntime> map, long timeout, boolean useCache, IProgressMonitor monitor) {
 		monitor.beginTask("Loading Download Runtime Providers", providers.length * 100);
-		for( int i = 0; i < providers.length && !monitor.isCanceled(); i++ ) {
-			IProgressMonitor inner = new SubProgressMonitor(monitor, 100);
-			DownloadRuntime[] runtimes = providers[i].getDownloadableRuntimes(null, inner);
-			if( runtimes != null ) {
-				for( int j = 0; j < runtimes.length; j++ ) {
-					if( runtimes[j] != null )
-						map.put(runtimes[j].getId(), runtimes[j]);
+		ProviderLoad[] loads = new ProviderLoad[providers.length];
+		boolean[] started = new boolean[providers.length];
+		boolean[] merged = new boolean[providers.length];
+		Map<String, Integer> owners = new HashMap<String, Integer>();
+		long deadline = System.currentTimeMillis() + timeout;
+		int reported = 0;
+		boolean timedOut = false;
+		synchronized(loadLock) {
+			while( true ) {
+				int done = 0;
+				for( int i = 0; i < loads.length; i++ ) {
+					if( loads[i] == null || (loads[i].done && loads[i].result == null && !started[i])) {
+						// Wait for a load which is running, or start one once 
+						// the load started by another caller ended without runtimes
+						loads[i] = runningLoads.get(providers[i]);
+						if( loads[i] == null ) {
+							loads[i] = startLoad(providers[i], useCache);
+							started[i] = true;
+						}
+					}
+					if( !loads[i].done )
+						continue;
+					done++;
+					if( !merged[i] && loads[i].result != null ) {
+						merge(loads[i].result, i, map, owners);
+						merged[i] = true;
+					}
+				}
+				if( done > reported ) {
+					monitor.worked((done - reported) * 100);
+					reported = done;
 				}
+				if( done == loads.length || monitor.isCanceled())
+					break;
+				long wait = deadline - System.currentTimeMillis();
+				if( wait <= 0 ) {
+					timedOut = true;
+					break;
+				}
+				try {
+					loadLock.wait(Math.min(wait, 100));
+				} catch(InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+		}
+		
+		boolean complete = true;
+		for( int i = 0; i < loads.length; i++ ) {
+			if( !merged[i] ) {
+				complete = false;
+				if( timedOut && !loads[i].done ) {
+					RuntimeCoreActivator.pluginLog().logWarning("Download runtime provider " //$NON-NLS-1$
+							+ providers[i].getClass().getName() + " did not return within " + timeout + " ms"); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+				// A load started by another caller is left to its own timeout
+				if( started[i] )
+					loads[i].cancel();
+			}
+		}
+		monitor.done();
+		return complete;
+	}
+	
+	/*
+	 * Ask the provider for its runtimes on a thread of its own. Called with the load lock.
+	 */
+	private ProviderLoad startLoad(IDownloadRuntimesProvider provider, boolean useCache) {
+		DownloadRuntime[] cached = useCache ? getCachedRuntimes(provider) : null;
+		ProviderLoad load = new ProviderLoad(provider, cached, useCache);
+		runningLoads.put(provider, load);
+		Thread t = new Thread(load, "Download Runtime Provider " + threadCount.incrementAndGet()); //$NON-NLS-1$
+		t.setDaemon(true);
+		t.start();
+		return load;
+	}
+	
+	/*
+	 * Adds the runtimes of the provider at the given index, unless a runtime
+	 * with the same id was added by a provider after it
+	 */
+	private static void merge(DownloadRuntime[] runtimes, int index, Map<String, DownloadRuntime> map, Map<String, Integer> owners) {
+		for( int j = 0; j < runtimes.length; j++ ) {
+			if( runtimes[j] == null )
+				continue;
+			String id = runtimes[j].getId();
+			Integer owner = owners.get(id);
+			if( owner == null || owner.intValue() <= index ) {
+				map.put(id, runtimes[j]);
+				owners.put(id, Integer.valueOf(index));
 			}
-			inner.done();
+		}
+	}
+	
+	private DownloadRuntime[] getCachedRuntimes(IDownloadRuntimesProvider provider) {
+		synchronized(providerCache) {
+			CachedRuntimes cached = providerCache.get(provider);
+			if( cached == null )
+				return null;
+			if( cached.expiration < System.currentTimeMillis()) {
+				providerCache.remove(provider);
+				return null;
+			}
+			return cached.runtimes;
+		}
+	}
+	
+	/*
+	 * Asks one provider for its runtimes, or takes them from the cache,
+	 * on a thread of its own
+	 */
+	private class ProviderLoad implements Runnable {
+		private final IDownloadRuntimesProvider provider;
+		private final DownloadRuntime[] cached;
+		private final boolean cache;
+		private final NullProgressMonitor monitor = new NullProgressMonitor();
+		private Thread thread;
+		private volatile DownloadRuntime[] result;
+		private volatile boolean done = false;
+		
+		public ProviderLoad(IDownloadRuntimesProvider provider, DownloadRuntime[] cached, boolean cache) {
+			this.provider = provider;
+			this.cached = cached;
+			this.cache = cache;
+		}
+		
+		public void run() {
+			synchronized(this) {
+				thread = Thread.currentThread();
+			}
+			try {
+				DownloadRuntime[] runtimes = cached;
+				if( runtimes == null && !monitor.isCanceled()) {
+					runtimes = provider.getDownloadableRuntimes(null, monitor);
+					if( monitor.isCanceled())
+						return;
+					if( runtimes == null )
+						runtimes = new DownloadRuntime[0];
+					if( cache ) {
+						long ttl = getMillis(PROVIDER_CACHE_TTL_PROPERTY, DEFAULT_PROVIDER_CACHE_TTL);
+						synchronized(providerCache) {
+							providerCache.put(provider, new CachedRuntimes(runtimes, System.currentTimeMillis() + ttl));
+						}
+					}
+				}
+				if( runtimes != null ) {
+					result = runtimes;
+					fireDownloadRuntimesLoaded(provider, runtimes);
+				}
+			} catch(RuntimeException re) {
+				RuntimeCoreActivator.pluginLog().logError("Error loading download runtimes from " + provider.getClass().getName(), re); //$NON-NLS-1$
+			} finally {
+				synchronized(this) {
+					thread = null;
+				}
+				synchronized(loadLock) {
+					done = true;
+					if( runningLoads.get(provider) == this )
+						runningLoads.remove(provider);
+					loadLock.notifyAll();
+				}
+			}
+		}
+		
+		/*
+		 * Cancels the monitor of the provider, and interrupts it if it is waiting
+		 */
+		synchronized void cancel() {
+			monitor.setCanceled(true);
+			if( thread != null )
+				thread.interrupt();
 		}
 	}
 	
@@ -0,0 +1,383 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.runtime.core.internal;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.jboss.tools.runtime.core.Messages;
+import org.jboss.tools.runtime.core.RuntimeCoreActivator;
+import org.jboss.tools.runtime.core.model.IRuntimeDetector;
+import org.jboss.tools.runtime.core.model.RuntimeDefinition;
+
+/**
+ * Searches a directory tree for runtimes with several threads.
+ *
+ * Each directory is a task: the enabled detectors are asked for a runtime
+ * definition of the directory, and if none finds one, a task is submitted
+ * for each sub-directory. Directories are visited concurrently, but the result
+ * is in the order of a depth-first walk with sub-directories sorted by name,
+ * so that it does not depend on the scheduling of the tasks.
+ *
+ * The caller's progress monitor is used only on the calling thread, which
+ * reports the directory being searched and polls for cancelation; detectors
+ * get a monitor which is canceled together with the search. A canceled
+ * search returns once the detectors which are running have returned.
+ *
+ * The search records the fingerprint of each directory it visits. Given
+ * the fingerprint of a previous search, the detectors are only asked about
+ * the directories which changed since: the sub-directories of an unchanged
+ * directory are the same as before, and the runtime found in an unchanged
+ * directory is reused.
+ */
+public class RuntimeSearch {
+	/**
+	 * System property for the number of threads, 1 searches on the calling thread
+	 */
+	public static final String THREADS_PROPERTY = "org.jboss.tools.runtime.core.searchThreads"; //$NON-NLS-1$
+
+	private static final int DEFAULT_THREADS = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+
+	/**
+	 * A searched directory, with the runtime found in it or its searched sub-directories
+	 */
+	private static class Node {
+		final File directory;
+		final int depth;
+		final DirectoryFingerprint previous;
+		volatile long lastModified;
+		volatile int namesHash;
+		volatile RuntimeDefinition definition;
+		volatile Node[] children;
+
+		Node(File directory, int depth, DirectoryFingerprint previous) {
+			this.directory = directory;
+			this.depth = depth;
+			this.previous = previous;
+		}
+	}
+
+	private final List<IRuntimeDetector> detectors;
+	private final int threads;
+	private final Object lock = new Object();
+	private final AtomicInteger directoryCount = new AtomicInteger();
+	private final AtomicInteger unchangedCount = new AtomicInteger();
+	private Map<File, RuntimeDefinition> previousDefinitions = Collections.emptyMap();
+	private int pending = 0;
+	private volatile boolean canceled = false;
+	private volatile File current;
+	private ExecutorService executor;
+
+	private final IProgressMonitor detectorMonitor = new NullProgressMonitor() {
+		public boolean isCanceled() {
+			return canceled;
+		}
+		public void setCanceled(boolean value) {
+			canceled = value;
+		}
+	};
+
+	/**
+	 * @param detectors  Detectors in the order they are asked; disabled ones are skipped
+	 */
+	public RuntimeSearch(Collection<IRuntimeDetector> detectors) {
+		this(detectors, getDefaultThreads());
+	}
+
+	public RuntimeSearch(Collection<IRuntimeDetector> detectors, int threads) {
+		this.detectors = new ArrayList<IRuntimeDetector>();
+		for (IRuntimeDetector detector : detectors) {
+			if (detector.isEnabled()) {
+				this.detectors.add(detector);
+			}
+		}
+		this.threads = Math.max(1, threads);
+	}
+
+	private static int getDefaultThreads() {
+		String value = System.getProperty(THREADS_PROPERTY);
+		if (value != null) {
+			try {
+				return Integer.parseInt(value.trim());
+			} catch (NumberFormatException e) {
+				RuntimeCoreActivator.pluginLog().logWarning("Invalid value of " + THREADS_PROPERTY + ": " + value); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		}
+		return DEFAULT_THREADS;
+	}
+
+	/**
+	 * Returns the number of directories searched so far.
+	 */
+	public int getDirectoryCount() {
+		return directoryCount.get();
+	}
+
+	/**
+	 * Returns the number of directories found unchanged since the previous search.
+	 */
+	public int getUnchangedCount() {
+		return unchangedCount.get();
+	}
+
+	/**
+	 * Searches the directory and its sub-directories up to the given depth,
+	 * and adds runtime definitions found to the collector. A search which is
+	 * canceled adds runtimes found so far.
+	 *
+	 * @param directory
+	 * @param runtimeCollector
+	 * @param depth  1 searches only the directory itself
+	 * @param monitor
+	 */
+	public void search(File directory, List<RuntimeDefinition> runtimeCollector, int depth, IProgressMonitor monitor) {
+		search(directory, runtimeCollector, depth, null, null, monitor);
+	}
+
+	/**
+	 * Searches the directory again, asking the detectors only about the
+	 * directories which changed since the search which recorded the given
+	 * fingerprint.
+	 *
+	 * @param directory
+	 * @param runtimeCollector
+	 * @param depth  1 searches only the directory itself; should be the depth of the previous search
+	 * @param previous  The fingerprint of the previous search, or null to search every directory
+	 * @param previousDefinitions  The runtimes found by the previous search by location;
+	 * 			an unchanged directory whose runtime is missing is searched again
+	 * @param monitor
+	 * @return the fingerprint of this search, or null if it was canceled
+	 */
+	public DirectoryFingerprint search(File directory, List<RuntimeDefinition> runtimeCollector, int depth,
+			DirectoryFingerprint previous, Map<File, RuntimeDefinition> previousDefinitions, IProgressMonitor monitor) {
+		if (depth <= 0 || monitor.isCanceled() || directory == null || !directory.isDirectory()) {
+			return null;
+		}
+		if (previousDefinitions != null) {
+			this.previousDefinitions = previousDefinitions;
+		}
+		Node root = new Node(directory, depth, previous);
+		if (threads == 1) {
+			searchSequentially(root, monitor);
+		} else {
+			searchInParallel(root, monitor);
+		}
+		collect(root, runtimeCollector);
+		return canceled ? null : fingerprint(root);
+	}
+
+	private void searchSequentially(Node node, IProgressMonitor monitor) {
+		if (monitor.isCanceled()) {
+			canceled = true;
+			return;
+		}
+		monitor.setTaskName(Messages.JBossRuntimeLocator_Searching + node.directory.getAbsolutePath());
+		visit(node);
+		Node[] children = node.children;
+		if (children != null) {
+			for (int i = 0; i < children.length; i++) {
+				searchSequentially(children[i], monitor);
+			}
+		}
+	}
+
+	private void searchInParallel(Node root, IProgressMonitor monitor) {
+		executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Runtime Search " + count.incrementAndGet()); //$NON-NLS-1$
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		try {
+			submit(root);
+			File reported = null;
+			synchronized (lock) {
+				while (pending > 0) {
+					try {
+						lock.wait(200);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						canceled = true;
+					}
+					File f = current;
+					if (f != null && f != reported) {
+						monitor.setTaskName(Messages.JBossRuntimeLocator_Searching + f.getAbsolutePath());
+						reported = f;
+					}
+					if (monitor.isCanceled()) {
+						canceled = true;
+					}
+					if (canceled) {
+						break;
+					}
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+			awaitWorkers();
+		}
+	}
+
+	/*
+	 * Wait until no worker reads or writes the nodes. Detectors which are
+	 * running finish or notice the cancelation; queued tasks are dropped.
+	 */
+	private void awaitWorkers() {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				if (executor.awaitTermination(200, TimeUnit.MILLISECONDS)) {
+					break;
+				}
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void submit(final Node node) {
+		synchronized (lock) {
+			pending++;
+		}
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						if (!canceled) {
+							current = node.directory;
+							visit(node);
+							Node[] children = node.children;
+							if (children != null) {
+								for (int i = 0; i < children.length && !canceled; i++) {
+									submit(children[i]);
+								}
+							}
+						}
+					} catch (RuntimeException e) {
+						RuntimeCoreActivator.pluginLog().logError(e);
+					} finally {
+						done();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// The search is canceled.
+			done();
+		}
+	}
+
+	private void done() {
+		synchronized (lock) {
+			pending--;
+			if (pending == 0) {
+				lock.notifyAll();
+			}
+		}
+	}
+
+	/*
+	 * Ask the detectors for a runtime in the directory,
+	 * and list sub-directories if none is found.
+	 */
+	private void visit(Node node) {
+		directoryCount.incrementAndGet();
+		String[] names = DirectoryFingerprint.list(node.directory);
+		node.lastModified = node.directory.lastModified();
+		DirectoryFingerprint previous = node.previous;
+		node.namesHash = previous != null && previous.isRuntime() ?
+				DirectoryFingerprint.hash(node.directory, names) : DirectoryFingerprint.hash(names);
+		if (previous != null && previous.matches(node.lastModified, node.namesHash)) {
+			if (!previous.isRuntime()) {
+				// No runtime was found here, and the sub-directories are the same
+				unchangedCount.incrementAndGet();
+				List<String> childNames = previous.getChildNames();
+				Node[] children = new Node[childNames.size()];
+				for (int i = 0; i < children.length; i++) {
+					String name = childNames.get(i);
+					children[i] = new Node(new File(node.directory, name), node.depth - 1, previous.getChild(name));
+				}
+				node.children = children;
+				return;
+			}
+			RuntimeDefinition definition = previousDefinitions.get(node.directory);
+			if (definition != null) {
+				unchangedCount.incrementAndGet();
+				node.definition = definition;
+				return;
+			}
+		}
+		for (IRuntimeDetector detector : detectors) {
+			if (canceled) {
+				return;
+			}
+			RuntimeDefinition definition = detector.getRuntimeDefinition(node.directory, detectorMonitor);
+			if (definition != null) {
+				node.namesHash = DirectoryFingerprint.hash(node.directory, names);
+				node.definition = definition;
+				return;
+			}
+		}
+		node.namesHash = DirectoryFingerprint.hash(names);
+		if (node.depth <= 1 || names == null) {
+			return;
+		}
+		List<Node> children = new ArrayList<Node>();
+		for (int i = 0; i < names.length; i++) {
+			File f = new File(node.directory, names[i]);
+			if (f.isDirectory()) {
+				children.add(new Node(f, node.depth - 1, previous == null ? null : previous.getChild(names[i])));
+			}
+		}
+		node.children = children.toArray(new Node[children.size()]);
+	}
+
+	private static void collect(Node node, List<RuntimeDefinition> runtimeCollector) {
+		if (node.definition != null) {
+			runtimeCollector.add(node.definition);
+			return;
+		}
+		Node[] children = node.children;
+		if (children != null) {
+			for (int i = 0; i < children.length; i++) {
+				collect(children[i], runtimeCollector);
+			}
+		}
+	}
+
+	private static DirectoryFingerprint fingerprint(Node node) {
+		Map<String, DirectoryFingerprint> children = new TreeMap<String, DirectoryFingerprint>();
+		Node[] nodes = node.children;
+		if (nodes != null) {
+			for (int i = 0; i < nodes.length; i++) {
+				children.put(nodes[i].directory.getName(), fingerprint(nodes[i]));
+			}
+		}
+		return new DirectoryFingerprint(node.lastModified, node.namesHash, node.definition != null, children);
+	}
+}
@@ -0,0 +1,29 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.runtime.core.model;
+
+/**
+ * A listener notified while the download runtimes are loaded,
+ * each time a provider returns its runtimes, so that they can be
+ * shown before all providers have returned.
+ */
+public interface IDownloadRuntimesListener {
+
+	/**
+	 * The runtimes of a provider were loaded. This is called
+	 * on the thread which loaded the provider, also when its runtimes
+	 * were taken from a cache; never on the UI thread.
+	 *
+	 * @param provider  The provider
+	 * @param runtimes  The runtimes of the provider, never null
+	 */
+	public void downloadRuntimesLoaded(IDownloadRuntimesProvider provider, DownloadRuntime[] runtimes);
+}
@@ -12,6 +12,10 @@ package org.jboss.tools.runtime.core.model;
 
 
 /**
+ * Detectors are asked about several folders concurrently
+ * while a directory tree is searched, see 
+ * {@link IRuntimeDetectorDelegate#getRuntimeDefinition(java.io.File, org.eclipse.core.runtime.IProgressMonitor)}.
+ * 
  * @author snjeza
  *
  */
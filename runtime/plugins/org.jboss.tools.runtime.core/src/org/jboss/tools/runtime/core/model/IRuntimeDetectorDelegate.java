@@ -54,6 +54,9 @@ public interface IRuntimeDetectorDelegate {
 	 * It can be assumed that the detector is enabled when
 	 * this method is called. 
 	 * 
+	 * A search calls this method from several threads at once,
+	 * each with a different folder, so it must be thread-safe.
+	 * 
 	 * @param root
 	 * @param monitor
 	 * @return
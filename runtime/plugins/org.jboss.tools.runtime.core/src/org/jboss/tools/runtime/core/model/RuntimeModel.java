@@ -10,13 +10,16 @@
  ************************************************************************************/
 package org.jboss.tools.runtime.core.model;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.eclipse.core.runtime.ListenerList;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences;
 import org.jboss.tools.runtime.core.RuntimeCoreActivator;
+import org.jboss.tools.runtime.core.internal.DirectoryFingerprint;
 import org.jboss.tools.runtime.core.util.RuntimePathPreferenceIO;
 
 public class RuntimeModel {
@@ -53,6 +56,7 @@ public class RuntimeModel {
 			String runtimes = RuntimePathPreferenceIO.getPreferenceOutputString(runtimePaths);
 			preferences.put(RUNTIME_PATHS, runtimes);
 			preferences.flush();
+			deleteUnusedFingerprints();
 			fireRuntimePathsChanged();
 		} catch (Exception e) {
 			RuntimeCoreActivator.pluginLog().logError(e);
@@ -70,6 +74,19 @@ public class RuntimeModel {
 		}
 	}
 	
+	/*
+	 * The fingerprints of the searches of removed runtime paths are not needed
+	 */
+	private void deleteUnusedFingerprints() {
+		List<String> paths = new ArrayList<String>();
+		for (RuntimePath runtimePath : runtimePaths) {
+			if (runtimePath.getPath() != null) {
+				paths.add(runtimePath.getPath());
+			}
+		}
+		DirectoryFingerprint.deleteAllExcept(paths);
+	}
+	
 	public void addRuntimePath(RuntimePath path) {
 		runtimePaths.add(path);
 		saveRuntimePaths();
@@ -15,6 +15,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import org.jboss.tools.runtime.core.RuntimeCoreActivator;
+import org.jboss.tools.runtime.core.internal.DirectoryFingerprint;
+
 /**
  * @author snjeza
  *
@@ -73,6 +76,13 @@ public class RuntimePath implements Cloneable {
 		return runtimePath;
 	}
 
+	/**
+	 * Returns whether the folder changed since it was last searched. 
+	 * The folders recorded by the last search are compared with their 
+	 * fingerprint, so that changes below the root folder are found too.
+	 * A folder without a fingerprint of a search with the enabled 
+	 * runtime detectors is modified.
+	 */
 	public boolean isModified() {
 		if (path == null || path.isEmpty()) {
 			return false;
@@ -86,7 +96,9 @@ public class RuntimePath implements Cloneable {
 			return false;
 		}
 		try {
-			return directory.lastModified() > timestamp;
+			DirectoryFingerprint fingerprint = DirectoryFingerprint.load(path, 
+					DirectoryFingerprint.getDetectorsKey(RuntimeCoreActivator.getDefault().getRuntimeDetectors()));
+			return fingerprint == null || fingerprint.isModified(directory);
 		} catch (Exception e) {
 			return false;
 		}
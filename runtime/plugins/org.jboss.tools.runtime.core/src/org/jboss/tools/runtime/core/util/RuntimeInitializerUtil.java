@@ -99,9 +99,30 @@ public class RuntimeInitializerUtil {
 	 * @return
 	 */
 	public static List<RuntimeDefinition> createRuntimeDefinitions(RuntimePath runtimePath, IProgressMonitor monitor) {
+		return createRuntimeDefinitions(runtimePath, false, monitor);
+	}
+	
+	/**
+	 * Searches the runtime path again, asking the runtime detectors only 
+	 * about the folders which changed since the last search. The runtime 
+	 * definitions found in unchanged folders are kept.
+	 * 
+	 * This is a long-running task which may involve bundle-loading. 
+	 * This should not be called from the UI thread directly unless
+	 * proper safety is taken. 
+	 * @param runtimePath
+	 * @param monitor
+	 * @return
+	 */
+	public static List<RuntimeDefinition> updateRuntimeDefinitions(RuntimePath runtimePath, IProgressMonitor monitor) {
+		return createRuntimeDefinitions(runtimePath, true, monitor);
+	}
+	
+	private static List<RuntimeDefinition> createRuntimeDefinitions(RuntimePath runtimePath, 
+			boolean incremental, IProgressMonitor monitor) {
 		JBossRuntimeLocator locator = new JBossRuntimeLocator();
 		List<RuntimeDefinition> runtimeDefinitions = locator
-				.searchForRuntimes(runtimePath.getPath(), monitor);
+				.searchForRuntimes(runtimePath, incremental, monitor);
 		for (RuntimeDefinition runtimeDefinition : runtimeDefinitions) {
 			runtimeDefinition.setRuntimePath(runtimePath);
 		}
@@ -10,11 +10,8 @@
  *******************************************************************************/
 package org.jboss.tools.runtime.core.util.internal;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.net.URL;
 
 import org.eclipse.core.runtime.CoreException;
@@ -78,8 +75,12 @@ public class DownloadRuntimeOperationUtility {
 			if (deleteOnExit) {
 				ret = getNextUnusedFilename(destination, name);
 			}
-			if( deleteOnExit )
+			if( deleteOnExit ) {
 				ret.deleteOnExit();
+				// A download which is not finished leaves these behind
+				for( File f : URLTransportUtility.getPartialDownloadFiles(ret))
+					f.deleteOnExit();
+			}
 			return ret;
 		} catch (IOException e) {
 			cancel(ret);
@@ -244,26 +245,13 @@ public class DownloadRuntimeOperationUtility {
 	}
 	
 	private IStatus downloadFileFromRemoteUrl(File toFile, URL url, long remoteUrlModified, String user, String pass, IProgressMonitor monitor) throws IOException {
-		OutputStream out = null;
-		try {
-			out = new BufferedOutputStream(new FileOutputStream(toFile));
-			IStatus result = new URLTransportUtility().download(
-					toFile.getName(), url.toExternalForm(), user, pass, out, -1, monitor);
-			out.flush();
-			out.close();
-			if (remoteUrlModified > 0) {
-				toFile.setLastModified(remoteUrlModified);
-			}
-			return result;
-		} finally { 
-			if (out != null) {
-				try {
-					out.close();
-				} catch (IOException e) {
-					// ignore
-				}
-			}			
+		// Http downloads which were interrupted are resumed from the partial file
+		IStatus result = new URLTransportUtility().download(
+				toFile.getName(), url.toExternalForm(), user, pass, toFile, null, -1, monitor);
+		if (result.isOK() && remoteUrlModified > 0) {
+			toFile.setLastModified(remoteUrlModified);
 		}
+		return result;
 	}
 
 }
@@ -111,7 +111,7 @@ public class RuntimeScanner implements IStartup {
 				return false;
 			}
 			if (runtimePath.isModified()) {
-				RuntimeInitializerUtil.createRuntimeDefinitions(runtimePath, monitor);
+				RuntimeInitializerUtil.updateRuntimeDefinitions(runtimePath, monitor);
 				RuntimeModelUtil.updateTimestamps(runtimePaths);
 			}
 			monitor.setTaskName(Messages.RuntimeScanner_JBoss_Runtime_Detector_checking + runtimePath.getPath());
@@ -0,0 +1,241 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.runtime.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.jboss.tools.runtime.core.extract.ExtractUtility;
+import org.jboss.tools.runtime.core.extract.IOverwrite;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Extracts generated archives of a few hundred files.
+ */
+public class ExtractUtilityTest {
+	private static final String THREADS_PROPERTY = "org.jboss.tools.runtime.core.extractThreads";
+	private static final String ROOT = "wildfly";
+	private static final int FILES = 300;
+	private static final int FILES_PER_FOLDER = 50;
+
+	private File folder;
+	private File destination;
+
+	@Before
+	public void setUp() throws IOException {
+		folder = File.createTempFile("extractutility", "");
+		folder.delete();
+		folder.mkdirs();
+		destination = new File(folder, "destination");
+	}
+
+	@After
+	public void tearDown() {
+		System.clearProperty(THREADS_PROPERTY);
+		delete(folder);
+	}
+
+	private static void delete(File f) {
+		File[] children = f.listFiles();
+		if (children != null) {
+			for (File c : children) {
+				delete(c);
+			}
+		}
+		f.delete();
+	}
+
+	private static String name(int i) {
+		return ROOT + "/modules/m" + (i / FILES_PER_FOLDER) + "/main/f" + i + ".txt";
+	}
+
+	private static byte[] content(int i) {
+		byte[] bytes = new byte[512 + (i % 7) * 1000];
+		new Random(i).nextBytes(bytes);
+		// Compressible, as in a real distribution
+		for (int j = 0; j < bytes.length; j += 2) {
+			bytes[j] = 'a';
+		}
+		return bytes;
+	}
+
+	private File createZip() throws IOException {
+		File zip = new File(folder, "runtime.zip");
+		ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip));
+		try {
+			out.putNextEntry(new ZipEntry(ROOT + "/"));
+			out.closeEntry();
+			for (int i = 0; i < FILES; i++) {
+				out.putNextEntry(new ZipEntry(name(i)));
+				out.write(content(i));
+				out.closeEntry();
+			}
+		} finally {
+			out.close();
+		}
+		return zip;
+	}
+
+	/*
+	 * Writes a tar stream with ustar headers
+	 */
+	private File createTarGz() throws IOException {
+		File tgz = new File(folder, "runtime.tar.gz");
+		OutputStream out = new GZIPOutputStream(new FileOutputStream(tgz));
+		try {
+			writeTarEntry(out, ROOT + "/", null);
+			for (int i = 0; i < FILES; i++) {
+				writeTarEntry(out, name(i), content(i));
+			}
+			out.write(new byte[1024]);
+		} finally {
+			out.close();
+		}
+		return tgz;
+	}
+
+	private static void writeTarEntry(OutputStream out, String name, byte[] data) throws IOException {
+		byte[] header = new byte[512];
+		put(header, 0, name);
+		put(header, 100, "0000644");
+		put(header, 108, "0000000");
+		put(header, 116, "0000000");
+		put(header, 124, String.format("%011o", data == null ? 0 : data.length));
+		put(header, 136, String.format("%011o", System.currentTimeMillis() / 1000));
+		header[156] = (byte)(data == null ? '5' : '0');
+		for (int i = 148; i < 156; i++) {
+			header[i] = ' ';
+		}
+		int sum = 0;
+		for (int i = 0; i < header.length; i++) {
+			sum += header[i] & 0xff;
+		}
+		put(header, 148, String.format("%06o", sum));
+		header[154] = 0;
+		out.write(header);
+		if (data != null) {
+			out.write(data);
+			out.write(new byte[(512 - data.length % 512) % 512]);
+		}
+	}
+
+	private static void put(byte[] header, int offset, String value) {
+		byte[] bytes = value.getBytes();
+		System.arraycopy(bytes, 0, header, offset, bytes.length);
+	}
+
+	private void verify(ExtractUtility util) throws Exception {
+		for (int i = 0; i < FILES; i += 97) {
+			assertArrayEquals(content(i), read(new File(destination, name(i))));
+		}
+		assertEquals(FILES_PER_FOLDER, new File(destination, ROOT + "/modules/m0/main").list().length);
+		assertEquals(ROOT, util.getExtractedRootFolder(new NullProgressMonitor()));
+	}
+
+	private static byte[] read(File f) throws IOException {
+		FileInputStream in = new FileInputStream(f);
+		try {
+			byte[] bytes = new byte[(int)f.length()];
+			int offset = 0;
+			while (offset < bytes.length) {
+				int n = in.read(bytes, offset, bytes.length - offset);
+				if (n < 0)
+					break;
+				offset += n;
+			}
+			return bytes;
+		} finally {
+			in.close();
+		}
+	}
+
+	private static final IOverwrite FAIL = new IOverwrite() {
+		public int overwrite(File file) {
+			throw new AssertionError("Nothing to overwrite in " + file);
+		}
+	};
+
+	@Test
+	public void testZip() throws Exception {
+		ExtractUtility util = new ExtractUtility(createZip());
+		IStatus status = util.extract(destination, FAIL, new NullProgressMonitor());
+		assertTrue(status.isOK());
+		verify(util);
+	}
+
+	@Test
+	public void testZipSequential() throws Exception {
+		System.setProperty(THREADS_PROPERTY, "1");
+		ExtractUtility util = new ExtractUtility(createZip());
+		assertTrue(util.extract(destination, FAIL, new NullProgressMonitor()).isOK());
+		verify(util);
+	}
+
+	@Test
+	public void testZipOverwrite() throws Exception {
+		ExtractUtility util = new ExtractUtility(createZip());
+		assertTrue(util.extract(destination, FAIL, new NullProgressMonitor()).isOK());
+		File changed = new File(destination, name(5));
+		FileOutputStream out = new FileOutputStream(changed);
+		out.write(1);
+		out.close();
+
+		final AtomicInteger queries = new AtomicInteger();
+		IStatus status = util.extract(destination, new IOverwrite() {
+			public int overwrite(File file) {
+				queries.incrementAndGet();
+				return IOverwrite.NO_ALL;
+			}
+		}, new NullProgressMonitor());
+		assertTrue(status.isOK());
+		assertEquals(1, queries.get());
+		assertEquals(1, changed.length());
+
+		status = util.extract(destination, new IOverwrite() {
+			public int overwrite(File file) {
+				return IOverwrite.ALL;
+			}
+		}, new NullProgressMonitor());
+		assertTrue(status.isOK());
+		verify(util);
+	}
+
+	@Test
+	public void testCanceledZip() throws Exception {
+		NullProgressMonitor monitor = new NullProgressMonitor();
+		monitor.setCanceled(true);
+		IStatus status = new ExtractUtility(createZip()).extract(destination, FAIL, monitor);
+		assertEquals(IStatus.CANCEL, status.getSeverity());
+	}
+
+	@Test
+	public void testTarGz() throws Exception {
+		ExtractUtility util = new ExtractUtility(createTarGz());
+		assertTrue(util.extract(destination, FAIL, new NullProgressMonitor()).isOK());
+		verify(util);
+	}
+}
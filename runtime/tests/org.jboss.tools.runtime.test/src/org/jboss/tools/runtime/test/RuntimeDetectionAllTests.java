@@ -10,6 +10,7 @@
  ************************************************************************************/
 package org.jboss.tools.runtime.test;
 
+import org.jboss.tools.runtime.test.download.DownloadRuntimeProvidersTest;
 import org.jboss.tools.runtime.test.download.DownloadRuntimesTest;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
@@ -19,8 +20,12 @@ import org.junit.runners.Suite;
 	RuntimeExtensionManagerTest.class,
 	RuntimeDetectionFrameworkTest.class,
 	RuntimePathUtilTest.class,
+	RuntimeSearchTest.class,
+	RuntimeFingerprintTest.class,
+	ExtractUtilityTest.class,
 	RuntimeDetectionTest.class,
 	DownloadRuntimesTest.class,
+	DownloadRuntimeProvidersTest.class,
 	DownloadRuntimeOperationUtilityTest.class
 })
 
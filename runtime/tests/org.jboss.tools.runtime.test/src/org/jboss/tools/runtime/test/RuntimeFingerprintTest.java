@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.runtime.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.jboss.tools.runtime.core.internal.DirectoryFingerprint;
+import org.jboss.tools.runtime.core.internal.RuntimeDetector;
+import org.jboss.tools.runtime.core.internal.RuntimeSearch;
+import org.jboss.tools.runtime.core.model.AbstractRuntimeDetectorDelegate;
+import org.jboss.tools.runtime.core.model.IRuntimeDetector;
+import org.jboss.tools.runtime.core.model.RuntimeDefinition;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Searches a generated tree again after changes below the root folder.
+ */
+public class RuntimeFingerprintTest {
+	private static final int DEPTH = 4;
+	private static final String MARKER = "jboss-modules.jar";
+
+	private File root;
+	private Set<IRuntimeDetector> detectors;
+	private AtomicInteger detected;
+
+	@Before
+	public void setUp() throws IOException {
+		root = File.createTempFile("runtimefingerprint", "");
+		root.delete();
+		for (int i = 0; i < 3; i++) {
+			for (int j = 0; j < 3; j++) {
+				new File(root, "dir" + i + "/dir" + j + "/empty").mkdirs();
+			}
+			createRuntime(new File(root, "dir" + i + "/server"));
+		}
+		detected = new AtomicInteger();
+		detectors = new TreeSet<IRuntimeDetector>();
+		detectors.add(new RuntimeDetector("Test Detector", "test.detector", null, 1,
+				new AbstractRuntimeDetectorDelegate() {
+					public RuntimeDefinition getRuntimeDefinition(File root, IProgressMonitor monitor) {
+						detected.incrementAndGet();
+						if (new File(root, "bin").isDirectory() && new File(root, MARKER).isFile()) {
+							return new RuntimeDefinition(root.getName(), "1.0", "TEST", root);
+						}
+						return null;
+					}
+				}));
+	}
+
+	private static void createRuntime(File dir) throws IOException {
+		new File(dir, "bin").mkdirs();
+		new File(dir, MARKER).createNewFile();
+	}
+
+	@After
+	public void tearDown() {
+		delete(root);
+	}
+
+	private static void delete(File f) {
+		File[] children = f.listFiles();
+		if (children != null) {
+			for (File c : children) {
+				delete(c);
+			}
+		}
+		f.delete();
+	}
+
+	private DirectoryFingerprint search(DirectoryFingerprint previous, List<RuntimeDefinition> previousDefinitions,
+			List<RuntimeDefinition> found) {
+		Map<File, RuntimeDefinition> byLocation = new HashMap<File, RuntimeDefinition>();
+		for (RuntimeDefinition d : previousDefinitions) {
+			byLocation.put(d.getLocation(), d);
+		}
+		detected.set(0);
+		return new RuntimeSearch(detectors, 2).search(root, found, DEPTH, previous, byLocation, new NullProgressMonitor());
+	}
+
+	@Test
+	public void testUnchangedTreeIsNotSearchedAgain() {
+		List<RuntimeDefinition> first = new ArrayList<RuntimeDefinition>();
+		DirectoryFingerprint fingerprint = search(null, first, first);
+		assertEquals(3, first.size());
+		assertTrue(detected.get() > 0);
+		assertFalse(fingerprint.isModified(root));
+
+		List<RuntimeDefinition> second = new ArrayList<RuntimeDefinition>();
+		search(fingerprint, first, second);
+		assertEquals(0, detected.get());
+		assertEquals(first.size(), second.size());
+		for (int i = 0; i < first.size(); i++) {
+			assertSame(first.get(i), second.get(i));
+		}
+	}
+
+	@Test
+	public void testChangeBelowTheRoot() throws IOException {
+		List<RuntimeDefinition> first = new ArrayList<RuntimeDefinition>();
+		DirectoryFingerprint fingerprint = search(null, first, first);
+		long rootModified = root.lastModified();
+
+		createRuntime(new File(root, "dir1/dir2/server"));
+		assertEquals(rootModified, root.lastModified());
+		assertTrue(fingerprint.isModified(root));
+
+		List<RuntimeDefinition> second = new ArrayList<RuntimeDefinition>();
+		DirectoryFingerprint next = search(fingerprint, first, second);
+		// The detectors are asked only about dir1/dir2 and its new sub-folder
+		assertEquals(2, detected.get());
+		assertEquals(4, second.size());
+		assertEquals(new File(root, "dir1/dir2/server"), second.get(1).getLocation());
+		assertFalse(next.isModified(root));
+
+		List<RuntimeDefinition> full = new ArrayList<RuntimeDefinition>();
+		search(null, first, full);
+		assertEquals(locations(full), locations(second));
+	}
+
+	@Test
+	public void testRemovedRuntime() {
+		List<RuntimeDefinition> first = new ArrayList<RuntimeDefinition>();
+		DirectoryFingerprint fingerprint = search(null, first, first);
+		delete(new File(root, "dir2/server"));
+		assertTrue(fingerprint.isModified(root));
+
+		List<RuntimeDefinition> second = new ArrayList<RuntimeDefinition>();
+		search(fingerprint, first, second);
+		assertEquals(2, second.size());
+		assertSame(first.get(0), second.get(0));
+		assertSame(first.get(1), second.get(1));
+	}
+
+	@Test
+	public void testReplacedMarkerFile() {
+		List<RuntimeDefinition> first = new ArrayList<RuntimeDefinition>();
+		DirectoryFingerprint fingerprint = search(null, first, first);
+		File server = new File(root, "dir0/server");
+		long serverModified = server.lastModified();
+
+		File marker = new File(server, MARKER);
+		assertTrue(marker.setLastModified(marker.lastModified() - 60000));
+		assertEquals(serverModified, server.lastModified());
+		assertTrue(fingerprint.isModified(root));
+
+		List<RuntimeDefinition> second = new ArrayList<RuntimeDefinition>();
+		DirectoryFingerprint next = search(fingerprint, first, second);
+		// Only the folder of the runtime is asked about again
+		assertEquals(1, detected.get());
+		assertEquals(locations(first), locations(second));
+		assertFalse(next.isModified(root));
+	}
+
+	@Test
+	public void testUnusedFingerprintsAreDeleted() {
+		List<RuntimeDefinition> found = new ArrayList<RuntimeDefinition>();
+		DirectoryFingerprint fingerprint = search(null, found, found);
+		String kept = new File(root, "dir0").getAbsolutePath();
+		String removed = new File(root, "dir1").getAbsolutePath();
+		DirectoryFingerprint.save(kept, "key", fingerprint);
+		DirectoryFingerprint.save(removed, "key", fingerprint);
+		assertNotNull(DirectoryFingerprint.load(removed, "key"));
+
+		DirectoryFingerprint.deleteAllExcept(Collections.singleton(kept));
+		assertNotNull(DirectoryFingerprint.load(kept, "key"));
+		assertNull(DirectoryFingerprint.load(removed, "key"));
+	}
+
+	@Test
+	public void testReadWrite() throws IOException {
+		List<RuntimeDefinition> found = new ArrayList<RuntimeDefinition>();
+		DirectoryFingerprint fingerprint = search(null, found, found);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		fingerprint.write(new DataOutputStream(bytes));
+		DirectoryFingerprint read = DirectoryFingerprint.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		assertNotNull(read);
+		assertEquals(fingerprint.getDirectoryCount(), read.getDirectoryCount());
+		assertFalse(read.isModified(root));
+		assertTrue(read.getChild("dir0").getChild("server").isRuntime());
+	}
+
+	private static List<File> locations(List<RuntimeDefinition> definitions) {
+		List<File> locations = new ArrayList<File>();
+		for (RuntimeDefinition d : definitions) {
+			locations.add(d.getLocation());
+		}
+		return locations;
+	}
+}
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.runtime.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.jboss.tools.runtime.core.internal.RuntimeDetector;
+import org.jboss.tools.runtime.core.internal.RuntimeSearch;
+import org.jboss.tools.runtime.core.model.AbstractRuntimeDetectorDelegate;
+import org.jboss.tools.runtime.core.model.IRuntimeDetector;
+import org.jboss.tools.runtime.core.model.RuntimeDefinition;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compares the parallel search with the sequential one on a generated tree.
+ */
+public class RuntimeSearchTest {
+	private static final int FANOUT = 6;
+	private static final int LEVELS = 4;
+	private static final String MARKER = "jboss-modules.jar";
+
+	private File root;
+	private Set<IRuntimeDetector> detectors;
+	private List<String> expected;
+
+	@Before
+	public void setUp() throws IOException {
+		root = File.createTempFile("runtimesearch", "");
+		root.delete();
+		expected = new ArrayList<String>();
+		generate(root, LEVELS, "");
+		Collections.sort(expected);
+
+		detectors = new TreeSet<IRuntimeDetector>();
+		detectors.add(new RuntimeDetector("Test Detector", "test.detector", null, 1,
+				new AbstractRuntimeDetectorDelegate() {
+					public RuntimeDefinition getRuntimeDefinition(File root, IProgressMonitor monitor) {
+						// A detector reads a few files of the folder
+						if (new File(root, "bin").isDirectory() && new File(root, MARKER).isFile()) {
+							return new RuntimeDefinition(root.getName(), "1.0", "TEST", root);
+						}
+						new File(root, "standalone").exists();
+						return null;
+					}
+				}));
+	}
+
+	/*
+	 * Folders named "server" are runtimes, with other folders inside
+	 * which must not be searched.
+	 */
+	private void generate(File dir, int levels, String path) throws IOException {
+		dir.mkdirs();
+		if (levels == 0) {
+			return;
+		}
+		for (int i = 0; i < FANOUT; i++) {
+			String name = (i == FANOUT - 1 ? "server" : "dir") + i;
+			File child = new File(dir, name);
+			String childPath = path + "/" + name;
+			if (name.startsWith("server") && levels < LEVELS) {
+				new File(child, "bin").mkdirs();
+				new File(child, "modules/system").mkdirs();
+				new File(child, MARKER).createNewFile();
+				expected.add(childPath);
+			} else {
+				generate(child, levels - 1, childPath);
+			}
+		}
+	}
+
+	@After
+	public void tearDown() {
+		delete(root);
+	}
+
+	private static void delete(File f) {
+		File[] children = f.listFiles();
+		if (children != null) {
+			for (File c : children) {
+				delete(c);
+			}
+		}
+		f.delete();
+	}
+
+	private List<String> search(int threads) {
+		List<RuntimeDefinition> found = new ArrayList<RuntimeDefinition>();
+		new RuntimeSearch(detectors, threads).search(root, found, LEVELS + 1, new NullProgressMonitor());
+		List<String> paths = new ArrayList<String>();
+		for (RuntimeDefinition d : found) {
+			paths.add(d.getLocation().getAbsolutePath().substring(root.getAbsolutePath().length()).replace(File.separatorChar, '/'));
+		}
+		return paths;
+	}
+
+	@Test
+	public void testParallelSearchFindsTheSameRuntimesInOrder() {
+		List<String> sequential = search(1);
+		assertEquals(expected, sequential);
+		for (int i = 0; i < 5; i++) {
+			assertEquals(sequential, search(4));
+		}
+	}
+
+	@Test
+	public void testCanceledSearch() {
+		NullProgressMonitor monitor = new NullProgressMonitor();
+		monitor.setCanceled(true);
+		List<RuntimeDefinition> found = new ArrayList<RuntimeDefinition>();
+		new RuntimeSearch(detectors, 4).search(root, found, LEVELS + 1, monitor);
+		assertTrue(found.isEmpty());
+	}
+
+	@Test
+	public void testCanceledSearchWaitsForDetectors() {
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger calls = new AtomicInteger();
+		Set<IRuntimeDetector> slow = new TreeSet<IRuntimeDetector>();
+		slow.add(new RuntimeDetector("Slow Detector", "slow.detector", null, 1,
+				new AbstractRuntimeDetectorDelegate() {
+					public RuntimeDefinition getRuntimeDefinition(File root, IProgressMonitor detectorMonitor) {
+						running.incrementAndGet();
+						try {
+							if (calls.incrementAndGet() == 10) {
+								// The search is canceled while other detectors run
+								detectorMonitor.setCanceled(true);
+							}
+							Thread.yield();
+							return null;
+						} finally {
+							running.decrementAndGet();
+						}
+					}
+				}));
+		List<RuntimeDefinition> found = new ArrayList<RuntimeDefinition>();
+		assertNull(new RuntimeSearch(slow, 4).search(root, found, LEVELS + 1, null, null, new NullProgressMonitor()));
+		assertEquals("A detector is still running", 0, running.get());
+		assertTrue(calls.get() < 1 + FANOUT + FANOUT * FANOUT);
+	}
+}
@@ -0,0 +1,235 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.runtime.test.download;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.jboss.tools.runtime.core.internal.RuntimeExtensionManager;
+import org.jboss.tools.runtime.core.model.DownloadRuntime;
+import org.jboss.tools.runtime.core.model.IDownloadRuntimesListener;
+import org.jboss.tools.runtime.core.model.IDownloadRuntimesProvider;
+
+public class DownloadRuntimeProvidersTest extends TestCase {
+
+	/*
+	 * A provider which takes some time, or waits until it is canceled
+	 */
+	private static class SlowProvider implements IDownloadRuntimesProvider {
+		private final String id;
+		private volatile long delay;
+		final AtomicInteger calls = new AtomicInteger();
+		// Counted down when the provider returns
+		final CountDownLatch returned = new CountDownLatch(1);
+
+		SlowProvider(String id, long delay) {
+			this.id = id;
+			this.delay = delay;
+		}
+
+		public DownloadRuntime[] getDownloadableRuntimes(String requestType, IProgressMonitor monitor) {
+			calls.incrementAndGet();
+			try {
+				return waitAndLoad(monitor) ? getRuntimes() : null;
+			} finally {
+				returned.countDown();
+			}
+		}
+
+		protected boolean waitAndLoad(IProgressMonitor monitor) {
+			long end = System.currentTimeMillis() + delay;
+			while (System.currentTimeMillis() < end) {
+				if (monitor.isCanceled())
+					return false;
+				try {
+					Thread.sleep(10);
+				} catch (InterruptedException e) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		protected DownloadRuntime[] getRuntimes() {
+			return new DownloadRuntime[] {
+					new DownloadRuntime(id, "name-" + id, "1.0", "http://www.example.com/" + id),
+					new DownloadRuntime("shared", "shared-" + id, "1.0", "http://www.example.com/shared")
+			};
+		}
+	}
+
+	/*
+	 * A provider which returns only once all providers sharing the barrier 
+	 * were asked, so that it can only return when they are asked concurrently
+	 */
+	private static class BarrierProvider extends SlowProvider {
+		private final CountDownLatch barrier;
+
+		BarrierProvider(String id, CountDownLatch barrier) {
+			super(id, 0);
+			this.barrier = barrier;
+		}
+
+		@Override
+		protected boolean waitAndLoad(IProgressMonitor monitor) {
+			barrier.countDown();
+			try {
+				return barrier.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				return false;
+			}
+		}
+	}
+
+	/*
+	 * A provider which ignores cancellation and interrupts until it is released
+	 */
+	private static class HungProvider extends SlowProvider {
+		final CountDownLatch release = new CountDownLatch(1);
+
+		HungProvider(String id) {
+			super(id, 0);
+		}
+
+		@Override
+		protected boolean waitAndLoad(IProgressMonitor monitor) {
+			boolean interrupted = false;
+			while (true) {
+				try {
+					release.await();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+			return true;
+		}
+	}
+
+	private RuntimeExtensionManager manager = new RuntimeExtensionManager();
+
+	public void testProvidersAreLoadedConcurrently() {
+		CountDownLatch barrier = new CountDownLatch(3);
+		IDownloadRuntimesProvider[] providers = new IDownloadRuntimesProvider[] {
+				new BarrierProvider("a", barrier), new BarrierProvider("b", barrier), new BarrierProvider("c", barrier)
+		};
+		Map<String, DownloadRuntime> map = new HashMap<String, DownloadRuntime>();
+		assertTrue(manager.loadDownloadableRuntimesFromProviders(providers, map, 20000, false, new NullProgressMonitor()));
+		assertEquals(4, map.size());
+		// The last provider wins, as when they were loaded one after another
+		assertEquals("shared-c", map.get("shared").getName());
+	}
+
+	public void testSlowProviderTimesOut() throws InterruptedException {
+		SlowProvider slow = new SlowProvider("b", 60000);
+		IDownloadRuntimesProvider[] providers = new IDownloadRuntimesProvider[] {
+				new SlowProvider("a", 0), slow
+		};
+		Map<String, DownloadRuntime> map = new HashMap<String, DownloadRuntime>();
+		assertFalse(manager.loadDownloadableRuntimesFromProviders(providers, map, 300, false, new NullProgressMonitor()));
+		assertEquals(2, map.size());
+		assertNotNull(map.get("a"));
+		assertNull(map.get("b"));
+		// The slow provider is canceled rather than left running
+		assertTrue(slow.returned.await(10, TimeUnit.SECONDS));
+	}
+
+	public void testHungProviderIsNotAskedAgain() {
+		HungProvider hung = new HungProvider("b");
+		IDownloadRuntimesProvider[] providers = new IDownloadRuntimesProvider[] {
+				new SlowProvider("a", 0), hung
+		};
+		try {
+			for (int i = 0; i < 3; i++) {
+				Map<String, DownloadRuntime> map = new HashMap<String, DownloadRuntime>();
+				assertFalse(manager.loadDownloadableRuntimesFromProviders(providers, map, 200, false, new NullProgressMonitor()));
+				assertNotNull(map.get("a"));
+			}
+			// Only the thread of the first load waits for the hung provider
+			assertEquals(1, hung.calls.get());
+		} finally {
+			hung.release.countDown();
+		}
+	}
+
+	public void testListener() {
+		final List<String> loaded = Collections.synchronizedList(new ArrayList<String>());
+		IDownloadRuntimesListener listener = new IDownloadRuntimesListener() {
+			public void downloadRuntimesLoaded(IDownloadRuntimesProvider provider, DownloadRuntime[] runtimes) {
+				loaded.add(runtimes[0].getId());
+			}
+		};
+		manager.addDownloadRuntimesListener(listener);
+		try {
+			IDownloadRuntimesProvider[] providers = new IDownloadRuntimesProvider[] {
+					new SlowProvider("a", 600), new SlowProvider("b", 0)
+			};
+			manager.loadDownloadableRuntimesFromProviders(providers, new HashMap<String, DownloadRuntime>(), 10000,
+					false, new NullProgressMonitor());
+			// The fast provider is rendered first
+			assertEquals("[b, a]", loaded.toString());
+		} finally {
+			manager.removeDownloadRuntimesListener(listener);
+		}
+	}
+
+	public void testPartialResultsAreCached() {
+		SlowProvider fast = new SlowProvider("a", 0);
+		SlowProvider slow = new SlowProvider("b", 60000);
+		IDownloadRuntimesProvider[] providers = new IDownloadRuntimesProvider[] { fast, slow };
+		Map<String, DownloadRuntime> map = new HashMap<String, DownloadRuntime>();
+		assertFalse(manager.loadDownloadableRuntimesFromProviders(providers, map, 300, true, new NullProgressMonitor()));
+
+		// Only the provider which did not return is asked again
+		slow.delay = 0;
+		map.clear();
+		assertTrue(manager.loadDownloadableRuntimesFromProviders(providers, map, 10000, true, new NullProgressMonitor()));
+		assertEquals(1, fast.calls.get());
+		assertEquals(2, slow.calls.get());
+		assertEquals(3, map.size());
+	}
+
+	public void testListenerOfCachedProviderIsNotCalledOnCallerThread() {
+		SlowProvider fast = new SlowProvider("a", 0);
+		IDownloadRuntimesProvider[] providers = new IDownloadRuntimesProvider[] { fast };
+		assertTrue(manager.loadDownloadableRuntimesFromProviders(providers, new HashMap<String, DownloadRuntime>(), 10000,
+				true, new NullProgressMonitor()));
+
+		final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+		IDownloadRuntimesListener listener = new IDownloadRuntimesListener() {
+			public void downloadRuntimesLoaded(IDownloadRuntimesProvider provider, DownloadRuntime[] runtimes) {
+				threads.add(Thread.currentThread());
+			}
+		};
+		manager.addDownloadRuntimesListener(listener);
+		try {
+			assertTrue(manager.loadDownloadableRuntimesFromProviders(providers, new HashMap<String, DownloadRuntime>(), 10000,
+					true, new NullProgressMonitor()));
+		} finally {
+			manager.removeDownloadRuntimesListener(listener);
+		}
+		assertEquals(1, fast.calls.get());
+		assertEquals(1, threads.size());
+		assertNotSame(Thread.currentThread(), threads.get(0));
+	}
+}
@@ -15,17 +15,27 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubProgressMonitor;
+import org.eclipse.core.runtime.jobs.Job;
 import org.jboss.jdf.stacks.client.DefaultStacksClientConfiguration;
 import org.jboss.jdf.stacks.client.StacksClient;
 import org.jboss.jdf.stacks.client.StacksClientConfiguration;
 import org.jboss.jdf.stacks.client.messages.StacksMessages;
 import org.jboss.jdf.stacks.model.Stacks;
 import org.jboss.jdf.stacks.parser.Parser;
+import org.jboss.tools.foundation.core.digest.DigestUtils;
 import org.jboss.tools.foundation.core.ecf.URLTransportUtility;
 import org.jboss.tools.foundation.core.jobs.BarrierProgressWaitJob;
 import org.jboss.tools.foundation.core.jobs.BarrierProgressWaitJob.IRunnableWithProgress;
@@ -55,6 +65,35 @@ public class StacksManager {
 		STACKS_TYPE, PRESTACKS_TYPE
 	}
 	
+	// The number of parsed models kept in memory
+	private static final int MAX_PARSED_STACKS = 8;
+	
+	// Models shared by the callers of getLastKnownStacks, by the sha1 of the file they were parsed from
+	private static final Map<String, Stacks> PARSED_STACKS = Collections.synchronizedMap(
+			new LinkedHashMap<String, Stacks>(MAX_PARSED_STACKS, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+				protected boolean removeEldestEntry(Map.Entry<String, Stacks> eldest) {
+					return size() > MAX_PARSED_STACKS;
+				}
+			});
+	
+	// The number of files whose sha1 is kept in memory
+	private static final int MAX_CHECKSUMS = 32;
+	
+	// The sha1 of files, by their path
+	private static final Map<String, FileChecksum> CHECKSUMS = Collections.synchronizedMap(
+			new LinkedHashMap<String, FileChecksum>(MAX_CHECKSUMS, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+				protected boolean removeEldestEntry(Map.Entry<String, FileChecksum> eldest) {
+					return size() > MAX_CHECKSUMS;
+				}
+			});
+	
+	// The file last loaded from each url
+	private static final Map<String, File> LAST_KNOWN_FILES = new ConcurrentHashMap<String, File>();
+	
+	private final RefreshJob refreshJob = new RefreshJob(this);
+	
 	// Load the default stacks url and prestacks url from a sysprop or jar
 	static {
 		STACKS_URL = System.getProperty(URL_PROPERTY_STACKS, System.getProperty(STACKS_URL_PROPERTY, System.getProperty(StacksClientConfiguration.REPO_PROPERTY, getStacksDefaultUrlFromJar())));
@@ -82,14 +121,55 @@ public class StacksManager {
 	 * @param types
 	 * @return
 	 */
-	public Stacks[] getStacks(String jobName, IProgressMonitor monitor, StacksType... types) {
+	public Stacks[] getStacks(final String jobName, IProgressMonitor monitor, StacksType... types) {
 		if( types == null )
 			return new Stacks[0];
 		Trace.trace(Trace.STRING_FINEST, "Request received for " + types.length + " stacks types.");
-		ArrayList<Stacks> ret = new ArrayList<Stacks>(types.length);
 		monitor.beginTask(jobName, types.length * 100);
+		
+		// Fetch the types in parallel, one job each
+		BarrierProgressWaitJob[] jobs = new BarrierProgressWaitJob[types.length];
 		for( int i = 0; i < types.length; i++ ) {
-			switch(types[i] ) {
+			final StacksType type = types[i];
+			IRunnableWithProgress runnable = new IRunnableWithProgress() {
+				public Object run(IProgressMonitor monitor) throws Exception {
+					// The barrier waits for a non-null value
+					return new Stacks[] { getStacksForType(type, jobName, monitor) };
+				}
+			};
+			jobs[i] = new BarrierProgressWaitJob(jobName, runnable);
+			jobs[i].schedule();
+		}
+		
+		ArrayList<Stacks> ret = new ArrayList<Stacks>(types.length);
+		for( int i = 0; i < jobs.length; i++ ) {
+			IProgressMonitor sub = new SubProgressMonitor(monitor, 100);
+			jobs[i].monitorSafeJoin(sub);
+			sub.done();
+			if( monitor.isCanceled()) {
+				// Stop the remaining jobs as well
+				for( int j = i + 1; j < jobs.length; j++ ) 
+					jobs[j].cancel();
+				break;
+			}
+			if( jobs[i].getThrowable() != null ) {
+				StacksCoreActivator.pluginLog().logError(jobs[i].getThrowable());
+			}
+			Stacks[] s = (Stacks[])jobs[i].getReturnValue();
+			if( s != null && s[0] != null )
+				ret.add(s[0]);
+		}
+		monitor.done();
+		return (Stacks[]) ret.toArray(new Stacks[ret.size()]);
+	}
+	
+	/*
+	 * Fetch the stacks model for one stacks type
+	 */
+	private Stacks getStacksForType(StacksType type, String jobName, IProgressMonitor monitor) {
+		monitor.beginTask(jobName, 100);
+		try {
+			switch(type) {
 			case STACKS_TYPE:
 				Trace.trace(Trace.STRING_FINEST, "Loading Stacks Model from " + STACKS_URL);
 				Stacks s = getStacks(STACKS_URL, jobName, new SubProgressMonitor(monitor, 50));
@@ -97,24 +177,82 @@ public class StacksManager {
 					StacksCoreActivator.pluginLog().logWarning("Stacks from "+ STACKS_URL +" can not be read, using client mechanism instead");
 					s = getDefaultStacksFromClient(new SubProgressMonitor(monitor, 50));
 				}
-				if( s != null )
-					ret.add(s);
-				break;
+				return s;
 			case PRESTACKS_TYPE:
 				// Pre-stacks has no fall-back mechanism at this time
 				Trace.trace(Trace.STRING_FINEST, "Loading Stacks Model from " + PRESTACKS_URL);
-				Stacks s2 = getStacks(PRESTACKS_URL, jobName, new SubProgressMonitor(monitor, 100));
-				if( s2 != null )
-					ret.add(s2);
-				break;
+				return getStacks(PRESTACKS_URL, jobName, new SubProgressMonitor(monitor, 100));
 			default:
-				break;
+				return null;
 			}
+		} finally {
+			monitor.done();
 		}
-		monitor.done();
+	}
+	
+	/**
+	 * Get the stacks models last loaded for the given types, without waiting 
+	 * for the network. If no model was loaded in this session, the file cached 
+	 * by an earlier session is used. A refresh of the models is scheduled in the 
+	 * background; call this method again, or join the job returned by 
+	 * {@link #refreshStacks(StacksType...)}, to get the refreshed models. 
+	 * 
+ * Types which were never downloaded are missing from the returned array. 
+	 * 
+	 * Unlike the models returned by getStacks, the returned models are parsed 
+	 * once per file content and shared by all callers of this method. 
+	 * They must not be modified. 
+	 * 
+	 * @param types
+	 * @return
+	 */
+	public Stacks[] getLastKnownStacks(StacksType... types) {
+		if( types == null )
+			return new Stacks[0];
+		ArrayList<Stacks> ret = new ArrayList<Stacks>(types.length);
+		for( int i = 0; i < types.length; i++ ) {
+			String url = getURL(types[i]);
+			if( url == null )
+				continue;
+			File f = LAST_KNOWN_FILES.get(url);
+			if( f == null )
+				f = new URLTransportUtility().getCachedFile(url);
+			Stacks s = null;
+			try {
+				s = getSharedStacks(f);
+			} catch(IOException ioe) {
+				StacksCoreActivator.pluginLog().logWarning("Can't parse cached stacks of " + url, ioe); //$NON-NLS-1$
+			}
+			if( s != null )
+				ret.add(s);
+		}
+		refreshStacks(types);
 		return (Stacks[]) ret.toArray(new Stacks[ret.size()]);
 	}
 	
+	/**
+	 * Schedule a background job which fetches the stacks models of the given types. 
+	 * If a refresh of this manager is already running, the types are fetched 
+	 * once it is done. 
+	 * 
+	 * @param types
+	 * @return the refresh job
+	 */
+	public Job refreshStacks(StacksType... types) {
+		refreshJob.refresh(types);
+		return refreshJob;
+	}
+	
+	private static String getURL(StacksType type) {
+		switch(type) {
+		case STACKS_TYPE:
+			return STACKS_URL;
+		case PRESTACKS_TYPE:
+			return PRESTACKS_URL;
+		default:
+			return null;
+		}
+	}
 	
 	/**
 	 * Fetch the stacks model representing a given arbitrary url. 
@@ -160,13 +298,23 @@ public class StacksManager {
 		try {
 			Trace.trace(Trace.STRING_FINEST, "Locating or downloading file for " + url);
 			File f = getCachedFileForURL(url, jobName, cacheType, monitor);
-			return getStacksFromFile(f);
+			stacks = getStacksFromFile(f);
+			if( stacks != null )
+				LAST_KNOWN_FILES.put(url, f);
 		} catch (Exception e) {
 			StacksCoreActivator.pluginLog().logError("Can't access or parse  " + url, e ); //$NON-NLS-1$
 		}
 		return stacks;
 	}
 	
+	/**
+	 * Parse the stacks model of a file. Each call returns a model of its own, 
+	 * which the caller may modify. 
+	 * 
+	 * @param f
+	 * @return
+	 * @throws IOException
+	 */
 	protected Stacks getStacksFromFile(File f) throws IOException {
 		if (f != null && f.exists()) {
 			Trace.trace(Trace.STRING_FINEST, "Local file for url exists");
@@ -182,6 +330,69 @@ public class StacksManager {
 		return null;
 	}
 	
+	/*
+	 * Get the model of a file shared by the callers of getLastKnownStacks. 
+	 * A file which did not change since it was last parsed returns the same model.
+	 */
+	private Stacks getSharedStacks(File f) throws IOException {
+		if( f == null || !f.exists())
+			return null;
+		String checksum = getChecksum(f);
+		Stacks stacks = PARSED_STACKS.get(checksum);
+		if( stacks != null ) {
+			Trace.trace(Trace.STRING_FINEST, "Using parsed stacks model of " + f.getName());
+			return stacks;
+		}
+		stacks = getStacksFromFile(f);
+		if( stacks != null )
+			PARSED_STACKS.put(checksum, stacks);
+		return stacks;
+	}
+	
+	/*
+	 * Download the file of a stacks type, and parse the model shared 
+	 * by the callers of getLastKnownStacks if the file changed
+	 */
+	private void refreshSharedStacks(StacksType type, String jobName, IProgressMonitor monitor) {
+		String url = getURL(type);
+		if( url == null )
+			return;
+		try {
+			File f = getCachedFileForURL(url, jobName, URLTransportUtility.CACHE_FOREVER, monitor);
+			if( getSharedStacks(f) != null )
+				LAST_KNOWN_FILES.put(url, f);
+		} catch (Exception e) {
+			StacksCoreActivator.pluginLog().logError("Can't access or parse  " + url, e ); //$NON-NLS-1$
+		}
+	}
+	
+	/*
+	 * Get the sha1 of a file, computed again only when the file changed
+	 */
+	private static String getChecksum(File f) throws IOException {
+		String path = f.getAbsolutePath();
+		long length = f.length();
+		long lastModified = f.lastModified();
+		FileChecksum checksum = CHECKSUMS.get(path);
+		if( checksum == null || checksum.length != length || checksum.lastModified != lastModified ) {
+			checksum = new FileChecksum(length, lastModified, DigestUtils.sha1(f));
+			CHECKSUMS.put(path, checksum);
+		}
+		return checksum.sha1;
+	}
+	
+	private static class FileChecksum {
+		private final long length;
+		private final long lastModified;
+		private final String sha1;
+		
+		public FileChecksum(long length, long lastModified, String sha1) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.sha1 = sha1;
+		}
+	}
+	
 	private Stacks getDefaultStacksFromClient(IProgressMonitor monitor) {
 		if (!monitor.isCanceled()) {
 			final StacksClient client = new StacksClient(new DefaultStacksClientConfiguration(), new JBTStacksMessages());
@@ -278,6 +489,41 @@ public class StacksManager {
 		
 	}
 	
+	/*
+	 * Fetches the requested stacks types of a manager in the background, 
+	 * one request at a time
+	 */
+	private static class RefreshJob extends Job {
+		private final Set<StacksType> pending = EnumSet.noneOf(StacksType.class);
+		private final StacksManager manager;
+		
+		public RefreshJob(StacksManager manager) {
+			super("Refreshing JBoss Stacks");
+			this.manager = manager;
+			setSystem(true);
+		}
+		
+		public synchronized void refresh(StacksType... types) {
+			Collections.addAll(pending, types);
+			// Scheduling a running job runs it again once it is done
+			schedule();
+		}
+		
+		protected IStatus run(IProgressMonitor monitor) {
+			StacksType[] types;
+			synchronized(this) {
+				types = (StacksType[]) pending.toArray(new StacksType[pending.size()]);
+				pending.clear();
+			}
+			monitor.beginTask(getName(), types.length * 100);
+			for( int i = 0; i < types.length && !monitor.isCanceled(); i++ ) {
+				manager.refreshSharedStacks(types[i], getName(), new SubProgressMonitor(monitor, 100));
+			}
+			monitor.done();
+			return monitor.isCanceled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
+		}
+	}
+	
 	/*
 	 * Close an inputstream
 	 */
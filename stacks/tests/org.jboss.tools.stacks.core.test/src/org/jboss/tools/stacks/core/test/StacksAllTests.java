@@ -15,7 +15,8 @@ import org.junit.runners.Suite;
 
 
 @Suite.SuiteClasses({
-	StacksCoreTest.class
+	StacksCoreTest.class,
+	StacksManagerCacheTest.class
 })
 
 @RunWith(Suite.class)
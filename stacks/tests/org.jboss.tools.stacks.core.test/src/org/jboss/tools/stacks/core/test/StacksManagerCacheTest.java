@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.stacks.core.test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.FileLocator;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.jboss.jdf.stacks.model.Stacks;
+import org.jboss.tools.stacks.core.model.StacksManager;
+import org.jboss.tools.stacks.core.model.StacksManager.StacksType;
+import org.junit.Test;
+
+public class StacksManagerCacheTest extends TestCase {
+
+	/*
+	 * Serves a local copy of the pre-stacks file for every url, 
+	 * once the given number of requests arrived
+	 */
+	private static class LocalStacksManager extends StacksManager {
+		private final File file;
+		private final CountDownLatch requests;
+		private volatile boolean concurrent = true;
+
+		public LocalStacksManager(File file, int requests) {
+			this.file = file;
+			this.requests = new CountDownLatch(requests);
+		}
+
+		protected File getCachedFileForURL(String url, String jobName, int cacheType, IProgressMonitor monitor) throws CoreException {
+			requests.countDown();
+			try {
+				if( !requests.await(10, TimeUnit.SECONDS))
+					concurrent = false;
+			} catch(InterruptedException ie) {
+				return null;
+			}
+			return file;
+		}
+
+		public Stacks parse(File f) throws IOException {
+			return getStacksFromFile(f);
+		}
+	}
+
+	private File folder;
+
+	protected void setUp() throws Exception {
+		folder = File.createTempFile("stackscache", "");
+		folder.delete();
+		folder.mkdirs();
+	}
+
+	protected void tearDown() throws Exception {
+		File[] children = folder.listFiles();
+		for( int i = 0; i < children.length; i++ )
+			children[i].delete();
+		folder.delete();
+	}
+
+	private File copyPreStacks(String name, String suffix) throws IOException {
+		URL url = FileLocator.toFileURL(StacksCoreTestActivator.getContext().getBundle().getEntry("data/pre-stacks.yaml"));
+		File f = new File(folder, name);
+		InputStream in = new FileInputStream(new File(url.getPath()));
+		OutputStream out = new FileOutputStream(f);
+		try {
+			byte[] buffer = new byte[8192];
+			int r;
+			while( (r = in.read(buffer)) != -1 )
+				out.write(buffer, 0, r);
+			out.write(suffix.getBytes());
+		} finally {
+			in.close();
+			out.close();
+		}
+		return f;
+	}
+
+	@Test
+	public void testEachCallerGetsItsOwnModel() throws Exception {
+		LocalStacksManager manager = new LocalStacksManager(null, 0);
+		File f = copyPreStacks("one.yaml", "");
+		Stacks s1 = manager.parse(f);
+		Stacks s2 = manager.parse(f);
+		assertNotNull(s1);
+		assertNotSame(s1, s2);
+
+		// Modifying one model does not change the other
+		assertFalse(s1.getAvailableRuntimes().isEmpty());
+		s1.getAvailableRuntimes().clear();
+		assertFalse(s2.getAvailableRuntimes().isEmpty());
+	}
+
+	@Test
+	public void testTypesAreFetchedConcurrently() throws Exception {
+		// Each type is served only once both were requested
+		LocalStacksManager manager = new LocalStacksManager(copyPreStacks("stacks.yaml", ""), 2);
+		Stacks[] s = manager.getStacks("stacks", new NullProgressMonitor(),
+				StacksType.STACKS_TYPE, StacksType.PRESTACKS_TYPE);
+		assertTrue(manager.concurrent);
+		assertEquals(2, s.length);
+	}
+
+	@Test
+	public void testLastKnownStacks() throws Exception {
+		StacksManager manager = new LocalStacksManager(copyPreStacks("stacks.yaml", ""), 1);
+		Stacks[] loaded = manager.getStacks("stacks", new NullProgressMonitor(), StacksType.PRESTACKS_TYPE);
+		assertEquals(1, loaded.length);
+
+		// The refresh is blocked until a second request arrives, 
+		// so the last known stacks are returned without waiting for it
+		LocalStacksManager blocked = new LocalStacksManager(copyPreStacks("stacks.yaml", ""), 2);
+		Stacks[] known = blocked.getLastKnownStacks(StacksType.PRESTACKS_TYPE);
+		assertEquals(1, known.length);
+		// The last known model is shared, it is not the one returned by getStacks
+		assertNotSame(loaded[0], known[0]);
+		assertEquals(loaded[0].getAvailableRuntimes().size(), known[0].getAvailableRuntimes().size());
+
+		// The refresh parses nothing new, the file did not change
+		blocked.requests.countDown();
+		blocked.refreshStacks(StacksType.PRESTACKS_TYPE).join();
+		assertTrue(blocked.concurrent);
+		assertSame(known[0], blocked.getLastKnownStacks(StacksType.PRESTACKS_TYPE)[0]);
+	}
+
+	@Test
+	public void testChangedFileIsParsedAgain() throws Exception {
+		LocalStacksManager manager = new LocalStacksManager(copyPreStacks("stacks.yaml", ""), 0);
+		manager.refreshStacks(StacksType.PRESTACKS_TYPE).join();
+		Stacks[] known = manager.getLastKnownStacks(StacksType.PRESTACKS_TYPE);
+		assertEquals(1, known.length);
+		// Wait for the refresh scheduled by getLastKnownStacks
+		manager.refreshStacks(StacksType.PRESTACKS_TYPE).join();
+
+		LocalStacksManager changed = new LocalStacksManager(copyPreStacks("changed.yaml", "\n# changed\n"), 0);
+		changed.refreshStacks(StacksType.PRESTACKS_TYPE).join();
+		Stacks[] refreshed = changed.getLastKnownStacks(StacksType.PRESTACKS_TYPE);
+		assertEquals(1, refreshed.length);
+		assertNotSame(known[0], refreshed[0]);
+		assertEquals(known[0].getAvailableRuntimes().size(), refreshed[0].getAvailableRuntimes().size());
+	}
+}
@@ -208,12 +208,12 @@ public class UsageReporter {
 	}
 
 	/**
-	 * Checks if the corresponding daily event should be sent. If yes then that daily event(s) is sent. 
+	 * Checks if the corresponding daily event should be sent. If yes then that daily event(s) is queued to be sent. 
 	 * @param type
-	 * @return the number of sent events
+	 * @return the number of queued events
 	 */
 	protected int checkCountEventInternal(UsageEventType type) {
-		int sent = 0;
+		int queued = 0;
 		if (isPreferencesEnabled()) {
 			Set<Result> results = getEventRegister().checkCountEvent(type, getGlobalUsageSettings());
 			for (Result result : results) {
@@ -222,16 +222,16 @@ public class UsageReporter {
 					String label = result.getCountEventLabel();
 					UsageEvent event = type.event(label, value);
 					if(getUsageRequest().sendRequest(getPagePath(event), event.getType().getComponentName(), event, null, false)) {
-						sent++;
+						queued++;
 					}
 				}
 			}
 		}
-		return sent;
+		return queued;
 	}
 
 	/**
-	 * Returns number of sent daily events
+	 * Returns number of daily events queued to be sent
 	 * @return
 	 */
 	protected int trackCountEventsInternal() {
@@ -244,14 +244,14 @@ public class UsageReporter {
 	}
 
 	/**
-	 * Sends a page view tracking request with the given event in the current session
+	 * Queues a page view tracking request with the given event in the current session
 	 */
 	private boolean sendRequest(String pagePath, String title, UsageEvent event, boolean onceADayOnly) {
 		return sendRequest(pagePath, title, event, null, false, onceADayOnly);
 	}
 
 	/**
-	 * Sends a tracking request
+	 * Queues a tracking request, it is sent by the tracker of the plugin
 	 * @param environment
 	 * @param pagePath
 	 * @param title may be null
@@ -259,7 +259,7 @@ public class UsageReporter {
 	 * @param type if null, RequestType.PAGE is used
 	 * @param startNewVisitSession if false, the current session from environment is used
 	 * @param onceADayOnly if true, send a request only once a day
-	 * @return true if the request was sent successfully
+	 * @return true if the request was queued to be sent
 	 */
 	synchronized private boolean sendRequest(String pagePath,
 			String title,
@@ -268,7 +268,7 @@ public class UsageReporter {
 			boolean startNewVisitSession,
 			boolean onceADayOnly) {
 
-		boolean sent = false;
+		boolean queued = false;
 		if(onceADayOnly) {
 			event = event.clone();
 			if(event.getLabel()==null) {
@@ -285,9 +285,9 @@ public class UsageReporter {
 				event.setValue(value);
 				event.setLabel(result.getCountEventLabel());
 			}
-			sent = getUsageRequest().sendRequest(pagePath, title, event, type, startNewVisitSession);
+			queued = getUsageRequest().sendRequest(pagePath, title, event, type, startNewVisitSession);
 		}
-		return sent;
+		return queued;
 	}
 
 	protected EventRegister getEventRegister() {
@@ -14,9 +14,13 @@ import org.eclipse.core.runtime.Plugin;
 import org.jboss.tools.usage.branding.IUsageBranding;
 import org.jboss.tools.usage.googleanalytics.IJBossToolsEclipseEnvironment;
 import org.jboss.tools.usage.internal.branding.JBossToolsUsageBranding;
+import org.jboss.tools.usage.googleanalytics.GoogleAnalyticsUrlStrategy;
 import org.jboss.tools.usage.internal.branding.UsageBrandingMediator;
+import org.jboss.tools.usage.internal.event.EventRegister;
+import org.jboss.tools.usage.internal.http.HttpGetRequest;
 import org.jboss.tools.usage.internal.preferences.UsageReportPreferencesUtils;
 import org.jboss.tools.usage.internal.reporting.JBossToolsEclipseEnvironment;
+import org.jboss.tools.usage.tracker.internal.Tracker;
 import org.jboss.tools.usage.tracker.internal.UsagePluginLogger;
 import org.osgi.framework.BundleContext;
 
@@ -32,6 +36,8 @@ public class JBossToolsUsageActivator extends Plugin {
 	private IJBossToolsEclipseEnvironment eclipseEnvironment;
 
 	private UsageBrandingMediator branding;
+
+	private Tracker tracker;
 	
 	UsagePluginLogger logger;
 
@@ -41,6 +47,8 @@ public class JBossToolsUsageActivator extends Plugin {
 
 	@Override
 	public void stop(BundleContext context) throws Exception {
+		// Save the event counters while the state location is still available
+		EventRegister.getInstance().flush();
 		plugin = null;
 		branding.close();
 		this.branding = null;
@@ -81,6 +89,23 @@ public class JBossToolsUsageActivator extends Plugin {
 				UsageReportPreferencesUtils.getPreferences());
 	}
 
+	/**
+	 * Returns the tracker which sends all usage reports and events of this
+	 * session through its single tracking queue.
+	 * 
+	 * @return the tracker
+	 */
+	public synchronized Tracker getTracker() {
+		if (tracker == null) {
+			IJBossToolsEclipseEnvironment environment = getJBossToolsEclipseEnvironment();
+			tracker = new Tracker(
+					new GoogleAnalyticsUrlStrategy(environment),
+					new HttpGetRequest(environment.getUserAgent(), logger),
+					logger);
+		}
+		return tracker;
+	}
+
 	public synchronized IUsageBranding getUsageBranding() {
 		return branding;
 	}
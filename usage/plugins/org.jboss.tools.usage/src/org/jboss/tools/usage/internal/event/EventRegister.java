@@ -10,21 +10,27 @@
  ******************************************************************************/
 package org.jboss.tools.usage.internal.event;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
-import java.util.UUID;
 
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.jboss.tools.usage.event.UsageEvent;
 import org.jboss.tools.usage.event.UsageEventType;
 import org.jboss.tools.usage.event.UsageReporter;
@@ -34,6 +40,9 @@ import org.jboss.tools.usage.internal.preferences.GlobalUsageSettings;
 /**
  * Represents a register of tracking event types.
  * Each event type must be registered via this register before the corresponding event can be sent.
+ * 
+ * The counters of the events are kept in memory and saved to a single file in the background, 
+ * a few seconds after they changed, and when the plug-in is stopped.
  *  
  * @author Alexey Kazakov
  */
@@ -60,10 +69,22 @@ public class EventRegister {
 	// Label value used by countEvent()
 	private static final String EVENT_TYPE_COUNT_EVENT_LABEL = "cl";
 
+	// The file which holds the counters of all the events
+	private static final String COUNTERS_FILE = "counters"; //$NON-NLS-1$
+	private static final String COUNTERS_TMP_FILE = "counters.tmp"; //$NON-NLS-1$
+	private static final int COUNTERS_MAGIC = 0x4A425545;
+	private static final int COUNTERS_VERSION = 1;
+
+	// Delay in ms between a change of the counters and their saving
+	private static final long FLUSH_DELAY = 10 * 1000;
+
 	private static EventRegister INSTANCE = new EventRegister();
 	protected Map<EventTypeKey, UsageEventProperties> eventPropertyStorage;
 	protected Map<UsageEventType, Set<UsageEventProperties>> eventPropertyStorageByType;
 	protected Set<UsageEventType> eventTypes;
+	private boolean dirty;
+	private boolean flushScheduled;
+	private Job flushJob;
 
 	protected EventRegister() {
 	}
@@ -136,7 +157,7 @@ public class EventRegister {
 					preferenceProperties.date = today;
 				}
 				// Update preferenceProperties in workspace
-				saveProperties(preferenceProperties);
+				setDirty();
 				// Check remote usage.properties
 				result.countEventLabel = preferenceProperties.countEventLabel;
 				result.okToSend = checkRemoteSettings(settings, event.getType(), event.getLabel(), preferenceProperties.count) && (!countEvent || result.previousSumOfValues>0);
@@ -172,7 +193,7 @@ public class EventRegister {
 							preferenceProperties.value = 0;
 							preferenceProperties.date = today;
 							results.add(result);
-							saveProperties(preferenceProperties);
+							setDirty();
 						}
 					}
 				}
@@ -282,116 +303,239 @@ public class EventRegister {
 		}
 	}
 
-	private File getStorageFile(UsageEventProperties properties) {
+	/**
+	 * Marks the counters as changed, they are saved by a job a few seconds later
+	 */
+	private void setDirty() {
+		dirty = true;
+		if(!flushScheduled) {
+			flushScheduled = true;
+			if(flushJob==null) {
+				flushJob = new Job("Saving usage events") {
+					@Override
+					protected IStatus run(IProgressMonitor monitor) {
+						synchronized (EventRegister.this) {
+							flushScheduled = false;
+						}
+						flush();
+						return Status.OK_STATUS;
+					}
+				};
+				flushJob.setSystem(true);
+			}
+			flushJob.schedule(FLUSH_DELAY);
+		}
+	}
+
+	/**
+	 * Saves the counters of the events if they changed since they were saved last time.
+	 * It is called when the plug-in is stopped.
+	 */
+	public synchronized void flush() {
+		if(!dirty || eventPropertyStorage==null) {
+			return;
+		}
 		File directory = getStorageDirectory();
-		if(directory!=null) {
-			String name = properties.type.getCategoryName() + "-" + properties.type.getActionName() + "-" + properties.countEventLabel;
-			try {
-				name = URLEncoder.encode(name, "UTF-8");
-				if(name.length()>40) {
-					name = (UUID.nameUUIDFromBytes(name.getBytes())).toString();	
+		if(directory!=null && saveCounters(directory)) {
+			dirty = false;
+		}
+	}
+
+	/*
+	 * Writes all the counters to a temporary file which then replaces the counters file, 
+	 * so that a crash never leaves a partly written counters file.
+	 */
+	private boolean saveCounters(File directory) {
+		File tmp = new File(directory, COUNTERS_TMP_FILE);
+		File file = new File(directory, COUNTERS_FILE);
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			out.writeInt(COUNTERS_MAGIC);
+			out.writeInt(COUNTERS_VERSION);
+			out.writeInt(eventPropertyStorage.size());
+			for (UsageEventProperties properties : eventPropertyStorage.values()) {
+				UsageEventType type = properties.type;
+				out.writeUTF(type.getComponentName());
+				out.writeUTF(type.getComponentVersion());
+				out.writeUTF(type.getCategoryName());
+				out.writeUTF(type.getActionName());
+				writeNullable(out, type.getLabelDescription());
+				writeNullable(out, type.getValueDescription());
+				out.writeUTF(properties.countEventLabel);
+				out.writeLong(properties.date);
+				out.writeInt(properties.count);
+				out.writeInt(properties.value);
+			}
+			out.close();
+			out = null;
+			// renameTo() does not replace an existing file on all platforms
+			if(!tmp.renameTo(file) && (!file.delete() || !tmp.renameTo(file))) {
+				throw new IOException("Could not rename " + tmp + " to " + file); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			return true;
+		} catch (IOException e) {
+			JBossToolsUsageActivator.getDefault().getLogger().error(e);
+		} finally {
+			if(out!=null) {
+				try {
+					out.close();
+				} catch (IOException e) {
 				}
-				return new File(directory, name);
-			} catch (UnsupportedEncodingException e) {
-				JBossToolsUsageActivator.getDefault().getLogger().error(e);
 			}
 		}
-		return null;
+		return false;
+	}
+
+	private static void writeNullable(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value!=null);
+		if(value!=null) {
+			out.writeUTF(value);
+		}
 	}
 
-	private boolean saveProperties(UsageEventProperties properties) {
-		File file = getStorageFile(properties);
-		if(file!=null) {
-			if(file.isFile()) {
-				file.delete();
+	private static String readNullable(DataInputStream in) throws IOException {
+		return in.readBoolean()?in.readUTF():null;
+	}
+
+	/*
+	 * Reads the counters file, or the temporary file if the counters file 
+	 * was deleted by a crash while it was replaced.
+	 * Returns false if some of the counters expired or couldn't be read.
+	 */
+	private boolean loadCounters(File directory, long expiration) {
+		File file = new File(directory, COUNTERS_FILE);
+		if(!file.isFile()) {
+			file = new File(directory, COUNTERS_TMP_FILE);
+			if(!file.isFile()) {
+				return true;
 			}
-			FileWriter writer = null;
-			try {
-				UsageEventType type = properties.type;
-				writer = new FileWriter(file);
-				Properties pr = new Properties();
-				pr.put(EVENT_TYPE_COMPONENT_NAME, type.getComponentName());
-				pr.put(EVENT_TYPE_VERSION, type.getComponentVersion());
-				pr.put(EVENT_TYPE_CATEGORY_NAME, type.getCategoryName());
-				pr.put(EVENT_TYPE_ACTION_NAME, type.getActionName());
-				if(type.getLabelDescription()!=null) {
-					pr.put(EVENT_TYPE_LABEL_DESCRIPTION, type.getLabelDescription());
-					if(type.getValueDescription()!=null) {
-						pr.put(EVENT_TYPE_VALUE_DESCRIPTION, type.getValueDescription());
-					}
+		}
+		boolean upToDate = true;
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if(in.readInt()!=COUNTERS_MAGIC || in.readInt()!=COUNTERS_VERSION) {
+				JBossToolsUsageActivator.getDefault().getLogger().error("Unknown format of usage event counters " + file, false); //$NON-NLS-1$
+				return false;
+			}
+			int size = in.readInt();
+			for (int i = 0; i < size; i++) {
+				String component = in.readUTF();
+				String version = in.readUTF();
+				String category = in.readUTF();
+				String action = in.readUTF();
+				String label = readNullable(in);
+				String value = readNullable(in);
+				String countLabel = in.readUTF();
+				long date = in.readLong();
+				int count = in.readInt();
+				int valueSum = in.readInt();
+				if(date<expiration) {
+					upToDate = false;
+				} else {
+					addProperties(new UsageEventType(component, version, category, action, label, value), countLabel, date, count, valueSum);
 				}
-				pr.put(EVENT_TYPE_DATE, "" + properties.date);
-				pr.put(EVENT_TYPE_COUNT, "" + properties.count);
-				pr.put(EVENT_TYPE_VALUE_SUM, "" + properties.value);
-				pr.put(EVENT_TYPE_COUNT_EVENT_LABEL, properties.countEventLabel);
-				pr.store(writer, null);
-				return true;
-			} catch (IOException e) {
-				JBossToolsUsageActivator.getDefault().getLogger().error(e);
-			} finally {
-				if(writer!=null) {
-					try {
-						writer.close();
-					} catch (IOException e) {
+			}
+		} catch (IOException e) {
+			JBossToolsUsageActivator.getDefault().getLogger().error(e);
+			upToDate = false;
+		} finally {
+			if(in!=null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+		return upToDate;
+	}
+
+	/*
+	 * Reads a file of the former format, which kept the counters of each event in its own properties file
+	 */
+	private void loadLegacyFile(File file, long expiration) {
+		FileReader reader = null;
+		try {
+			reader = new FileReader(file);
+			Properties pr = new Properties();
+			pr.load(reader);
+			long date = Long.parseLong(pr.getProperty(EVENT_TYPE_DATE, "0"));
+			if(date>=expiration) {
+				String component = pr.getProperty(EVENT_TYPE_COMPONENT_NAME);
+				String version = pr.getProperty(EVENT_TYPE_VERSION);
+				String category = pr.getProperty(EVENT_TYPE_CATEGORY_NAME);
+				String action = pr.getProperty(EVENT_TYPE_ACTION_NAME);
+				String label = pr.getProperty(EVENT_TYPE_LABEL_DESCRIPTION);
+				String value = pr.getProperty(EVENT_TYPE_VALUE_DESCRIPTION);
+				int count = Integer.parseInt(pr.getProperty(EVENT_TYPE_COUNT, "0"));
+				int valueSum = Integer.parseInt(pr.getProperty(EVENT_TYPE_VALUE_SUM, "0"));
+				String countLabel = pr.getProperty(EVENT_TYPE_COUNT_EVENT_LABEL);
+				if(component!=null && version!=null && category!=null && action!=null && countLabel!=null) {
+					UsageEventType type = new UsageEventType(component, version, category, action, label, value);
+					if(!eventPropertyStorage.containsKey(new EventTypeKey(type, countLabel))) {
+						addProperties(type, countLabel, date, count, valueSum);
 					}
 				}
 			}
+		} catch (IOException e) {
+			JBossToolsUsageActivator.getDefault().getLogger().error(e);
+		} catch (NumberFormatException e) {
+			JBossToolsUsageActivator.getDefault().getLogger().error(e);
+		} finally {
+			if(reader!=null) {
+				try {
+					reader.close();
+				} catch (IOException e) {
+				}
+			}
 		}
-		return false;
+	}
+
+	private void addProperties(UsageEventType type, String countLabel, long date, int count, int valueSum) {
+		UsageEventProperties properties = new UsageEventProperties();
+		properties.type = type;
+		properties.date = date;
+		properties.count = count;
+		properties.value = valueSum;
+		properties.countEventLabel = countLabel;
+		eventPropertyStorage.put(new EventTypeKey(type, countLabel), properties);
+		addTypePropetiesToStorage(properties, type);
 	}
 
 	protected void init() {
 		if(eventPropertyStorage==null) {
 			eventPropertyStorage = new HashMap<EventTypeKey, UsageEventProperties>();
 			eventPropertyStorageByType = new HashMap<UsageEventType, Set<UsageEventProperties>>();
+			dirty = false;
 			File directory = getStorageDirectory();
 			if(directory!=null) {
-				File[] files = directory.listFiles();
+				// Event types which have not been used for the last six months are removed
 				long sixMonthsAgo = System.currentTimeMillis() - 1000L*60*60*24*132;
-				for (File file : files) {
-					if(file.isFile()) {
-						FileReader reader = null;
-						try {
-							reader = new FileReader(file);
-							Properties pr = new Properties();
-							pr.load(reader);
-							long date = Long.parseLong(pr.getProperty(EVENT_TYPE_DATE, "0"));
-							if(date<sixMonthsAgo) {
-								file.delete(); // This event type has not been used at least for the last six months, so let's remove it.
-							} else {
-								String component = pr.getProperty(EVENT_TYPE_COMPONENT_NAME);
-								String version = pr.getProperty(EVENT_TYPE_VERSION);
-								String category = pr.getProperty(EVENT_TYPE_CATEGORY_NAME);
-								String action = pr.getProperty(EVENT_TYPE_ACTION_NAME);
-								String label = pr.getProperty(EVENT_TYPE_LABEL_DESCRIPTION);
-								String value = pr.getProperty(EVENT_TYPE_VALUE_DESCRIPTION);
-								int count = Integer.parseInt(pr.getProperty(EVENT_TYPE_COUNT, "0"));
-								int valueSum = Integer.parseInt(pr.getProperty(EVENT_TYPE_VALUE_SUM, "0"));
-								String countLabel = pr.getProperty(EVENT_TYPE_COUNT_EVENT_LABEL);
-								if(component!=null && version!=null && category!=null && action!=null && countLabel!=null) {
-									UsageEventType type = new UsageEventType(component, version, category, action, label, value);
-									UsageEventProperties properties = new UsageEventProperties();
-									properties.type = type;
-									properties.date = date;
-									properties.count = count;
-									properties.value = valueSum;
-									properties.countEventLabel = countLabel;
-									eventPropertyStorage.put(new EventTypeKey(type, countLabel), properties);
-									addTypePropetiesToStorage(properties, type);
-								}
-							}
-						} catch (IOException e) {
-							JBossToolsUsageActivator.getDefault().getLogger().error(e);
-						} finally {
-							if(reader!=null) {
-								try {
-									reader.close();
-								} catch (IOException e) {
-								}
-							}
+				boolean upToDate = loadCounters(directory, sixMonthsAgo);
+				Set<File> legacyFiles = new HashSet<File>();
+				File[] files = directory.listFiles();
+				if(files!=null) {
+					for (File file : files) {
+						String name = file.getName();
+						if(file.isFile() && !COUNTERS_FILE.equals(name) && !COUNTERS_TMP_FILE.equals(name)) {
+							loadLegacyFile(file, sixMonthsAgo);
+							legacyFiles.add(file);
 						}
 					}
 				}
+				if(!legacyFiles.isEmpty()) {
+					// Migrate the files of the former format, they are removed once the counters are saved
+					if(saveCounters(directory)) {
+						for (File file : legacyFiles) {
+							file.delete();
+						}
+					} else {
+						setDirty();
+					}
+				} else if(!upToDate) {
+					setDirty();
+				}
 			}
 		}
 	}
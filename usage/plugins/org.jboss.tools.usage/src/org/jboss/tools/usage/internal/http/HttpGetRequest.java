@@ -11,6 +11,7 @@
 package org.jboss.tools.usage.internal.http;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.text.MessageFormat;
@@ -19,6 +20,8 @@ import org.jboss.tools.usage.tracker.internal.UsagePluginLogger;
 
 /**
  * Class that executes a HTTP Get request to the given url.
+ * The response is read to its end so that the connection is 
+ * kept alive and reused by the following requests to the same host.
  * 
  * @author Andre Dietisheim
  */
@@ -30,6 +33,8 @@ public class HttpGetRequest implements IHttpGetRequest {
 
 	private static final int TIMEOUT = 10000; // Connection timeout is 10 seconds.
 
+	private static final int READ_TIMEOUT = 10000; // Read timeout is 10 seconds.
+
 	private UsagePluginLogger logger = null;
 
 	private String userAgent;
@@ -55,6 +60,7 @@ public class HttpGetRequest implements IHttpGetRequest {
 			} else {
 				logger.error(MessageFormat.format(HttpMessages.HttpGetMethod_Error_Http, urlString, responseCode));
 			}
+			consume(urlConnection);
 		} catch (Exception e) {
 			logger.debug(MessageFormat.format(HttpMessages.HttpGetMethod_Error_Io, urlString, e.toString()));
 		}
@@ -73,6 +79,39 @@ public class HttpGetRequest implements IHttpGetRequest {
 		return urlConnection.getResponseCode();
 	}
 
+	/**
+	 * Reads the response to its end and closes it, so that the underlying 
+	 * connection may be reused for the next request.
+	 *
+	 * @param urlConnection the connection to consume the response of
+	 */
+	private void consume(HttpURLConnection urlConnection) {
+		InputStream in = null;
+		try {
+			try {
+				in = urlConnection.getInputStream();
+			} catch (IOException e) {
+				in = urlConnection.getErrorStream();
+			}
+			if (in != null) {
+				byte[] buffer = new byte[1024];
+				while (in.read(buffer) != -1) {
+					// discard
+				}
+			}
+		} catch (IOException e) {
+			// the connection won't be reused
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
 	/**
 	 * Creates a new url connection.
 	 *
@@ -88,6 +127,7 @@ public class HttpGetRequest implements IHttpGetRequest {
 		urlConnection.setRequestMethod(GET_METHOD_NAME);
 		urlConnection.setRequestProperty(USER_AGENT, userAgent);
 		urlConnection.setConnectTimeout(TIMEOUT);
+		urlConnection.setReadTimeout(READ_TIMEOUT);
 		return urlConnection;
 	}
 }
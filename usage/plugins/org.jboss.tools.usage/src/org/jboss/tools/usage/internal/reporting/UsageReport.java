@@ -10,6 +10,9 @@
  ******************************************************************************/
 package org.jboss.tools.usage.internal.reporting;
 
+import java.io.UnsupportedEncodingException;
+import java.text.MessageFormat;
+
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
@@ -21,15 +24,14 @@ import org.eclipse.ui.PlatformUI;
 import org.jboss.tools.usage.googleanalytics.GoogleAnalyticsUrlStrategy;
 import org.jboss.tools.usage.googleanalytics.IJBossToolsEclipseEnvironment;
 import org.jboss.tools.usage.internal.JBossToolsUsageActivator;
-import org.jboss.tools.usage.internal.http.HttpGetRequest;
 import org.jboss.tools.usage.internal.preferences.GlobalUsageSettings;
 import org.jboss.tools.usage.internal.preferences.UsageReportPreferences;
 import org.jboss.tools.usage.tracker.IFocusPoint;
-import org.jboss.tools.usage.tracker.ITracker;
 import org.jboss.tools.usage.tracker.IURLBuildingStrategy;
 import org.jboss.tools.usage.tracker.internal.FocusPoint;
 import org.jboss.tools.usage.tracker.internal.SuffixFocusPoint;
 import org.jboss.tools.usage.tracker.internal.Tracker;
+import org.jboss.tools.usage.tracker.internal.TrackerMessages;
 import org.jboss.tools.usage.tracker.internal.UsagePluginLogger;
 import org.osgi.service.prefs.BackingStoreException;
 
@@ -162,14 +164,24 @@ public class UsageReport {
 	protected void doReport() {
 		if (UsageReportPreferences.isEnabled()) {
 			IURLBuildingStrategy urlBuildingStrategy = new GoogleAnalyticsUrlStrategy(eclipseEnvironment);
-			ITracker tracker = new Tracker(
-					urlBuildingStrategy
-					, new HttpGetRequest(eclipseEnvironment.getUserAgent(), logger)
-					, logger);
-			tracker.trackAsynchronously(focusPoint);
+			try {
+				// the url is built for the environment of this report
+				getTracker().trackAsynchronously(urlBuildingStrategy.build(focusPoint), focusPoint.getTitle());
+			} catch (UnsupportedEncodingException e) {
+				logger.error(MessageFormat.format(TrackerMessages.Tracker_Error, e.getMessage()));
+			}
 		}
 	}
 
+	/**
+	 * Returns the tracker which queues the report.
+	 * 
+	 * @return the tracker of the plugin
+	 */
+	protected Tracker getTracker() {
+		return JBossToolsUsageActivator.getDefault().getTracker();
+	}
+
 	private class ReportingJob extends Job {
 
 		private ReportingJob() {
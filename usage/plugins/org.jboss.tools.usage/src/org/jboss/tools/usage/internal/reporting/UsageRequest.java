@@ -24,8 +24,7 @@ import org.jboss.tools.usage.googleanalytics.IGoogleAnalyticsParameters;
 import org.jboss.tools.usage.googleanalytics.IJBossToolsEclipseEnvironment;
 import org.jboss.tools.usage.googleanalytics.RequestType;
 import org.jboss.tools.usage.internal.JBossToolsUsageActivator;
-import org.jboss.tools.usage.internal.http.HttpGetRequest;
-import org.jboss.tools.usage.tracker.internal.UsagePluginLogger;
+import org.jboss.tools.usage.tracker.internal.Tracker;
 import org.jboss.tools.usage.util.HttpEncodingUtils;
 
 /**
@@ -38,7 +37,6 @@ import org.jboss.tools.usage.util.HttpEncodingUtils;
 public class UsageRequest {
 
 	private static final String TRACKING_URL = "http://www.google-analytics.com/__utm.gif";
-	private UsagePluginLogger logger = new UsagePluginLogger(JBossToolsUsageActivator.getDefault());
 	protected IJBossToolsEclipseEnvironment environment;
 
 	public UsageRequest(IJBossToolsEclipseEnvironment environment) {
@@ -46,14 +44,14 @@ public class UsageRequest {
 	}
 
 	/**
-	 * Sends a tracking request
+	 * Queues a tracking request, it is sent by the tracker of the plugin
 	 * @param environment
 	 * @param pagePath
 	 * @param title can be null
 	 * @param event can be null
 	 * @param type if null, RequestType.PAGE is used
 	 * @param startNewVisitSession if false, the current session from environment is used
-	 * @return true if the request was sent successfully
+	 * @return true if the request was queued, false if the same request was already queued
 	 */
 	synchronized public boolean sendRequest(String pagePath,
 			String title,
@@ -61,7 +59,16 @@ public class UsageRequest {
 			RequestType type,
 			boolean startNewVisitSession) {
 		String url = createUrl(environment, pagePath, title, event, type, startNewVisitSession);
-		return sendRequest(environment, url);
+		return getTracker().trackAsynchronously(url, title != null ? title : pagePath);
+	}
+
+	/**
+	 * Returns the tracker which queues the requests.
+	 * 
+	 * @return the tracker of the plugin
+	 */
+	protected Tracker getTracker() {
+		return JBossToolsUsageActivator.getDefault().getTracker();
 	}
 			
 	/**
@@ -111,11 +118,6 @@ public class UsageRequest {
 		return builder.toString();
 	}
 
-	private boolean sendRequest(IJBossToolsEclipseEnvironment environment, String url) {
-		HttpGetRequest request = new HttpGetRequest(environment.getUserAgent(), logger);
-		return request.request(url);
-	}
-
 	/**
 	 * Returns the google analytics cookies. These cookies determines user
 	 * identity, session identity etc.
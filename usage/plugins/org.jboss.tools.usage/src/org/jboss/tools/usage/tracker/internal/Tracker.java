@@ -17,16 +17,19 @@
 
 package org.jboss.tools.usage.tracker.internal;
 
+import java.io.File;
 import java.io.UnsupportedEncodingException;
 import java.text.MessageFormat;
 
+import org.jboss.tools.usage.internal.JBossToolsUsageActivator;
 import org.jboss.tools.usage.internal.http.IHttpGetRequest;
 import org.jboss.tools.usage.tracker.IFocusPoint;
 import org.jboss.tools.usage.tracker.ITracker;
 import org.jboss.tools.usage.tracker.IURLBuildingStrategy;
 
 /**
- * Reports (tracks) usage
+ * Reports (tracks) usage. Asynchronous tracking is done by a single
+ * background thread which drains a bounded {@link TrackingQueue}.
  * 
  * @author Andre Dietisheim
  * @author Siddique Hameed
@@ -37,11 +40,39 @@ public class Tracker implements ITracker {
 	private IURLBuildingStrategy urlBuildingStrategy = null;
 	private IHttpGetRequest httpRequest;
 	private UsagePluginLogger logger;
+	private TrackingQueue queue;
+
+	private static final String SPOOL_FILE = "tracking.spool"; //$NON-NLS-1$
 	
 	public Tracker(IURLBuildingStrategy urlBuildingStrategy, IHttpGetRequest httpGetRequest, UsagePluginLogger logger) {
+		this(urlBuildingStrategy, httpGetRequest, logger, getDefaultSpoolFile());
+	}
+
+	/**
+	 * Creates a tracker which keeps the requests that could not be sent 
+	 * in the given file, and sends them again once the host is reachable.
+	 * 
+	 * @param spoolFile the file to keep unsent requests in, or null to drop them
+	 */
+	public Tracker(IURLBuildingStrategy urlBuildingStrategy, IHttpGetRequest httpGetRequest, UsagePluginLogger logger,
+			File spoolFile) {
 		this.httpRequest = httpGetRequest;
 		this.logger = logger;
 		this.urlBuildingStrategy = urlBuildingStrategy;
+		this.queue = new TrackingQueue(this, httpGetRequest, logger, spoolFile);
+	}
+
+	private static File getDefaultSpoolFile() {
+		JBossToolsUsageActivator plugin = JBossToolsUsageActivator.getDefault();
+		if (plugin == null) {
+			return null;
+		}
+		try {
+			return plugin.getStateLocation().append(SPOOL_FILE).toFile();
+		} catch (IllegalStateException e) {
+			// no writable state location
+			return null;
+		}
 	}
 
 	public void trackSynchronously(IFocusPoint focusPoint) {
@@ -61,22 +92,29 @@ public class Tracker implements ITracker {
 	public void trackAsynchronously(IFocusPoint focusPoint) {
 		logger.debug(MessageFormat
 				.format(TrackerMessages.Tracker_Asynchronous, focusPoint.getTitle()));
-		new Thread(new TrackingRunnable(focusPoint)).start();
+		queue.add(focusPoint);
 	}
 
-	private class TrackingRunnable implements Runnable {
-		private IFocusPoint focusPoint;
-
-		private TrackingRunnable(IFocusPoint focusPoint) {
-			this.focusPoint = focusPoint;
-		}
+	/**
+	 * Tracks the given url, which was built by the caller, asynchronously.
+	 * 
+	 * @param url the tracking url to request
+	 * @param title the title of the tracked page, for logging
+	 * @return true if the url was queued, false if the same url was already queued
+	 */
+	public boolean trackAsynchronously(String url, String title) {
+		logger.debug(MessageFormat
+				.format(TrackerMessages.Tracker_Asynchronous, title));
+		return queue.add(url, title);
+	}
 
-		public void run() {
-			try {
-				httpRequest.request(getTrackingUrl(focusPoint));
-			} catch (Exception e) {
-				logger.error(MessageFormat.format(TrackerMessages.Tracker_Error, e.getMessage()));
-			}
-		}
+	/**
+	 * Returns the queue of the focus points that are tracked asynchronously,
+	 * it provides the number of queued, sent and dropped focus points.
+	 * 
+	 * @return the tracking queue
+	 */
+	public TrackingQueue getTrackingQueue() {
+		return queue;
 	}
 }
@@ -18,6 +18,8 @@ public class TrackerMessages extends NLS {
 	public static String Tracker_Synchronous;
 	public static String Tracker_Asynchronous;
 	public static String Tracker_Error;
+	public static String Tracker_Dropped;
+	public static String Tracker_Spool_Error;
 	
 	static {
 		// initialize resource bundle
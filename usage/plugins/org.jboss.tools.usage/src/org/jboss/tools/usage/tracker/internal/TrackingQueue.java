@@ -0,0 +1,470 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.usage.tracker.internal;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.jboss.tools.usage.internal.http.IHttpGetRequest;
+import org.jboss.tools.usage.internal.preferences.UsageReportPreferences;
+import org.jboss.tools.usage.tracker.IFocusPoint;
+
+/**
+ * A bounded queue of focus points and tracking urls which are tracked by a
+ * single daemon thread. The thread sends them in batches, one request after
+ * the other, so that the http connection is reused, and stops once the
+ * queue stayed empty for a while.
+ * <p>
+ * When the queue is full, a focus point whose uri is already queued is
+ * coalesced with it, otherwise the oldest entry is dropped. Requests
+ * which could not be sent are kept in a spool file and sent again as soon
+ * as a request succeeds. As they carry the visitor id, spooled requests are
+ * discarded rather than sent once reporting is disabled.
+ */
+public class TrackingQueue {
+
+	/** System property for the maximum number of queued focus points */
+	public static final String CAPACITY_PROPERTY = "org.jboss.tools.usage.trackingQueueCapacity"; //$NON-NLS-1$
+
+	static final int DEFAULT_CAPACITY = 100;
+
+	/** the number of focus points sent by the worker at once */
+	static final int BATCH_SIZE = 20;
+
+	/** the maximum number of requests kept in the spool file */
+	static final int MAX_SPOOLED = 500;
+
+	private static final long IDLE_TIMEOUT = 30 * 1000;
+
+	private static final String ENCODING = "UTF-8"; //$NON-NLS-1$
+
+	/** guards the spool files, which may be shared by several queues */
+	private static final Object SPOOL_LOCK = new Object();
+
+	private final Tracker tracker;
+	private final IHttpGetRequest httpRequest;
+	private final UsagePluginLogger logger;
+	private final File spoolFile;
+	private final int capacity;
+
+	private final LinkedList<Entry> queue = new LinkedList<Entry>();
+	private Thread worker;
+	private boolean sending = false;
+
+	private int maxQueueSize;
+	private long sent;
+	private long failed;
+	private long dropped;
+	private long coalesced;
+	private long replayed;
+	private long totalLatency;
+	private long lastLatency;
+
+	public TrackingQueue(Tracker tracker, IHttpGetRequest httpRequest, UsagePluginLogger logger, File spoolFile) {
+		this(tracker, httpRequest, logger, spoolFile, getCapacity(logger));
+	}
+
+	public TrackingQueue(Tracker tracker, IHttpGetRequest httpRequest, UsagePluginLogger logger, File spoolFile,
+			int capacity) {
+		this.tracker = tracker;
+		this.httpRequest = httpRequest;
+		this.logger = logger;
+		this.spoolFile = spoolFile;
+		this.capacity = Math.max(1, capacity);
+	}
+
+	private static int getCapacity(UsagePluginLogger logger) {
+		String value = System.getProperty(CAPACITY_PROPERTY);
+		if (value != null) {
+			try {
+				return Integer.parseInt(value.trim());
+			} catch (NumberFormatException e) {
+				logger.error("Invalid value of " + CAPACITY_PROPERTY + ": " + value); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		}
+		return DEFAULT_CAPACITY;
+	}
+
+	/**
+	 * Queues the given focus point, it is tracked by the worker thread.
+	 *
+	 * @param focusPoint the focus point to track
+	 * @return false if the queue is full and already holds the same focus point
+	 */
+	public boolean add(IFocusPoint focusPoint) {
+		return add(new Entry(focusPoint, null, focusPoint.getURI(), focusPoint.getTitle()));
+	}
+
+	/**
+	 * Queues the given tracking url, it is requested by the worker thread.
+	 *
+	 * @param url the tracking url to request
+	 * @param title the title of the tracked page, for logging
+	 * @return false if the queue is full and already holds the same url
+	 */
+	public boolean add(String url, String title) {
+		return add(new Entry(null, url, url, title));
+	}
+
+	private synchronized boolean add(Entry entry) {
+		if (queue.size() >= capacity) {
+			if (isQueued(entry.key)) {
+				coalesced++;
+				return false;
+			}
+			Entry oldest = queue.removeFirst();
+			dropped++;
+			logger.debug(MessageFormat.format(TrackerMessages.Tracker_Dropped, oldest.title));
+		}
+		queue.addLast(entry);
+		maxQueueSize = Math.max(maxQueueSize, queue.size());
+		if (worker == null) {
+			worker = new Thread(new Worker(), "Usage Tracker"); //$NON-NLS-1$
+			worker.setDaemon(true);
+			worker.start();
+		} else {
+			notifyAll();
+		}
+		return true;
+	}
+
+	private boolean isQueued(String key) {
+		for (Iterator<Entry> it = queue.iterator(); it.hasNext();) {
+			if (key.equals(it.next().key)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Waits until all queued focus points were sent.
+	 *
+	 * @param timeout the maximum time to wait in milliseconds
+	 * @return true if the queue is empty
+	 * @throws InterruptedException
+	 */
+	public synchronized boolean waitUntilEmpty(long timeout) throws InterruptedException {
+		long end = System.currentTimeMillis() + timeout;
+		while (!queue.isEmpty() || sending) {
+			long remaining = end - System.currentTimeMillis();
+			if (remaining <= 0) {
+				return false;
+			}
+			wait(remaining);
+		}
+		return true;
+	}
+
+	private synchronized List<Entry> take() throws InterruptedException {
+		sending = false;
+		notifyAll();
+		long idleEnd = System.currentTimeMillis() + IDLE_TIMEOUT;
+		while (queue.isEmpty()) {
+			long remaining = idleEnd - System.currentTimeMillis();
+			if (remaining <= 0) {
+				// a new worker is started by the next focus point
+				worker = null;
+				return null;
+			}
+			wait(remaining);
+		}
+		List<Entry> batch = new ArrayList<Entry>(Math.min(queue.size(), BATCH_SIZE));
+		while (!queue.isEmpty() && batch.size() < BATCH_SIZE) {
+			batch.add(queue.removeFirst());
+		}
+		sending = true;
+		return batch;
+	}
+
+	private class Worker implements Runnable {
+
+		public void run() {
+			try {
+				List<Entry> batch = null;
+				while ((batch = take()) != null) {
+					send(batch);
+				}
+			} catch (InterruptedException e) {
+				synchronized (TrackingQueue.this) {
+					worker = null;
+					sending = false;
+					TrackingQueue.this.notifyAll();
+				}
+			}
+		}
+	}
+
+	/*
+	 * A queued focus point, or a tracking url which was built by the caller
+	 */
+	private static class Entry {
+		private final IFocusPoint focusPoint;
+		private final String url;
+		private final String key;
+		private final String title;
+
+		private Entry(IFocusPoint focusPoint, String url, String key, String title) {
+			this.focusPoint = focusPoint;
+			this.url = url;
+			this.key = key;
+			this.title = title;
+		}
+	}
+
+	private void send(List<Entry> batch) {
+		List<String> unsent = new ArrayList<String>();
+		boolean reachable = true;
+		for (Entry entry : batch) {
+			String url = entry.url;
+			if (url == null) {
+				try {
+					url = tracker.getTrackingUrl(entry.focusPoint);
+				} catch (Exception e) {
+					logger.error(MessageFormat.format(TrackerMessages.Tracker_Error, e.getMessage()));
+					continue;
+				}
+			}
+			if (reachable) {
+				reachable = send(url);
+			}
+			if (!reachable) {
+				// don't wait for the timeouts of the remaining requests
+				unsent.add(url);
+			}
+		}
+		if (!isReportingEnabled()) {
+			// the user opted out, don't keep or send requests with the visitor id
+			deleteSpool();
+		} else if (!unsent.isEmpty()) {
+			spool(unsent);
+		} else if (spoolFile != null && spoolFile.isFile()) {
+			replay();
+		}
+	}
+
+	/**
+	 * Returns whether the user allows usage reporting. Spooled requests are
+	 * only kept and sent again while it is enabled.
+	 */
+	protected boolean isReportingEnabled() {
+		return UsageReportPreferences.isEnabled();
+	}
+
+	private boolean send(String url) {
+		long start = System.nanoTime();
+		boolean success = false;
+		try {
+			success = httpRequest.request(url);
+		} catch (Exception e) {
+			logger.error(MessageFormat.format(TrackerMessages.Tracker_Error, e.getMessage()));
+		}
+		long latency = (System.nanoTime() - start) / 1000000;
+		synchronized (this) {
+			lastLatency = latency;
+			if (success) {
+				sent++;
+				totalLatency += latency;
+			} else {
+				failed++;
+			}
+		}
+		return success;
+	}
+
+	/*
+	 * Sends the spooled requests, the ones which still fail are spooled again.
+	 * Holds the spool lock while sending, so that requests spooled by other
+	 * queues in the meantime are not overwritten.
+	 */
+	private void replay() {
+		synchronized (SPOOL_LOCK) {
+			List<String> urls = readSpool();
+			for (int i = 0; i < urls.size(); i++) {
+				if (!send(urls.get(i))) {
+					writeSpool(new ArrayList<String>(urls.subList(i, urls.size())));
+					return;
+				}
+				synchronized (this) {
+					replayed++;
+				}
+			}
+			writeSpool(new ArrayList<String>());
+		}
+	}
+
+	private void spool(List<String> urls) {
+		synchronized (SPOOL_LOCK) {
+			List<String> all = readSpool();
+			all.addAll(urls);
+			if (all.size() > MAX_SPOOLED) {
+				all = all.subList(all.size() - MAX_SPOOLED, all.size());
+			}
+			writeSpool(all);
+		}
+	}
+
+	private void deleteSpool() {
+		if (spoolFile == null) {
+			return;
+		}
+		synchronized (SPOOL_LOCK) {
+			spoolFile.delete();
+		}
+	}
+
+	private List<String> readSpool() {
+		List<String> urls = new ArrayList<String>();
+		if (spoolFile == null || !spoolFile.isFile()) {
+			return urls;
+		}
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(spoolFile), ENCODING));
+			String line = null;
+			while ((line = reader.readLine()) != null) {
+				if (line.length() > 0) {
+					urls.add(line);
+				}
+			}
+		} catch (IOException e) {
+			logger.error(MessageFormat.format(TrackerMessages.Tracker_Spool_Error, spoolFile, e.getMessage()));
+		} finally {
+			close(reader);
+		}
+		return urls;
+	}
+
+	private void writeSpool(List<String> urls) {
+		if (spoolFile == null) {
+			return;
+		}
+		if (urls.isEmpty()) {
+			spoolFile.delete();
+			return;
+		}
+		File tmp = new File(spoolFile.getPath() + ".tmp"); //$NON-NLS-1$
+		Writer writer = null;
+		try {
+			spoolFile.getParentFile().mkdirs();
+			writer = new OutputStreamWriter(new FileOutputStream(tmp), ENCODING);
+			for (String url : urls) {
+				writer.write(url);
+				writer.write('\n');
+			}
+			writer.close();
+			writer = null;
+			spoolFile.delete();
+			if (!tmp.renameTo(spoolFile)) {
+				throw new IOException("Could not rename " + tmp); //$NON-NLS-1$
+			}
+		} catch (IOException e) {
+			logger.error(MessageFormat.format(TrackerMessages.Tracker_Spool_Error, spoolFile, e.getMessage()));
+		} finally {
+			close(writer);
+		}
+	}
+
+	private static void close(Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of focus points waiting to be sent.
+	 */
+	public synchronized int getQueueSize() {
+		return queue.size();
+	}
+
+	/**
+	 * Returns the largest number of focus points that were queued at once.
+	 */
+	public synchronized int getMaxQueueSize() {
+		return maxQueueSize;
+	}
+
+	/**
+	 * Returns the number of requests that were sent successfully.
+	 */
+	public synchronized long getSentCount() {
+		return sent;
+	}
+
+	/**
+	 * Returns the number of requests that failed.
+	 */
+	public synchronized long getFailedCount() {
+		return failed;
+	}
+
+	/**
+	 * Returns the number of focus points dropped because the queue was full.
+	 */
+	public synchronized long getDroppedCount() {
+		return dropped;
+	}
+
+	/**
+	 * Returns the number of focus points coalesced with a queued one
+	 * because the queue was full.
+	 */
+	public synchronized long getCoalescedCount() {
+		return coalesced;
+	}
+
+	/**
+	 * Returns the number of spooled requests that were sent later.
+	 */
+	public synchronized long getReplayedCount() {
+		return replayed;
+	}
+
+	/**
+	 * Returns the number of requests in the spool file.
+	 */
+	public int getSpooledCount() {
+		synchronized (SPOOL_LOCK) {
+			return readSpool().size();
+		}
+	}
+
+	/**
+	 * Returns the average time in milliseconds of the successful requests.
+	 */
+	public synchronized long getAverageLatency() {
+		return sent == 0 ? 0 : totalLatency / sent;
+	}
+
+	/**
+	 * Returns the time in milliseconds of the last request.
+	 */
+	public synchronized long getLastLatency() {
+		return lastLatency;
+	}
+}
@@ -0,0 +1,290 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.usage.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.tools.usage.internal.http.HttpGetRequest;
+import org.jboss.tools.usage.internal.http.IHttpGetRequest;
+import org.jboss.tools.usage.internal.preferences.UsageReportPreferences;
+import org.jboss.tools.usage.tracker.IFocusPoint;
+import org.jboss.tools.usage.tracker.IURLBuildingStrategy;
+import org.jboss.tools.usage.tracker.internal.FocusPoint;
+import org.jboss.tools.usage.tracker.internal.Tracker;
+import org.jboss.tools.usage.tracker.internal.TrackingQueue;
+import org.jboss.tools.usage.tracker.internal.UsagePluginLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TrackingQueueTest {
+
+	private UsagePluginLogger logger;
+	private HttpStandIn server;
+	private File spoolFile;
+	private boolean enabled;
+
+	@Before
+	public void setUp() throws IOException {
+		enabled = UsageReportPreferences.isEnabled();
+		UsageReportPreferences.setEnabled(true);
+		logger = new UsagePluginLogger(JBossToolsUsageTestActivator.getDefault());
+		server = new HttpStandIn();
+		spoolFile = File.createTempFile("tracking", ".spool");
+		spoolFile.delete();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		UsageReportPreferences.setEnabled(enabled);
+		server.close();
+		spoolFile.delete();
+	}
+
+	@Test
+	public void requestsReuseConnection() throws Exception {
+		Tracker tracker = createTracker(new HttpGetRequest("test", logger));
+		for (int i = 0; i < 50; i++) {
+			tracker.trackAsynchronously(createFocusPoint("event" + i));
+		}
+		TrackingQueue queue = tracker.getTrackingQueue();
+		assertTrue(queue.waitUntilEmpty(10000));
+		assertEquals(50, server.requests.get());
+		assertEquals(50, queue.getSentCount());
+		assertTrue("connections: " + server.connections.get(), server.connections.get() < 5);
+		assertTrue(queue.getMaxQueueSize() > 0);
+		assertTrue(queue.getAverageLatency() >= 0);
+	}
+
+	@Test
+	public void fullQueueCoalescesAndDrops() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger requests = new AtomicInteger();
+		IHttpGetRequest blocking = new IHttpGetRequest() {
+			public boolean request(String urlString) {
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					return false;
+				}
+				requests.incrementAndGet();
+				return true;
+			}
+		};
+		Tracker tracker = createTracker(blocking);
+		TrackingQueue queue = new TrackingQueue(tracker, blocking, logger, spoolFile, 5);
+		queue.add(createFocusPoint("first"));
+		// wait for the worker to take the first focus point
+		for (int i = 0; i < 100 && queue.getQueueSize() > 0; i++) {
+			Thread.sleep(20);
+		}
+		for (int i = 0; i < 5; i++) {
+			queue.add(createFocusPoint("event" + i));
+		}
+		assertFalse(queue.add(createFocusPoint("event3")));
+		assertEquals(1, queue.getCoalescedCount());
+		assertTrue(queue.add(createFocusPoint("last")));
+		assertEquals(1, queue.getDroppedCount());
+		assertEquals(5, queue.getQueueSize());
+
+		release.countDown();
+		assertTrue(queue.waitUntilEmpty(10000));
+		assertEquals(6, requests.get());
+	}
+
+	@Test
+	public void unsentRequestsAreSpooledAndReplayed() throws Exception {
+		final AtomicBoolean reachable = new AtomicBoolean(false);
+		final AtomicInteger requests = new AtomicInteger();
+		IHttpGetRequest request = new IHttpGetRequest() {
+			public boolean request(String urlString) {
+				if (reachable.get()) {
+					requests.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+		Tracker tracker = createTracker(request);
+		TrackingQueue queue = new TrackingQueue(tracker, request, logger, spoolFile, 10);
+		for (int i = 0; i < 3; i++) {
+			queue.add(createFocusPoint("offline" + i));
+		}
+		assertTrue(queue.waitUntilEmpty(10000));
+		assertEquals(3, queue.getSpooledCount());
+		assertTrue(spoolFile.isFile());
+
+		// a new queue finds the spooled requests of the previous session
+		reachable.set(true);
+		queue = new TrackingQueue(tracker, request, logger, spoolFile, 10);
+		queue.add(createFocusPoint("online"));
+		assertTrue(queue.waitUntilEmpty(10000));
+		assertEquals(4, requests.get());
+		assertEquals(3, queue.getReplayedCount());
+		assertEquals(0, queue.getSpooledCount());
+		assertFalse(spoolFile.exists());
+	}
+
+	@Test
+	public void urlsAreSentAsGiven() throws Exception {
+		Tracker tracker = createTracker(new HttpGetRequest("test", logger));
+		assertTrue(tracker.trackAsynchronously("http://localhost:" + server.getPort() + "/track?page=url", "url"));
+		tracker.trackAsynchronously(createFocusPoint("focusPoint"));
+		assertTrue(tracker.getTrackingQueue().waitUntilEmpty(10000));
+		assertEquals(2, server.requests.get());
+		assertEquals(2, tracker.getTrackingQueue().getSentCount());
+	}
+
+	@Test
+	public void queuesSharingSpoolFileKeepAllRequests() throws Exception {
+		IHttpGetRequest unreachable = new IHttpGetRequest() {
+			public boolean request(String urlString) {
+				return false;
+			}
+		};
+		Tracker tracker = createTracker(unreachable);
+		TrackingQueue[] queues = new TrackingQueue[4];
+		for (int i = 0; i < queues.length; i++) {
+			queues[i] = new TrackingQueue(tracker, unreachable, logger, spoolFile, 100);
+		}
+		for (int j = 0; j < 25; j++) {
+			for (int i = 0; i < queues.length; i++) {
+				queues[i].add(createFocusPoint("offline" + i + "-" + j));
+			}
+		}
+		for (int i = 0; i < queues.length; i++) {
+			assertTrue(queues[i].waitUntilEmpty(10000));
+		}
+		assertEquals(100, queues[0].getSpooledCount());
+	}
+
+	@Test
+	public void spoolIsDiscardedWhenReportingIsDisabled() throws Exception {
+		final AtomicBoolean reachable = new AtomicBoolean(false);
+		final AtomicInteger requests = new AtomicInteger();
+		IHttpGetRequest request = new IHttpGetRequest() {
+			public boolean request(String urlString) {
+				requests.incrementAndGet();
+				return reachable.get();
+			}
+		};
+		Tracker tracker = createTracker(request);
+		TrackingQueue queue = new TrackingQueue(tracker, request, logger, spoolFile, 10);
+		queue.add(createFocusPoint("offline"));
+		assertTrue(queue.waitUntilEmpty(10000));
+		assertEquals(1, queue.getSpooledCount());
+
+		// the spooled request carries the visitor id, it is not sent once the user opted out
+		reachable.set(true);
+		UsageReportPreferences.setEnabled(false);
+		queue.add(createFocusPoint("queued before the opt-out"));
+		assertTrue(queue.waitUntilEmpty(10000));
+		assertEquals(2, requests.get());
+		assertEquals(0, queue.getReplayedCount());
+		assertFalse(spoolFile.exists());
+	}
+
+	private Tracker createTracker(IHttpGetRequest request) {
+		IURLBuildingStrategy strategy = new IURLBuildingStrategy() {
+			public String build(IFocusPoint focusPoint) throws UnsupportedEncodingException {
+				return "http://localhost:" + server.getPort() + "/track?page=" + focusPoint.getURI();
+			}
+		};
+		return new Tracker(strategy, request, logger, spoolFile);
+	}
+
+	private IFocusPoint createFocusPoint(String name) {
+		return new FocusPoint("test").setChild(new FocusPoint(name));
+	}
+
+	/**
+	 * A http server which answers every request with a short response,
+	 * and keeps the connections alive.
+	 */
+	private static class HttpStandIn implements Runnable {
+
+		private final ServerSocket socket;
+		private final AtomicInteger connections = new AtomicInteger();
+		private final AtomicInteger requests = new AtomicInteger();
+
+		public HttpStandIn() throws IOException {
+			socket = new ServerSocket(0);
+			Thread thread = new Thread(this, "Http Stand-In");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		public int getPort() {
+			return socket.getLocalPort();
+		}
+
+		public void run() {
+			try {
+				while (true) {
+					final Socket client = socket.accept();
+					connections.incrementAndGet();
+					Thread handler = new Thread("Http Stand-In Connection") {
+						public void run() {
+							serve(client);
+						}
+					};
+					handler.setDaemon(true);
+					handler.start();
+				}
+			} catch (IOException e) {
+				// closed
+			}
+		}
+
+		private void serve(Socket client) {
+			try {
+				BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), "ISO-8859-1"));
+				OutputStream out = client.getOutputStream();
+				String line = null;
+				while ((line = in.readLine()) != null) {
+					if (line.length() == 0) {
+						// end of the request headers
+						requests.incrementAndGet();
+						out.write("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nOK".getBytes("ISO-8859-1"));
+						out.flush();
+					}
+				}
+			} catch (IOException e) {
+				// connection closed
+			} finally {
+				try {
+					client.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+
+		public void close() throws IOException {
+			socket.close();
+		}
+	}
+}
@@ -27,6 +27,7 @@ import org.junit.runners.Suite;
 		HttpRemotePropertiesTest.class,
 		GlobalUsageSettingsTest.class,
 		UsageBrandingTest.class,
-		UsageIntegrationTest.class })
+		UsageIntegrationTest.class,
+		TrackingQueueTest.class })
 public class UsageTestSuite {
 }
\ No newline at end of file
@@ -14,8 +14,14 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Properties;
 
 import org.jboss.tools.usage.event.UsageEvent;
 import org.jboss.tools.usage.event.UsageEventType;
@@ -170,6 +176,46 @@ public class EventRegisterTest {
 		assertCountEventWithBreak(true, LONG_NAME_SUFIX);
 	}
 
+	@Test
+	public void testLegacyFilesAreMigrated() throws IOException {
+		TestEventRegister register = TestEventRegister.getInstance();
+		register.reset(true);
+		boolean old = register.setReset(true);
+		try {
+			UsageEventType type = new UsageEventType("test", "1.0.0", null, "legacy", "test-label-description", "test-value-description");
+			Properties pr = new Properties();
+			pr.setProperty("cmp", type.getComponentName());
+			pr.setProperty("v", type.getComponentVersion());
+			pr.setProperty("ct", type.getCategoryName());
+			pr.setProperty("a", type.getActionName());
+			pr.setProperty("l", type.getLabelDescription());
+			pr.setProperty("vl", type.getValueDescription());
+			pr.setProperty("d", "" + THREE_DAYS_BEFORE);
+			pr.setProperty("c", "3");
+			pr.setProperty("s", "7");
+			pr.setProperty("cl", "test-label");
+			File dir = register.getStorageDirectory();
+			OutputStream out = new FileOutputStream(new File(dir, "legacy-event"));
+			try {
+				pr.store(out, null);
+			} finally {
+				out.close();
+			}
+
+			register.setCurrentTime(DAY_BEFORE_YESTERDAY);
+			GlobalUsageSettings settings = new GlobalUsageSettingsForEventRegisterTest(JBossToolsUsageActivator.getDefault(), getMap());
+			register.registerEvent(type);
+			EventRegister.Result result = register.checkTrackData(new UsageEvent(type, "test-label", 1), settings, true);
+			assertTrue(result.isOkToSend());
+			assertEquals(7, result.getPreviousSumOfValues());
+			register.flush();
+			assertEquals("[counters]", Arrays.toString(dir.list()));
+		} finally {
+			register.setReset(old);
+			register.reset(true);
+		}
+	}
+
 	public void assertCountEvent(boolean reset, String nameSufix) {
 		TestEventRegister register = TestEventRegister.getInstance();
 
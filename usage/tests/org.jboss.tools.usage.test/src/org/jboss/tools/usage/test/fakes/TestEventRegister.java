@@ -35,6 +35,10 @@ public class TestEventRegister extends EventRegister {
 	}
 
 	public void reset(boolean hard) {
+		if(!hard) {
+			// The counters are read again from the disk
+			flush();
+		}
 		eventPropertyStorage = null;
 		if(hard) {
 			eventTypes = null;
@@ -60,6 +64,23 @@ public class TestEventRegister extends EventRegister {
 		return old;
 	}
 
+	/**
+	 * The counters are kept in one file, so the test register must not share
+	 * its directory with EventRegister.getInstance()
+	 */
+	@Override
+	public File getStorageDirectory() {
+		File directory = super.getStorageDirectory();
+		if(directory==null) {
+			return null;
+		}
+		File file = new File(directory.getParentFile(), "test-events");
+		if(!file.exists()) {
+			file.mkdirs();
+		}
+		return file;
+	}
+
 	@Override
 	protected long getCurrentTime() {
 		return this.currentTime;